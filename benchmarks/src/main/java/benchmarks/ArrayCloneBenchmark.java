@@ -0,0 +1,54 @@
+package benchmarks;
+
+import benchmarks.model.Payload;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clones payloads of multi-MB arrays, copying the arrays by hand with {@code clone()} is the lower bound.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ArrayCloneBenchmark {
+
+    @Param({"1048576", "16777216"})
+    public int payloadBytes;
+
+    private Payload payload;
+
+    @Setup
+    public void setUp() {
+        payload = Payload.ofSize(payloadBytes);
+    }
+
+    @Benchmark
+    public Payload deepClone() throws IllegalAccessException {
+        return CopyUtils.deepClone(payload);
+    }
+
+    @Benchmark
+    public Payload handWritten() {
+        long[][] rows = payload.getRows().clone();
+        for (int i = 0; i < rows.length; i++) {
+            rows[i] = rows[i].clone();
+        }
+        return new Payload(payload.getId(), payload.getData().clone(), payload.getSamples().clone(), rows);
+    }
+
+}
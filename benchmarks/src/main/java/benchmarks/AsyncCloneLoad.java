@@ -0,0 +1,149 @@
+package benchmarks;
+
+import benchmarks.model.Catalog;
+import utils.CopyUtils;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.CountDownLatch;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ThreadFactory;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Load test of async clones: thousands of request handlers start at once and each of them waits for the async clone
+ * of a large catalog. Cases differ by the limit of clones running at once, the default limit of available processors
+ * and no limit, and report the throughput, the latency of the requests and the peak of the used heap.
+ * <pre>{@code java -cp target/benchmarks.jar benchmarks.AsyncCloneLoad [requests] [catalog size]}</pre>
+ * Handlers and clones run on virtual threads on JVMs which have them and on platform threads otherwise.
+ */
+public final class AsyncCloneLoad {
+
+    private AsyncCloneLoad() {
+    }
+
+    public static void main(String[] args) throws Exception {
+        int requestCount = args.length > 0 ? Integer.parseInt(args[0]) : 5000;
+        int catalogSize = args.length > 1 ? Integer.parseInt(args[1]) : 2000;
+        Catalog catalog = Catalog.of(catalogSize);
+        System.out.println("Catalog of " + CopyUtils.estimateCloneSize(catalog) + ", " + requestCount + " requests, "
+                + (isVirtual() ? "virtual" : "platform") + " threads");
+
+        // warm up the plans and the compiled copy
+        run("warm-up", catalog, Math.min(requestCount, 500), Runtime.getRuntime().availableProcessors(), false);
+        run("limit of processors", catalog, requestCount, Runtime.getRuntime().availableProcessors(), true);
+        run("no limit", catalog, requestCount, requestCount, true);
+    }
+
+    private static void run(String name, Catalog catalog, int requestCount, int maxConcurrentClones, boolean isPrinted)
+            throws Exception {
+        CopyUtils.setMaxConcurrentAsyncClones(maxConcurrentClones);
+        System.gc();
+        long[] latencies = new long[requestCount];
+        AtomicLong failures = new AtomicLong();
+        CountDownLatch start = new CountDownLatch(1);
+        ThreadFactory factory = threadFactory();
+        // a thread per clone, as an executor of virtual threads has
+        Executor executor = task -> factory.newThread(task).start();
+        List<Thread> handlers = new ArrayList<>(requestCount);
+        try (HeapSampler sampler = new HeapSampler()) {
+            for (int i = 0; i < requestCount; i++) {
+                int request = i;
+                handlers.add(factory.newThread(() -> {
+                    try {
+                        start.await();
+                        long begin = System.nanoTime();
+                        CopyUtils.deepCloneAsync(catalog, executor).join();
+                        latencies[request] = System.nanoTime() - begin;
+                    }
+                    catch (Exception ex) {
+                        failures.incrementAndGet();
+                    }
+                }));
+            }
+            handlers.forEach(Thread::start);
+            long begin = System.nanoTime();
+            start.countDown();
+            for (Thread handler : handlers) {
+                handler.join();
+            }
+            long nanos = System.nanoTime() - begin;
+            if (isPrinted) {
+                print(name, latencies, nanos, sampler.peak(), failures.get());
+            }
+        }
+    }
+
+    private static void print(String name, long[] latencies, long nanos, long peakBytes, long failures) {
+        Arrays.sort(latencies);
+        System.out.println(name);
+        System.out.printf("  %-16s %,12.0f clones/s%n", "throughput", latencies.length * 1e9 / nanos);
+        System.out.printf("  %-16s %,12.1f ms%n", "latency p50", latencies[latencies.length / 2] / 1e6);
+        System.out.printf("  %-16s %,12.1f ms%n", "latency p99", latencies[latencies.length * 99 / 100] / 1e6);
+        System.out.printf("  %-16s %,12.1f ms%n", "latency max", latencies[latencies.length - 1] / 1e6);
+        System.out.printf("  %-16s %,12d MB%n", "peak heap used", peakBytes >> 20);
+        System.out.printf("  %-16s %,12d%n", "failed", failures);
+    }
+
+    /**
+     * @return factory of virtual threads if the JVM has them, otherwise of platform threads
+     */
+    private static ThreadFactory threadFactory() {
+        try {
+            Object builder = Thread.class.getMethod("ofVirtual").invoke(null);
+            return (ThreadFactory) builder.getClass().getMethod("factory").invoke(builder);
+        }
+        catch (ReflectiveOperationException ex) {
+            return Thread::new;
+        }
+    }
+
+    private static boolean isVirtual() {
+        try {
+            Thread.class.getMethod("ofVirtual");
+            return true;
+        }
+        catch (NoSuchMethodException ex) {
+            return false;
+        }
+    }
+
+    /**
+     * Samples the used heap every millisecond until it's closed.
+     */
+    private static final class HeapSampler implements AutoCloseable {
+
+        private final AtomicLong peak = new AtomicLong();
+        private final Thread thread;
+        private volatile boolean isClosed;
+
+        private HeapSampler() {
+            thread = new Thread(() -> {
+                Runtime runtime = Runtime.getRuntime();
+                while (!isClosed) {
+                    peak.accumulateAndGet(runtime.totalMemory() - runtime.freeMemory(), Math::max);
+                    try {
+                        Thread.sleep(1);
+                    }
+                    catch (InterruptedException ex) {
+                        return;
+                    }
+                }
+            });
+            thread.setDaemon(true);
+            thread.start();
+        }
+
+        long peak() {
+            return peak.get();
+        }
+
+        @Override
+        public void close() throws InterruptedException {
+            isClosed = true;
+            thread.join();
+        }
+    }
+
+}
@@ -0,0 +1,82 @@
+package benchmarks;
+
+import entities.Man;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CloneOptions;
+import utils.CopyUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+import java.util.stream.Collectors;
+
+/**
+ * Copies a large list of homogeneous records by clones in a loop and by batch clones: sequential, sharing
+ * the favourite books of all records, parallel and streamed.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class BatchCloneBenchmark {
+
+    private static final CloneOptions INDEPENDENT = CloneOptions.builder().build();
+    private static final CloneOptions SHARED = CloneOptions.builder().shareBetweenElements(true).build();
+
+    @Param({"50000"})
+    public int size;
+
+    private List<Man> men;
+
+    @Setup
+    public void setUp() {
+        List<String> books = new ArrayList<>(List.of("Dune", "Solaris"));
+        men = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            men.add(new Man("man-" + i, i % 90, books));
+        }
+    }
+
+    @Benchmark
+    public List<Man> loop() throws IllegalAccessException {
+        List<Man> copies = new ArrayList<>();
+        for (Man man : men) {
+            copies.add(CopyUtils.deepClone(man));
+        }
+        return copies;
+    }
+
+    @Benchmark
+    public List<Man> batch() throws IllegalAccessException {
+        return CopyUtils.deepCloneAll(men);
+    }
+
+    @Benchmark
+    public List<Man> batchShared() throws IllegalAccessException {
+        return CopyUtils.deepCloneAll(men, SHARED);
+    }
+
+    @Benchmark
+    public List<Man> batchParallel() throws IllegalAccessException {
+        return CopyUtils.deepCloneAll(men, INDEPENDENT, ForkJoinPool.commonPool());
+    }
+
+    @Benchmark
+    public List<Man> stream() {
+        return CopyUtils.deepCloneAll(men.stream(), INDEPENDENT).collect(Collectors.toList());
+    }
+
+}
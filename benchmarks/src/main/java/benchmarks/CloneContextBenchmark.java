@@ -0,0 +1,79 @@
+package benchmarks;
+
+import benchmarks.model.ChainNode;
+import benchmarks.model.PrimitiveDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CloneContext;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Steady-state allocation of clones, run with {@code -prof gc}: {@code gc.alloc.rate.norm} of clones via
+ * a reused context and via {@link CopyUtils} (pooled contexts) should match the manual copies,
+ * which allocate only the copied objects.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.NANOSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class CloneContextBenchmark {
+
+    private final CloneContext context = new CloneContext();
+
+    private PrimitiveDto dto;
+    private ChainNode chain;
+
+    @Setup
+    public void setUp() {
+        dto = new PrimitiveDto(1, 2L, 3.0, 4f, (short) 5, (byte) 6, '7', true, "dto");
+        chain = ChainNode.chain(100);
+    }
+
+    @Benchmark
+    public PrimitiveDto dtoManual() {
+        return new PrimitiveDto(dto);
+    }
+
+    @Benchmark
+    public PrimitiveDto dtoDeepClone() throws IllegalAccessException {
+        return CopyUtils.deepClone(dto);
+    }
+
+    @Benchmark
+    public PrimitiveDto dtoContext() throws IllegalAccessException {
+        return context.deepClone(dto);
+    }
+
+    @Benchmark
+    public ChainNode chainManual() {
+        return chain.copy();
+    }
+
+    @Benchmark
+    public ChainNode chainDeepClone() throws IllegalAccessException {
+        return CopyUtils.deepClone(chain);
+    }
+
+    @Benchmark
+    public ChainNode chainContext() throws IllegalAccessException {
+        return context.deepClone(chain);
+    }
+
+    @Benchmark
+    public ChainNode chainContextIterative() throws IllegalAccessException {
+        return context.deepCloneIterative(chain);
+    }
+
+}
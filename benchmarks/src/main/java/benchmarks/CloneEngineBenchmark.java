@@ -0,0 +1,194 @@
+package benchmarks;
+
+import benchmarks.model.Catalog;
+import benchmarks.model.ChainNode;
+import benchmarks.model.Families;
+import benchmarks.model.Population;
+import benchmarks.model.PrimitiveDto;
+import entities.Man;
+import entities.TestEntityWithFinalFieldsAndList;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Regression suite of {@link CopyUtils#deepClone(Object)} over the typical shapes of cloned graphs:
+ * the cyclic {@code Person} family graph, flat DTOs, classes created only via their constructor,
+ * large collections and maps, and deep chains.
+ * <p>Copies made by hand are the baseline of every shape, a Java serialization round-trip is the second baseline
+ * of the serializable models ({@code Person} isn't serializable). {@link BenchmarkRunner} runs the suite
+ * with the GC profiler, so allocated bytes per clone are reported next to the throughput.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util.concurrent.atomic=ALL-UNNAMED")
+@State(Scope.Benchmark)
+public class CloneEngineBenchmark {
+
+    private Man man;
+    private TestEntityWithFinalFieldsAndList finalFields;
+    private PrimitiveDto dto;
+
+    @Setup
+    public void setUp() {
+        man = new Man("name", 30, new ArrayList<>(Arrays.asList("book1", "book2", "book3")));
+        // the mutable list keeps the class from being detected as immutable, so clones run its constructor
+        finalFields = new TestEntityWithFinalFieldsAndList(1, "name", "code", new ArrayList<>(Arrays.asList("tag1", "tag2")));
+        dto = new PrimitiveDto(42, 1_600_000_000_000L, 10.5, 0.25f, (short) 3, (byte) 1, 'x', true, "dto");
+    }
+
+    @State(Scope.Benchmark)
+    public static class Graph {
+
+        @Param({"100", "10000"})
+        public int familyCount;
+
+        /**
+         * Share of families using one common budget object.
+         */
+        @Param({"0", "0.5", "1"})
+        public double sharedBudgetRatio;
+
+        private Population population;
+
+        @Setup
+        public void setUp() {
+            population = Families.population(familyCount, sharedBudgetRatio);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Collections {
+
+        @Param({"100", "10000"})
+        public int size;
+
+        private Catalog catalog;
+
+        @Setup
+        public void setUp() {
+            catalog = Catalog.of(size);
+        }
+    }
+
+    @State(Scope.Benchmark)
+    public static class Chain {
+
+        @Param({"100", "1000"})
+        public int length;
+
+        private ChainNode chain;
+
+        @Setup
+        public void setUp() {
+            chain = ChainNode.chain(length);
+        }
+    }
+
+    @Benchmark
+    public Population familyGraph(Graph graph) throws IllegalAccessException {
+        return CopyUtils.deepClone(graph.population);
+    }
+
+    @Benchmark
+    public Population familyGraphManual(Graph graph) {
+        return Families.copy(graph.population);
+    }
+
+    @Benchmark
+    public Man flatDto() throws IllegalAccessException {
+        return CopyUtils.deepClone(man);
+    }
+
+    @Benchmark
+    public Man flatDtoManual() {
+        return new Man(man.getName(), man.getAge(), new ArrayList<>(man.getFavoriteBooks()));
+    }
+
+    @Benchmark
+    public PrimitiveDto primitiveDto() throws IllegalAccessException {
+        return CopyUtils.deepClone(dto);
+    }
+
+    @Benchmark
+    public PrimitiveDto primitiveDtoManual() {
+        return new PrimitiveDto(dto);
+    }
+
+    @Benchmark
+    public PrimitiveDto primitiveDtoSerialization() throws IOException, ClassNotFoundException {
+        return roundTrip(dto);
+    }
+
+    @Benchmark
+    public TestEntityWithFinalFieldsAndList constructorOnly() throws IllegalAccessException {
+        return CopyUtils.deepClone(finalFields);
+    }
+
+    @Benchmark
+    public TestEntityWithFinalFieldsAndList constructorOnlyManual() {
+        return new TestEntityWithFinalFieldsAndList(finalFields.getNum(), finalFields.getName(), finalFields.getCode(),
+                new ArrayList<>(finalFields.getTags()));
+    }
+
+    @Benchmark
+    public Catalog collections(Collections collections) throws IllegalAccessException {
+        return CopyUtils.deepClone(collections.catalog);
+    }
+
+    @Benchmark
+    public Catalog collectionsManual(Collections collections) {
+        return collections.catalog.copy();
+    }
+
+    @Benchmark
+    public Catalog collectionsSerialization(Collections collections) throws IOException, ClassNotFoundException {
+        return roundTrip(collections.catalog);
+    }
+
+    @Benchmark
+    public ChainNode chain(Chain chain) throws IllegalAccessException {
+        return CopyUtils.deepCloneIterative(chain.chain);
+    }
+
+    @Benchmark
+    public ChainNode chainManual(Chain chain) {
+        return chain.chain.copy();
+    }
+
+    @Benchmark
+    public ChainNode chainSerialization(Chain chain) throws IOException, ClassNotFoundException {
+        return roundTrip(chain.chain);
+    }
+
+    private static <T> T roundTrip(T object) throws IOException, ClassNotFoundException {
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(object);
+        }
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(bytes.toByteArray()))) {
+            return (T) in.readObject();
+        }
+    }
+
+}
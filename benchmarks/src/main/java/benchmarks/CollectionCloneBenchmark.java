@@ -0,0 +1,45 @@
+package benchmarks;
+
+import benchmarks.model.Catalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clones an aggregate of JDK collections of immutable and mutable elements.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class CollectionCloneBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private Catalog catalog;
+
+    @Setup
+    public void setUp() {
+        catalog = Catalog.of(size);
+    }
+
+    @Benchmark
+    public Catalog catalog() throws IllegalAccessException {
+        return CopyUtils.deepClone(catalog);
+    }
+
+}
@@ -0,0 +1,118 @@
+package benchmarks;
+
+import benchmarks.model.Gauge;
+import benchmarks.model.Position;
+import utils.CloneOptions;
+import utils.CopyUtils;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.LongConsumer;
+import java.util.function.Predicate;
+
+/**
+ * Stress test of clones with consistent reads in the manner of jcstress: a writer keeps changing an object
+ * which fields, array and collection hold an invariant, cloners copy the object meanwhile and check the invariant
+ * on their copies. Outcomes are counted per case: a torn copy is forbidden with consistent reads
+ * and merely interesting with plain clones, which read fields one by one.
+ * <pre>{@code java -cp target/benchmarks.jar benchmarks.ConsistentCloneStress [seconds per case] [cloner threads]}</pre>
+ * The exit status is 1 if a copy made with consistent reads is torn.
+ */
+public final class ConsistentCloneStress {
+
+    private static final CloneOptions CONSISTENT = CloneOptions.builder().consistentReads(true).build();
+    private static final CloneOptions CONSISTENT_ITERATIVE = CloneOptions.builder().consistentReads(true).iterative(true).build();
+
+    private ConsistentCloneStress() {
+    }
+
+    public static void main(String[] args) throws InterruptedException {
+        long millis = args.length > 0 ? Long.parseLong(args[0]) * 1000 : 2000;
+        int clonerCount = args.length > 1 ? Integer.parseInt(args[1]) : Math.max(1, Runtime.getRuntime().availableProcessors() - 1);
+        List<Case> cases = new ArrayList<>();
+        for (String mode : new String[] {"deepClone", "consistent", "consistent iterative"}) {
+            Position position = new Position();
+            cases.add(new Case("Position (stamped lock), " + mode, position, position::moveTo,
+                    copy -> ((Position) copy).isConsistent(), mode));
+            Gauge gauge = new Gauge();
+            cases.add(new Case("Gauge (version), " + mode, gauge, gauge::set,
+                    copy -> ((Gauge) copy).isConsistent(), mode));
+        }
+        boolean isTorn = false;
+        for (Case stressCase : cases) {
+            stressCase.run(clonerCount, millis);
+            stressCase.print();
+            isTorn |= stressCase.isForbidden();
+        }
+        if (isTorn) {
+            System.exit(1);
+        }
+    }
+
+    private static final class Case {
+
+        private final String name;
+        private final Object original;
+        private final LongConsumer writer;
+        private final Predicate<Object> isConsistent;
+        private final CloneOptions options;
+        private final LongAdder consistent = new LongAdder();
+        private final LongAdder torn = new LongAdder();
+        private final LongAdder failed = new LongAdder();
+        private volatile boolean isStopped;
+
+        private Case(String name, Object original, LongConsumer writer, Predicate<Object> isConsistent, String mode) {
+            this.name = name;
+            this.original = original;
+            this.writer = writer;
+            this.isConsistent = isConsistent;
+            this.options = mode.equals("deepClone") ? null : mode.equals("consistent") ? CONSISTENT : CONSISTENT_ITERATIVE;
+        }
+
+        void run(int clonerCount, long millis) throws InterruptedException {
+            List<Thread> threads = new ArrayList<>();
+            threads.add(new Thread(() -> {
+                for (long i = 1; !isStopped; i++) {
+                    writer.accept(i);
+                }
+            }));
+            for (int i = 0; i < clonerCount; i++) {
+                threads.add(new Thread(this::cloneUntilStopped));
+            }
+            threads.forEach(Thread::start);
+            Thread.sleep(millis);
+            isStopped = true;
+            for (Thread thread : threads) {
+                thread.join();
+            }
+        }
+
+        private void cloneUntilStopped() {
+            while (!isStopped) {
+                Object copy;
+                try {
+                    copy = options == null ? CopyUtils.deepClone(original) : CopyUtils.deepClone(original, options);
+                }
+                catch (IllegalAccessException | RuntimeException ex) {
+                    // e.g. a collection changed during a plain clone or a version changing during all attempts
+                    failed.increment();
+                    continue;
+                }
+                (isConsistent.test(copy) ? consistent : torn).increment();
+            }
+        }
+
+        boolean isForbidden() {
+            return options != null && torn.sum() > 0;
+        }
+
+        void print() {
+            System.out.println(name);
+            System.out.printf("  %-12s %,14d  %s%n", "CONSISTENT", consistent.sum(), "acceptable");
+            System.out.printf("  %-12s %,14d  %s%n", "TORN", torn.sum(), options == null ? "interesting" : "FORBIDDEN");
+            System.out.printf("  %-12s %,14d  %s%n", "FAILED", failed.sum(), "acceptable");
+        }
+    }
+
+}
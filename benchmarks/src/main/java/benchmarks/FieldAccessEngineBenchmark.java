@@ -0,0 +1,58 @@
+package benchmarks;
+
+import benchmarks.model.PrimitiveDto;
+import entities.Man;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+import utils.FieldAccessEngine;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Compares {@link FieldAccessEngine#REFLECTION} and {@link FieldAccessEngine#VAR_HANDLE} field access.
+ * <p>Run with {@code -prof gc} to compare allocation caused by boxing of primitive fields.</p>
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class FieldAccessEngineBenchmark {
+
+    @Param({"REFLECTION", "VAR_HANDLE"})
+    public FieldAccessEngine engine;
+
+    private PrimitiveDto primitiveDto;
+    private Man man;
+
+    @Setup
+    public void setUp() {
+        CopyUtils.setFieldAccessEngine(engine);
+        primitiveDto = new PrimitiveDto(42, 1_600_000_000_000L, 10.5, 0.25f, (short) 3, (byte) 1, 'x', true, "dto");
+        man = new Man("name", 30, new ArrayList<>(Arrays.asList("book1", "book2", "book3")));
+    }
+
+    @Benchmark
+    public PrimitiveDto primitiveDto() throws IllegalAccessException {
+        return CopyUtils.deepClone(primitiveDto);
+    }
+
+    @Benchmark
+    public Man man() throws IllegalAccessException {
+        return CopyUtils.deepClone(man);
+    }
+
+}
@@ -0,0 +1,52 @@
+package benchmarks;
+
+import benchmarks.model.Agenda;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clones a {@code java.time}-heavy aggregate which immutable values are shared by the copy,
+ * compared with a copy made by hand.
+ * <p>Run with {@code -prof gc}: the clone should allocate about as much as the manual copy.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class ImmutableTypesBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private Agenda agenda;
+
+    @Setup
+    public void setUp() {
+        agenda = Agenda.of(size);
+    }
+
+    @Benchmark
+    public Agenda deepClone() throws IllegalAccessException {
+        return CopyUtils.deepClone(agenda);
+    }
+
+    @Benchmark
+    public Agenda manualCopy() {
+        return agenda.copy();
+    }
+
+}
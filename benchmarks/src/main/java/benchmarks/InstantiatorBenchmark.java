@@ -0,0 +1,76 @@
+package benchmarks;
+
+import benchmarks.model.Account;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+import utils.Instantiator;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Cost of creating copies of a constructor-heavy entity: {@code constructorRules} runs the validating constructor
+ * and its preallocation for every copy, {@code noArgConstructor} calls the cheap private constructor via a method
+ * handle and {@code serialization} runs no constructor of the entity at all.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class InstantiatorBenchmark {
+
+    @Param({"constructorRules", "noArgConstructor", "serialization"})
+    public String instantiator;
+
+    @Param({"false", "true"})
+    public boolean generatedCloners;
+
+    private List<Account> accounts;
+
+    @Setup
+    public void setUp() {
+        accounts = new ArrayList<>();
+        for (int i = 0; i < 100; i++) {
+            Account account = Account.of(i, "owner" + i);
+            account.post(i);
+            accounts.add(account);
+        }
+        switch (instantiator) {
+            case "noArgConstructor":
+                CopyUtils.registerInstantiator(Account.class, Instantiator.noArgConstructor());
+                break;
+            case "serialization":
+                CopyUtils.registerInstantiator(Account.class, Instantiator.serialization());
+                break;
+            default:
+                CopyUtils.registerInstantiator(Account.class, null);
+        }
+        CopyUtils.setGeneratedClonersEnabled(generatedCloners);
+    }
+
+    @TearDown
+    public void tearDown() {
+        CopyUtils.registerInstantiator(Account.class, null);
+        CopyUtils.setGeneratedClonersEnabled(false);
+    }
+
+    @Benchmark
+    public List<Account> accounts() throws IllegalAccessException {
+        return CopyUtils.deepClone(accounts);
+    }
+
+}
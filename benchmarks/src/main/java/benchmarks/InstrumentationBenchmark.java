@@ -0,0 +1,73 @@
+package benchmarks;
+
+import benchmarks.model.Families;
+import entities.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CloneInstrumentation;
+import utils.CloneMetrics;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Cost of the instrumentation: {@code none} is the default path without a trace which should match
+ * the clone before the instrumentation was added, {@code noop} measures every copy without aggregating it
+ * and {@code metrics} aggregates the measurements per class.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util.concurrent.atomic=ALL-UNNAMED")
+@State(Scope.Benchmark)
+public class InstrumentationBenchmark {
+
+    @Param({"none", "noop", "metrics"})
+    public String instrumentation;
+
+    private Person family;
+
+    @Setup
+    public void setUp() {
+        family = Families.family("Green", new AtomicLong(123L));
+        switch (instrumentation) {
+            case "noop":
+                CopyUtils.setInstrumentation(new CloneInstrumentation() {
+                });
+                break;
+            case "metrics":
+                CopyUtils.setInstrumentation(new CloneMetrics());
+                break;
+            default:
+                CopyUtils.setInstrumentation(null);
+        }
+    }
+
+    @TearDown
+    public void tearDown() {
+        CopyUtils.setInstrumentation(null);
+    }
+
+    @Benchmark
+    public Person familyRecursive() throws IllegalAccessException {
+        return CopyUtils.deepClone(family);
+    }
+
+    @Benchmark
+    public Person familyIterative() throws IllegalAccessException {
+        return CopyUtils.deepCloneIterative(family);
+    }
+
+}
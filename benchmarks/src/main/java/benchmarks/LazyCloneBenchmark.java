@@ -0,0 +1,71 @@
+package benchmarks;
+
+import benchmarks.model.Catalog;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clones an aggregate of JDK collections eagerly and lazily, then reads the clone or writes one collection of it.
+ * <p>Run with {@code -prof gc} to compare allocated bytes per clone ({@code gc.alloc.rate.norm}):
+ * a read-mostly lazy clone allocates only the clone of the aggregate and the wrappers of its collections.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Benchmark)
+public class LazyCloneBenchmark {
+
+    @Param({"100", "10000"})
+    public int size;
+
+    private Catalog catalog;
+
+    @Setup
+    public void setUp() {
+        catalog = Catalog.of(size);
+    }
+
+    @Benchmark
+    public int eagerRead() throws IllegalAccessException {
+        return read(CopyUtils.deepClone(catalog));
+    }
+
+    @Benchmark
+    public int lazyRead() throws IllegalAccessException {
+        return read(CopyUtils.deepCloneLazy(catalog));
+    }
+
+    @Benchmark
+    public int eagerWrite() throws IllegalAccessException {
+        return write(CopyUtils.deepClone(catalog));
+    }
+
+    @Benchmark
+    public int lazyWrite() throws IllegalAccessException {
+        return write(CopyUtils.deepCloneLazy(catalog));
+    }
+
+    private static int read(Catalog clone) {
+        return clone.getTags().size() + clone.getTags().get(0).length() + clone.getByName().size() + clone.getItems().size();
+    }
+
+    private static int write(Catalog clone) {
+        clone.getTags().add("tag");
+        return clone.getTags().size();
+    }
+
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import benchmarks.model.Families;
+import benchmarks.model.Population;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Level;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Scaling of the parallel clone of a large population over pools of 1 to N threads,
+ * the sequential clone of the same population is the baseline.
+ * <p>Connected families reference the previous family, so threads copying neighbour ranges of the list
+ * meet each other's objects, independent families share only the common budget.</p>
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util.concurrent.atomic=ALL-UNNAMED")
+@State(Scope.Benchmark)
+public class ParallelCloneBenchmark {
+
+    @Param({"1", "2", "4", "8", "16", "32"})
+    public int threads;
+
+    @Param({"false", "true"})
+    public boolean connected;
+
+    @Param({"20000"})
+    public int familyCount;
+
+    private Population population;
+    private ForkJoinPool pool;
+
+    @Setup(Level.Trial)
+    public void setUp() {
+        population = Families.population(familyCount, 0.5, connected);
+        pool = new ForkJoinPool(threads);
+    }
+
+    @TearDown(Level.Trial)
+    public void tearDown() {
+        pool.shutdown();
+    }
+
+    @Benchmark
+    public Population parallel() throws IllegalAccessException {
+        return CopyUtils.deepCloneParallel(population, pool);
+    }
+
+    @Benchmark
+    public Population sequential() throws IllegalAccessException {
+        return CopyUtils.deepCloneIterative(population);
+    }
+
+}
@@ -0,0 +1,70 @@
+package benchmarks;
+
+import benchmarks.model.Catalog;
+import benchmarks.model.Session;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CloneOptions;
+import utils.CopyPolicy;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a session referencing a large catalog: a deep clone copies the catalog, partial clones share it
+ * by depth, by a field filter or by the policy of its type. Run with {@code -prof gc} to compare allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class PartialCloneBenchmark {
+
+    private static final CloneOptions MAX_DEPTH = CloneOptions.builder().maxDepth(2).build();
+    private static final CloneOptions EXCLUDED_FIELD = CloneOptions.builder()
+            .excludeFields(field -> field.getType() == Catalog.class)
+            .build();
+    private static final CloneOptions SHALLOW_TYPE = CloneOptions.builder().typePolicy(Catalog.class, CopyPolicy.SHALLOW).build();
+
+    @Param({"1000"})
+    public int catalogSize;
+
+    private Session session;
+
+    @Setup
+    public void setUp() {
+        session = Session.of(Catalog.of(catalogSize));
+    }
+
+    @Benchmark
+    public Session deepClone() throws IllegalAccessException {
+        return CopyUtils.deepClone(session);
+    }
+
+    @Benchmark
+    public Session maxDepth() throws IllegalAccessException {
+        return CopyUtils.deepClone(session, MAX_DEPTH);
+    }
+
+    @Benchmark
+    public Session excludedField() throws IllegalAccessException {
+        return CopyUtils.deepClone(session, EXCLUDED_FIELD);
+    }
+
+    @Benchmark
+    public Session shallowType() throws IllegalAccessException {
+        return CopyUtils.deepClone(session, SHALLOW_TYPE);
+    }
+
+}
@@ -0,0 +1,76 @@
+package benchmarks;
+
+import benchmarks.model.Families;
+import benchmarks.model.Population;
+import entities.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.ChangeHint;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Publishes a snapshot of a population after one person changed: a full clone against reclones of the previous
+ * snapshot finding the change by comparison or told about it. Run with {@code -prof gc}: a reclone copies only
+ * the changed family, the population and its list, its allocation is dominated by the tables matching the graphs.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util.concurrent.atomic=ALL-UNNAMED")
+@State(Scope.Thread)
+public class RecloneBenchmark {
+
+    @Param({"1000"})
+    public int familyCount;
+
+    private Population population;
+    private Population snapshot;
+    private int changeIndex;
+
+    @Setup
+    public void setUp() throws IllegalAccessException {
+        population = Families.population(familyCount, 0, false);
+        snapshot = CopyUtils.deepClone(population);
+    }
+
+    private Person change() {
+        changeIndex = (changeIndex + 1) % familyCount;
+        Person person = population.getPeople().get(changeIndex);
+        person.setAge(person.getAge() + 1);
+        return person;
+    }
+
+    @Benchmark
+    public Population deepClone() throws IllegalAccessException {
+        change();
+        snapshot = CopyUtils.deepClone(population);
+        return snapshot;
+    }
+
+    @Benchmark
+    public Population recloneCompare() throws IllegalAccessException {
+        change();
+        snapshot = CopyUtils.reclone(population, snapshot, ChangeHint.compare());
+        return snapshot;
+    }
+
+    @Benchmark
+    public Population recloneDirty() throws IllegalAccessException {
+        Person person = change();
+        snapshot = CopyUtils.reclone(population, snapshot, ChangeHint.dirty(person));
+        return snapshot;
+    }
+
+}
@@ -0,0 +1,100 @@
+package benchmarks;
+
+import benchmarks.model.Catalog;
+import benchmarks.model.PrimitiveDto;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.TearDown;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+import utils.Snapshot;
+
+import java.io.ByteArrayInputStream;
+import java.io.ByteArrayOutputStream;
+import java.io.IOException;
+import java.io.ObjectInputStream;
+import java.io.ObjectOutputStream;
+import java.nio.file.Files;
+import java.nio.file.Path;
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Copies a catalog from the heap and from an off-heap snapshot: the whole graph and a single item reached by a path.
+ * Reloads the catalog from a snapshot file and from Java serialization bytes.
+ * Run with {@code -prof gc} to compare allocation.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MICROSECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(1)
+@State(Scope.Thread)
+public class SnapshotBenchmark {
+
+    @Param({"1000"})
+    public int catalogSize;
+
+    private Catalog catalog;
+    private Snapshot snapshot;
+    private Path file;
+    private byte[] serialized;
+
+    @Setup
+    public void setUp() throws IllegalAccessException, IOException {
+        catalog = Catalog.of(catalogSize);
+        snapshot = CopyUtils.snapshot(catalog);
+        file = Files.createTempFile("catalog", ".snapshot");
+        snapshot.save(file);
+        ByteArrayOutputStream bytes = new ByteArrayOutputStream();
+        try (ObjectOutputStream out = new ObjectOutputStream(bytes)) {
+            out.writeObject(catalog);
+        }
+        serialized = bytes.toByteArray();
+    }
+
+    @TearDown
+    public void tearDown() throws IOException {
+        Files.deleteIfExists(file);
+    }
+
+    @Benchmark
+    public Catalog deepClone() throws IllegalAccessException {
+        return CopyUtils.deepClone(catalog);
+    }
+
+    @Benchmark
+    public Snapshot writeSnapshot() throws IllegalAccessException {
+        return CopyUtils.snapshot(catalog);
+    }
+
+    @Benchmark
+    public Catalog materialize() throws IllegalAccessException {
+        return snapshot.materialize();
+    }
+
+    @Benchmark
+    public PrimitiveDto materializeItem() throws IllegalAccessException {
+        return snapshot.materialize("items", catalogSize / 2);
+    }
+
+    @Benchmark
+    public Catalog loadFile() throws IllegalAccessException, IOException {
+        return Snapshot.load(file).materialize();
+    }
+
+    @Benchmark
+    public Catalog deserialize() throws IOException, ClassNotFoundException {
+        try (ObjectInputStream in = new ObjectInputStream(new ByteArrayInputStream(serialized))) {
+            return (Catalog) in.readObject();
+        }
+    }
+
+}
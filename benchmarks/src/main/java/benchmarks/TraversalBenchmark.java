@@ -0,0 +1,70 @@
+package benchmarks;
+
+import benchmarks.model.ChainNode;
+import benchmarks.model.Families;
+import entities.Person;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Compares the recursive and the iterative traversal on a shallow graph
+ * and shows the iterative traversal on a chain too deep for the recursive one.
+ */
+@BenchmarkMode(Mode.Throughput)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util.concurrent.atomic=ALL-UNNAMED")
+@State(Scope.Benchmark)
+public class TraversalBenchmark {
+
+    private Person family;
+    private ChainNode shortChain;
+    private ChainNode longChain;
+
+    @Setup
+    public void setUp() {
+        family = Families.family("Green", new AtomicLong(123L));
+        shortChain = ChainNode.chain(100);
+        longChain = ChainNode.chain(100_000);
+    }
+
+    @Benchmark
+    public Person familyRecursive() throws IllegalAccessException {
+        return CopyUtils.deepClone(family);
+    }
+
+    @Benchmark
+    public Person familyIterative() throws IllegalAccessException {
+        return CopyUtils.deepCloneIterative(family);
+    }
+
+    @Benchmark
+    public ChainNode shortChainRecursive() throws IllegalAccessException {
+        return CopyUtils.deepClone(shortChain);
+    }
+
+    @Benchmark
+    public ChainNode shortChainIterative() throws IllegalAccessException {
+        return CopyUtils.deepCloneIterative(shortChain);
+    }
+
+    @Benchmark
+    @OutputTimeUnit(TimeUnit.SECONDS)
+    public ChainNode longChainIterative() throws IllegalAccessException {
+        return CopyUtils.deepCloneIterative(longChain);
+    }
+
+}
@@ -0,0 +1,51 @@
+package benchmarks;
+
+import benchmarks.model.Families;
+import benchmarks.model.Population;
+import org.openjdk.jmh.annotations.Benchmark;
+import org.openjdk.jmh.annotations.BenchmarkMode;
+import org.openjdk.jmh.annotations.Fork;
+import org.openjdk.jmh.annotations.Measurement;
+import org.openjdk.jmh.annotations.Mode;
+import org.openjdk.jmh.annotations.OutputTimeUnit;
+import org.openjdk.jmh.annotations.Param;
+import org.openjdk.jmh.annotations.Scope;
+import org.openjdk.jmh.annotations.Setup;
+import org.openjdk.jmh.annotations.State;
+import org.openjdk.jmh.annotations.Warmup;
+import utils.CopyUtils;
+
+import java.util.concurrent.TimeUnit;
+
+/**
+ * Clones large cyclic graphs of {@code Person} families, every family adds about 20 tracked objects.
+ */
+@BenchmarkMode(Mode.AverageTime)
+@OutputTimeUnit(TimeUnit.MILLISECONDS)
+@Warmup(iterations = 5, time = 1)
+@Measurement(iterations = 5, time = 1)
+@Fork(value = 1, jvmArgsAppend = "--add-opens=java.base/java.util.concurrent.atomic=ALL-UNNAMED")
+@State(Scope.Benchmark)
+public class VisitedTableBenchmark {
+
+    @Param({"1000", "25000"})
+    public int familyCount;
+
+    private Population population;
+
+    @Setup
+    public void setUp() {
+        population = Families.population(familyCount, 0.5);
+    }
+
+    @Benchmark
+    public Population withoutSizeHint() throws IllegalAccessException {
+        return CopyUtils.deepClone(population);
+    }
+
+    @Benchmark
+    public Population withSizeHint() throws IllegalAccessException {
+        return CopyUtils.deepClone(population, false, familyCount * 20);
+    }
+
+}
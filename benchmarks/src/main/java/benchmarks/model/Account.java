@@ -0,0 +1,69 @@
+package benchmarks.model;
+
+import annotation.CopyFieldName;
+
+import java.util.ArrayList;
+import java.util.List;
+import java.util.regex.Pattern;
+
+/**
+ * Entity which public constructor validates its number and preallocates a ledger, copies don't need either:
+ * the number of the original is valid and the ledger is replaced by the copy of the original one.
+ */
+public class Account {
+
+    private static final Pattern NUMBER = Pattern.compile("[A-Z]{2}[0-9]{2}[A-Z0-9]{12,30}");
+
+    private String number;
+    private String owner;
+    private long balance;
+    private List<Long> ledger;
+
+    private Account() {
+    }
+
+    public Account(@CopyFieldName("number") String number, @CopyFieldName("owner") String owner) {
+        if (!NUMBER.matcher(number).matches() || checksum(number) != 1) {
+            throw new IllegalArgumentException("Invalid account number " + number);
+        }
+        this.number = number;
+        this.owner = owner;
+        this.ledger = new ArrayList<>(64);
+    }
+
+    /**
+     * @return account with a valid number made of the index
+     */
+    public static Account of(int index, String owner) {
+        String base = String.format("%016d", index);
+        for (int check = 2; check < 100; check++) {
+            String number = "DE" + String.format("%02d", check) + base;
+            if (checksum(number) == 1) {
+                return new Account(number, owner);
+            }
+        }
+        throw new IllegalStateException("No check digits for " + index);
+    }
+
+    /**
+     * ISO 13616 checksum: the country code and check digits are moved to the end, letters are replaced by numbers.
+     */
+    private static int checksum(String number) {
+        String rearranged = number.substring(4) + number.substring(0, 4);
+        int remainder = 0;
+        for (int i = 0; i < rearranged.length(); i++) {
+            int value = Character.getNumericValue(rearranged.charAt(i));
+            remainder = (value > 9 ? remainder * 100 + value : remainder * 10 + value) % 97;
+        }
+        return remainder;
+    }
+
+    public void post(long amount) {
+        balance += amount;
+        ledger.add(amount);
+    }
+
+    public long getBalance() {
+        return balance;
+    }
+}
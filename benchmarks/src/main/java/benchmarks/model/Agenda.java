@@ -0,0 +1,53 @@
+package benchmarks.model;
+
+import java.math.BigDecimal;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalTime;
+import java.time.ZoneId;
+import java.util.ArrayList;
+import java.util.List;
+import java.util.UUID;
+
+/**
+ * Aggregate of bookings dominated by {@code java.time} values.
+ */
+public class Agenda {
+    private ZoneId zone;
+    private List<Booking> bookings;
+
+    public Agenda() {
+    }
+
+    public static Agenda of(int size) {
+        Agenda agenda = new Agenda();
+        agenda.zone = ZoneId.of("Europe/Berlin");
+        agenda.bookings = new ArrayList<>(size);
+        LocalDate day = LocalDate.of(2024, 1, 1);
+        Instant created = Instant.parse("2024-01-01T00:00:00Z");
+        for (int i = 0; i < size; i++) {
+            TimeSlot slot = new TimeSlot(day.plusDays(i % 365), LocalTime.of(8 + i % 10, 0), Duration.ofMinutes(30 + i % 4 * 15));
+            agenda.bookings.add(new Booking(new UUID(i, i), created.plusSeconds(i), agenda.zone,
+                    BigDecimal.valueOf(i, 2), slot, "guest-" + i));
+        }
+        return agenda;
+    }
+
+    /**
+     * Copy made by hand sharing all immutable values, the baseline of the generic copy.
+     */
+    public Agenda copy() {
+        Agenda copy = new Agenda();
+        copy.zone = zone;
+        copy.bookings = new ArrayList<>(bookings.size());
+        for (Booking booking : bookings) {
+            copy.bookings.add(new Booking(booking));
+        }
+        return copy;
+    }
+
+    public List<Booking> getBookings() {
+        return bookings;
+    }
+}
@@ -0,0 +1,38 @@
+package benchmarks.model;
+
+import java.math.BigDecimal;
+import java.time.Instant;
+import java.time.ZoneId;
+import java.util.UUID;
+
+/**
+ * Mutable entity referencing {@code java.time} values, JDK value classes and a value class.
+ */
+public class Booking {
+    private UUID id;
+    private Instant created;
+    private ZoneId zone;
+    private BigDecimal price;
+    private TimeSlot slot;
+    private String guest;
+
+    public Booking() {
+    }
+
+    public Booking(UUID id, Instant created, ZoneId zone, BigDecimal price, TimeSlot slot, String guest) {
+        this.id = id;
+        this.created = created;
+        this.zone = zone;
+        this.price = price;
+        this.slot = slot;
+        this.guest = guest;
+    }
+
+    public Booking(Booking booking) {
+        this(booking.id, booking.created, booking.zone, booking.price, booking.slot, booking.guest);
+    }
+
+    public TimeSlot getSlot() {
+        return slot;
+    }
+}
@@ -0,0 +1,89 @@
+package benchmarks.model;
+
+import java.io.Serializable;
+import java.util.ArrayList;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.TreeMap;
+
+/**
+ * Aggregate of JDK collections: immutable elements in mutable collections, mutable elements in immutable
+ * and unmodifiable collections.
+ */
+public class Catalog implements Serializable {
+    private List<String> tags;
+    private Map<String, PrimitiveDto> byName;
+    private TreeMap<String, String> labels;
+    private List<PrimitiveDto> items;
+    private List<PrimitiveDto> featured;
+
+    public Catalog() {
+    }
+
+    public static Catalog of(int size) {
+        Catalog catalog = new Catalog();
+        catalog.tags = new ArrayList<>(size);
+        catalog.byName = new HashMap<>();
+        catalog.labels = new TreeMap<>();
+        List<PrimitiveDto> items = new ArrayList<>(size);
+        for (int i = 0; i < size; i++) {
+            String name = "item-" + i;
+            PrimitiveDto item = new PrimitiveDto(i, i * 1000L, i * 0.5, i * 0.25f, (short) i, (byte) i, 'c', i % 2 == 0, name);
+            catalog.tags.add("tag-" + i);
+            catalog.byName.put(name, item);
+            catalog.labels.put(name, "label-" + i);
+            items.add(item);
+        }
+        catalog.items = List.copyOf(items);
+        catalog.featured = Collections.unmodifiableList(new ArrayList<>(items.subList(0, size / 10)));
+        return catalog;
+    }
+
+    /**
+     * Copies the catalog by hand, items shared by the collections are copied once.
+     */
+    public Catalog copy() {
+        Map<PrimitiveDto, PrimitiveDto> copies = new IdentityHashMap<>();
+        Catalog copy = new Catalog();
+        copy.tags = new ArrayList<>(tags);
+        copy.byName = new HashMap<>();
+        for (Map.Entry<String, PrimitiveDto> entry : byName.entrySet()) {
+            copy.byName.put(entry.getKey(), copies.computeIfAbsent(entry.getValue(), PrimitiveDto::new));
+        }
+        copy.labels = new TreeMap<>(labels);
+        List<PrimitiveDto> itemCopies = new ArrayList<>(items.size());
+        for (PrimitiveDto item : items) {
+            itemCopies.add(copies.computeIfAbsent(item, PrimitiveDto::new));
+        }
+        copy.items = List.copyOf(itemCopies);
+        List<PrimitiveDto> featuredCopies = new ArrayList<>(featured.size());
+        for (PrimitiveDto item : featured) {
+            featuredCopies.add(copies.computeIfAbsent(item, PrimitiveDto::new));
+        }
+        copy.featured = Collections.unmodifiableList(featuredCopies);
+        return copy;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    public Map<String, PrimitiveDto> getByName() {
+        return byName;
+    }
+
+    public TreeMap<String, String> getLabels() {
+        return labels;
+    }
+
+    public List<PrimitiveDto> getItems() {
+        return items;
+    }
+
+    public List<PrimitiveDto> getFeatured() {
+        return featured;
+    }
+}
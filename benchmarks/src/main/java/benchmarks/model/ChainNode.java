@@ -0,0 +1,48 @@
+package benchmarks.model;
+
+import java.io.Serializable;
+
+public class ChainNode implements Serializable {
+    private long sequence;
+    private String payload;
+    private ChainNode next;
+
+    public ChainNode() {
+    }
+
+    /**
+     * @return head of a chain of the given length
+     */
+    public static ChainNode chain(int length) {
+        ChainNode head = null;
+        for (int i = length - 1; i >= 0; i--) {
+            ChainNode node = new ChainNode();
+            node.sequence = i;
+            node.payload = "event";
+            node.next = head;
+            head = node;
+        }
+        return head;
+    }
+
+    /**
+     * Copies the chain by hand iterating over its nodes.
+     */
+    public ChainNode copy() {
+        ChainNode head = new ChainNode();
+        ChainNode copy = head;
+        for (ChainNode node = this; ; node = node.next) {
+            copy.sequence = node.sequence;
+            copy.payload = node.payload;
+            if (node.next == null) {
+                return head;
+            }
+            copy.next = new ChainNode();
+            copy = copy.next;
+        }
+    }
+
+    public ChainNode getNext() {
+        return next;
+    }
+}
@@ -0,0 +1,127 @@
+package benchmarks.model;
+
+import entities.Person;
+import entities.RelativeType;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicLong;
+
+/**
+ * Builds graphs of {@link Person} families like the one in {@code Main}.
+ */
+public final class Families {
+
+    private Families() {
+    }
+
+    /**
+     * Creates the family of {@code Main}: spouses referencing each other, two children referencing parents as relatives.
+     * @return father of the family
+     */
+    public static Person family(String secondName, AtomicLong familyBudget) {
+        Person ch1 = new Person("Ch1", secondName, 5, new ArrayList<>(Arrays.asList("book1", "book2")), familyBudget);
+        Person ch2 = new Person("Ch2", secondName, 4, new ArrayList<>(Arrays.asList("book3", "book4")), familyBudget);
+        Set<Person> children = new HashSet<>(Arrays.asList(ch1, ch2));
+
+        Person mrs = new Person("Misses", secondName, 30, new ArrayList<>(Arrays.asList("123", "345")), null, children, familyBudget);
+        Person mr = new Person("Mister", secondName, 30, new ArrayList<>(Arrays.asList("678", "986")), mrs, children, familyBudget);
+        mrs.setSpouse(mr);
+
+        for (Person child : children) {
+            child.getRelatives().put(RelativeType.FATHER, mr);
+            child.getRelatives().put(RelativeType.MOTHER, mrs);
+        }
+        return mr;
+    }
+
+    /**
+     * Creates connected families: fathers of all families are kept in one list
+     * and every father references the father of the previous family as the father of his spouse,
+     * so the whole population is one cyclic graph.
+     * @param familyCount number of families, every family has 4 persons
+     * @param sharedBudgetRatio share of families using one common budget object instead of their own
+     */
+    public static Population population(int familyCount, double sharedBudgetRatio) {
+        return population(familyCount, sharedBudgetRatio, true);
+    }
+
+    /**
+     * Creates families kept in one list.
+     * @param familyCount number of families, every family has 4 persons
+     * @param sharedBudgetRatio share of families using one common budget object instead of their own
+     * @param isConnected true to connect every family with the previous one as {@link #population(int, double)} does,
+     *                    false to keep families connected only via the common budget
+     */
+    public static Population population(int familyCount, double sharedBudgetRatio, boolean isConnected) {
+        Population population = new Population();
+        List<Person> people = population.getPeople();
+        AtomicLong commonBudget = new AtomicLong(1_000_000L);
+        Person previous = null;
+        for (int i = 0; i < familyCount; i++) {
+            AtomicLong budget = i < familyCount * sharedBudgetRatio ? commonBudget : new AtomicLong(i);
+            Person father = family("Family" + i, budget);
+            if (isConnected && previous != null) {
+                father.getSpouse().getRelatives().put(RelativeType.FATHER, previous);
+            }
+            people.add(father);
+            previous = father;
+        }
+        return population;
+    }
+
+    /**
+     * Copies the population by hand with the public constructors and setters of {@link Person},
+     * shared persons, sets of children and budgets are copied once, the baseline of generic copies.
+     */
+    public static Population copy(Population population) {
+        Map<Object, Object> copies = new IdentityHashMap<>();
+        Population copy = new Population();
+        for (Person person : population.getPeople()) {
+            copy.getPeople().add(copy(person, copies));
+        }
+        return copy;
+    }
+
+    private static Person copy(Person person, Map<Object, Object> copies) {
+        if (person == null) {
+            return null;
+        }
+        Person copy = (Person) copies.get(person);
+        if (copy != null) {
+            return copy;
+        }
+        AtomicLong budget = person.getFamilyBudget();
+        AtomicLong budgetCopy = (AtomicLong) copies.get(budget);
+        if (budgetCopy == null) {
+            budgetCopy = new AtomicLong(budget.get());
+            copies.put(budget, budgetCopy);
+        }
+        copy = new Person(person.getName(), person.getOriginalSecondName(), person.getAge(),
+                new ArrayList<>(person.getFavoriteBooks()), budgetCopy);
+        copies.put(person, copy);
+        copy.setSpouse(copy(person.getSpouse(), copies));
+        Set<Person> children = person.getChildren();
+        if (children != null) {
+            Set<Person> childrenCopy = (Set<Person>) copies.get(children);
+            if (childrenCopy == null) {
+                childrenCopy = new HashSet<>();
+                copies.put(children, childrenCopy);
+                for (Person child : children) {
+                    childrenCopy.add(copy(child, copies));
+                }
+            }
+            copy.setChildren(childrenCopy);
+        }
+        for (Map.Entry<RelativeType, Person> relative : person.getRelatives().entrySet()) {
+            copy.getRelatives().put(relative.getKey(), copy(relative.getValue(), copies));
+        }
+        return copy;
+    }
+
+}
@@ -0,0 +1,46 @@
+package benchmarks.model;
+
+import annotation.CopyStamp;
+
+import java.lang.invoke.VarHandle;
+import java.util.Arrays;
+
+/**
+ * Gauge guarded by a version, written by one thread at a time: the value, its square and the samples always agree,
+ * a copy made while the gauge changes is consistent only if all of them are read between two equal even versions.
+ */
+public class Gauge {
+
+    @CopyStamp
+    private volatile long version;
+    private long value;
+    private long square;
+    private final int[] samples = new int[8];
+
+    public synchronized void set(long newValue) {
+        version++;
+        // the writes below aren't visible before the odd version
+        VarHandle.releaseFence();
+        value = newValue;
+        Arrays.fill(samples, (int) newValue);
+        square = newValue * newValue;
+        version++;
+    }
+
+    /**
+     * Checks a copy which isn't changed by other threads.
+     * @return true if the version is even and the value, its square and the samples agree
+     */
+    public boolean isConsistent() {
+        if ((version & 1) != 0 || square != value * value) {
+            return false;
+        }
+        for (int sample : samples) {
+            if (sample != (int) value) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,58 @@
+package benchmarks.model;
+
+/**
+ * Message carrying large buffers: a raw byte buffer, a sample buffer and a matrix of rows.
+ */
+public class Payload {
+    private String id;
+    private byte[] data;
+    private double[] samples;
+    private long[][] rows;
+
+    public Payload() {
+    }
+
+    public Payload(String id, byte[] data, double[] samples, long[][] rows) {
+        this.id = id;
+        this.data = data;
+        this.samples = samples;
+        this.rows = rows;
+    }
+
+    /**
+     * Creates a payload of about the given size split evenly between the data, the samples and the rows.
+     */
+    public static Payload ofSize(int bytes) {
+        byte[] data = new byte[bytes / 3];
+        for (int i = 0; i < data.length; i++) {
+            data[i] = (byte) i;
+        }
+        double[] samples = new double[bytes / 3 / Double.BYTES];
+        for (int i = 0; i < samples.length; i++) {
+            samples[i] = i * 0.5;
+        }
+        long[][] rows = new long[64][bytes / 3 / Long.BYTES / 64];
+        for (int i = 0; i < rows.length; i++) {
+            for (int j = 0; j < rows[i].length; j++) {
+                rows[i][j] = (long) i * j;
+            }
+        }
+        return new Payload("payload-" + bytes, data, samples, rows);
+    }
+
+    public String getId() {
+        return id;
+    }
+
+    public byte[] getData() {
+        return data;
+    }
+
+    public double[] getSamples() {
+        return samples;
+    }
+
+    public long[][] getRows() {
+        return rows;
+    }
+}
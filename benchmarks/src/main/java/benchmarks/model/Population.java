@@ -0,0 +1,17 @@
+package benchmarks.model;
+
+import entities.Person;
+
+import java.util.ArrayList;
+import java.util.List;
+
+public class Population {
+    private List<Person> people = new ArrayList<>();
+
+    public Population() {
+    }
+
+    public List<Person> getPeople() {
+        return people;
+    }
+}
@@ -0,0 +1,57 @@
+package benchmarks.model;
+
+import annotation.CopyStamp;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Position guarded by a stamped lock: the coordinates, the recent path and the trail always agree,
+ * a copy made while the position moves is consistent only if all of them are read as one state.
+ */
+public class Position {
+
+    private static final int PATH_LENGTH = 8;
+
+    @CopyStamp
+    private final StampedLock lock = new StampedLock();
+    private long x;
+    private long y;
+    private long[] path = new long[PATH_LENGTH];
+    private List<Long> trail = new ArrayList<>();
+
+    public void moveTo(long to) {
+        long stamp = lock.writeLock();
+        try {
+            x = to;
+            Arrays.fill(path, to);
+            trail.add(to);
+            if (trail.size() > PATH_LENGTH) {
+                trail.remove(0);
+            }
+            y = -to;
+        }
+        finally {
+            lock.unlockWrite(stamp);
+        }
+    }
+
+    /**
+     * Checks a copy which isn't changed by other threads.
+     * @return true if the coordinates, the path and the last point of the trail agree
+     */
+    public boolean isConsistent() {
+        if (y != -x || trail.isEmpty() != (x == 0) || !trail.isEmpty() && trail.get(trail.size() - 1) != x) {
+            return false;
+        }
+        for (long point : path) {
+            if (point != x) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,43 @@
+package benchmarks.model;
+
+import java.io.Serializable;
+
+public class PrimitiveDto implements Serializable {
+    private int id;
+    private long timestamp;
+    private double price;
+    private float ratio;
+    private short flags;
+    private byte type;
+    private char code;
+    private boolean active;
+    private String name;
+
+    public PrimitiveDto() {
+    }
+
+    public PrimitiveDto(int id, long timestamp, double price, float ratio, short flags, byte type, char code,
+                        boolean active, String name) {
+        this.id = id;
+        this.timestamp = timestamp;
+        this.price = price;
+        this.ratio = ratio;
+        this.flags = flags;
+        this.type = type;
+        this.code = code;
+        this.active = active;
+        this.name = name;
+    }
+
+    public PrimitiveDto(PrimitiveDto dto) {
+        this(dto.id, dto.timestamp, dto.price, dto.ratio, dto.flags, dto.type, dto.code, dto.active, dto.name);
+    }
+
+    public int getId() {
+        return id;
+    }
+
+    public String getName() {
+        return name;
+    }
+}
@@ -0,0 +1,34 @@
+package benchmarks.model;
+
+import java.util.ArrayList;
+import java.util.List;
+
+/**
+ * Small mutable state referencing a large catalog which is only read, like a request referencing a cache.
+ */
+public class Session {
+    private String user;
+    private List<String> roles;
+    private Booking booking;
+    private Catalog catalog;
+
+    public Session() {
+    }
+
+    public static Session of(Catalog catalog) {
+        Session session = new Session();
+        session.user = "user";
+        session.roles = new ArrayList<>(List.of("reader", "writer"));
+        session.booking = new Booking();
+        session.catalog = catalog;
+        return session;
+    }
+
+    public List<String> getRoles() {
+        return roles;
+    }
+
+    public Catalog getCatalog() {
+        return catalog;
+    }
+}
@@ -0,0 +1,32 @@
+package benchmarks.model;
+
+import java.time.Duration;
+import java.time.LocalDate;
+import java.time.LocalTime;
+
+/**
+ * Value class with final fields of immutable types only, detected as immutable by the copier.
+ */
+public final class TimeSlot {
+    private final LocalDate day;
+    private final LocalTime start;
+    private final Duration length;
+
+    public TimeSlot(LocalDate day, LocalTime start, Duration length) {
+        this.day = day;
+        this.start = start;
+        this.length = length;
+    }
+
+    public LocalDate getDay() {
+        return day;
+    }
+
+    public LocalTime getStart() {
+        return start;
+    }
+
+    public Duration getLength() {
+        return length;
+    }
+}
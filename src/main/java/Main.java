@@ -1,16 +1,30 @@
 import entities.Man;
 import entities.Person;
+import entities.Pet;
 import entities.RelativeType;
 import entities.TestEntityWithFinalFields;
+import entities.TestEntityWithFinalFieldsAndList;
+import exception.ObjectCannotBeClonedException;
 
 import java.lang.reflect.InvocationTargetException;
 import java.util.ArrayList;
 import java.util.Arrays;
+import java.util.Comparator;
 import java.util.HashSet;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
 import java.util.Set;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ForkJoinPool;
 import java.util.concurrent.atomic.AtomicLong;
 
 import static utils.CopyUtils.deepClone;
+import static utils.CopyUtils.deepCloneLazy;
+import static utils.CopyUtils.deepCloneParallel;
+import static utils.CopyUtils.setGeneratedClonersEnabled;
+import static utils.CopyUtils.snapshot;
 
 public class Main {
 
@@ -62,6 +76,96 @@ public class Main {
 
         System.out.println("Updated original object: " + man);
         System.out.println("Copied object: " + man1);
+
+        // Compare copies created by generated cloners with copies created via reflection
+        setGeneratedClonersEnabled(true);
+        Person generatedCopy = deepClone(mr);
+        Man generatedMan = deepClone(man);
+        TestEntityWithFinalFields generatedTest = deepClone(test);
+        TestEntityWithFinalFieldsAndList listEntity = new TestEntityWithFinalFieldsAndList(7, "NAME", "CODE",
+                new ArrayList<>(Arrays.asList("tag1", "tag2")));
+        TestEntityWithFinalFieldsAndList generatedListEntity = deepClone(listEntity);
+        setGeneratedClonersEnabled(false);
+
+        System.out.println("Generated Mr copy is equal to original = " + checkPersonIsCopiedCorrectly(mr, generatedCopy));
+        System.out.println("Generated Mr copy is equal to reflective copy = " + checkPersonIsCopiedCorrectly(copy, generatedCopy));
+        System.out.println("Generated Man copy is equal to reflective copy = "
+                + (generatedMan != man && generatedMan.toString().equals(deepClone(man).toString())));
+        // final fields of immutable types make the class immutable, so both paths share the original
+        System.out.println("Generated TestEntityWithFinalFields copy is shared like reflective copy = "
+                + (generatedTest == test && deepClone(test) == test));
+        // the mutable list keeps the class mutable, so the constructor and its bound fields are used by both paths
+        TestEntityWithFinalFieldsAndList reflectiveListEntity = deepClone(listEntity);
+        System.out.println("Generated TestEntityWithFinalFieldsAndList copy is equal to reflective copy = "
+                + (generatedListEntity != listEntity && reflectiveListEntity != listEntity
+                && generatedListEntity.getTags() != listEntity.getTags()
+                && generatedListEntity.getTags() != reflectiveListEntity.getTags()
+                && generatedListEntity.getCode().equals("CODE") && generatedListEntity.getName().equals("NAME")
+                && generatedListEntity.toString().equals(reflectiveListEntity.toString())));
+
+        // Compare copies created by compile-time cloners with copies written to a snapshot, which doesn't use them
+        Pet rex = new Pet("Rex", 3, man, new ArrayList<>(Arrays.asList("ball")));
+        Pet bella = new Pet("Bella", 2, man, new ArrayList<>(Arrays.asList("bone", "rope")));
+        rex.setMate(bella);
+        bella.setMate(rex);
+        Pet compiledRex = deepClone(rex);
+        Pet reflectiveRex = snapshot(rex).materialize();
+
+        System.out.println("Compile-time Pet copy is equal to reflective copy = " + (compiledRex != rex
+                && compiledRex.toString().equals(reflectiveRex.toString()) && compiledRex.getMate().getMate() == compiledRex
+                && compiledRex.getOwner() != man && compiledRex.getToys() != rex.getToys()));
+
+        // Copy in parallel splitting every collection and map
+        Person parallelCopy = deepCloneParallel(mr, false, ForkJoinPool.commonPool(), 1);
+
+        System.out.println("Parallel Mr copy is equal to original = " + checkPersonIsCopiedCorrectly(mr, parallelCopy));
+        System.out.println("Parallel Mrs copy is equal to original = " + checkPersonIsCopiedCorrectly(mrs, parallelCopy.getSpouse()));
+
+        // Share collections with the original until one of them is written
+        Person lazyCopy = deepCloneLazy(mr, false, true);
+        mr.getFavoriteBooks().add("Lazy book");
+
+        System.out.println("Lazy Mr copy is equal to original = " + checkPersonIsCopiedCorrectly(copy, lazyCopy));
+        System.out.println("Lazy Mr copy doesn't see later writes = " + !lazyCopy.getFavoriteBooks().contains("Lazy book"));
+
+        // Keep the access order of linked hash maps, e.g. of LRU caches
+        LinkedHashMap<String, List<String>> lru = new LinkedHashMap<>(16, 0.75f, true);
+        lru.put("a", new ArrayList<>());
+        lru.put("b", new ArrayList<>());
+        lru.get("a");
+        LinkedHashMap<String, Integer> flatLru = new LinkedHashMap<>(16, 0.75f, true);
+        flatLru.put("a", 1);
+        flatLru.put("b", 2);
+        flatLru.get("a");
+        List<Map<String, ?>> lruCopies = Arrays.asList(deepClone(lru), deepClone(flatLru), snapshot(lru).materialize());
+        boolean isAccessOrderKept = true;
+        for (Map<String, ?> lruCopy : lruCopies) {
+            lruCopy.get("b");
+            isAccessOrderKept &= new ArrayList<>(lruCopy.keySet()).equals(Arrays.asList("a", "b"));
+        }
+
+        System.out.println("Copies keep access order = " + isAccessOrderKept);
+
+        // Write sorted collections with JDK comparators to a snapshot as deep clones copy them
+        TreeMap<String, Integer> reversed = new TreeMap<>(Comparator.reverseOrder());
+        reversed.put("a", 1);
+        reversed.put("b", 2);
+        TreeSet<String> caseInsensitive = new TreeSet<>(String.CASE_INSENSITIVE_ORDER);
+        caseInsensitive.addAll(Arrays.asList("b", "A"));
+        List<Object> sorted = snapshot(Arrays.asList(reversed, caseInsensitive)).materialize();
+
+        System.out.println("Snapshot keeps reverse order = " + (sorted.get(0).equals(reversed)
+                && ((TreeMap<?, ?>) sorted.get(0)).comparator() == Comparator.reverseOrder()
+                && ((TreeMap<?, ?>) sorted.get(0)).firstKey().equals("b")));
+        System.out.println("Snapshot keeps case-insensitive order = " + (sorted.get(1).equals(caseInsensitive)
+                && ((TreeSet<?>) sorted.get(1)).comparator() == String.CASE_INSENSITIVE_ORDER));
+        try {
+            snapshot(new TreeSet<>(Comparator.comparing(String::length)));
+            System.out.println("Snapshot rejects lambda comparator = false");
+        }
+        catch (ObjectCannotBeClonedException ex) {
+            System.out.println("Snapshot rejects lambda comparator = " + ex.getMessage().startsWith("Comparator of class"));
+        }
     }
 
     private static boolean checkTestEntityWithFinalFieldsIsCopiedCorrectly(TestEntityWithFinalFields t1, TestEntityWithFinalFields t2) {
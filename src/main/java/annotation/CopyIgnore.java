@@ -0,0 +1,21 @@
+package annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field which value isn't copied: the field of the copy keeps the value set when the copy was created,
+ * i.e. the default value unless the constructor sets it (e.g. from a parameter bound to the field).
+ * Suits caches and other state which copies rebuild on demand.
+ * <p>The annotation changes every clone of the class, not only partial ones: {@code CopyUtils.deepClone} and the
+ * iterative, parallel, lazy and snapshot clones as well as generated cloners leave the field out, so a deep clone
+ * of the class is no longer a full copy. To leave a field out of some clones only, use a field filter of
+ * {@code CloneOptions} instead, e.g. {@code CloneOptions.builder().excludeFields(field -> ...)}.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CopyIgnore {
+
+}
@@ -0,0 +1,20 @@
+package annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a field which value is shared by the original and the copy instead of being copied deeply,
+ * like values of immutable types are.
+ * <p>The annotation changes every clone of the class, not only partial ones: {@code CopyUtils.deepClone} and the
+ * iterative, parallel and lazy clones as well as generated cloners share the value, so the original and a deep clone
+ * of the class see changes of it. Only snapshots, which share nothing with the heap, write the value deeply. To share values in some clones only, use the type policy
+ * {@code CopyPolicy.SHALLOW} of {@code CloneOptions} instead.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CopyShallow {
+
+}
@@ -0,0 +1,26 @@
+package annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks the field guarding the state of its object, so clones with consistent reads
+ * ({@code CloneOptions.Builder#consistentReads(boolean)}) copy the fields of the object as one state
+ * without blocking writers while they can:
+ * <ul>
+ *     <li>a {@code java.util.concurrent.locks.StampedLock}: the fields are read after
+ *     {@code tryOptimisticRead()} until the stamp is valid, after some failed attempts under the read lock.
+ *     The lock isn't copied, the copy gets a new one unless its constructor creates it;</li>
+ *     <li>a {@code volatile long} or {@code volatile int} version: writers make it odd before they change
+ *     the object (followed by {@code VarHandle.releaseFence()}) and even again afterwards, the fields are read
+ *     while it's even and read again if it's changed meanwhile. The copy gets the version read.</li>
+ * </ul>
+ * A class hierarchy can have one such field.
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.FIELD)
+public @interface CopyStamp {
+
+}
@@ -0,0 +1,19 @@
+package annotation;
+
+import java.lang.annotation.ElementType;
+import java.lang.annotation.Retention;
+import java.lang.annotation.RetentionPolicy;
+import java.lang.annotation.Target;
+
+/**
+ * Marks a class which cloner should be generated at compile time by {@code processor.ClonerProcessor},
+ * the processor has to be enabled in the build of the class.
+ * <p>The generated cloner creates the copy with the constructor selected by the rules of
+ * {@code utils.CopyUtils#deepClone(Object)} and copies fields without reflection: directly if they are accessible
+ * from the package of the class, otherwise via their getters and setters.</p>
+ */
+@Retention(RetentionPolicy.RUNTIME)
+@Target(ElementType.TYPE)
+public @interface GenerateCloner {
+
+}
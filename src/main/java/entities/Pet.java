@@ -0,0 +1,57 @@
+package entities;
+
+import annotation.GenerateCloner;
+
+import java.util.List;
+
+// Test class which cloner is generated at compile time
+@GenerateCloner
+public class Pet {
+    private final String name;
+    int age;
+    Man owner;
+    List<String> toys;
+    private Pet mate;
+
+    public Pet(String name, int age, Man owner, List<String> toys) {
+        this.name = name;
+        this.age = age;
+        this.owner = owner;
+        this.toys = toys;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public int getAge() {
+        return age;
+    }
+
+    public Man getOwner() {
+        return owner;
+    }
+
+    public List<String> getToys() {
+        return toys;
+    }
+
+    public Pet getMate() {
+        return mate;
+    }
+
+    public void setMate(Pet mate) {
+        this.mate = mate;
+    }
+
+    @Override
+    public String toString() {
+        return "Pet{" +
+                "name='" + name + '\'' +
+                ", age=" + age +
+                ", owner=" + owner +
+                ", toys=" + toys +
+                ", mate=" + (mate == null ? null : mate.name) +
+                '}';
+    }
+}
@@ -0,0 +1,44 @@
+package entities;
+
+import annotation.CopyFieldName;
+
+import java.util.List;
+
+public class TestEntityWithFinalFieldsAndList {
+
+    public Integer getNum() {
+        return num;
+    }
+
+    public String getName() {
+        return name;
+    }
+
+    public String getCode() {
+        return code;
+    }
+
+    public List<String> getTags() {
+        return tags;
+    }
+
+    private final Integer num;
+    private final String name;
+    private final String code;
+    private final List<String> tags;
+
+    public TestEntityWithFinalFieldsAndList(@CopyFieldName("num") Integer num,
+                                            @CopyFieldName("name") String name,
+                                            @CopyFieldName("code") String code,
+                                            @CopyFieldName("tags") List<String> tags) {
+        this.num = num;
+        this.name = name;
+        this.code = code;
+        this.tags = tags;
+    }
+
+    @Override
+    public String toString() {
+        return "TestEntityWithFinalFieldsAndList{num=" + num + ", name='" + name + "', code='" + code + "', tags=" + tags + "}";
+    }
+}
@@ -0,0 +1,47 @@
+package exception;
+
+/**
+ * Thrown when a clone would make more copies or take more memory than the budget of its options allows,
+ * the clone is abandoned as soon as the budget is exceeded.
+ */
+public class CloneBudgetExceededException extends ObjectCannotBeClonedException {
+
+    private final long objectCount;
+    private final long estimatedBytes;
+    private final long objectBudget;
+    private final long memoryBudget;
+
+    public CloneBudgetExceededException(long objectCount, long estimatedBytes, long objectBudget, long memoryBudget) {
+        super(objectCount > objectBudget
+                ? "Clone exceeds its budget of " + objectBudget + " objects"
+                : "Clone exceeds its budget of " + memoryBudget + " bytes: " + estimatedBytes + " bytes estimated for "
+                + objectCount + " objects");
+        this.objectCount = objectCount;
+        this.estimatedBytes = estimatedBytes;
+        this.objectBudget = objectBudget;
+        this.memoryBudget = memoryBudget;
+    }
+
+    /**
+     * @return number of copies made by the clone including the one exceeding the budget
+     */
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * @return estimated memory taken by the copies including the one exceeding the budget
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    public long getObjectBudget() {
+        return objectBudget;
+    }
+
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+}
@@ -10,4 +10,8 @@ public class ObjectCannotBeClonedException extends RuntimeException {
         super(ex);
     }
 
+    public ObjectCannotBeClonedException(String message, Exception ex) {
+        super(message, ex);
+    }
+
 }
@@ -0,0 +1,457 @@
+package processor;
+
+import annotation.CopyConstructor;
+import annotation.CopyFieldName;
+import annotation.CopyIgnore;
+import annotation.CopyShallow;
+import annotation.GenerateCloner;
+
+import javax.annotation.processing.AbstractProcessor;
+import javax.annotation.processing.Filer;
+import javax.annotation.processing.Messager;
+import javax.annotation.processing.RoundEnvironment;
+import javax.annotation.processing.SupportedAnnotationTypes;
+import javax.lang.model.SourceVersion;
+import javax.lang.model.element.Element;
+import javax.lang.model.element.ElementKind;
+import javax.lang.model.element.ExecutableElement;
+import javax.lang.model.element.Modifier;
+import javax.lang.model.element.NestingKind;
+import javax.lang.model.element.PackageElement;
+import javax.lang.model.element.TypeElement;
+import javax.lang.model.element.VariableElement;
+import javax.lang.model.type.DeclaredType;
+import javax.lang.model.type.TypeKind;
+import javax.lang.model.type.TypeMirror;
+import javax.lang.model.util.ElementFilter;
+import javax.lang.model.util.Elements;
+import javax.lang.model.util.Types;
+import javax.tools.Diagnostic;
+import javax.tools.FileObject;
+import javax.tools.StandardLocation;
+import java.io.IOException;
+import java.io.Writer;
+import java.util.ArrayList;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Set;
+
+/**
+ * Generates cloners for classes annotated with {@link GenerateCloner} and checks usages of
+ * {@link CopyConstructor} and {@link CopyFieldName} at compile time.
+ * <p>For class {@code Xxx} the cloner {@code XxxCloner} implementing {@code utils.Cloner} is generated in the same package
+ * and registered in {@code META-INF/services/utils.Cloner}, so {@code utils.CopyUtils} uses it instead of reflection.</p>
+ * <p>The generated cloner creates the copy with the constructor selected by the rules of
+ * {@code utils.CopyUtils#deepClone(Object)} and copies the fields declared by the class and its superclasses
+ * which aren't set by the constructor. Fields accessible from the package of the class are read and written directly,
+ * getters and setters are used only as a fallback for private fields, fields of superclasses in other packages
+ * and final fields which aren't bound to the constructor. Primitives, enums and values of the final value classes
+ * of {@code java.lang} are copied as is, other values are copied via the clone context, so the immutable types
+ * of the runtime decide whether they are shared. Mutable values passed to the constructor
+ * are replaced by their copies once the copy is registered, so cycles through them are kept,
+ * values of fields which can't be written are copied before they are passed to the constructor.
+ * Fields annotated with {@link CopyIgnore} aren't written and fields annotated with {@link CopyShallow}
+ * get the values of the original, like in reflective clones.</p>
+ * <p>The processor isn't registered as a service, so it doesn't run in the builds of users of the library
+ * until they opt in, e.g. with the Maven compiler plugin:</p>
+ * <pre>{@code
+ * <annotationProcessorPaths>
+ *     <path>
+ *         <groupId>com.defo</groupId>
+ *         <artifactId>deep_clone</artifactId>
+ *         <version>1.0-SNAPSHOT</version>
+ *     </path>
+ * </annotationProcessorPaths>
+ * <annotationProcessors>
+ *     <annotationProcessor>processor.ClonerProcessor</annotationProcessor>
+ * </annotationProcessors>
+ * }</pre>
+ */
+@SupportedAnnotationTypes({"annotation.GenerateCloner", "annotation.CopyConstructor", "annotation.CopyFieldName"})
+public class ClonerProcessor extends AbstractProcessor {
+
+    private static final String CLONER_SERVICE = "META-INF/services/utils.Cloner";
+    private static final Set<String> JAVA_LANG_VALUE_TYPES = Set.of(
+            "java.lang.String", "java.lang.Boolean", "java.lang.Character", "java.lang.Byte", "java.lang.Short",
+            "java.lang.Integer", "java.lang.Long", "java.lang.Float", "java.lang.Double");
+
+    private final Set<String> generatedCloners = new LinkedHashSet<>();
+
+    @Override
+    public SourceVersion getSupportedSourceVersion() {
+        return SourceVersion.latestSupported();
+    }
+
+    @Override
+    public boolean process(Set<? extends TypeElement> annotations, RoundEnvironment roundEnv) {
+        for (Element element : roundEnv.getElementsAnnotatedWith(CopyFieldName.class)) {
+            checkCopyFieldName((VariableElement) element);
+        }
+        Set<TypeElement> typesWithCopyConstructor = new LinkedHashSet<>();
+        for (Element element : roundEnv.getElementsAnnotatedWith(CopyConstructor.class)) {
+            typesWithCopyConstructor.add((TypeElement) element.getEnclosingElement());
+        }
+        for (TypeElement type : typesWithCopyConstructor) {
+            if (type.getAnnotation(GenerateCloner.class) != null) {
+                // checked while the cloner is generated
+                continue;
+            }
+            ExecutableElement constructor = selectConstructor(type);
+            if (constructor != null) {
+                bindParameters(type, constructor);
+            }
+        }
+        for (Element element : roundEnv.getElementsAnnotatedWith(GenerateCloner.class)) {
+            if (element.getKind() != ElementKind.CLASS) {
+                error("Only classes can be annotated with GenerateCloner", element);
+                continue;
+            }
+            generateCloner((TypeElement) element);
+        }
+        if (roundEnv.processingOver() && !generatedCloners.isEmpty()) {
+            writeClonerService();
+        }
+        return false;
+    }
+
+    private void checkCopyFieldName(VariableElement parameter) {
+        TypeElement type = (TypeElement) parameter.getEnclosingElement().getEnclosingElement();
+        String fieldName = parameter.getAnnotation(CopyFieldName.class).value();
+        if (findField(type, fieldName) == null) {
+            error("Field with name " + fieldName + " can not be found for class " + type.getQualifiedName(), parameter);
+        }
+    }
+
+    private ExecutableElement selectConstructor(TypeElement type) {
+        List<ExecutableElement> constructors = new ArrayList<>();
+        for (ExecutableElement constructor : ElementFilter.constructorsIn(type.getEnclosedElements())) {
+            if (constructor.getModifiers().contains(Modifier.PUBLIC)) {
+                constructors.add(constructor);
+            }
+        }
+        if (constructors.size() == 1) {
+            return constructors.get(0);
+        }
+        ExecutableElement copyConstructor = null;
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getAnnotation(CopyConstructor.class) != null) {
+                if (copyConstructor != null) {
+                    error("Ambiguous constructor: there are more then 1 constructor with CopyConstructor annotation", constructor);
+                    return null;
+                }
+                copyConstructor = constructor;
+            }
+        }
+        if (copyConstructor != null) {
+            return copyConstructor;
+        }
+        for (ExecutableElement constructor : constructors) {
+            if (constructor.getParameters().isEmpty()) {
+                return constructor;
+            }
+        }
+        error("Ambiguous constructor: for class " + type.getQualifiedName() + " there are more than 1 constructor and there is neither empty constructor nor constructor annotated CopyConstructor", type);
+        return null;
+    }
+
+    /**
+     * @return fields bound to the constructor parameters or null if any parameter can't be bound
+     */
+    private VariableElement[] bindParameters(TypeElement type, ExecutableElement constructor) {
+        Types types = processingEnv.getTypeUtils();
+        List<? extends VariableElement> parameters = constructor.getParameters();
+        List<List<VariableElement>> hierarchyFields = hierarchyFields(type);
+        VariableElement[] result = new VariableElement[parameters.size()];
+        boolean bound = true;
+        for (int i = 0; i < parameters.size(); i++) {
+            VariableElement parameter = parameters.get(i);
+            CopyFieldName copyFieldName = parameter.getAnnotation(CopyFieldName.class);
+            if (copyFieldName != null) {
+                // a missing field is reported by checkCopyFieldName
+                result[i] = findField(type, copyFieldName.value());
+                bound &= result[i] != null;
+                continue;
+            }
+            // the nearest class declaring fields of the parameter type has to declare exactly one of them
+            int sameTypeCount = 0;
+            for (int level = 0; level < hierarchyFields.size() && sameTypeCount == 0; level++) {
+                for (VariableElement field : hierarchyFields.get(level)) {
+                    if (types.isSameType(types.erasure(field.asType()), types.erasure(parameter.asType()))) {
+                        result[i] = field;
+                        sameTypeCount++;
+                    }
+                }
+            }
+            if (sameTypeCount != 1) {
+                error("Ambiguous constructor field: " + i + "(" + types.erasure(parameter.asType()) + ") for class " + type.getQualifiedName(), parameter);
+                bound = false;
+            }
+        }
+        return bound ? result : null;
+    }
+
+    private void generateCloner(TypeElement type) {
+        if (type.getModifiers().contains(Modifier.ABSTRACT)) {
+            error("Cloner can't be generated for abstract class " + type.getQualifiedName(), type);
+            return;
+        }
+        if (type.getNestingKind() != NestingKind.TOP_LEVEL
+                && (type.getNestingKind() != NestingKind.MEMBER || !type.getModifiers().contains(Modifier.STATIC))) {
+            error("Cloner can't be generated for inner or local class " + type.getQualifiedName(), type);
+            return;
+        }
+        ExecutableElement constructor = selectConstructor(type);
+        if (constructor == null) {
+            return;
+        }
+        VariableElement[] parameterFields = bindParameters(type, constructor);
+        if (parameterFields == null) {
+            return;
+        }
+
+        String typeName = type.getQualifiedName().toString();
+        List<String> arguments = new ArrayList<>();
+        List<String> statements = new ArrayList<>();
+        Set<VariableElement> boundFields = new LinkedHashSet<>();
+        boolean valid = true;
+
+        for (VariableElement field : parameterFields) {
+            boundFields.add(field);
+            String read = readExpression(type, field);
+            if (read == null) {
+                valid = false;
+                continue;
+            }
+            if (isCopiedAsIs(field)) {
+                arguments.add(read);
+            }
+            else if (writeStatement(type, field, "") != null) {
+                arguments.add(read);
+                statements.add(writeStatement(type, field, "context.copy(" + read + ")"));
+            }
+            else {
+                arguments.add("context.copy(" + read + ")");
+            }
+        }
+
+        List<List<VariableElement>> hierarchyFields = hierarchyFields(type);
+        List<VariableElement> fields = new ArrayList<>();
+        for (int level = hierarchyFields.size() - 1; level >= 0; level--) {
+            fields.addAll(hierarchyFields.get(level));
+        }
+        for (VariableElement field : fields) {
+            if (boundFields.contains(field) || field.getAnnotation(CopyIgnore.class) != null) {
+                continue;
+            }
+            if (findField(type, field.getSimpleName().toString()) != field) {
+                error("Field " + field.getSimpleName() + " of class " + field.getEnclosingElement() + " can not be copied: it is hidden by a field of class " + typeName, field);
+                valid = false;
+                continue;
+            }
+            String read = readExpression(type, field);
+            if (read == null) {
+                valid = false;
+                continue;
+            }
+            String write = writeStatement(type, field, isCopiedAsIs(field) ? read : "context.copy(" + read + ")");
+            if (write == null) {
+                error("Field " + field.getSimpleName() + " of class " + typeName + " can not be copied: it is neither bound to a parameter of the selected constructor nor has a setter", field);
+                valid = false;
+                continue;
+            }
+            statements.add(write);
+        }
+        if (!valid) {
+            return;
+        }
+
+        PackageElement packageElement = processingEnv.getElementUtils().getPackageOf(type);
+        String packageName = packageElement.isUnnamed() ? "" : packageElement.getQualifiedName().toString();
+        String clonerName = clonerSimpleName(type);
+        String clonerQualifiedName = packageName.isEmpty() ? clonerName : packageName + "." + clonerName;
+
+        StringBuilder source = new StringBuilder();
+        if (!packageName.isEmpty()) {
+            source.append("package ").append(packageName).append(";\n\n");
+        }
+        source.append("@javax.annotation.processing.Generated(\"").append(ClonerProcessor.class.getName()).append("\")\n")
+                .append("@SuppressWarnings({\"rawtypes\", \"unchecked\"})\n")
+                .append("public final class ").append(clonerName).append(" implements utils.Cloner<").append(typeName).append("> {\n\n")
+                .append("    @Override\n")
+                .append("    public Class<").append(typeName).append("> getType() {\n")
+                .append("        return ").append(typeName).append(".class;\n")
+                .append("    }\n\n")
+                .append("    @Override\n")
+                .append("    public ").append(typeName).append(" clone(").append(typeName)
+                .append(" original, utils.Cloner.Context context) throws IllegalAccessException {\n")
+                .append("        ").append(typeName).append(" clone = new ").append(typeName).append("(")
+                .append(String.join(", ", arguments)).append(");\n")
+                .append("        context.register(original, clone);\n");
+        for (String statement : statements) {
+            source.append("        ").append(statement).append("\n");
+        }
+        source.append("        return clone;\n")
+                .append("    }\n\n")
+                .append("}\n");
+
+        try (Writer writer = processingEnv.getFiler().createSourceFile(clonerQualifiedName, type).openWriter()) {
+            writer.write(source.toString());
+        }
+        catch (IOException ex) {
+            error("Cloner " + clonerQualifiedName + " can't be written: " + ex.getMessage(), type);
+            return;
+        }
+        generatedCloners.add(clonerQualifiedName);
+    }
+
+    private void writeClonerService() {
+        Filer filer = processingEnv.getFiler();
+        try {
+            FileObject service = filer.createResource(StandardLocation.CLASS_OUTPUT, "", CLONER_SERVICE);
+            try (Writer writer = service.openWriter()) {
+                for (String cloner : generatedCloners) {
+                    writer.write(cloner);
+                    writer.write("\n");
+                }
+            }
+        }
+        catch (IOException ex) {
+            processingEnv.getMessager().printMessage(Diagnostic.Kind.ERROR, CLONER_SERVICE + " can't be written: " + ex.getMessage());
+        }
+    }
+
+    /**
+     * @return direct read of the field if the cloner can access it, otherwise a call of its getter
+     */
+    private String readExpression(TypeElement type, VariableElement field) {
+        String name = field.getSimpleName().toString();
+        if (isAccessible(type, field)) {
+            return "original." + name;
+        }
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Types types = processingEnv.getTypeUtils();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            String methodName = method.getSimpleName().toString();
+            boolean getterName = methodName.equals("get" + capitalized)
+                    || field.asType().getKind() == TypeKind.BOOLEAN && methodName.equals("is" + capitalized);
+            if (getterName && method.getParameters().isEmpty() && isAccessible(type, method)
+                    && types.isSameType(method.getReturnType(), field.asType())) {
+                return "original." + methodName + "()";
+            }
+        }
+        error("Field " + name + " of class " + type.getQualifiedName() + " can not be read: it is not accessible and has no getter", field);
+        return null;
+    }
+
+    /**
+     * @return direct write of the field if the cloner can access it and it isn't final, otherwise a call of its setter
+     */
+    private String writeStatement(TypeElement type, VariableElement field, String value) {
+        String name = field.getSimpleName().toString();
+        if (isAccessible(type, field) && !field.getModifiers().contains(Modifier.FINAL)) {
+            return "clone." + name + " = " + value + ";";
+        }
+        String capitalized = Character.toUpperCase(name.charAt(0)) + name.substring(1);
+        Types types = processingEnv.getTypeUtils();
+        for (ExecutableElement method : ElementFilter.methodsIn(processingEnv.getElementUtils().getAllMembers(type))) {
+            if (method.getSimpleName().contentEquals("set" + capitalized) && method.getParameters().size() == 1
+                    && isAccessible(type, method)
+                    && types.isSameType(types.erasure(method.getParameters().get(0).asType()), types.erasure(field.asType()))) {
+                return "clone.set" + capitalized + "(" + value + ");";
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the value of the field is shared between original and copy: the field is annotated with
+     *         {@link CopyShallow} or {@link CopyIgnore} (a bound field keeps the value passed to the constructor)
+     *         or its type is copied as is
+     */
+    private boolean isCopiedAsIs(VariableElement field) {
+        return field.getAnnotation(CopyShallow.class) != null || field.getAnnotation(CopyIgnore.class) != null
+                || isCopiedAsIs(field.asType());
+    }
+
+    /**
+     * @return true if values of the type are provably shared between original and copy: primitives, enums and
+     *         the final value classes of {@code java.lang}. Values of other types are passed to {@code context.copy},
+     *         which shares them if they are immutable by the rules in effect when the clone runs,
+     *         e.g. types registered as immutable or detected by their fields
+     */
+    private boolean isCopiedAsIs(TypeMirror type) {
+        if (type.getKind().isPrimitive()) {
+            return true;
+        }
+        if (type.getKind() != TypeKind.DECLARED) {
+            return false;
+        }
+        TypeElement element = (TypeElement) ((DeclaredType) type).asElement();
+        return element.getKind() == ElementKind.ENUM
+                || JAVA_LANG_VALUE_TYPES.contains(element.getQualifiedName().toString());
+    }
+
+    /**
+     * @return true if the generated cloner, which is in the package of the type, can use the member of the type
+     */
+    private boolean isAccessible(TypeElement type, Element element) {
+        Set<Modifier> modifiers = element.getModifiers();
+        if (modifiers.contains(Modifier.PRIVATE) || modifiers.contains(Modifier.STATIC)) {
+            return false;
+        }
+        Elements elements = processingEnv.getElementUtils();
+        return modifiers.contains(Modifier.PUBLIC) || elements.getPackageOf(element).equals(elements.getPackageOf(type));
+    }
+
+    /**
+     * @return instance fields declared by the type followed by the fields of each of its superclasses
+     */
+    private static List<List<VariableElement>> hierarchyFields(TypeElement type) {
+        List<List<VariableElement>> result = new ArrayList<>();
+        for (TypeElement c = type; c != null && !c.getQualifiedName().contentEquals("java.lang.Object"); c = superclassOf(c)) {
+            List<VariableElement> fields = new ArrayList<>();
+            for (VariableElement field : ElementFilter.fieldsIn(c.getEnclosedElements())) {
+                if (!field.getModifiers().contains(Modifier.STATIC)) {
+                    fields.add(field);
+                }
+            }
+            result.add(fields);
+        }
+        return result;
+    }
+
+    private static TypeElement superclassOf(TypeElement type) {
+        TypeMirror superclass = type.getSuperclass();
+        return superclass.getKind() == TypeKind.DECLARED ? (TypeElement) ((DeclaredType) superclass).asElement() : null;
+    }
+
+    /**
+     * @return the field with the name declared by the nearest class of the hierarchy, it hides the fields of superclasses
+     */
+    private static VariableElement findField(TypeElement type, String name) {
+        for (List<VariableElement> fields : hierarchyFields(type)) {
+            for (VariableElement field : fields) {
+                if (field.getSimpleName().contentEquals(name)) {
+                    return field;
+                }
+            }
+        }
+        return null;
+    }
+
+    private static String clonerSimpleName(TypeElement type) {
+        StringBuilder name = new StringBuilder(type.getSimpleName());
+        Element enclosing = type.getEnclosingElement();
+        while (enclosing instanceof TypeElement) {
+            name.insert(0, enclosing.getSimpleName() + "_");
+            enclosing = enclosing.getEnclosingElement();
+        }
+        return name.append("Cloner").toString();
+    }
+
+    private void error(String message, Element element) {
+        Messager messager = processingEnv.getMessager();
+        messager.printMessage(Diagnostic.Kind.ERROR, message, element);
+    }
+
+}
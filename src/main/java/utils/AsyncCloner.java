@@ -0,0 +1,185 @@
+package utils;
+
+import java.util.Queue;
+import java.util.concurrent.CancellationException;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.Executor;
+import java.util.concurrent.Semaphore;
+
+/**
+ * Clones made by tasks of an executor: the caller gets a future of the copy at once and the graph is copied
+ * by a thread of the executor, e.g. a virtual thread per clone.
+ * <p>At most a limited number of clones run at once, a clone takes a permit before its task is submitted
+ * and returns it when the task ends. Clones of a burst which find no free permit wait in a queue without
+ * blocking their callers and are submitted as running clones end, so the executor never holds more
+ * graphs of copies in progress than the limit. A long clone gives up its thread every
+ * {@link #YIELD_INTERVAL} copies, so it shares the carriers of virtual threads with other tasks, and a clone which future
+ * is cancelled or completed otherwise (e.g. by a timeout) stops before its next copy.</p>
+ */
+final class AsyncCloner {
+
+    /**
+     * Number of copies a clone makes between the points where it yields its thread.
+     */
+    static final int YIELD_INTERVAL = 256;
+
+    private static final Permits permits = new Permits(Runtime.getRuntime().availableProcessors());
+    private static final Queue<PendingClone<?>> pending = new ConcurrentLinkedQueue<>();
+    /**
+     * Current limit, guarded by the class.
+     */
+    private static int maxConcurrentClones = Runtime.getRuntime().availableProcessors();
+
+    private AsyncCloner() {
+    }
+
+    /**
+     * Changes the limit of clones running at once by the difference to the current one: a raised limit
+     * submits queued clones at once, a lowered limit takes the permits of running clones when they end,
+     * so no more clones than the new limit start until then.
+     */
+    static synchronized void setMaxConcurrentClones(int count) {
+        if (count < 1) {
+            throw new IllegalArgumentException("Max concurrent clones must be positive: " + count);
+        }
+        int difference = count - maxConcurrentClones;
+        maxConcurrentClones = count;
+        if (difference > 0) {
+            permits.release(difference);
+            drain();
+        }
+        else if (difference < 0) {
+            permits.reducePermits(-difference);
+        }
+    }
+
+    /**
+     * Queues the clone and submits queued clones to their executors while permits are free,
+     * the caller never waits for a permit.
+     * @return future of the copy, failed if the executor rejects the clone
+     */
+    static <T> CompletableFuture<T> cloneAsync(T object, CloneOptions options, Executor executor) {
+        CompletableFuture<T> future = new CompletableFuture<>();
+        pending.add(new PendingClone<>(object, options, executor, future));
+        drain();
+        return future;
+    }
+
+    /**
+     * Submits queued clones until the queue is empty or all permits are taken. Called after a clone is queued
+     * and after a permit is returned, so a queued clone always finds a free permit or a clone which returns one.
+     */
+    private static void drain() {
+        while (!pending.isEmpty() && permits.tryAcquire()) {
+            PendingClone<?> clone = pending.poll();
+            if (clone == null) {
+                // taken by another thread, the loop checks for clones queued after the permit was taken
+                permits.release();
+            }
+            else {
+                clone.submit();
+            }
+        }
+    }
+
+    private static <T> void run(T object, CloneOptions options, CompletableFuture<T> future) {
+        try {
+            // a clone cancelled while it was queued isn't started
+            if (future.isDone()) {
+                return;
+            }
+            try (CloneContext context = CloneContext.acquire()) {
+                future.complete(context.deepClone(object, options, new Checkpoint(future)));
+            }
+        }
+        catch (Throwable ex) {
+            // no-op for a clone stopped by its cancelled or timed out future
+            future.completeExceptionally(ex);
+        }
+        finally {
+            permits.release();
+            drain();
+        }
+    }
+
+    /**
+     * Clone waiting for a permit.
+     */
+    private static final class PendingClone<T> {
+
+        private final T object;
+        private final CloneOptions options;
+        private final Executor executor;
+        private final CompletableFuture<T> future;
+
+        private PendingClone(T object, CloneOptions options, Executor executor, CompletableFuture<T> future) {
+            this.object = object;
+            this.options = options;
+            this.executor = executor;
+            this.future = future;
+        }
+
+        /**
+         * Submits the clone to its executor with the taken permit, the permit is returned
+         * if the clone is cancelled while queued or the executor rejects it.
+         */
+        void submit() {
+            if (future.isDone()) {
+                permits.release();
+                return;
+            }
+            try {
+                executor.execute(() -> run(object, options, future));
+            }
+            catch (RuntimeException ex) {
+                // e.g. a rejected task, the permit isn't returned by it
+                permits.release();
+                future.completeExceptionally(ex);
+            }
+        }
+    }
+
+    /**
+     * Semaphore which permits can be reduced below the number of taken ones.
+     */
+    private static final class Permits extends Semaphore {
+
+        private Permits(int permits) {
+            super(permits);
+        }
+
+        @Override
+        protected void reducePermits(int reduction) {
+            super.reducePermits(reduction);
+        }
+    }
+
+    /**
+     * Point between two copies of an async clone where the clone is stopped if it's cancelled
+     * and yields its thread after each {@link #YIELD_INTERVAL} copies.
+     */
+    static final class Checkpoint {
+
+        private final CompletableFuture<?> future;
+        private int copiesUntilYield = YIELD_INTERVAL;
+
+        private Checkpoint(CompletableFuture<?> future) {
+            this.future = future;
+        }
+
+        /**
+         * @throws CancellationException if the future of the clone is cancelled or completed otherwise
+         */
+        void reached() {
+            if (future.isDone()) {
+                throw new CancellationException("Clone is cancelled");
+            }
+            if (--copiesUntilYield == 0) {
+                copiesUntilYield = YIELD_INTERVAL;
+                Thread.yield();
+            }
+        }
+    }
+
+}
@@ -0,0 +1,201 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+import java.util.Spliterator;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.RecursiveAction;
+import java.util.function.Consumer;
+import java.util.stream.Stream;
+import java.util.stream.StreamSupport;
+
+/**
+ * Clones of many roots at once: the copier, its table and its buffers are prepared once for all elements
+ * instead of once per clone, elements are copied one after another as separate clones or as one graph.
+ * <p>Parallel batches are split into ranges of elements, each range is copied by a worker with the context
+ * pooled for the worker thread. Streams are copied by spliterators which own their contexts, so a split stream
+ * copies each part with its own context and an abandoned stream leaves no context in use.</p>
+ */
+final class BatchCloner {
+
+    /**
+     * Minimal number of elements copied by one task of a parallel batch.
+     */
+    private static final int RANGE_SIZE = 256;
+    /**
+     * Limit of the expected number of elements of a stream which the shared table is sized for up front.
+     */
+    private static final int MAX_EXPECTED_ELEMENTS = 1 << 16;
+
+    private BatchCloner() {
+    }
+
+    static <T> List<T> cloneAll(Collection<? extends T> objects, CloneOptions options, ForkJoinPool pool)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        if (options.isShareBetweenElements()) {
+            throw new IllegalArgumentException("Elements sharing copies can't be copied in parallel");
+        }
+        Object[] originals = objects.toArray();
+        Object[] copies = new Object[originals.length];
+        try {
+            pool.invoke(new RangeTask(originals, copies, 0, originals.length, options));
+        }
+        catch (UncheckedIllegalAccessException ex) {
+            throw ex.getCause();
+        }
+        List<T> result = new ArrayList<>(copies.length);
+        for (Object copy : copies) {
+            result.add((T) copy);
+        }
+        return result;
+    }
+
+    static <T> Stream<T> cloneStream(Stream<? extends T> objects, CloneOptions options) {
+        Stream<T> copies = StreamSupport.stream(new CloneSpliterator<T>(objects.spliterator(), options), objects.isParallel());
+        return copies.onClose(objects::close);
+    }
+
+    /**
+     * Checked exceptions can't be thrown by tasks, so they are wrapped on the way to the caller.
+     */
+    private static final class UncheckedIllegalAccessException extends RuntimeException {
+
+        private UncheckedIllegalAccessException(IllegalAccessException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IllegalAccessException getCause() {
+            return (IllegalAccessException) super.getCause();
+        }
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+
+        private final Object[] originals;
+        private final Object[] copies;
+        private final int start;
+        private final int end;
+        private final CloneOptions options;
+
+        private RangeTask(Object[] originals, Object[] copies, int start, int end, CloneOptions options) {
+            this.originals = originals;
+            this.copies = copies;
+            this.start = start;
+            this.end = end;
+            this.options = options;
+        }
+
+        @Override
+        protected void compute() {
+            if (end - start >= 2 * RANGE_SIZE) {
+                int middle = (start + end) >>> 1;
+                invokeAll(new RangeTask(originals, copies, start, middle, options),
+                        new RangeTask(originals, copies, middle, end, options));
+                return;
+            }
+            try (CloneContext context = CloneContext.acquire()) {
+                context.startBatch(options, end - start);
+                try {
+                    for (int i = start; i < end; i++) {
+                        copies[i] = context.cloneElement(originals[i]);
+                    }
+                }
+                finally {
+                    context.finish();
+                }
+            }
+            catch (IllegalAccessException ex) {
+                throw new UncheckedIllegalAccessException(ex);
+            }
+        }
+    }
+
+    /**
+     * Copies the elements of the source spliterator as they are consumed. Elements sharing copies are copied
+     * with one context, so the spliterator isn't split then.
+     */
+    private static final class CloneSpliterator<T> implements Spliterator<T> {
+
+        private final Spliterator<? extends T> source;
+        private final CloneOptions options;
+        private CloneContext context;
+        private boolean isFinished;
+
+        private CloneSpliterator(Spliterator<? extends T> source, CloneOptions options) {
+            this.source = source;
+            this.options = options;
+        }
+
+        @Override
+        public boolean tryAdvance(Consumer<? super T> action) {
+            if (isFinished) {
+                return false;
+            }
+            start();
+            boolean isAdvanced = source.tryAdvance(element -> action.accept(cloneElement(element)));
+            if (!isAdvanced) {
+                finish();
+            }
+            return isAdvanced;
+        }
+
+        @Override
+        public void forEachRemaining(Consumer<? super T> action) {
+            if (isFinished) {
+                return;
+            }
+            start();
+            // one consumer for all elements instead of one per element
+            source.forEachRemaining(element -> action.accept(cloneElement(element)));
+            finish();
+        }
+
+        private void start() {
+            if (context == null) {
+                context = new CloneContext();
+                long size = source.hasCharacteristics(SIZED) ? source.estimateSize() : 0;
+                context.startBatch(options, (int) Math.min(size, MAX_EXPECTED_ELEMENTS));
+            }
+        }
+
+        private void finish() {
+            isFinished = true;
+            context.finish();
+            context = null;
+        }
+
+        private T cloneElement(T element) {
+            try {
+                return context.cloneElement(element);
+            }
+            catch (IllegalAccessException ex) {
+                throw new ObjectCannotBeClonedException(ex);
+            }
+        }
+
+        @Override
+        public Spliterator<T> trySplit() {
+            if (options.isShareBetweenElements() || context != null) {
+                return null;
+            }
+            Spliterator<? extends T> split = source.trySplit();
+            return split == null ? null : new CloneSpliterator<>(split, options);
+        }
+
+        @Override
+        public long estimateSize() {
+            return source.estimateSize();
+        }
+
+        @Override
+        public int characteristics() {
+            // copies are new objects which may be compared differently than their originals
+            return source.characteristics() & (ORDERED | SIZED | SUBSIZED | NONNULL);
+        }
+    }
+
+}
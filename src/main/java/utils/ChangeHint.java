@@ -0,0 +1,66 @@
+package utils;
+
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.IdentityHashMap;
+import java.util.Set;
+
+/**
+ * Tells {@link CopyUtils#reclone(Object, Object, ChangeHint)} which originals changed since the previous clone.
+ */
+public final class ChangeHint {
+
+    private static final ChangeHint COMPARE = new ChangeHint(null);
+
+    private final Set<Object> dirty;
+
+    private ChangeHint(Set<Object> dirty) {
+        this.dirty = dirty;
+    }
+
+    /**
+     * Changes are found by comparing every reached original with its copy in the previous clone field by field.
+     * @return hint comparing the whole graph
+     */
+    public static ChangeHint compare() {
+        return COMPARE;
+    }
+
+    /**
+     * Only the given originals were changed: their fields were assigned or, for collections, maps and arrays,
+     * their elements were added, removed or replaced. Other originals are trusted to be unchanged and aren't compared
+     * unless they are reached only via changed ones. Objects are matched by identity.
+     * @param changedObjects originals changed since the previous clone
+     * @return hint of the changed objects
+     */
+    public static ChangeHint dirty(Collection<?> changedObjects) {
+        Set<Object> dirty = Collections.newSetFromMap(new IdentityHashMap<>(changedObjects.size() * 2));
+        dirty.addAll(changedObjects);
+        return new ChangeHint(dirty);
+    }
+
+    /**
+     * Only the given originals were changed, see {@link #dirty(Collection)}.
+     * @param changedObjects originals changed since the previous clone
+     * @return hint of the changed objects
+     */
+    public static ChangeHint dirty(Object... changedObjects) {
+        return dirty(Arrays.asList(changedObjects));
+    }
+
+    /**
+     * @return true if originals not reported as changed are trusted to be unchanged
+     */
+    boolean isTrusting() {
+        return dirty != null;
+    }
+
+    /**
+     * @return true if the original is reported as changed
+     */
+    boolean isDirty(Object original) {
+        return dirty.contains(original);
+    }
+
+}
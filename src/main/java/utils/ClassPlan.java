@@ -0,0 +1,616 @@
+package utils;
+
+import annotation.CopyConstructor;
+import annotation.CopyIgnore;
+import annotation.CopyShallow;
+import annotation.CopyStamp;
+import exception.ObjectCannotBeClonedException;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.Set;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Precomputed reflective data needed to clone instances of one class: the factory of instances made by
+ * the {@link Instantiator} selected for the class (by default the constructor chosen by the {@link CopyConstructor}
+ * rules with the fields feeding its parameters) and the classified list of fields to copy.
+ * The fields are the flattened layout of the whole class hierarchy: fields of all superclasses
+ * (superclass fields first) and of the class itself, so inherited state costs a clone no more than declared state.
+ * Only constants ({@code static final} fields) are left out, static fields which aren't final are copied too.
+ * Transient fields which can't be accessed (e.g. {@code modCount} of a JDK collection base class) are left to
+ * the constructor and logged unless {@link CopyUtils#setInaccessibleTransientFieldsSkipped(boolean)} disables it.
+ * Fields annotated with {@link CopyIgnore} are left out, fields annotated with {@link CopyShallow} are planned
+ * like fields of immutable types. A {@link StampedLock} field annotated with {@link CopyStamp} isn't copied,
+ * the copy gets a new lock.
+ * Plans of array classes have neither factory nor fields, they keep the kind of the array elements instead,
+ * plans of JDK collection classes with a {@link CollectionCopier} keep the copier. Plans of mutable records
+ * keep a {@link RecordPlan} as records are created from copies of their components instead of being filled.
+ * <p>Plans are cached per class in a {@link ClassValue} so they never pin a class loader.
+ * Errors found while building a plan are kept in it and rethrown on every use,
+ * so a cached plan behaves exactly like resolving the class again.</p>
+ */
+final class ClassPlan {
+
+    private static final ClassValue<ClassPlan> PLANS = new ClassValue<ClassPlan>() {
+        @Override
+        protected ClassPlan computeValue(Class<?> type) {
+            return new ClassPlan(type);
+        }
+    };
+
+    private static final AtomicInteger generation = new AtomicInteger();
+
+    private static final System.Logger LOGGER = System.getLogger(ClassPlan.class.getName());
+
+    private static volatile FieldAccessEngine engine = FieldAccessEngine.REFLECTION;
+    private static volatile boolean isInaccessibleTransientSkipped = true;
+
+    private final Class<?> type;
+    private final int planGeneration;
+    private final boolean immutable;
+    private final FieldKind componentKind;
+    private final CollectionCopier collectionCopier;
+
+    private final FieldPlan[] fields;
+    private final Field stampField;
+    private final RecordPlan recordPlan;
+    private final RuntimeException fieldsError;
+
+    private final Instantiator.Factory factory;
+    private final RuntimeException factoryError;
+
+    private volatile Object generatedCloner;
+    private volatile ConsistentRead consistentRead;
+    private volatile long instanceSize = -1;
+
+    private ClassPlan(Class<?> type) {
+        this.type = type;
+        this.planGeneration = generation.get();
+        this.immutable = ImmutableTypes.isImmutable(type);
+        this.componentKind = type.isArray() ? FieldKind.of(type.getComponentType()) : null;
+        this.collectionCopier = CollectionCopier.of(type);
+        if (immutable || componentKind != null || collectionCopier != null) {
+            this.fields = new FieldPlan[0];
+            this.stampField = null;
+            this.recordPlan = null;
+            this.fieldsError = null;
+            this.factory = null;
+            this.factoryError = null;
+            return;
+        }
+
+        FieldPlan[] resolvedFields = null;
+        Field resolvedStampField = null;
+        RecordPlan resolvedRecordPlan = null;
+        RuntimeException resolvedFieldsError = null;
+        try {
+            resolvedFields = resolveFields(type);
+            resolvedStampField = resolveStampField(type);
+            resolvedRecordPlan = Records.isRecord(type) ? RecordPlan.resolve(type) : null;
+        }
+        catch (RuntimeException ex) {
+            resolvedFieldsError = ex;
+        }
+        this.fields = resolvedFields;
+        this.stampField = resolvedStampField;
+        this.recordPlan = resolvedRecordPlan;
+        this.fieldsError = resolvedFieldsError;
+
+        Instantiator.Factory resolvedFactory = null;
+        RuntimeException resolvedFactoryError = null;
+        try {
+            resolvedFactory = resolveFactory(type);
+        }
+        catch (RuntimeException ex) {
+            resolvedFactoryError = ex;
+        }
+        this.factory = resolvedFactory;
+        this.factoryError = resolvedFactoryError;
+    }
+
+    /**
+     * Returns the cached plan for the class, building it on first use.
+     */
+    static ClassPlan of(Class<?> type) {
+        ClassPlan plan = PLANS.get(type);
+        if (plan.planGeneration != generation.get()) {
+            PLANS.remove(type);
+            plan = PLANS.get(type);
+        }
+        return plan;
+    }
+
+    /**
+     * Drops the cached plan of one class, it is rebuilt on the next clone of that class.
+     */
+    static void invalidate(Class<?> type) {
+        PLANS.remove(type);
+    }
+
+    /**
+     * Marks all cached plans as stale, each of them is rebuilt on the next clone of its class.
+     */
+    static void invalidateAll() {
+        generation.incrementAndGet();
+    }
+
+    /**
+     * Selects the engine used by plans to access fields, all cached plans are invalidated.
+     */
+    static void setEngine(FieldAccessEngine fieldAccessEngine) {
+        engine = Objects.requireNonNull(fieldAccessEngine);
+        invalidateAll();
+    }
+
+    static FieldAccessEngine getEngine() {
+        return engine;
+    }
+
+    /**
+     * Selects whether inaccessible transient fields are left to the constructor, all cached plans are invalidated.
+     */
+    static void setInaccessibleTransientSkipped(boolean skipped) {
+        isInaccessibleTransientSkipped = skipped;
+        invalidateAll();
+    }
+
+    static boolean isInaccessibleTransientSkipped() {
+        return isInaccessibleTransientSkipped;
+    }
+
+    Class<?> getType() {
+        return type;
+    }
+
+    /**
+     * @return true if instances of the class are shared between original and copy instead of being copied
+     */
+    boolean isImmutable() {
+        return immutable;
+    }
+
+    /**
+     * @return true if the planned class is an array class
+     */
+    boolean isArray() {
+        return componentKind != null;
+    }
+
+    /**
+     * @return true if the planned class is an array of primitives or immutable objects (e.g. {@code byte[]}, {@code String[]}),
+     *         such arrays are copied as a whole without visiting elements
+     */
+    boolean isFlatArray() {
+        return componentKind == FieldKind.PRIMITIVE || componentKind == FieldKind.IMMUTABLE;
+    }
+
+    /**
+     * @return copier of the planned collection or map class or null if it is copied by the constructor rules
+     */
+    CollectionCopier getCollectionCopier() {
+        return collectionCopier;
+    }
+
+    /**
+     * Creates an array of the planned array class filled with default values.
+     */
+    Object newArray(int length) {
+        return Array.newInstance(type.getComponentType(), length);
+    }
+
+    /**
+     * Copies a flat array with {@code clone()} which the JIT compiles to a bulk copy without zeroing the new array.
+     */
+    Object copyFlatArray(Object array) {
+        if (array instanceof Object[]) {
+            return ((Object[]) array).clone();
+        }
+        if (array instanceof byte[]) {
+            return ((byte[]) array).clone();
+        }
+        if (array instanceof int[]) {
+            return ((int[]) array).clone();
+        }
+        if (array instanceof long[]) {
+            return ((long[]) array).clone();
+        }
+        if (array instanceof double[]) {
+            return ((double[]) array).clone();
+        }
+        if (array instanceof char[]) {
+            return ((char[]) array).clone();
+        }
+        if (array instanceof float[]) {
+            return ((float[]) array).clone();
+        }
+        if (array instanceof short[]) {
+            return ((short[]) array).clone();
+        }
+        return ((boolean[]) array).clone();
+    }
+
+    /**
+     * Estimates the shallow size of an instance of the planned class on a 64-bit JVM with compressed references:
+     * a 12-byte header followed by all instance fields (including inherited ones) or array elements, padded to 8 bytes.
+     * Objects referenced by the instance aren't included.
+     */
+    long estimateSize(Object instance) {
+        if (type.isArray()) {
+            return align(16 + (long) Array.getLength(instance) * sizeOf(type.getComponentType()));
+        }
+        long size = instanceSize;
+        if (size < 0) {
+            size = 12;
+            for (Class<?> c = type; c != null; c = c.getSuperclass()) {
+                for (Field field : c.getDeclaredFields()) {
+                    if (!Modifier.isStatic(field.getModifiers())) {
+                        size += sizeOf(field.getType());
+                    }
+                }
+            }
+            size = align(size);
+            instanceSize = size;
+        }
+        return size;
+    }
+
+    /**
+     * Estimates the memory taken by the copy of an instance: its {@link #estimateSize(Object) shallow size}
+     * and for collections and maps copied by a {@link CollectionCopier} the storage of their elements,
+     * a reference per element and an entry object per map entry. The elements themselves aren't included.
+     */
+    long estimateCopySize(Object instance) {
+        long size = estimateSize(instance);
+        if (collectionCopier == null) {
+            return size;
+        }
+        if (instance instanceof Collection) {
+            return size + align(16 + 4L * ((Collection<?>) instance).size());
+        }
+        int entries = ((Map<?, ?>) instance).size();
+        // a table of references and a node with the hash, the key, the value and the next node per entry
+        return size + align(16 + 4L * entries) + 32L * entries;
+    }
+
+    private static long sizeOf(Class<?> type) {
+        if (type == long.class || type == double.class) {
+            return 8;
+        }
+        if (type == byte.class || type == boolean.class) {
+            return 1;
+        }
+        if (type == short.class || type == char.class) {
+            return 2;
+        }
+        return 4;
+    }
+
+    private static long align(long size) {
+        return (size + 7) & ~7L;
+    }
+
+    /**
+     * @return fields which values should be copied to the clone
+     */
+    FieldPlan[] getFields() {
+        if (fieldsError != null) {
+            throw fieldsError;
+        }
+        return fields;
+    }
+
+    /**
+     * @return field annotated with {@link CopyStamp} guarding the state of instances, null if there is none
+     */
+    Field getStampField() {
+        if (fieldsError != null) {
+            throw fieldsError;
+        }
+        return stampField;
+    }
+
+    /**
+     * @return plan of the record class copied by its canonical constructor, null if the class isn't a record
+     */
+    RecordPlan getRecordPlan() {
+        if (fieldsError != null) {
+            throw fieldsError;
+        }
+        return recordPlan;
+    }
+
+    /**
+     * Gives a new instance created for a copy its own lock if the class is guarded by a {@link StampedLock}
+     * and the constructor hasn't created one.
+     */
+    void initializeStamp(Object instance) throws IllegalAccessException {
+        if (stampField != null && !stampField.getType().isPrimitive() && stampField.get(instance) == null) {
+            stampField.set(instance, new StampedLock());
+        }
+    }
+
+    /**
+     * Returns the reader of the fields for clones with consistent reads, the reader of the last fields is kept.
+     * @param copiedFields fields of the plan or fields filtered from them by options
+     */
+    ConsistentRead getConsistentRead(FieldPlan[] copiedFields) {
+        ConsistentRead read = consistentRead;
+        if (read == null || read.getFields() != copiedFields) {
+            read = new ConsistentRead(this, copiedFields);
+            consistentRead = read;
+        }
+        return read;
+    }
+
+    /**
+     * @return factory of instances of the class made by its instantiator
+     */
+    Instantiator.Factory getFactory() {
+        if (factoryError != null) {
+            throw factoryError;
+        }
+        return factory;
+    }
+
+    /**
+     * Returns the cloner generated for the class, generating it on first use.
+     * @return the cloner or null if it can't be generated for the class
+     */
+    GeneratedCloner getGeneratedCloner() {
+        Object cloner = generatedCloner;
+        if (cloner == null) {
+            cloner = GeneratedCloner.generate(this);
+            generatedCloner = cloner == null ? Boolean.FALSE : cloner;
+        }
+        return cloner instanceof GeneratedCloner ? (GeneratedCloner) cloner : null;
+    }
+
+    /**
+     * @return number of parameters of the constructor selected by the constructor rules, 0 for other factories
+     */
+    int getParameterCount() {
+        return factory instanceof ConstructorFactory ? ((ConstructorFactory) factory).getParameterFields().length : 0;
+    }
+
+    /**
+     * @return fields bound to the parameters of the constructor selected by the constructor rules, none for other factories
+     */
+    Field[] getParameterFields() {
+        return factory instanceof ConstructorFactory ? ((ConstructorFactory) factory).getParameterFields() : new Field[0];
+    }
+
+    /**
+     * Creates a new instance for the copy of the original object with the factory of the class.
+     * @param parameters array of {@link #getParameterCount()} elements used for constructor parameters and cleared
+     *                   afterwards, null to use a new one
+     */
+    Object newInstance(Object original, Object[] parameters) throws ReflectiveOperationException {
+        if (factoryError != null) {
+            throw factoryError;
+        }
+        if (factory instanceof ConstructorFactory) {
+            return ((ConstructorFactory) factory).newInstance(original, parameters);
+        }
+        return factory.newInstance(original);
+    }
+
+    /**
+     * Creates a new instance for the copy of the original object passing values of the parameter fields
+     * which are already read instead of reading them again.
+     * @param values values of the parameter fields in the order of parameters from the offset
+     * @param parameters array of {@link #getParameterCount()} elements used for constructor parameters and cleared
+     *                   afterwards, null if there are no parameters
+     */
+    Object newInstance(Object original, Object[] values, int offset, Object[] parameters) throws ReflectiveOperationException {
+        if (factoryError != null) {
+            throw factoryError;
+        }
+        if (!(factory instanceof ConstructorFactory)) {
+            return factory.newInstance(original);
+        }
+        if (parameters == null) {
+            return ((ConstructorFactory) factory).newInstanceWith(new Object[0]);
+        }
+        System.arraycopy(values, offset, parameters, 0, parameters.length);
+        try {
+            return ((ConstructorFactory) factory).newInstanceWith(parameters);
+        }
+        finally {
+            Arrays.fill(parameters, null);
+        }
+    }
+
+    static Instantiator.Factory resolveFactory(Class<?> type) {
+        Instantiator instantiator = Instantiators.of(type);
+        Instantiator.Factory resolved = instantiator.factoryFor(type);
+        if (resolved == null) {
+            throw new ObjectCannotBeClonedException("Instantiator " + instantiator + " can not create instances of class " + type.getName());
+        }
+        return resolved;
+    }
+
+    /**
+     * @return fields of the class hierarchy to copy, also for classes which plans don't keep fields (e.g. immutable ones)
+     */
+    static FieldPlan[] resolveFields(Class<?> type) {
+        FieldAccessEngine fieldAccessEngine = engine;
+        List<FieldPlan> result = new ArrayList<>();
+        List<Class<?>> hierarchy = hierarchyOf(type);
+        for (int i = hierarchy.size() - 1; i >= 0; i--) {
+            for (Field field : copiedFields(hierarchy.get(i))) {
+                if (field.isAnnotationPresent(CopyIgnore.class) || isLockStamp(field)) {
+                    continue;
+                }
+                if (isInaccessibleTransientSkipped && Modifier.isTransient(field.getModifiers())
+                        && !field.trySetAccessible()) {
+                    // e.g. modCount of a JDK collection base class, left to the constructor as serialization does
+                    LOGGER.log(System.Logger.Level.INFO, "Transient field {0} of class {1} is not copied for class {2}:"
+                            + " it can not be accessed, the constructor of the copy initializes it",
+                            field.getName(), field.getDeclaringClass().getName(), type.getName());
+                    continue;
+                }
+                makeAccessible(type, field);
+                // a shallow field is shared like a field of an immutable type
+                FieldKind kind = field.isAnnotationPresent(CopyShallow.class) ? FieldKind.IMMUTABLE : FieldKind.of(field.getType());
+                result.add(new FieldPlan(field, kind, FieldAccessor.of(field, fieldAccessEngine)));
+            }
+        }
+        return result.toArray(new FieldPlan[0]);
+    }
+
+    /**
+     * @return the field of the class hierarchy annotated with {@link CopyStamp}, null if there is none
+     * @throws ObjectCannotBeClonedException if several fields are annotated or the annotated field can't guard the state
+     */
+    static Field resolveStampField(Class<?> type) {
+        Field stampField = null;
+        for (Class<?> c : hierarchyOf(type)) {
+            for (Field field : instanceFields(c)) {
+                if (!field.isAnnotationPresent(CopyStamp.class)) {
+                    continue;
+                }
+                if (stampField != null) {
+                    throw new ObjectCannotBeClonedException("Class " + type.getName() + " has more than 1 field annotated CopyStamp");
+                }
+                stampField = field;
+            }
+        }
+        if (stampField == null) {
+            return null;
+        }
+        Class<?> stampType = stampField.getType();
+        boolean isVersion = (stampType == long.class || stampType == int.class) && Modifier.isVolatile(stampField.getModifiers());
+        if (!isVersion && !StampedLock.class.isAssignableFrom(stampType)) {
+            throw new ObjectCannotBeClonedException("Field " + stampField.getName() + " of class " + stampField.getDeclaringClass().getName()
+                    + " annotated CopyStamp is neither a StampedLock nor a volatile long or int version");
+        }
+        makeAccessible(type, stampField);
+        return stampField;
+    }
+
+    private static boolean isLockStamp(Field field) {
+        return field.isAnnotationPresent(CopyStamp.class) && StampedLock.class.isAssignableFrom(field.getType());
+    }
+
+    /**
+     * @return the class followed by its superclasses up to, but not including, {@link Object}
+     */
+    static List<Class<?>> hierarchyOf(Class<?> type) {
+        List<Class<?>> hierarchy = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            hierarchy.add(c);
+        }
+        return hierarchy;
+    }
+
+    /**
+     * @return fields declared by the class which are copied: all of them except constants ({@code static final})
+     */
+    private static List<Field> copiedFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers()) || !Modifier.isFinal(field.getModifiers())) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    static List<Field> instanceFields(Class<?> type) {
+        List<Field> fields = new ArrayList<>();
+        for (Field field : type.getDeclaredFields()) {
+            if (!Modifier.isStatic(field.getModifiers())) {
+                fields.add(field);
+            }
+        }
+        return fields;
+    }
+
+    static void makeAccessible(Class<?> type, Field field) {
+        try {
+            field.setAccessible(true);
+        }
+        catch (RuntimeException ex) {
+            // e.g. a field inherited from a JDK class which module isn't open
+            throw new ObjectCannotBeClonedException("Field " + field.getName() + " of class "
+                    + field.getDeclaringClass().getName() + " can not be accessed to clone class " + type.getName(), ex);
+        }
+    }
+
+    /**
+     * Kind of field value deciding how it is copied.
+     */
+    enum FieldKind {
+        PRIMITIVE,
+        IMMUTABLE,
+        COLLECTION,
+        MAP,
+        ARRAY,
+        NESTED;
+
+        static FieldKind of(Class<?> type) {
+            if (type.isPrimitive()) {
+                return PRIMITIVE;
+            }
+            if (type.isEnum() || ImmutableTypes.isImmutableFieldType(type)) {
+                return IMMUTABLE;
+            }
+            if (type.isArray()) {
+                return ARRAY;
+            }
+            if (Collection.class.isAssignableFrom(type)) {
+                return COLLECTION;
+            }
+            if (Map.class.isAssignableFrom(type)) {
+                return MAP;
+            }
+            return NESTED;
+        }
+    }
+
+    /**
+     * An accessible field of the planned class with its kind.
+     */
+    static final class FieldPlan {
+
+        private final Field field;
+        private final FieldKind kind;
+        private final FieldAccessor accessor;
+
+        private FieldPlan(Field field, FieldKind kind, FieldAccessor accessor) {
+            this.field = field;
+            this.kind = kind;
+            this.accessor = accessor;
+        }
+
+        Field getField() {
+            return field;
+        }
+
+        FieldKind getKind() {
+            return kind;
+        }
+
+        FieldAccessor getAccessor() {
+            return accessor;
+        }
+
+        /**
+         * @return true if the field is declared as one of the collection interfaces implemented by lazy copies
+         */
+        boolean isLazyCopyable() {
+            Class<?> type = field.getType();
+            return kind != FieldKind.IMMUTABLE && (type == Collection.class || type == List.class || type == Set.class || type == Map.class);
+        }
+    }
+
+}
@@ -0,0 +1,292 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.List;
+
+/**
+ * Reusable state of deep clones: the table of visited objects, the copier with its frames and the buffers
+ * of constructor parameters are kept between calls and cleared after each of them,
+ * so consecutive clones of similar graphs allocate only the copies themselves.
+ * <pre>{@code
+ * try (CloneContext context = CloneContext.acquire()) {
+ *     copy = context.deepClone(object);
+ * }
+ * }</pre>
+ * <p>A context is used by one thread at a time and a clone can't be started on a context while another
+ * clone of it is in progress, e.g. by a constructor called by that clone. {@link #acquire()} takes the context
+ * pooled for the current thread, nested acquires get their own contexts. Clones have the same rules and
+ * results as the corresponding methods of {@link CopyUtils}, which use pooled contexts themselves.</p>
+ * <p>The table of a context keeps the capacity reached by its largest clone and the whole table is cleared after
+ * each clone, so one context shouldn't serve both huge and small graphs. Pooled contexts drop tables larger than
+ * 4096 slots instead of keeping them.</p>
+ */
+public final class CloneContext implements AutoCloseable {
+
+    private static final int DEFAULT_EXPECTED_OBJECT_COUNT = 32;
+
+    private static final ThreadLocal<CloneContext> REUSED = new ThreadLocal<>();
+
+    private final boolean isPooled;
+    private IdentityCloneMap oldToNewObjects;
+    private Copier copier;
+    private boolean isInUse;
+    private boolean isBatchShared;
+
+    /**
+     * Creates a context which table is sized for 32 objects and grows with cloned graphs.
+     */
+    public CloneContext() {
+        this(DEFAULT_EXPECTED_OBJECT_COUNT);
+    }
+
+    /**
+     * @param expectedObjectCount expected number of copied objects in cloned graphs, the table is sized for them
+     */
+    public CloneContext(int expectedObjectCount) {
+        this(expectedObjectCount, false);
+    }
+
+    private CloneContext(int expectedObjectCount, boolean isPooled) {
+        this.isPooled = isPooled;
+        this.oldToNewObjects = new IdentityCloneMap(expectedObjectCount);
+    }
+
+    /**
+     * Takes the context pooled for the current thread, it's returned to the pool by {@link #close()}.
+     * If the pooled context is taken, e.g. by an enclosing clone, a new context is created.
+     * @return context to be closed after use
+     */
+    public static CloneContext acquire() {
+        return acquire(DEFAULT_EXPECTED_OBJECT_COUNT);
+    }
+
+    /**
+     * Takes the context pooled for the current thread as {@link #acquire()} does.
+     * @param expectedObjectCount expected number of copied objects in the graph, the table is sized for them
+     * @return context to be closed after use
+     */
+    static CloneContext acquire(int expectedObjectCount) {
+        CloneContext context = REUSED.get();
+        if (context == null) {
+            return new CloneContext(expectedObjectCount, true);
+        }
+        REUSED.set(null);
+        context.oldToNewObjects.ensureCapacity(expectedObjectCount);
+        return context;
+    }
+
+    /**
+     * Deeply copy an object with the rules of {@link CopyUtils#deepClone(Object)}.
+     * @param object object to be copied
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     * @throws IllegalStateException if another clone of the context is in progress
+     */
+    public <T> T deepClone(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return clone(object, false, false, null);
+    }
+
+    /**
+     * Deeply copy an object with the rules of {@link CopyUtils#deepClone(Object, boolean)}.
+     * @param object object to be copied
+     * @param isReplaceNonCopiedWithNull defines action on error during object copy creation:
+     *                                   if true - set it as null if false - throw an error
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     * @throws IllegalStateException if another clone of the context is in progress
+     */
+    public <T> T deepClone(T object, boolean isReplaceNonCopiedWithNull) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return clone(object, isReplaceNonCopiedWithNull, false, null);
+    }
+
+    /**
+     * Copy the top of an object graph with the rules of {@link CopyUtils#deepClone(Object, CloneOptions)}.
+     * @param object object to be copied
+     * @param options bounds and filters of the copy
+     * @return copy of object with copies of nested referenced objects within the bounds
+     * @throws ObjectCannotBeClonedException if any copied object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     * @throws IllegalStateException if another clone of the context is in progress
+     */
+    public <T> T deepClone(T object, CloneOptions options) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return clone(object, options.isReplaceNonCopiedWithNull(), options.isIterative(), options);
+    }
+
+    /**
+     * Deeply copy an object with the rules of {@link CopyUtils#deepCloneIterative(Object)}.
+     * @param object object to be copied
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     * @throws IllegalStateException if another clone of the context is in progress
+     */
+    public <T> T deepCloneIterative(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return clone(object, false, true, null);
+    }
+
+    /**
+     * Deeply copy an object with the rules of {@link CopyUtils#deepCloneIterative(Object, boolean)}.
+     * @param object object to be copied
+     * @param isReplaceNonCopiedWithNull defines action on error during object copy creation:
+     *                                   if true - set it as null if false - throw an error
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     * @throws IllegalStateException if another clone of the context is in progress
+     */
+    public <T> T deepCloneIterative(T object, boolean isReplaceNonCopiedWithNull) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return clone(object, isReplaceNonCopiedWithNull, true, null);
+    }
+
+    /**
+     * Deeply copy each element of the collection with the rules of {@link CopyUtils#deepCloneAll(Collection, CloneOptions)}.
+     * @param objects objects to be copied
+     * @param options bounds and filters of the copies
+     * @return list of copies in the iteration order of the collection
+     * @throws ObjectCannotBeClonedException if any copied object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     * @throws IllegalStateException if another clone of the context is in progress
+     */
+    public <T> List<T> deepCloneAll(Collection<? extends T> objects, CloneOptions options)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        List<T> copies = new ArrayList<>(objects.size());
+        startBatch(options, objects.size());
+        try {
+            for (T object : objects) {
+                copies.add(cloneElement(object));
+            }
+        }
+        finally {
+            finish();
+        }
+        return copies;
+    }
+
+    /**
+     * Copies the object as {@link #deepClone(Object, CloneOptions)} does for an async clone.
+     * @param checkpoint checkpoint passed by the copier before each new copy
+     */
+    <T> T deepClone(T object, CloneOptions options, AsyncCloner.Checkpoint checkpoint)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        start(options.isReplaceNonCopiedWithNull(), options.isIterative(), options.isUnbounded() ? null : options);
+        copier.setCheckpoint(checkpoint);
+        try {
+            return copier.clone(object);
+        }
+        finally {
+            finish();
+        }
+    }
+
+    /**
+     * Copies the object as {@link CopyUtils#deepCloneLazy(Object, boolean, boolean)} does. Lazy copies keep the table
+     * and the copier of the clone for their materialization, so the context takes new ones if any lazy copy was made.
+     */
+    <T> T deepCloneLazy(T object, boolean isReplaceNonCopiedWithNull, boolean isTrackSource)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        start(isReplaceNonCopiedWithNull, false, null);
+        copier.setLazy(isTrackSource);
+        try {
+            return copier.clone(object);
+        }
+        finally {
+            if (copier.hasLazyCopies()) {
+                oldToNewObjects = new IdentityCloneMap(DEFAULT_EXPECTED_OBJECT_COUNT);
+                copier = null;
+                isInUse = false;
+            }
+            else {
+                finish();
+            }
+        }
+    }
+
+    /**
+     * Starts a batch clone which elements are copied by {@link #cloneElement}, the batch is ended by {@link #finish()}.
+     * @param expectedElementCount number of elements, the table is sized for them if it's shared by the elements
+     */
+    void startBatch(CloneOptions options, int expectedElementCount) {
+        // unbounded options don't make the copier check bounds of each value
+        start(options.isReplaceNonCopiedWithNull(), options.isIterative(), options.isUnbounded() ? null : options);
+        isBatchShared = options.isShareBetweenElements();
+        if (isBatchShared) {
+            oldToNewObjects.ensureCapacity(expectedElementCount);
+        }
+    }
+
+    /**
+     * Copies an element of the batch, copies of other elements are forgotten unless the options share them.
+     */
+    <T> T cloneElement(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        T copy = copier.clone(object);
+        if (!isBatchShared) {
+            oldToNewObjects.clear();
+            copier.resetCopyCount();
+        }
+        return copy;
+    }
+
+    private <T> T clone(T object, boolean isReplaceNonCopiedWithNull, boolean isIterative, CloneOptions options)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        start(isReplaceNonCopiedWithNull, isIterative, options);
+        try {
+            return copier.clone(object);
+        }
+        finally {
+            finish();
+        }
+    }
+
+    private void start(boolean isReplaceNonCopiedWithNull, boolean isIterative, CloneOptions options) {
+        if (isInUse) {
+            throw new IllegalStateException("Clone context is used by another clone");
+        }
+        isInUse = true;
+        boolean isUseGeneratedCloners = CopyUtils.isGeneratedClonersEnabled();
+        if (copier == null) {
+            copier = new Copier(isReplaceNonCopiedWithNull, oldToNewObjects, isUseGeneratedCloners, isIterative);
+        }
+        else {
+            copier.reset(isReplaceNonCopiedWithNull, isUseGeneratedCloners, isIterative);
+        }
+        if (options != null) {
+            copier.setOptions(options);
+        }
+    }
+
+    /**
+     * Ends the clone or the batch, so the context can be used again.
+     */
+    void finish() {
+        // copies and originals aren't kept reachable by the context
+        oldToNewObjects.clear();
+        isInUse = false;
+    }
+
+    /**
+     * Returns a pooled context to the pool of the current thread, a context created by a constructor stays usable.
+     */
+    @Override
+    public void close() {
+        if (!isPooled) {
+            return;
+        }
+        if (oldToNewObjects.isOversized()) {
+            oldToNewObjects = new IdentityCloneMap(DEFAULT_EXPECTED_OBJECT_COUNT);
+            copier = null;
+        }
+        REUSED.set(this);
+    }
+
+}
@@ -0,0 +1,48 @@
+package utils;
+
+import jdk.jfr.Category;
+import jdk.jfr.DataAmount;
+import jdk.jfr.Description;
+import jdk.jfr.Enabled;
+import jdk.jfr.Event;
+import jdk.jfr.EventType;
+import jdk.jfr.Label;
+import jdk.jfr.Name;
+
+/**
+ * Flight recorder event of one deep clone, its duration is the duration of the clone.
+ * <p>The event is disabled by default, it's enabled by a recording setting {@code utils.DeepClone#enabled=true}.
+ * Clones are measured only while it's enabled (or an instrumentation is installed).</p>
+ */
+@Name("utils.DeepClone")
+@Label("Deep Clone")
+@Category("Deep Clone")
+@Description("Deep copy of an object graph")
+@Enabled(false)
+final class CloneEvent extends Event {
+
+    private static final EventType TYPE = EventType.getEventType(CloneEvent.class);
+
+    @Label("Root Class")
+    Class<?> rootClass;
+
+    @Label("Graph Size")
+    @Description("Number of new copies made by the clone")
+    long objectCount;
+
+    @Label("Depth")
+    @Description("Maximal number of copies nested in each other")
+    int maxDepth;
+
+    @Label("Estimated Size")
+    @DataAmount
+    long estimatedBytes;
+
+    /**
+     * @return true if a recording collects the event
+     */
+    static boolean isRecorded() {
+        return TYPE.isEnabled();
+    }
+
+}
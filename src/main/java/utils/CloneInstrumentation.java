@@ -0,0 +1,51 @@
+package utils;
+
+/**
+ * Receiver of events of deep clones installed via {@link CopyUtils#setInstrumentation(CloneInstrumentation)}.
+ * <p>Without an installed instrumentation clones don't measure anything. With one, every copied object
+ * is timed, so clones are slower and the instrumentation is meant for diagnostics and sampling rather than
+ * for every clone of a hot path. Events are sent by the threads doing the clones, parallel clones send them
+ * from several threads at once, so implementations must be thread-safe. All methods do nothing by default.</p>
+ * <p>{@link CloneMetrics} aggregates events per class and exposes them via JMX.</p>
+ */
+public interface CloneInstrumentation {
+
+    /**
+     * Called once a new copy of an object, a collection, a map or an array is complete. Objects shared
+     * with the original (immutable objects, enums, already copied objects) aren't reported.
+     * @param type class of the copied object
+     * @param estimatedBytes estimated shallow size of the copy, objects referenced by it aren't included
+     * @param nanos time spent copying the object itself, time spent copying objects referenced by it isn't included
+     */
+    default void objectCloned(Class<?> type, long estimatedBytes, long nanos) {
+    }
+
+    /**
+     * Called when an instance of the class can't be created by its constructor: the constructor can't be resolved
+     * by the rules of {@link CopyUtils#deepClone(Object)}, its parameters can't be bound or it throws.
+     * @param type class of the object which wasn't copied
+     * @param cause error of the constructor resolution or invocation
+     */
+    default void constructorMissed(Class<?> type, Throwable cause) {
+    }
+
+    /**
+     * Called when an object which can't be copied is replaced with null in the clone,
+     * it follows {@link #constructorMissed(Class, Throwable)} for the same object.
+     * @param type class of the object replaced with null
+     */
+    default void valueNulled(Class<?> type) {
+    }
+
+    /**
+     * Called once per deep clone when it's done, successfully or not.
+     * @param rootType class of the cloned object, null if it's null
+     * @param objectCount number of new copies made by the clone
+     * @param maxDepth maximal number of copies nested in each other during the clone
+     * @param estimatedBytes estimated size of all new copies
+     * @param nanos duration of the clone
+     */
+    default void cloneFinished(Class<?> rootType, long objectCount, int maxDepth, long estimatedBytes, long nanos) {
+    }
+
+}
@@ -0,0 +1,189 @@
+package utils;
+
+import javax.management.JMException;
+import javax.management.MBeanServer;
+import javax.management.ObjectName;
+import java.lang.management.ManagementFactory;
+import java.util.Map;
+import java.util.TreeMap;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.concurrent.atomic.LongAccumulator;
+import java.util.concurrent.atomic.LongAdder;
+import java.util.function.Function;
+
+/**
+ * Instrumentation aggregating events of all clones into counters per class, the counters can be read
+ * directly or via JMX once the metrics are registered as an MXBean.
+ * <pre>{@code
+ * CloneMetrics metrics = new CloneMetrics();
+ * metrics.registerMBean();
+ * CopyUtils.setInstrumentation(metrics);
+ * }</pre>
+ * <p>Counters are updated by {@link LongAdder adders}, so clones running in parallel don't contend on them.
+ * Counted classes are kept until {@link #reset()}.</p>
+ */
+public final class CloneMetrics implements CloneInstrumentation, CloneMetricsMXBean {
+
+    /**
+     * Name the metrics are registered with by {@link #registerMBean()}.
+     */
+    public static final String OBJECT_NAME = "utils:type=CloneMetrics";
+
+    private final LongAdder cloneCount = new LongAdder();
+    private final LongAdder cloneNanos = new LongAdder();
+    private final LongAccumulator maxDepth = new LongAccumulator(Math::max, 0);
+    private final Map<Class<?>, ClassCounters> classCounters = new ConcurrentHashMap<>();
+
+    @Override
+    public void objectCloned(Class<?> type, long estimatedBytes, long nanos) {
+        ClassCounters counters = countersOf(type);
+        counters.objectCount.increment();
+        counters.estimatedBytes.add(estimatedBytes);
+        counters.nanos.add(nanos);
+    }
+
+    @Override
+    public void constructorMissed(Class<?> type, Throwable cause) {
+        countersOf(type).constructorMissCount.increment();
+    }
+
+    @Override
+    public void valueNulled(Class<?> type) {
+        countersOf(type).nulledValueCount.increment();
+    }
+
+    @Override
+    public void cloneFinished(Class<?> rootType, long objectCount, int maxDepth, long estimatedBytes, long nanos) {
+        cloneCount.increment();
+        cloneNanos.add(nanos);
+        this.maxDepth.accumulate(maxDepth);
+    }
+
+    private ClassCounters countersOf(Class<?> type) {
+        ClassCounters counters = classCounters.get(type);
+        return counters != null ? counters : classCounters.computeIfAbsent(type, key -> new ClassCounters());
+    }
+
+    /**
+     * Registers the metrics in the platform MBean server with the name {@value #OBJECT_NAME}.
+     * @throws JMException if the metrics can't be registered, e.g. another instance is already registered
+     */
+    public void registerMBean() throws JMException {
+        ManagementFactory.getPlatformMBeanServer().registerMBean(this, new ObjectName(OBJECT_NAME));
+    }
+
+    /**
+     * Removes the metrics registered via {@link #registerMBean()} from the platform MBean server.
+     * @throws JMException if the metrics aren't registered
+     */
+    public void unregisterMBean() throws JMException {
+        MBeanServer server = ManagementFactory.getPlatformMBeanServer();
+        server.unregisterMBean(new ObjectName(OBJECT_NAME));
+    }
+
+    @Override
+    public long getCloneCount() {
+        return cloneCount.sum();
+    }
+
+    @Override
+    public long getCloneNanos() {
+        return cloneNanos.sum();
+    }
+
+    @Override
+    public int getMaxDepth() {
+        return (int) maxDepth.get();
+    }
+
+    @Override
+    public long getObjectCount() {
+        return total(counters -> counters.objectCount);
+    }
+
+    @Override
+    public long getEstimatedBytes() {
+        return total(counters -> counters.estimatedBytes);
+    }
+
+    @Override
+    public long getConstructorMissCount() {
+        return total(counters -> counters.constructorMissCount);
+    }
+
+    @Override
+    public long getNulledValueCount() {
+        return total(counters -> counters.nulledValueCount);
+    }
+
+    @Override
+    public Map<String, Long> getObjectCountByClass() {
+        return byClass(counters -> counters.objectCount);
+    }
+
+    @Override
+    public Map<String, Long> getEstimatedBytesByClass() {
+        return byClass(counters -> counters.estimatedBytes);
+    }
+
+    @Override
+    public Map<String, Long> getNanosByClass() {
+        return byClass(counters -> counters.nanos);
+    }
+
+    @Override
+    public Map<String, Long> getConstructorMissCountByClass() {
+        return byClass(counters -> counters.constructorMissCount);
+    }
+
+    @Override
+    public Map<String, Long> getNulledValueCountByClass() {
+        return byClass(counters -> counters.nulledValueCount);
+    }
+
+    /**
+     * @param type counted class
+     * @return number of new copies of the exact class
+     */
+    public long getObjectCount(Class<?> type) {
+        ClassCounters counters = classCounters.get(type);
+        return counters == null ? 0 : counters.objectCount.sum();
+    }
+
+    @Override
+    public void reset() {
+        cloneCount.reset();
+        cloneNanos.reset();
+        maxDepth.reset();
+        classCounters.clear();
+    }
+
+    private long total(Function<ClassCounters, LongAdder> counter) {
+        long total = 0;
+        for (ClassCounters counters : classCounters.values()) {
+            total += counter.apply(counters).sum();
+        }
+        return total;
+    }
+
+    private Map<String, Long> byClass(Function<ClassCounters, LongAdder> counter) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<Class<?>, ClassCounters> entry : classCounters.entrySet()) {
+            long value = counter.apply(entry.getValue()).sum();
+            if (value != 0) {
+                result.merge(entry.getKey().getName(), value, Long::sum);
+            }
+        }
+        return result;
+    }
+
+    private static final class ClassCounters {
+
+        private final LongAdder objectCount = new LongAdder();
+        private final LongAdder estimatedBytes = new LongAdder();
+        private final LongAdder nanos = new LongAdder();
+        private final LongAdder constructorMissCount = new LongAdder();
+        private final LongAdder nulledValueCount = new LongAdder();
+    }
+
+}
@@ -0,0 +1,64 @@
+package utils;
+
+import java.util.Map;
+
+/**
+ * Management interface of {@link CloneMetrics}, counters are totals since the registration or the last reset.
+ * Per-class counters are keyed by class names.
+ */
+public interface CloneMetricsMXBean {
+
+    /**
+     * @return number of finished deep clones
+     */
+    long getCloneCount();
+
+    /**
+     * @return total duration of finished deep clones in nanoseconds
+     */
+    long getCloneNanos();
+
+    /**
+     * @return maximal depth reached by a deep clone
+     */
+    int getMaxDepth();
+
+    /**
+     * @return number of new copies of all classes
+     */
+    long getObjectCount();
+
+    /**
+     * @return estimated size of new copies of all classes in bytes
+     */
+    long getEstimatedBytes();
+
+    /**
+     * @return number of objects which instance couldn't be created by a constructor
+     */
+    long getConstructorMissCount();
+
+    /**
+     * @return number of objects replaced with null because they couldn't be copied
+     */
+    long getNulledValueCount();
+
+    Map<String, Long> getObjectCountByClass();
+
+    Map<String, Long> getEstimatedBytesByClass();
+
+    /**
+     * @return time spent copying instances of each class itself in nanoseconds, nested copies excluded
+     */
+    Map<String, Long> getNanosByClass();
+
+    Map<String, Long> getConstructorMissCountByClass();
+
+    Map<String, Long> getNulledValueCountByClass();
+
+    /**
+     * Sets all counters to zero.
+     */
+    void reset();
+
+}
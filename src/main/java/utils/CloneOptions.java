@@ -0,0 +1,367 @@
+package utils;
+
+import annotation.CopyIgnore;
+import annotation.CopyShallow;
+
+import java.lang.reflect.Field;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.LinkedHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.function.Predicate;
+
+/**
+ * Bounds and filters of a partial clone made by {@link CopyUtils#deepClone(Object, CloneOptions)}:
+ * the top levels of the graph are copied and the rest is shared with the original or left out.
+ * <pre>{@code
+ * CloneOptions options = CloneOptions.builder()
+ *         .maxDepth(3)
+ *         .excludeFields(field -> field.getName().endsWith("Cache"))
+ *         .typePolicy(Connection.class, CopyPolicy.SHALLOW)
+ *         .build();
+ * copy = CopyUtils.deepClone(request, options);
+ * }</pre>
+ * <p>The traversal stops where the options say so: values beyond the bounds and values of shallow types are
+ * shared as they are without visiting what they reference, skipped fields and values are never read further.
+ * An object reached both within and beyond the bounds is copied where it's reached within them,
+ * so the copy may reference both the object and its copy.</p>
+ * <p>Options are immutable and can be shared by concurrent clones, each of them keeps the fields of planned
+ * classes which pass its filters and the policies of classes, so reused options cost a clone no more
+ * than a deep clone.</p>
+ */
+public final class CloneOptions {
+
+    private final int maxDepth;
+    private final int maxObjectCount;
+    private final Predicate<Field> fieldFilter;
+    private final Map<Class<?>, CopyPolicy> typePolicies;
+    private final boolean isReplaceNonCopiedWithNull;
+    private final boolean isIterative;
+    private final boolean isShareBetweenElements;
+    private final boolean isConsistentReads;
+    private final long objectBudget;
+    private final long memoryBudget;
+
+    private final ClassValue<CopyPolicy> policies = new ClassValue<CopyPolicy>() {
+        @Override
+        protected CopyPolicy computeValue(Class<?> type) {
+            return resolvePolicy(type);
+        }
+    };
+
+    private final ClassValue<FilteredFields> filteredFields = new ClassValue<FilteredFields>() {
+        @Override
+        protected FilteredFields computeValue(Class<?> type) {
+            return new FilteredFields();
+        }
+    };
+
+    private CloneOptions(Builder builder) {
+        this.maxDepth = builder.maxDepth;
+        this.maxObjectCount = builder.maxObjectCount;
+        this.fieldFilter = builder.fieldFilter;
+        this.typePolicies = new LinkedHashMap<>(builder.typePolicies);
+        this.isReplaceNonCopiedWithNull = builder.isReplaceNonCopiedWithNull;
+        this.isIterative = builder.isIterative;
+        this.isShareBetweenElements = builder.isShareBetweenElements;
+        this.isConsistentReads = builder.isConsistentReads;
+        this.objectBudget = builder.objectBudget;
+        this.memoryBudget = builder.memoryBudget;
+    }
+
+    /**
+     * @return builder of options which copy the whole graph until bounds or filters are set
+     */
+    public static Builder builder() {
+        return new Builder();
+    }
+
+    /**
+     * @return number of copied levels of the graph, the root is the first one
+     */
+    public int getMaxDepth() {
+        return maxDepth;
+    }
+
+    /**
+     * @return maximal number of copies made by a clone
+     */
+    public int getMaxObjectCount() {
+        return maxObjectCount;
+    }
+
+    public boolean isReplaceNonCopiedWithNull() {
+        return isReplaceNonCopiedWithNull;
+    }
+
+    public boolean isIterative() {
+        return isIterative;
+    }
+
+    public boolean isShareBetweenElements() {
+        return isShareBetweenElements;
+    }
+
+    public boolean isConsistentReads() {
+        return isConsistentReads;
+    }
+
+    /**
+     * @return maximal number of copies made by a clone before it fails
+     */
+    public long getObjectBudget() {
+        return objectBudget;
+    }
+
+    /**
+     * @return maximal estimated memory in bytes taken by the copies of a clone before it fails
+     */
+    public long getMemoryBudget() {
+        return memoryBudget;
+    }
+
+    /**
+     * @return true if a clone fails once its copies exceed a budget
+     */
+    boolean hasBudget() {
+        return objectBudget != Long.MAX_VALUE || memoryBudget != Long.MAX_VALUE;
+    }
+
+    /**
+     * @return true if the options neither bound nor filter the copy and fields are read as usual, so it's a deep clone
+     */
+    boolean isUnbounded() {
+        return maxDepth == Integer.MAX_VALUE && maxObjectCount == Integer.MAX_VALUE && fieldFilter == null && typePolicies.isEmpty()
+                && !isConsistentReads && !hasBudget();
+    }
+
+    /**
+     * @return true if some fields are left out by the field predicates, so cloners copying all fields can't be used
+     */
+    boolean hasFieldFilter() {
+        return fieldFilter != null;
+    }
+
+    /**
+     * @return policy of the exact class: the policy of the class or of its first registered supertype, deep by default
+     */
+    CopyPolicy policyOf(Class<?> type) {
+        return typePolicies.isEmpty() ? CopyPolicy.DEEP : policies.get(type);
+    }
+
+    private CopyPolicy resolvePolicy(Class<?> type) {
+        CopyPolicy policy = typePolicies.get(type);
+        if (policy != null) {
+            return policy;
+        }
+        for (Map.Entry<Class<?>, CopyPolicy> entry : typePolicies.entrySet()) {
+            if (entry.getKey().isAssignableFrom(type)) {
+                return entry.getValue();
+            }
+        }
+        return CopyPolicy.DEEP;
+    }
+
+    /**
+     * @return fields of the plan which pass the field predicates
+     */
+    ClassPlan.FieldPlan[] fieldsOf(ClassPlan plan) {
+        ClassPlan.FieldPlan[] fields = plan.getFields();
+        if (fieldFilter == null) {
+            return fields;
+        }
+        FilteredFields filtered = filteredFields.get(plan.getType());
+        if (filtered.source != fields) {
+            // the plan was rebuilt since the fields were filtered
+            List<ClassPlan.FieldPlan> result = new ArrayList<>(fields.length);
+            for (ClassPlan.FieldPlan fieldPlan : fields) {
+                if (fieldFilter.test(fieldPlan.getField())) {
+                    result.add(fieldPlan);
+                }
+            }
+            filtered.fields = result.toArray(new ClassPlan.FieldPlan[0]);
+            filtered.source = fields;
+        }
+        return filtered.fields;
+    }
+
+    /**
+     * Fields of one class passing the predicates with the plan fields they were filtered from, concurrent clones
+     * may filter them at once and each of them gets a complete result.
+     */
+    private static final class FilteredFields {
+
+        private volatile ClassPlan.FieldPlan[] source;
+        private volatile ClassPlan.FieldPlan[] fields;
+    }
+
+    /**
+     * Builder of {@link CloneOptions}, it can be reused to build options differing in some settings.
+     */
+    public static final class Builder {
+
+        private int maxDepth = Integer.MAX_VALUE;
+        private int maxObjectCount = Integer.MAX_VALUE;
+        private Predicate<Field> fieldFilter;
+        private final Map<Class<?>, CopyPolicy> typePolicies = new LinkedHashMap<>();
+        private boolean isReplaceNonCopiedWithNull;
+        private boolean isIterative;
+        private boolean isShareBetweenElements;
+        private boolean isConsistentReads;
+        private long objectBudget = Long.MAX_VALUE;
+        private long memoryBudget = Long.MAX_VALUE;
+
+        private Builder() {
+        }
+
+        /**
+         * Copies the given number of levels of the graph and shares objects referenced from the last copied level:
+         * 1 copies the root only, 2 copies the root and the objects it references, etc.
+         * Collections, maps and arrays are levels too, so their elements are one level below them.
+         * @param levels number of copied levels, at least 1
+         * @return this builder
+         */
+        public Builder maxDepth(int levels) {
+            if (levels < 1) {
+                throw new IllegalArgumentException("Max depth must be positive: " + levels);
+            }
+            this.maxDepth = levels;
+            return this;
+        }
+
+        /**
+         * Makes at most the given number of copies, objects reached once the limit is hit are shared.
+         * Objects are copied depth first, so the copied part of the graph follows the order of fields and elements.
+         * @param count maximal number of copies, at least 1
+         * @return this builder
+         */
+        public Builder maxObjectCount(int count) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Max object count must be positive: " + count);
+            }
+            this.maxObjectCount = count;
+            return this;
+        }
+
+        /**
+         * Copies only the fields matching the predicate, other fields are left as they were when the copy was created
+         * like fields annotated with {@link CopyIgnore}. Several predicates must all match.
+         * @param predicate predicate of the field declaration
+         * @return this builder
+         */
+        public Builder includeFields(Predicate<Field> predicate) {
+            Objects.requireNonNull(predicate);
+            fieldFilter = fieldFilter == null ? predicate : fieldFilter.and(predicate);
+            return this;
+        }
+
+        /**
+         * Leaves out the fields matching the predicate as {@link #includeFields(Predicate)} leaves out other fields.
+         * Fields annotated with {@link CopyIgnore} are left out and fields annotated with {@link CopyShallow}
+         * are shared by all clones.
+         * @param predicate predicate of the field declaration
+         * @return this builder
+         */
+        public Builder excludeFields(Predicate<Field> predicate) {
+            return includeFields(predicate.negate());
+        }
+
+        /**
+         * Sets the policy of values of the type and its subtypes, a class takes the policy of its own registration
+         * or of the first registered supertype. Enums and immutable values are always shared, their policies are ignored.
+         * @param type class or interface
+         * @param policy policy of its values
+         * @return this builder
+         */
+        public Builder typePolicy(Class<?> type, CopyPolicy policy) {
+            typePolicies.put(Objects.requireNonNull(type), Objects.requireNonNull(policy));
+            return this;
+        }
+
+        /**
+         * @param isReplaceNonCopiedWithNull if true - objects which can't be created are replaced with null,
+         *                                   if false - the clone fails, as by {@link CopyUtils#deepClone(Object, boolean)}
+         * @return this builder
+         */
+        public Builder replaceNonCopiedWithNull(boolean isReplaceNonCopiedWithNull) {
+            this.isReplaceNonCopiedWithNull = isReplaceNonCopiedWithNull;
+            return this;
+        }
+
+        /**
+         * @param isIterative true to traverse the graph as {@link CopyUtils#deepCloneIterative(Object)} does
+         * @return this builder
+         */
+        public Builder iterative(boolean isIterative) {
+            this.isIterative = isIterative;
+            return this;
+        }
+
+        /**
+         * Keeps objects shared by elements of a batch clone ({@link CopyUtils#deepCloneAll(Collection, CloneOptions)})
+         * shared by their copies: all elements are copied with one table of visited objects, so an object reached
+         * from several elements is copied once and the maximal object count bounds the whole batch.
+         * Otherwise each element is copied as by a separate clone.
+         * @param isShareBetweenElements true to copy the elements of a batch as one graph
+         * @return this builder
+         */
+        public Builder shareBetweenElements(boolean isShareBetweenElements) {
+            this.isShareBetweenElements = isShareBetweenElements;
+            return this;
+        }
+
+        /**
+         * Copies objects which other threads may change during the clone without torn state within an object:
+         * each field of an object is read exactly once and the copy is created and filled with the values read,
+         * elements of JDK collections are read in one pass which is repeated if the collection is changed meanwhile.
+         * Objects with a field annotated with {@link annotation.CopyStamp} are read as one state guarded by the field,
+         * together with arrays and JDK collections referenced by their fields.
+         * <p>Each object is read on its own, so the copy of a graph changed during the clone may combine states
+         * of different objects from different moments. Registered cloners and instantiators reading the original
+         * read it on their own.</p>
+         * @param isConsistentReads true to read each object at once
+         * @return this builder
+         */
+        public Builder consistentReads(boolean isConsistentReads) {
+            this.isConsistentReads = isConsistentReads;
+            return this;
+        }
+
+        /**
+         * Fails the clone with {@link exception.CloneBudgetExceededException} once it makes more copies than the budget,
+         * unlike {@link #maxObjectCount(int)} which shares the rest of the graph. Shared values aren't counted.
+         * @param count maximal number of copies, at least 1
+         * @return this builder
+         */
+        public Builder objectBudget(long count) {
+            if (count < 1) {
+                throw new IllegalArgumentException("Object budget must be positive: " + count);
+            }
+            this.objectBudget = count;
+            return this;
+        }
+
+        /**
+         * Fails the clone with {@link exception.CloneBudgetExceededException} once the estimated memory taken
+         * by its copies exceeds the budget. Each copy is estimated from the field layout of its class as
+         * {@link CopyUtils#estimateCloneSize(Object)} does, before it's filled, so a graph over the budget is
+         * abandoned without being copied further.
+         * @param bytes maximal estimated memory of the copies in bytes, at least 1
+         * @return this builder
+         */
+        public Builder memoryBudget(long bytes) {
+            if (bytes < 1) {
+                throw new IllegalArgumentException("Memory budget must be positive: " + bytes);
+            }
+            this.memoryBudget = bytes;
+            return this;
+        }
+
+        public CloneOptions build() {
+            return new CloneOptions(this);
+        }
+    }
+
+}
@@ -0,0 +1,163 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.util.ArrayDeque;
+import java.util.Collections;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.Map;
+import java.util.Set;
+import java.util.TreeMap;
+import java.util.function.ToLongFunction;
+
+/**
+ * Number and estimated memory of the copies a deep clone of a graph would make, found by a dry run of
+ * {@link CopyUtils#estimateCloneSize(Object)} which visits the graph without copying it.
+ * <pre>{@code
+ * CloneSizeEstimate estimate = CopyUtils.estimateCloneSize(session);
+ * if (estimate.getEstimatedBytes() > limit) {
+ *     log.warn("Session copy would take {} bytes: {}", estimate.getEstimatedBytes(), estimate.getEstimatedBytesByClass());
+ * }
+ * }</pre>
+ * <p>The graph is visited by the rules of {@link CopyUtils#deepClone(Object)}: immutable values and enums are shared,
+ * so they aren't counted, fields of class plans (without fields annotated with {@link annotation.CopyIgnore} or
+ * {@link annotation.CopyShallow}), array elements and elements of collections and maps are visited.
+ * Objects copied by registered {@link Cloner cloners} are visited as if they were copied by their fields.
+ * Each copy is estimated from the field layout of its class as the memory budgets of {@link CloneOptions} are:
+ * the shallow size of the object on a 64-bit JVM with compressed references and the storage of elements
+ * of collections and maps.</p>
+ */
+public final class CloneSizeEstimate {
+
+    private final long objectCount;
+    private final long estimatedBytes;
+    /**
+     * Number of copies and their estimated bytes by the exact class.
+     */
+    private final Map<Class<?>, long[]> classCounters;
+
+    private CloneSizeEstimate(long objectCount, long estimatedBytes, Map<Class<?>, long[]> classCounters) {
+        this.objectCount = objectCount;
+        this.estimatedBytes = estimatedBytes;
+        this.classCounters = classCounters;
+    }
+
+    /**
+     * Visits the graph of the object depth first as a deep clone would copy it, nothing is copied.
+     * @throws ObjectCannotBeClonedException if fields of a visited class can't be accessed
+     */
+    static CloneSizeEstimate of(Object object) throws IllegalAccessException {
+        Set<Object> visited = Collections.newSetFromMap(new IdentityHashMap<>());
+        Map<Class<?>, long[]> classCounters = new HashMap<>();
+        ArrayDeque<Object> pending = new ArrayDeque<>();
+        long objectCount = 0;
+        long estimatedBytes = 0;
+        push(pending, object);
+        while (!pending.isEmpty()) {
+            Object value = pending.pop();
+            ClassPlan plan = ClassPlan.of(value.getClass());
+            if (value instanceof Enum || plan.isImmutable() || !visited.add(value)) {
+                continue;
+            }
+            long bytes = plan.estimateCopySize(value);
+            long[] counters = classCounters.computeIfAbsent(value.getClass(), type -> new long[2]);
+            counters[0]++;
+            counters[1] += bytes;
+            objectCount++;
+            estimatedBytes += bytes;
+
+            if (plan.isArray()) {
+                if (!plan.isFlatArray()) {
+                    // arrays of references which aren't all immutable
+                    Object[] elements = (Object[]) value;
+                    for (int i = elements.length - 1; i >= 0; i--) {
+                        push(pending, elements[i]);
+                    }
+                }
+            }
+            else if (plan.getCollectionCopier() != null) {
+                Object[] elements = CollectionCopier.elements(value);
+                for (int i = elements.length - 1; i >= 0; i--) {
+                    push(pending, elements[i]);
+                }
+            }
+            else {
+                ClassPlan.FieldPlan[] fields = plan.getFields();
+                for (int i = fields.length - 1; i >= 0; i--) {
+                    ClassPlan.FieldKind kind = fields[i].getKind();
+                    if (kind != ClassPlan.FieldKind.PRIMITIVE && kind != ClassPlan.FieldKind.IMMUTABLE) {
+                        push(pending, fields[i].getAccessor().get(value));
+                    }
+                }
+            }
+        }
+        return new CloneSizeEstimate(objectCount, estimatedBytes, classCounters);
+    }
+
+    private static void push(ArrayDeque<Object> pending, Object value) {
+        if (value != null) {
+            pending.push(value);
+        }
+    }
+
+    /**
+     * @return number of new copies a deep clone would make
+     */
+    public long getObjectCount() {
+        return objectCount;
+    }
+
+    /**
+     * @return estimated memory in bytes taken by the copies
+     */
+    public long getEstimatedBytes() {
+        return estimatedBytes;
+    }
+
+    /**
+     * @return number of copies by the name of their class
+     */
+    public Map<String, Long> getObjectCountByClass() {
+        return byClass(counters -> counters[0]);
+    }
+
+    /**
+     * @return estimated bytes of copies by the name of their class
+     */
+    public Map<String, Long> getEstimatedBytesByClass() {
+        return byClass(counters -> counters[1]);
+    }
+
+    /**
+     * @param type counted class
+     * @return number of copies of the exact class
+     */
+    public long getObjectCount(Class<?> type) {
+        long[] counters = classCounters.get(type);
+        return counters == null ? 0 : counters[0];
+    }
+
+    /**
+     * @param type counted class
+     * @return estimated bytes of copies of the exact class
+     */
+    public long getEstimatedBytes(Class<?> type) {
+        long[] counters = classCounters.get(type);
+        return counters == null ? 0 : counters[1];
+    }
+
+    private Map<String, Long> byClass(ToLongFunction<long[]> counter) {
+        Map<String, Long> result = new TreeMap<>();
+        for (Map.Entry<Class<?>, long[]> entry : classCounters.entrySet()) {
+            result.merge(entry.getKey().getName(), counter.applyAsLong(entry.getValue()), Long::sum);
+        }
+        return result;
+    }
+
+    @Override
+    public String toString() {
+        return "CloneSizeEstimate{objects=" + objectCount + ", bytes=" + estimatedBytes + "}";
+    }
+
+}
@@ -0,0 +1,193 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Measurements of one copier, it exists only while an instrumentation is installed or the clone event is recorded,
+ * so copiers without a trace skip all measurements with one null check.
+ * <p>Copies are nested in each other in the order they are started, by recursion or by frames, so the trace keeps
+ * a stack of started copies: the time of a nested copy is subtracted from the copy it's nested in,
+ * so each class is charged only for the time spent copying its own instances.</p>
+ */
+final class CloneTrace {
+
+    private static final boolean isEventSupported = isEventSupported();
+
+    private static volatile CloneInstrumentation installed;
+
+    private final CloneInstrumentation instrumentation;
+    private long[] outerNanos = new long[16];
+    private int depth;
+    private int outerDepth;
+    private long nestedNanos;
+    private long objectCount;
+    private int maxDepth;
+    private long estimatedBytes;
+    private long mergedObjectCount;
+    private int mergedMaxDepth;
+    private long mergedEstimatedBytes;
+
+    private CloneTrace(CloneInstrumentation instrumentation) {
+        this.instrumentation = instrumentation;
+    }
+
+    /**
+     * Installs the instrumentation receiving events of all subsequent clones, null uninstalls it.
+     */
+    static void install(CloneInstrumentation cloneInstrumentation) {
+        installed = cloneInstrumentation;
+    }
+
+    static CloneInstrumentation getInstalled() {
+        return installed;
+    }
+
+    /**
+     * @return trace for a new copier or null if nothing is measured
+     */
+    static CloneTrace create() {
+        CloneInstrumentation cloneInstrumentation = installed;
+        if (cloneInstrumentation == null && !(isEventSupported && CloneEvent.isRecorded())) {
+            return null;
+        }
+        return new CloneTrace(cloneInstrumentation);
+    }
+
+    private static boolean isEventSupported() {
+        try {
+            CloneEvent.isRecorded();
+            return true;
+        }
+        catch (LinkageError | IllegalStateException ex) {
+            // the runtime is built without the jdk.jfr module or the JVM doesn't support flight recording
+            return false;
+        }
+    }
+
+    /**
+     * Starts a nested copy.
+     * @return start time to be passed to {@link #exit}
+     */
+    long enter() {
+        if (depth == outerNanos.length) {
+            outerNanos = Arrays.copyOf(outerNanos, depth * 2);
+        }
+        outerNanos[depth++] = nestedNanos;
+        nestedNanos = 0;
+        if (outerDepth + depth > maxDepth) {
+            maxDepth = outerDepth + depth;
+        }
+        return System.nanoTime();
+    }
+
+    /**
+     * Ends the copy started by the last {@link #enter()} which isn't ended yet.
+     * @param original copied object or null if no new copy was made
+     */
+    void exit(Object original, long start) {
+        long nanos = System.nanoTime() - start;
+        long ownNanos = nanos - nestedNanos;
+        nestedNanos = outerNanos[--depth] + nanos;
+        if (original == null) {
+            return;
+        }
+        long bytes = ClassPlan.of(original.getClass()).estimateSize(original);
+        objectCount++;
+        estimatedBytes += bytes;
+        if (instrumentation != null) {
+            instrumentation.objectCloned(original.getClass(), bytes, ownNanos);
+        }
+    }
+
+    /**
+     * Reports an object which instance can't be created.
+     * @param isNulled true if the object is replaced with null
+     */
+    void failed(Class<?> type, Exception cause, boolean isNulled) {
+        if (instrumentation != null) {
+            instrumentation.constructorMissed(type, cause);
+            if (isNulled) {
+                instrumentation.valueNulled(type);
+            }
+        }
+    }
+
+    /**
+     * @return number of copies the copier is in, including copies it's nested in as a whole
+     */
+    int getNestingDepth() {
+        return outerDepth + depth;
+    }
+
+    /**
+     * Makes the copier of the trace continue the copy of another copier at the given nesting depth.
+     */
+    void setOuterDepth(int nestingDepth) {
+        this.outerDepth = nestingDepth;
+    }
+
+    /**
+     * Adds copies made by the trace of another copier of the same clone, e.g. of a parallel task.
+     * Traces of several threads may be merged at once, but the copier of this trace may still copy,
+     * so they are kept apart from its own copies.
+     */
+    void merge(CloneTrace other) {
+        long otherObjectCount;
+        long otherEstimatedBytes;
+        int otherMaxDepth;
+        synchronized (other) {
+            otherObjectCount = other.objectCount + other.mergedObjectCount;
+            otherEstimatedBytes = other.estimatedBytes + other.mergedEstimatedBytes;
+            otherMaxDepth = Math.max(other.maxDepth, other.mergedMaxDepth);
+        }
+        synchronized (this) {
+            mergedObjectCount += otherObjectCount;
+            mergedEstimatedBytes += otherEstimatedBytes;
+            mergedMaxDepth = Math.max(mergedMaxDepth, otherMaxDepth);
+        }
+    }
+
+    /**
+     * Starts the measurement of a whole clone.
+     * @return the event of the clone or null if it isn't recorded
+     */
+    Object cloneStarted() {
+        if (!isEventSupported || !CloneEvent.isRecorded()) {
+            return null;
+        }
+        CloneEvent event = new CloneEvent();
+        event.begin();
+        return event;
+    }
+
+    /**
+     * Reports the clone started by {@link #cloneStarted()}.
+     */
+    void cloneFinished(Object root, Object event, long start) {
+        long nanos = System.nanoTime() - start;
+        Class<?> rootType = root == null ? null : root.getClass();
+        long count;
+        int depthReached;
+        long bytes;
+        synchronized (this) {
+            count = objectCount + mergedObjectCount;
+            depthReached = Math.max(maxDepth, mergedMaxDepth);
+            bytes = estimatedBytes + mergedEstimatedBytes;
+        }
+        if (event != null) {
+            CloneEvent cloneEvent = (CloneEvent) event;
+            cloneEvent.end();
+            if (cloneEvent.shouldCommit()) {
+                cloneEvent.rootClass = rootType;
+                cloneEvent.objectCount = count;
+                cloneEvent.maxDepth = depthReached;
+                cloneEvent.estimatedBytes = bytes;
+                cloneEvent.commit();
+            }
+        }
+        if (instrumentation != null) {
+            instrumentation.cloneFinished(rootType, count, depthReached, bytes, nanos);
+        }
+    }
+
+}
@@ -0,0 +1,47 @@
+package utils;
+
+/**
+ * Cloner of instances of one exact class used by {@link CopyUtils} instead of reflection.
+ * <p>Cloners are found via {@link java.util.ServiceLoader}, implementations are generated by
+ * {@code processor.ClonerProcessor} for classes annotated with {@link annotation.GenerateCloner}.</p>
+ * @param <T> type of cloned objects
+ */
+public interface Cloner<T> {
+
+    /**
+     * @return exact class of objects cloned by the cloner
+     */
+    Class<T> getType();
+
+    /**
+     * Creates a deep copy of the object.
+     * @param original object to be copied
+     * @param context context of the current clone used to copy referenced objects
+     * @return copy of the object
+     * @throws IllegalAccessException if any referenced object can't be copied via reflection
+     */
+    T clone(T original, Context context) throws IllegalAccessException;
+
+    /**
+     * Context of one deep clone shared by all cloners taking part in it.
+     */
+    interface Context {
+
+        /**
+         * Deeply copies a referenced object or returns its already created copy, immutable objects are returned as is.
+         * @param value object to be copied, may be null
+         * @return copy of the object
+         * @throws IllegalAccessException if the object can't be copied via reflection
+         */
+        <V> V copy(V value) throws IllegalAccessException;
+
+        /**
+         * Registers the copy of an object before its fields are copied,
+         * so references back to the object are resolved to the copy.
+         * @param original copied object
+         * @param clone copy of the object
+         */
+        void register(Object original, Object clone);
+    }
+
+}
@@ -0,0 +1,63 @@
+package utils;
+
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+import java.util.ServiceLoader;
+
+/**
+ * Cloners registered via {@link ServiceLoader}, they are loaded once on the first lookup.
+ * <p>Built-in cloners of JDK classes which can't be created by the constructor rules are registered before them,
+ * so a registered cloner of the same class replaces the built-in one.</p>
+ */
+final class ClonerRegistry {
+
+    private ClonerRegistry() {
+    }
+
+    /**
+     * @return cloner of the exact class or null if there is no such cloner
+     */
+    static Cloner<Object> find(Class<?> type) {
+        return Holder.CLONERS.get(type);
+    }
+
+    private static final class Holder {
+
+        private static final Map<Class<?>, Cloner<Object>> CLONERS = load();
+
+        @SuppressWarnings("unchecked")
+        private static Map<Class<?>, Cloner<Object>> load() {
+            Map<Class<?>, Cloner<Object>> cloners = new HashMap<>();
+            cloners.put(Optional.class, (Cloner<Object>) (Cloner<?>) new OptionalCloner());
+            for (Cloner<?> cloner : ServiceLoader.load(Cloner.class)) {
+                cloners.put(cloner.getType(), (Cloner<Object>) cloner);
+            }
+            return cloners;
+        }
+    }
+
+    /**
+     * Copies the value of an optional, the optional is shared when its value is.
+     */
+    private static final class OptionalCloner implements Cloner<Optional<?>> {
+
+        @Override
+        public Class<Optional<?>> getType() {
+            return (Class<Optional<?>>) (Class<?>) Optional.class;
+        }
+
+        @Override
+        public Optional<?> clone(Optional<?> original, Context context) throws IllegalAccessException {
+            if (original.isEmpty()) {
+                return original;
+            }
+            Object value = original.get();
+            Object copy = context.copy(value);
+            Optional<?> clone = copy == value ? original : Optional.ofNullable(copy);
+            context.register(original, clone);
+            return clone;
+        }
+    }
+
+}
@@ -0,0 +1,411 @@
+package utils;
+
+import java.lang.reflect.Field;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.Collections;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.HashSet;
+import java.util.IdentityHashMap;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.LinkedList;
+import java.util.List;
+import java.util.Map;
+import java.util.Set;
+import java.util.SortedMap;
+import java.util.SortedSet;
+import java.util.TreeMap;
+import java.util.TreeSet;
+import java.util.concurrent.ConcurrentHashMap;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.IntFunction;
+
+/**
+ * Copier of one JDK collection or map class which replaces the generic constructor rules for it.
+ * <p>Mutable collections are created empty and sized for the original, then filled with copies of the elements
+ * by the copier. Immutable collections and unmodifiable views can't be filled, so they are built from the copies
+ * of all elements at once. A collection of immutable elements (e.g. strings) is copied as a whole by the copy
+ * constructor of its class, immutable collections of immutable elements are not copied at all.</p>
+ * <p>Copiers are registered for exact classes, subclasses are copied by the constructor rules as before.
+ * Comparators of sorted collections are shared with the copy and linked hash maps keep their access order,
+ * unmodifiable views get a new backing collection of a JDK class keeping the order of elements
+ * (e.g. {@link LinkedHashSet} for an unmodifiable set).</p>
+ */
+abstract class CollectionCopier {
+
+    private static final Map<Class<?>, CollectionCopier> COPIERS = new IdentityHashMap<>();
+    /**
+     * Access order flag of {@link LinkedHashMap}, null if {@code java.util} isn't open to the library.
+     */
+    private static final Field ACCESS_ORDER = accessOrderField();
+
+    static {
+        filled(ArrayList.class, list -> new ArrayList<>(list.size()), ArrayList::new, (argument, size) -> new ArrayList<>(size));
+        filled(LinkedList.class, list -> new LinkedList<>(), LinkedList::new, (argument, size) -> new LinkedList<>());
+        filled(ArrayDeque.class, deque -> new ArrayDeque<>(deque.size()), ArrayDeque::new, (argument, size) -> new ArrayDeque<>(size));
+        filled(HashSet.class, set -> new HashSet<>(capacity(set.size())), HashSet::new, (argument, size) -> new HashSet<>(capacity(size)));
+        filled(LinkedHashSet.class, set -> new LinkedHashSet<>(capacity(set.size())), LinkedHashSet::new,
+                (argument, size) -> new LinkedHashSet<>(capacity(size)));
+        filled(TreeSet.class, set -> new TreeSet<>(set.comparator()), set -> new TreeSet<>((SortedSet<Object>) set),
+                (comparator, size) -> new TreeSet<>((Comparator<Object>) comparator));
+        filledMap(HashMap.class, map -> new HashMap<>(capacity(map.size())), HashMap::new, (argument, size) -> new HashMap<>(capacity(size)));
+        filledMap(LinkedHashMap.class, map -> new LinkedHashMap<>(capacity(map.size()), 0.75f, isAccessOrdered(map)),
+                map -> (Map<Object, Object>) map.clone(),
+                (accessOrder, size) -> new LinkedHashMap<>(capacity(size), 0.75f, accessOrder == Boolean.TRUE));
+        filledMap(TreeMap.class, map -> new TreeMap<>(map.comparator()), map -> new TreeMap<>((SortedMap<Object, Object>) map),
+                (comparator, size) -> new TreeMap<>((Comparator<Object>) comparator));
+        filledMap(EnumMap.class, CollectionCopier::newEnumMap, EnumMap::new, (keyType, size) -> new EnumMap<>((Class<Enum>) keyType));
+        filledMap(ConcurrentHashMap.class, map -> new ConcurrentHashMap<>(capacity(map.size())), ConcurrentHashMap::new,
+                (argument, size) -> new ConcurrentHashMap<>(capacity(size)));
+
+        built(List.of().getClass(), (argument, copies) -> immutableList(copies), true);
+        built(List.of(1).getClass(), (argument, copies) -> immutableList(copies), true);
+        built(Set.of().getClass(), (argument, copies) -> immutableSet(copies), true);
+        built(Set.of(1).getClass(), (argument, copies) -> immutableSet(copies), true);
+        built(Collections.emptyList().getClass(), (argument, copies) -> Collections.emptyList(), true);
+        built(Collections.emptySet().getClass(), (argument, copies) -> Collections.emptySet(), true);
+        built(Collections.singletonList(1).getClass(),
+                (argument, copies) -> copies.length == 0 ? Collections.emptyList() : Collections.singletonList(copies[0]), true);
+        built(Collections.singleton(1).getClass(),
+                (argument, copies) -> copies.length == 0 ? Collections.emptySet() : Collections.singleton(copies[0]), true);
+        built(Arrays.asList().getClass(), (argument, copies) -> Arrays.asList(copies), false);
+        built(Collections.unmodifiableCollection(new ArrayList<>()).getClass(),
+                (argument, copies) -> Collections.unmodifiableCollection(new ArrayList<>(Arrays.asList(copies))), false);
+        built(Collections.unmodifiableList(new ArrayList<>()).getClass(),
+                (argument, copies) -> Collections.unmodifiableList(new ArrayList<>(Arrays.asList(copies))), false);
+        built(Collections.unmodifiableList(new LinkedList<>()).getClass(),
+                (argument, copies) -> Collections.unmodifiableList(new LinkedList<>(Arrays.asList(copies))), false);
+        built(Collections.unmodifiableSet(new HashSet<>()).getClass(),
+                (argument, copies) -> Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(copies))), false);
+        built(Collections.unmodifiableSortedSet(new TreeSet<>()).getClass(),
+                (comparator, copies) -> Collections.unmodifiableSortedSet(sortedSet((Comparator<Object>) comparator, copies)), false);
+        built(Collections.unmodifiableNavigableSet(new TreeSet<>()).getClass(),
+                (comparator, copies) -> Collections.unmodifiableNavigableSet(sortedSet((Comparator<Object>) comparator, copies)), false);
+
+        builtMap(Map.of().getClass(), (argument, copies) -> immutableMap(copies), true);
+        builtMap(Map.of(1, 1).getClass(), (argument, copies) -> immutableMap(copies), true);
+        builtMap(Collections.emptyMap().getClass(), (argument, copies) -> Collections.emptyMap(), true);
+        builtMap(Collections.singletonMap(1, 1).getClass(),
+                (argument, copies) -> copies.length == 0 ? Collections.emptyMap() : Collections.singletonMap(copies[0], copies[1]), true);
+        builtMap(Collections.unmodifiableMap(new HashMap<>()).getClass(),
+                (argument, copies) -> Collections.unmodifiableMap(fill(new LinkedHashMap<>(capacity(copies.length / 2)), copies)), false);
+        builtMap(Collections.unmodifiableSortedMap(new TreeMap<>()).getClass(),
+                (comparator, copies) -> Collections.unmodifiableSortedMap(fill(new TreeMap<>((Comparator<Object>) comparator), copies)), false);
+        builtMap(Collections.unmodifiableNavigableMap(new TreeMap<>()).getClass(),
+                (comparator, copies) -> Collections.unmodifiableNavigableMap(fill(new TreeMap<>((Comparator<Object>) comparator), copies)), false);
+
+        // lazy copies are copied eagerly as plain collections of the same kind
+        filledWrapper(LazyCopy.LazyCollection.class, size -> new ArrayList<>(size), ArrayList::new);
+        filledWrapper(LazyCopy.LazyList.class, size -> new ArrayList<>(size), ArrayList::new);
+        filledWrapper(LazyCopy.LazySet.class, size -> new LinkedHashSet<>(capacity(size)), LinkedHashSet::new);
+        COPIERS.put(LazyCopy.LazyMap.class, new FilledCopier(map -> new LinkedHashMap<>(capacity(((Map<?, ?>) map).size())),
+                map -> new LinkedHashMap<>((Map<?, ?>) map), (argument, size) -> new LinkedHashMap<>(capacity(size))));
+    }
+
+    /**
+     * @return copier of the exact class or null if the class is copied by the constructor rules
+     */
+    static CollectionCopier of(Class<?> type) {
+        return COPIERS.get(type);
+    }
+
+    /**
+     * @return value besides elements which a copy of the original is created with: the comparator of a sorted
+     *         collection or map, the key type of a non-empty enum map, true for a {@link LinkedHashMap} in access order,
+     *         null otherwise
+     */
+    static Object argumentOf(Object original) {
+        if (original.getClass() == LinkedHashMap.class) {
+            return isAccessOrdered((LinkedHashMap<?, ?>) original) ? Boolean.TRUE : null;
+        }
+        if (original instanceof SortedSet) {
+            return ((SortedSet<?>) original).comparator();
+        }
+        if (original instanceof SortedMap) {
+            return ((SortedMap<?, ?>) original).comparator();
+        }
+        if (original instanceof EnumMap && !((EnumMap<?, ?>) original).isEmpty()) {
+            return ((Enum<?>) ((EnumMap<?, ?>) original).keySet().iterator().next()).getDeclaringClass();
+        }
+        return null;
+    }
+
+    /**
+     * Copies the original with all its elements as they are, all of them are immutable.
+     */
+    abstract Object copyFlat(Object original);
+
+    /**
+     * @return elements of the collection or keys followed by their values for a map in the iteration order
+     */
+    static Object[] elements(Object original) {
+        if (original instanceof Collection) {
+            return ((Collection<?>) original).toArray();
+        }
+        Map<?, ?> map = (Map<?, ?>) original;
+        Object[] entries = new Object[map.size() * 2];
+        int i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            entries[i++] = entry.getKey();
+            entries[i++] = entry.getValue();
+        }
+        return entries;
+    }
+
+    /**
+     * @return true if all elements of the collection or all keys and values of the map are shared by copies as they are
+     */
+    static boolean hasOnlyImmutableElements(Object original) {
+        Class<?> lastImmutable = null;
+        if (original instanceof Collection) {
+            for (Object element : (Collection<?>) original) {
+                if (element != null && element.getClass() != lastImmutable) {
+                    if (!isImmutable(element)) {
+                        return false;
+                    }
+                    lastImmutable = element.getClass();
+                }
+            }
+            return true;
+        }
+        for (Map.Entry<?, ?> entry : ((Map<?, ?>) original).entrySet()) {
+            Object key = entry.getKey();
+            if (key != null && key.getClass() != lastImmutable) {
+                if (!isImmutable(key)) {
+                    return false;
+                }
+                lastImmutable = key.getClass();
+            }
+            Object value = entry.getValue();
+            if (value != null && value.getClass() != lastImmutable) {
+                if (!isImmutable(value)) {
+                    return false;
+                }
+                lastImmutable = value.getClass();
+            }
+        }
+        return true;
+    }
+
+    private static boolean isImmutable(Object object) {
+        return object instanceof Enum || ClassPlan.of(object.getClass()).isImmutable();
+    }
+
+    private static Field accessOrderField() {
+        try {
+            Field field = LinkedHashMap.class.getDeclaredField("accessOrder");
+            return field.trySetAccessible() ? field : null;
+        }
+        catch (NoSuchFieldException ex) {
+            return null;
+        }
+    }
+
+    /**
+     * @return true if the map orders its entries by access instead of insertion
+     */
+    private static boolean isAccessOrdered(LinkedHashMap<?, ?> map) {
+        if (ACCESS_ORDER != null) {
+            try {
+                return ACCESS_ORDER.getBoolean(map);
+            }
+            catch (IllegalAccessException ex) {
+                // probed below
+            }
+        }
+        // a shallow clone keeps the flag, so the order is probed on it without an access to the original
+        LinkedHashMap<Object, Object> probe = (LinkedHashMap<Object, Object>) map.clone();
+        probe.clear();
+        Object first = new Object();
+        probe.put(first, null);
+        probe.put(new Object(), null);
+        probe.get(first);
+        return probe.keySet().iterator().next() != first;
+    }
+
+    private static int capacity(int size) {
+        return (int) (size / 0.75f) + 1;
+    }
+
+    private static Map<Object, Object> newEnumMap(Map<Object, Object> map) {
+        // the copy constructor is the only way to get the key type of an empty map
+        EnumMap<?, Object> copy = new EnumMap<>((EnumMap<?, Object>) map);
+        copy.clear();
+        return (Map<Object, Object>) (Map<?, Object>) copy;
+    }
+
+    private static List<Object> immutableList(Object[] copies) {
+        if (containsNull(copies)) {
+            // lists collected by streams keep nulls, elements may be replaced with null too
+            return Collections.unmodifiableList(Arrays.asList(copies));
+        }
+        return List.of(copies);
+    }
+
+    private static Set<Object> immutableSet(Object[] copies) {
+        if (!containsNull(copies)) {
+            try {
+                return Set.of(copies);
+            }
+            catch (IllegalArgumentException ex) {
+                // copies of distinct elements are equal
+            }
+        }
+        return Collections.unmodifiableSet(new LinkedHashSet<>(Arrays.asList(copies)));
+    }
+
+    private static Map<Object, Object> immutableMap(Object[] copies) {
+        if (containsNull(copies)) {
+            return Collections.unmodifiableMap(fill(new LinkedHashMap<>(capacity(copies.length / 2)), copies));
+        }
+        Map.Entry<Object, Object>[] entries = new Map.Entry[copies.length / 2];
+        for (int i = 0; i < entries.length; i++) {
+            entries[i] = Map.entry(copies[2 * i], copies[2 * i + 1]);
+        }
+        try {
+            return Map.ofEntries(entries);
+        }
+        catch (IllegalArgumentException ex) {
+            // copies of distinct keys are equal
+            return Collections.unmodifiableMap(fill(new LinkedHashMap<>(capacity(entries.length)), copies));
+        }
+    }
+
+    private static boolean containsNull(Object[] copies) {
+        for (Object copy : copies) {
+            if (copy == null) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private static TreeSet<Object> sortedSet(Comparator<Object> comparator, Object[] copies) {
+        TreeSet<Object> set = new TreeSet<>(comparator);
+        set.addAll(Arrays.asList(copies));
+        return set;
+    }
+
+    private static <M extends Map<Object, Object>> M fill(M map, Object[] copies) {
+        for (int i = 0; i < copies.length; i += 2) {
+            map.put(copies[i], copies[i + 1]);
+        }
+        return map;
+    }
+
+    private static <C extends Collection<Object>> void filled(Class<C> type, Function<C, Collection<Object>> newInstance,
+                                                              Function<C, Collection<Object>> copyFlat, EmptyFactory newEmpty) {
+        COPIERS.put(type, new FilledCopier((Function<Object, Object>) (Object) newInstance, (Function<Object, Object>) (Object) copyFlat, newEmpty));
+    }
+
+    private static <M extends Map<Object, Object>> void filledMap(Class<M> type, Function<M, Map<Object, Object>> newInstance,
+                                                                 Function<M, Map<Object, Object>> copyFlat, EmptyFactory newEmpty) {
+        COPIERS.put(type, new FilledCopier((Function<Object, Object>) (Object) newInstance, (Function<Object, Object>) (Object) copyFlat, newEmpty));
+    }
+
+    private static void filledWrapper(Class<?> type, IntFunction<Collection<Object>> newInstance,
+                                      Function<Collection<Object>, Collection<Object>> copyFlat) {
+        COPIERS.put(type, new FilledCopier(collection -> newInstance.apply(((Collection<?>) collection).size()),
+                collection -> copyFlat.apply((Collection<Object>) collection), (argument, size) -> newInstance.apply(size)));
+    }
+
+    /**
+     * @param build creates the copy from the {@link #argumentOf argument} of the original and copies of elements
+     * @param isImmutable true if the class is immutable, so it's shared by copies when all elements are immutable
+     */
+    private static void built(Class<?> type, BiFunction<Object, Object[], Collection<Object>> build, boolean isImmutable) {
+        COPIERS.put(type, new BuiltCopier((BiFunction<Object, Object[], Object>) (Object) build, isImmutable));
+    }
+
+    private static void builtMap(Class<?> type, BiFunction<Object, Object[], Map<Object, Object>> build, boolean isImmutable) {
+        COPIERS.put(type, new BuiltCopier((BiFunction<Object, Object[], Object>) (Object) build, isImmutable));
+    }
+
+    /**
+     * Creates an empty collection or map from the {@link #argumentOf argument} of the original and the number of elements.
+     */
+    private interface EmptyFactory {
+
+        Object create(Object argument, int size);
+    }
+
+    /**
+     * Copier of a mutable class which copies are created empty and filled with copies of the elements.
+     */
+    static final class FilledCopier extends CollectionCopier {
+
+        private final Function<Object, Object> newInstance;
+        private final Function<Object, Object> copyFlat;
+        private final EmptyFactory newEmpty;
+
+        private FilledCopier(Function<Object, Object> newInstance, Function<Object, Object> copyFlat, EmptyFactory newEmpty) {
+            this.newInstance = newInstance;
+            this.copyFlat = copyFlat;
+            this.newEmpty = newEmpty;
+        }
+
+        /**
+         * Creates an empty copy sized for the elements of the original.
+         */
+        Object newInstance(Object original) {
+            return newInstance.apply(original);
+        }
+
+        /**
+         * Creates an empty collection or map of the class without an original, e.g. when a snapshot is materialized.
+         * @param argument {@link #argumentOf argument} of the original
+         * @param size number of elements or entries which will be added
+         */
+        Object newEmpty(Object argument, int size) {
+            return newEmpty.create(argument, size);
+        }
+
+        @Override
+        Object copyFlat(Object original) {
+            return copyFlat.apply(original);
+        }
+    }
+
+    /**
+     * Copier of an immutable class or an unmodifiable view which copies are built from the copies of all elements at once.
+     */
+    static final class BuiltCopier extends CollectionCopier {
+
+        private final BiFunction<Object, Object[], Object> build;
+        private final boolean isImmutable;
+
+        private BuiltCopier(BiFunction<Object, Object[], Object> build, boolean isImmutable) {
+            this.build = build;
+            this.isImmutable = isImmutable;
+        }
+
+        /**
+         * Creates a copy of the original containing the given copies of its elements,
+         * copies of map entries are given as keys followed by their values. Elements and entries left out
+         * by {@link CloneOptions} aren't given, so there may be fewer copies than elements.
+         */
+        Object build(Object original, Object[] copies) {
+            return build.apply(argumentOf(original), copies);
+        }
+
+        /**
+         * Creates a collection or map of the class from copies of elements without an original as {@link #build} does.
+         * @param argument {@link #argumentOf argument} of the original
+         */
+        Object restore(Object argument, Object[] copies) {
+            return build.apply(argument, copies);
+        }
+
+        @Override
+        Object copyFlat(Object original) {
+            return isImmutable ? original : build(original, elements(original));
+        }
+    }
+
+}
@@ -0,0 +1,58 @@
+package utils;
+
+/**
+ * Map of original objects to their copies compared by identity which can be shared by threads.
+ * <p>Mappings are spread over segments by {@link System#identityHashCode(Object)}, each segment is
+ * an {@link IdentityCloneMap} guarded by its own lock, so threads copying different objects rarely wait for each other.
+ * Null keys and values are not supported.</p>
+ */
+final class ConcurrentIdentityCloneMap {
+
+    private static final int MIN_SEGMENTS = 16;
+    private static final int MAX_SEGMENTS = 1 << 10;
+
+    private final IdentityCloneMap[] segments;
+    private final int shift;
+
+    /**
+     * @param concurrency expected number of threads using the map
+     */
+    ConcurrentIdentityCloneMap(int concurrency) {
+        int segmentCount = MIN_SEGMENTS;
+        while (segmentCount < MAX_SEGMENTS && segmentCount < concurrency * 4) {
+            segmentCount <<= 1;
+        }
+        segments = new IdentityCloneMap[segmentCount];
+        for (int i = 0; i < segmentCount; i++) {
+            segments[i] = new IdentityCloneMap(0);
+        }
+        shift = Integer.numberOfLeadingZeros(segmentCount) + 1;
+    }
+
+    /**
+     * @return copy of the object or null if there is no mapping for it
+     */
+    Object get(Object key) {
+        IdentityCloneMap segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.get(key);
+        }
+    }
+
+    /**
+     * Maps the object to its copy unless another thread has mapped it before.
+     * @return the copy mapped before or null if the given copy was mapped
+     */
+    Object putIfAbsent(Object key, Object value) {
+        IdentityCloneMap segment = segmentFor(key);
+        synchronized (segment) {
+            return segment.putIfAbsent(key, value);
+        }
+    }
+
+    private IdentityCloneMap segmentFor(Object key) {
+        // segments are selected by the high bits, the segment itself probes by the low ones
+        return segments[(System.identityHashCode(key) * 0x9E3779B9) >>> shift];
+    }
+
+}
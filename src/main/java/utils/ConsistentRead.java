@@ -0,0 +1,224 @@
+package utils;
+
+import annotation.CopyStamp;
+import exception.ObjectCannotBeClonedException;
+
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.ConcurrentModificationException;
+import java.util.Map;
+import java.util.concurrent.locks.StampedLock;
+
+/**
+ * Reads the state of objects of one class which other threads may change during a clone with consistent reads:
+ * each copied field and each field bound to a constructor parameter is read exactly once, so the copy is created
+ * and filled with the same values even if the original changes meanwhile.
+ * <p>An object guarded by a {@link CopyStamp} field is read as one state: between two reads of its version or within
+ * a validated optimistic read of its lock, retried if a writer interfered. Arrays and elements of JDK collections
+ * referenced by its fields are read in the same window, so state kept in them is as consistent as the fields are.
+ * A read failing with an exception within an optimistic window is retried too, as the state may be torn.</p>
+ * <p>Elements of other collections are read in one pass, a pass failing with {@link ConcurrentModificationException}
+ * is repeated.</p>
+ */
+final class ConsistentRead {
+
+    /**
+     * Number of optimistic reads of an object or of passes over a collection before the read gives up
+     * or takes the read lock.
+     */
+    static final int ATTEMPTS = 16;
+
+    private final ClassPlan plan;
+    private final ClassPlan.FieldPlan[] fields;
+    private final Field[] parameterFields;
+    /**
+     * Index of the field in {@link #fields} passed to each constructor parameter, -1 if it isn't copied.
+     */
+    private final int[] parameterIndexes;
+    private final Field stampField;
+    private final boolean isLock;
+
+    /**
+     * @param fields copied fields of the class, e.g. filtered by options
+     */
+    ConsistentRead(ClassPlan plan, ClassPlan.FieldPlan[] fields) {
+        this.plan = plan;
+        this.fields = fields;
+        this.parameterFields = plan.getParameterFields();
+        this.parameterIndexes = new int[parameterFields.length];
+        for (int i = 0; i < parameterFields.length; i++) {
+            parameterIndexes[i] = -1;
+            for (int j = 0; j < fields.length; j++) {
+                if (fields[j].getField().equals(parameterFields[i])) {
+                    parameterIndexes[i] = j;
+                    break;
+                }
+            }
+        }
+        this.stampField = plan.getStampField();
+        this.isLock = stampField != null && !stampField.getType().isPrimitive();
+    }
+
+    ClassPlan.FieldPlan[] getFields() {
+        return fields;
+    }
+
+    /**
+     * @return true if the class has a {@link CopyStamp} field, so contents of arrays and collections are read with the fields
+     */
+    boolean isStamped() {
+        return stampField != null;
+    }
+
+    /**
+     * Reads the object once.
+     * @param contents map which gets the contents read together with the fields of a stamped object:
+     *                 copies of arrays and elements of collections by the array or the collection
+     * @return values of the {@link #getFields() fields} followed by values of the constructor parameters
+     * @throws ObjectCannotBeClonedException if the version of the object stays odd or changes during all attempts
+     */
+    Object[] read(Object object, Map<Object, Object> contents) throws IllegalAccessException {
+        Object[] values = new Object[fields.length + parameterFields.length];
+        if (stampField == null) {
+            readFields(object, values);
+            return values;
+        }
+        Object[] fieldContents = new Object[fields.length];
+        if (isLock) {
+            StampedLock lock = (StampedLock) stampField.get(object);
+            if (lock == null) {
+                readFields(object, values);
+                return values;
+            }
+            for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+                long stamp = lock.tryOptimisticRead();
+                if (stamp != 0 && tryRead(object, values, fieldContents) && lock.validate(stamp)) {
+                    return withContents(values, fieldContents, contents);
+                }
+                Thread.onSpinWait();
+            }
+            long stamp = lock.readLock();
+            try {
+                readFields(object, values);
+                readContents(values, fieldContents);
+            }
+            finally {
+                lock.unlockRead(stamp);
+            }
+            return withContents(values, fieldContents, contents);
+        }
+        for (int attempt = 0; attempt < ATTEMPTS; attempt++) {
+            // the version is volatile, so its read is followed by the reads of the fields
+            long version = stampField.getLong(object);
+            if ((version & 1) != 0) {
+                // the writer may have been descheduled in the middle of the change
+                Thread.yield();
+                continue;
+            }
+            if (tryRead(object, values, fieldContents)) {
+                // the reads of the fields precede the second read of the version
+                VarHandle.acquireFence();
+                if (stampField.getLong(object) == version) {
+                    return withContents(values, fieldContents, contents);
+                }
+            }
+            Thread.onSpinWait();
+        }
+        throw new ObjectCannotBeClonedException("Object of class " + plan.getType().getName()
+                + " has been changed during " + ATTEMPTS + " attempts to read it");
+    }
+
+    /**
+     * Reads the fields and contents within an optimistic window.
+     * @return false if the state read is torn, so reading it failed
+     */
+    private boolean tryRead(Object object, Object[] values, Object[] fieldContents) throws IllegalAccessException {
+        try {
+            readFields(object, values);
+            readContents(values, fieldContents);
+            return true;
+        }
+        catch (RuntimeException ex) {
+            // e.g. a collection changed while its elements were read, the window isn't valid anyway
+            return false;
+        }
+    }
+
+    private void readFields(Object object, Object[] values) throws IllegalAccessException {
+        for (int i = 0; i < fields.length; i++) {
+            values[i] = fields[i].getAccessor().get(object);
+        }
+        for (int i = 0; i < parameterFields.length; i++) {
+            int index = parameterIndexes[i];
+            values[fields.length + i] = index >= 0 ? values[index] : parameterFields[i].get(object);
+        }
+    }
+
+    private void readContents(Object[] values, Object[] fieldContents) {
+        for (int i = 0; i < fields.length; i++) {
+            ClassPlan.FieldKind kind = fields[i].getKind();
+            Object value = values[i];
+            fieldContents[i] = null;
+            if (value == null || kind == ClassPlan.FieldKind.PRIMITIVE || kind == ClassPlan.FieldKind.IMMUTABLE) {
+                continue;
+            }
+            if (value.getClass().isArray()) {
+                fieldContents[i] = ClassPlan.of(value.getClass()).copyFlatArray(value);
+            }
+            else if (CollectionCopier.of(value.getClass()) != null) {
+                fieldContents[i] = elements(value);
+            }
+        }
+    }
+
+    private static Object[] withContents(Object[] values, Object[] fieldContents, Map<Object, Object> contents) {
+        for (int i = 0; i < fieldContents.length; i++) {
+            if (fieldContents[i] != null) {
+                contents.put(values[i], fieldContents[i]);
+            }
+        }
+        return values;
+    }
+
+    /**
+     * Reads elements of a collection or a map in one pass, repeated if the collection is changed during the pass.
+     * @return elements of the collection or keys followed by their values for a map in the iteration order
+     * @throws ObjectCannotBeClonedException if the collection is changed during all passes
+     */
+    static Object[] readElements(Object container) {
+        for (int attempt = 1; ; attempt++) {
+            try {
+                return elements(container);
+            }
+            catch (ConcurrentModificationException ex) {
+                if (attempt == ATTEMPTS) {
+                    throw new ObjectCannotBeClonedException("Collection of class " + container.getClass().getName()
+                            + " has been changed during " + ATTEMPTS + " attempts to read it", ex);
+                }
+            }
+        }
+    }
+
+    /**
+     * Reads elements as {@link CollectionCopier#elements(Object)} does, a map may get entries during the pass.
+     */
+    private static Object[] elements(Object container) {
+        if (container instanceof Collection) {
+            return ((Collection<?>) container).toArray();
+        }
+        Map<?, ?> map = (Map<?, ?>) container;
+        Object[] entries = new Object[map.size() * 2];
+        int i = 0;
+        for (Map.Entry<?, ?> entry : map.entrySet()) {
+            if (i == entries.length) {
+                entries = Arrays.copyOf(entries, Math.max(2, 2 * i));
+            }
+            entries[i++] = entry.getKey();
+            entries[i++] = entry.getValue();
+        }
+        return i == entries.length ? entries : Arrays.copyOf(entries, i);
+    }
+
+}
@@ -0,0 +1,202 @@
+package utils;
+
+import annotation.CopyConstructor;
+import annotation.CopyFieldName;
+import exception.ObjectCannotBeClonedException;
+
+import java.lang.annotation.Annotation;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.List;
+
+/**
+ * Factory of {@link Instantiator#constructorRules()}: the public constructor selected by the {@link CopyConstructor}
+ * rules called with the values of the fields bound to its parameters. Records are created by their canonical
+ * constructor which parameters are bound to the fields of the components.
+ */
+final class ConstructorFactory implements Instantiator.Factory {
+
+    private static final Object[] NO_PARAMETERS = new Object[0];
+
+    private final Constructor<?> constructor;
+    private final Field[] parameterFields;
+
+    private ConstructorFactory(Constructor<?> constructor, Field[] parameterFields) {
+        this.constructor = constructor;
+        this.parameterFields = parameterFields;
+    }
+
+    /**
+     * Selects the constructor of the class and binds its parameters to fields.
+     * @throws ObjectCannotBeClonedException if the constructor or a parameter field is ambiguous
+     */
+    static ConstructorFactory resolve(Class<?> type) {
+        if (Records.isRecord(type)) {
+            return resolveCanonical(type);
+        }
+        Constructor<?> constructor = findConstructor(type);
+        return new ConstructorFactory(constructor, resolveParameterFields(type, constructor));
+    }
+
+    Constructor<?> getConstructor() {
+        return constructor;
+    }
+
+    /**
+     * @return fields which values are passed to the constructor parameters in the order of parameters
+     */
+    Field[] getParameterFields() {
+        return parameterFields;
+    }
+
+    @Override
+    public Object newInstance(Object original) throws ReflectiveOperationException {
+        return newInstance(original, null);
+    }
+
+    /**
+     * Creates a new instance passing values of bound fields of the original object.
+     * @param parameters array of {@link #getParameterFields()} length used for the parameters and cleared afterwards,
+     *                   null to use a new one
+     */
+    Object newInstance(Object original, Object[] parameters) throws InvocationTargetException, InstantiationException, IllegalAccessException {
+        if (parameterFields.length == 0) {
+            return constructor.newInstance(NO_PARAMETERS);
+        }
+        if (parameters == null) {
+            parameters = new Object[parameterFields.length];
+        }
+        try {
+            for (int i = 0; i < parameterFields.length; i++) {
+                parameters[i] = parameterFields[i].get(original);
+            }
+            return constructor.newInstance(parameters);
+        }
+        finally {
+            // the reused array doesn't keep originals reachable
+            Arrays.fill(parameters, null);
+        }
+    }
+
+    /**
+     * Creates a new instance passing the given values instead of values read from an original,
+     * e.g. values of a snapshot.
+     * @param parameters values in the order of {@link #getParameterFields()}
+     */
+    Object newInstanceWith(Object[] parameters) throws InvocationTargetException, InstantiationException, IllegalAccessException {
+        return constructor.newInstance(parameters);
+    }
+
+    /**
+     * Binds the parameters of the canonical constructor of a record to the fields of its components by name,
+     * so components of the same type aren't ambiguous.
+     */
+    private static ConstructorFactory resolveCanonical(Class<?> type) {
+        Method[] accessors = Records.accessors(type);
+        Class<?>[] parameterTypes = new Class<?>[accessors.length];
+        Field[] parameterFields = new Field[accessors.length];
+        try {
+            for (int i = 0; i < accessors.length; i++) {
+                parameterTypes[i] = accessors[i].getReturnType();
+                parameterFields[i] = type.getDeclaredField(accessors[i].getName());
+                ClassPlan.makeAccessible(type, parameterFields[i]);
+            }
+            Constructor<?> constructor = type.getDeclaredConstructor(parameterTypes);
+            constructor.setAccessible(true);
+            return new ConstructorFactory(constructor, parameterFields);
+        }
+        catch (NoSuchFieldException | NoSuchMethodException | RuntimeException ex) {
+            throw new ObjectCannotBeClonedException("Canonical constructor of record " + type.getName() + " can not be accessed", ex);
+        }
+    }
+
+    private static Constructor<?> findConstructor(Class<?> type) {
+        List<Constructor<?>> constructorList = new ArrayList<>();
+        for (Constructor<?> c : type.getDeclaredConstructors()) {
+            if (Modifier.isPublic(c.getModifiers())) {
+                constructorList.add(c);
+            }
+        }
+        if (constructorList.size() == 1) {
+            return constructorList.get(0);
+        }
+        Constructor<?> copyConstructor = null;
+        for (Constructor<?> c : constructorList) {
+            if (c.getAnnotation(CopyConstructor.class) != null) {
+                if (copyConstructor != null) {
+                    throw new ObjectCannotBeClonedException(
+                            "Ambiguous constructor: there are more then 1 constructor with CopyConstructor annotation");
+                }
+                copyConstructor = c;
+            }
+        }
+        if (copyConstructor != null) {
+            return copyConstructor;
+        }
+        for (Constructor<?> c : constructorList) {
+            if (c.getParameterCount() == 0) {
+                return c;
+            }
+        }
+        throw new ObjectCannotBeClonedException(
+                "Ambiguous constructor: for class " + type.getName() + " there are more than 1 constructor and there is neither empty constructor nor constructor annotated CopyConstructor");
+    }
+
+    private static Field[] resolveParameterFields(Class<?> type, Constructor<?> constructor) {
+        List<Class<?>> hierarchy = ClassPlan.hierarchyOf(type);
+        Class<?>[] parameterTypes = constructor.getParameterTypes();
+        Annotation[][] parameterAnnotations = constructor.getParameterAnnotations();
+        Field[] result = new Field[parameterTypes.length];
+
+        for (int i = 0; i < parameterTypes.length; i++) {
+            CopyFieldName copyAnnotation = null;
+            for (Annotation annotation : parameterAnnotations[i]) {
+                if (CopyFieldName.class.equals(annotation.annotationType())) {
+                    copyAnnotation = (CopyFieldName) annotation;
+                    break;
+                }
+            }
+            Field parameterField = null;
+            if (copyAnnotation != null) {
+                // a field hides fields with the same name of its superclasses
+                for (int level = 0; level < hierarchy.size() && parameterField == null; level++) {
+                    for (Field f : ClassPlan.instanceFields(hierarchy.get(level))) {
+                        if (f.getName().equals(copyAnnotation.value())) {
+                            parameterField = f;
+                            break;
+                        }
+                    }
+                }
+                if (parameterField == null) {
+                    throw new ObjectCannotBeClonedException(
+                            "Field with name " + copyAnnotation.value() + " can not be found for class " + type.getName());
+                }
+            }
+            else {
+                // the nearest class declaring fields of the parameter type has to declare exactly one of them
+                int sameTypeCount = 0;
+                for (int level = 0; level < hierarchy.size() && sameTypeCount == 0; level++) {
+                    for (Field f : ClassPlan.instanceFields(hierarchy.get(level))) {
+                        if (f.getType().equals(parameterTypes[i])) {
+                            parameterField = f;
+                            sameTypeCount++;
+                        }
+                    }
+                }
+                if (sameTypeCount != 1) {
+                    throw new ObjectCannotBeClonedException(
+                            "Ambiguous constructor field: " + i + "(" + parameterTypes[i].getName() + ") for class " + type.getName());
+                }
+            }
+            ClassPlan.makeAccessible(type, parameterField);
+            result[i] = parameterField;
+        }
+        return result;
+    }
+
+}
@@ -0,0 +1,1462 @@
+package utils;
+
+import exception.CloneBudgetExceededException;
+import exception.ObjectCannotBeClonedException;
+
+import java.util.AbstractMap;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.Iterator;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * State of one deep clone: copies of already visited objects and the way the graph is traversed.
+ * <p>The recursive traversal copies every referenced object in a nested call, so its depth is limited by the thread stack.
+ * The iterative traversal keeps the same steps in frames of an explicit stack: a frame stops at the field,
+ * element or entry which value has to be copied, the copy is started in a new frame on top of it and
+ * the result is given back to the frame once the new frame is done. So objects are created, filled
+ * and added to collections in the same order as by the recursive traversal and depth is limited only by heap.</p>
+ * <p>Arrays of primitives and immutable objects are copied as a whole, elements of other arrays are copied
+ * like field values, so multi-dimensional arrays are copied level by level. Arrays are tracked like other objects,
+ * so an array referenced twice or containing itself is copied once.</p>
+ * <p>The iterative traversal still recurses for the first {@value #RECURSION_LIMIT} levels of the graph,
+ * so shallow graphs are copied as fast as by the recursive traversal, only deeper levels are copied via frames.
+ * Registered {@link Cloner cloners} copy nested values synchronously, so each of them adds a nested drive of frames.</p>
+ * <p>Copies are looked up and registered via {@link #lookup} and {@link #claim} and elements of collections, maps
+ * and arrays are copied via {@link #copyElements}, {@link #copyEntries} and {@link #copyArrayElements}, so a subclass can share the visited objects
+ * with other copiers and split the copy of large collections.</p>
+ * <p>A lazy copier gives fields declared as {@code Collection}, {@code List}, {@code Set} or {@code Map}
+ * a {@link LazyCopy lazy copy} of their value instead of copying it, values of other fields are copied as usual.</p>
+ * <p>While a {@link CloneInstrumentation} is installed or the clone event is recorded, the copier has a {@link CloneTrace}
+ * and each new copy is started and ended in it, otherwise the trace is null and nothing is measured.</p>
+ * <p>A copier with {@link CloneOptions} checks each value which isn't copied yet against the bounds and policies
+ * of the options: the value is copied, shared or left out. The level of a value is the number of nested copies
+ * it's reached in, frames count as levels of the iterative traversal. Left out elements and entries are
+ * omitted from copies of collections and maps, left out field values and array elements become null.
+ * Copies counted against a budget of the options are estimated when they're counted, before they're created.</p>
+ * <p>A copier of an async clone passes its {@link AsyncCloner.Checkpoint} each time it registers a copy.</p>
+ * <p>Records are created by their canonical constructor from the copies of their components, so a record is
+ * registered only when it's created, like a collection built from its elements.</p>
+ * <p>With consistent reads the fields of an object are read at once by its {@link ConsistentRead} before the copy
+ * is created, so the constructor and the copied fields get the same values, and elements of JDK collections
+ * are read in one pass before they are copied. Generated cloners read fields on their own, so they aren't used then.</p>
+ */
+class Copier implements Cloner.Context {
+
+    private static final Object PENDING = new Object();
+    private static final Object SKIPPED = new Object();
+    private static final int RECURSION_LIMIT = 256;
+
+    private final IdentityCloneMap oldToNewObjects;
+    private boolean isReplaceNonCopiedWithNull;
+    private boolean isUseGeneratedCloners;
+    private ArrayDeque<Frame> frames;
+    private Object[][] parameterBuffers;
+    private int depth;
+    private int baseDepth;
+    private CloneOptions options;
+    private boolean isConsistent;
+    /**
+     * Contents of arrays and collections read together with the fields of stamped objects, by the array or the collection.
+     */
+    private IdentityHashMap<Object, Object> readContents;
+    private int copyCount;
+    /**
+     * Estimated memory taken by the copies counted by {@link #copyCount}, summed only if the options have a budget.
+     */
+    private long copiedBytes;
+    private boolean isLazy;
+    private boolean hasLazyCopies;
+    private IdentityHashMap<Object, Object> sourceWrappers;
+    private CloneTrace trace;
+    private AsyncCloner.Checkpoint checkpoint;
+
+    Copier(boolean isReplaceNonCopiedWithNull, IdentityCloneMap oldToNewObjects, boolean isUseGeneratedCloners, boolean isIterative) {
+        this.isReplaceNonCopiedWithNull = isReplaceNonCopiedWithNull;
+        this.oldToNewObjects = oldToNewObjects;
+        this.isUseGeneratedCloners = isUseGeneratedCloners;
+        this.frames = isIterative ? new ArrayDeque<>() : null;
+        this.depth = isIterative ? 0 : Integer.MIN_VALUE;
+        this.baseDepth = depth;
+        this.trace = CloneTrace.create();
+    }
+
+    /**
+     * Creates an iterative copier continuing the copy of another one at the given depth,
+     * so nested copiers together recurse no deeper than one copier does.
+     */
+    Copier(boolean isReplaceNonCopiedWithNull, IdentityCloneMap oldToNewObjects, boolean isUseGeneratedCloners, int depth) {
+        this(isReplaceNonCopiedWithNull, oldToNewObjects, isUseGeneratedCloners, true);
+        this.depth = depth;
+    }
+
+    /**
+     * Prepares the copier for the next clone with new options, the visited objects of its map are cleared by the owner
+     * of the map. Frames and constructor parameter buffers are kept, so a copier reused for clones of similar graphs
+     * allocates nothing but the copies.
+     */
+    void reset(boolean isReplaceNonCopiedWithNull, boolean isUseGeneratedCloners, boolean isIterative) {
+        this.isReplaceNonCopiedWithNull = isReplaceNonCopiedWithNull;
+        this.isUseGeneratedCloners = isUseGeneratedCloners;
+        if (isIterative) {
+            if (frames == null) {
+                frames = new ArrayDeque<>();
+            }
+            // frames of a failed clone are dropped
+            frames.clear();
+        }
+        else {
+            frames = null;
+        }
+        this.depth = isIterative ? 0 : Integer.MIN_VALUE;
+        this.baseDepth = depth;
+        this.options = null;
+        this.isConsistent = false;
+        this.readContents = null;
+        this.copyCount = 0;
+        this.copiedBytes = 0;
+        this.isLazy = false;
+        this.hasLazyCopies = false;
+        this.sourceWrappers = null;
+        this.trace = CloneTrace.create();
+        this.checkpoint = null;
+    }
+
+    /**
+     * Bounds the copy by the options, must be called before the copy.
+     * Generated cloners copy all fields, so they aren't used if the options filter fields or read them consistently.
+     */
+    void setOptions(CloneOptions options) {
+        this.options = options;
+        this.isConsistent = options.isConsistentReads();
+        if (options.hasFieldFilter() || isConsistent) {
+            this.isUseGeneratedCloners = false;
+        }
+    }
+
+    /**
+     * Makes the copier pass the checkpoint of an async clone before it registers each new copy,
+     * must be called before the copy.
+     */
+    void setCheckpoint(AsyncCloner.Checkpoint checkpoint) {
+        this.checkpoint = checkpoint;
+    }
+
+    /**
+     * Starts counting copies from zero, e.g. before the next independent element of a batch.
+     */
+    void resetCopyCount() {
+        this.copyCount = 0;
+        this.copiedBytes = 0;
+    }
+
+    /**
+     * Makes the copier give lazy copies to collection and map fields, must be called before the copy.
+     * @param isTrackSource true if such fields of originals are replaced with source wrappers, so writes via them are tracked
+     */
+    void setLazy(boolean isTrackSource) {
+        this.isLazy = true;
+        this.sourceWrappers = isTrackSource ? new IdentityHashMap<>() : null;
+    }
+
+    /**
+     * Deeply copies the object with the traversal selected for the copier, the clone is reported as a whole
+     * if the copier has a trace.
+     */
+    <T> T clone(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        if (trace == null) {
+            return copyRoot(object);
+        }
+        Object event = trace.cloneStarted();
+        long start = System.nanoTime();
+        try {
+            return copyRoot(object);
+        }
+        finally {
+            trace.cloneFinished(object, event, start);
+        }
+    }
+
+    /**
+     * Copies the root object of a clone, a subclass may start the copy elsewhere (e.g. in a pool).
+     */
+    <T> T copyRoot(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return deepCopy(object);
+    }
+
+    /**
+     * @return trace of the copier or null if nothing is measured
+     */
+    CloneTrace getTrace() {
+        return trace;
+    }
+
+    void setTrace(CloneTrace trace) {
+        this.trace = trace;
+    }
+
+    <T> T deepCopy(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        if (object == null) {
+            return null;
+        }
+        if (depth >= RECURSION_LIMIT) {
+            return (T) copyIteratively(object, false);
+        }
+        Object copied = lookup(object);
+        if (copied != null) {
+            return (T) copied;
+        }
+        ClassPlan plan = ClassPlan.of(object.getClass());
+        if (object instanceof Enum || plan.isImmutable()) {
+            return object;
+        }
+        if (options != null) {
+            Object bounded = bound(object);
+            if (bounded != null) {
+                return bounded == SKIPPED ? null : (T) bounded;
+            }
+        }
+        if (trace == null) {
+            return (T) copyObject(object, plan);
+        }
+        long start = trace.enter();
+        Object copy = null;
+        try {
+            copy = copyObject(object, plan);
+            return (T) copy;
+        }
+        finally {
+            trace.exit(copy == null || copy == object ? null : object, start);
+        }
+    }
+
+    /**
+     * Copies an object which isn't copied yet and isn't shared with the copy.
+     */
+    private Object copyObject(Object object, ClassPlan plan) throws ObjectCannotBeClonedException, IllegalAccessException {
+        if (plan.isArray()) {
+            return getCopiedArray(object, plan);
+        }
+        if (plan.getCollectionCopier() != null) {
+            return (object instanceof Map ? copyMap((Map<Object, Object>) object, plan) : copyCollection((Collection<Object>) object, plan));
+        }
+        Cloner<Object> registeredCloner = ClonerRegistry.find(object.getClass());
+        if (registeredCloner != null) {
+            // values copied by the cloner are nested in the object
+            depth++;
+            try {
+                return registeredCloner.clone(object, this);
+            }
+            finally {
+                depth--;
+            }
+        }
+        RecordPlan recordPlan = plan.getRecordPlan();
+        if (recordPlan != null) {
+            return copyRecord(object, plan, recordPlan);
+        }
+        if (isConsistent) {
+            return copyConsistently(object, plan);
+        }
+        GeneratedCloner cloner = isUseGeneratedCloners ? plan.getGeneratedCloner() : null;
+
+        Object clone = createClone(object, plan, cloner);
+        if (isReplaceNonCopiedWithNull && clone == null) {
+            return null;
+        }
+        Object claimed = claim(object, clone);
+        if (claimed != clone) {
+            return claimed;
+        }
+
+        depth++;
+        try {
+            if (cloner != null) {
+                setFieldsForClone(object, clone, cloner);
+            }
+            else {
+                setFieldsForClone(object, clone, plan);
+            }
+        }
+        finally {
+            depth--;
+        }
+
+        return clone;
+    }
+
+    /**
+     * Copies a record from the copies of its components, the copy is registered once it's created.
+     */
+    private Object copyRecord(Object record, ClassPlan plan, RecordPlan recordPlan) throws ObjectCannotBeClonedException, IllegalAccessException {
+        Object[] components = recordPlan.components(record);
+        ClassPlan.FieldPlan[] copiedFields = copiedRecordFields(plan);
+        depth++;
+        try {
+            for (int i = 0; i < components.length; i++) {
+                if (components[i] != null && (copiedFields == null || recordPlan.isCopied(i, copiedFields))) {
+                    components[i] = copyFieldValue(recordPlan.getKind(i), components[i]);
+                }
+            }
+        }
+        finally {
+            depth--;
+        }
+        Object clone = createRecord(record, recordPlan, components);
+        return clone == null ? null : claim(record, clone);
+    }
+
+    /**
+     * @return fields of the record kept by the options, null if all components are copied
+     */
+    private ClassPlan.FieldPlan[] copiedRecordFields(ClassPlan plan) {
+        return options != null && options.hasFieldFilter() ? options.fieldsOf(plan) : null;
+    }
+
+    /**
+     * @return the record or null if it can't be created and non-copied objects are replaced with null
+     */
+    private Object createRecord(Object record, RecordPlan recordPlan, Object[] components) throws ObjectCannotBeClonedException {
+        try {
+            return recordPlan.newInstance(components);
+        }
+        catch (Exception ex) {
+            return notCreated(record, ex);
+        }
+    }
+
+    /**
+     * Copies an object from the values of its fields read at once.
+     */
+    private Object copyConsistently(Object object, ClassPlan plan) throws ObjectCannotBeClonedException, IllegalAccessException {
+        ConsistentRead read = plan.getConsistentRead(options.fieldsOf(plan));
+        Object[] values = read.read(object, read.isStamped() ? readContents() : null);
+        Object clone = createClone(object, plan, values, read.getFields().length);
+        if (isReplaceNonCopiedWithNull && clone == null) {
+            return null;
+        }
+        Object claimed = claim(object, clone);
+        if (claimed != clone) {
+            return claimed;
+        }
+
+        depth++;
+        try {
+            ClassPlan.FieldPlan[] fields = read.getFields();
+            for (int i = 0; i < fields.length; i++) {
+                Object value = values[i];
+                ClassPlan.FieldKind kind = fields[i].getKind();
+                fields[i].getAccessor().set(clone, value == null || kind == ClassPlan.FieldKind.PRIMITIVE ? value : copyFieldValue(kind, value));
+            }
+        }
+        finally {
+            depth--;
+        }
+        return clone;
+    }
+
+    private IdentityHashMap<Object, Object> readContents() {
+        if (readContents == null) {
+            readContents = new IdentityHashMap<>();
+        }
+        return readContents;
+    }
+
+    /**
+     * @return contents of the array or the collection read with the fields of a stamped object, null if there are none
+     */
+    private Object takeReadContents(Object value) {
+        return readContents == null ? null : readContents.remove(value);
+    }
+
+    /**
+     * @return elements of the collection or keys followed by their values for a map read at once
+     */
+    private Object[] readElements(Object container) {
+        Object contents = takeReadContents(container);
+        return contents != null ? (Object[]) contents : ConsistentRead.readElements(container);
+    }
+
+    @Override
+    public <V> V copy(V value) throws IllegalAccessException {
+        if (value == null) {
+            return null;
+        }
+        return (V) copyFieldValue(ClassPlan.FieldKind.NESTED, value);
+    }
+
+    @Override
+    public void register(Object original, Object clone) {
+        claim(original, clone);
+    }
+
+    /**
+     * @return number of nested copies the copier is in, the recursion of iterative copiers is limited by it
+     */
+    int getDepth() {
+        return depth;
+    }
+
+    /**
+     * @return copy of the object or null if it isn't copied yet
+     */
+    Object lookup(Object original) {
+        return oldToNewObjects.get(original);
+    }
+
+    /**
+     * Registers the new copy of the object, the copier which registered a copy is the only one filling it.
+     * @return the given copy or the copy registered before by another copier
+     * @throws java.util.concurrent.CancellationException if the async clone of the copier is cancelled
+     */
+    Object claim(Object original, Object clone) {
+        if (checkpoint != null) {
+            checkpoint.reached();
+        }
+        Object claimed = oldToNewObjects.putIfAbsent(original, clone);
+        return claimed == null ? clone : claimed;
+    }
+
+    /**
+     * Checks a mutable value which isn't copied yet against the options of the copier, a value passing the check
+     * is counted as a copy.
+     * @return null if the value is copied, the value itself if it's shared or {@link #SKIPPED} if it's left out
+     * @throws CloneBudgetExceededException if the copy of the value exceeds a budget of the options
+     */
+    private Object bound(Object value) {
+        CopyPolicy policy = options.policyOf(value.getClass());
+        if (policy == CopyPolicy.SKIP) {
+            return SKIPPED;
+        }
+        if (policy == CopyPolicy.SHALLOW || depth - baseDepth >= options.getMaxDepth() || copyCount >= options.getMaxObjectCount()) {
+            return value;
+        }
+        copyCount++;
+        if (options.hasBudget()) {
+            copiedBytes += ClassPlan.of(value.getClass()).estimateCopySize(value);
+            if (copyCount > options.getObjectBudget() || copiedBytes > options.getMemoryBudget()) {
+                throw new CloneBudgetExceededException(copyCount, copiedBytes, options.getObjectBudget(), options.getMemoryBudget());
+            }
+        }
+        return null;
+    }
+
+    /**
+     * @return true if the element or the entry part is left out of the copy by the options
+     */
+    private boolean isSkipped(Object value) {
+        if (options == null || value == null || value instanceof Enum
+                || options.policyOf(value.getClass()) != CopyPolicy.SKIP) {
+            return false;
+        }
+        return !ClassPlan.of(value.getClass()).isImmutable();
+    }
+
+    /**
+     * Adds copies of all elements of the collection to its empty copy.
+     */
+    void copyElements(Collection<Object> collection, Collection<Object> newCollection) throws IllegalAccessException {
+        depth++;
+        try {
+            for (Object o : collection) {
+                if (isSkipped(o)) {
+                    continue;
+                }
+                newCollection.add(deepCopy(o));
+            }
+        }
+        finally {
+            depth--;
+        }
+    }
+
+    /**
+     * Sets copies of all elements of the array to its copy of the same length.
+     */
+    void copyArrayElements(Object[] array, Object[] newArray) throws IllegalAccessException {
+        depth++;
+        try {
+            for (int i = 0; i < array.length; i++) {
+                Object element = array[i];
+                newArray[i] = element == null ? null : copyFieldValue(ClassPlan.FieldKind.NESTED, element);
+            }
+        }
+        finally {
+            depth--;
+        }
+    }
+
+    /**
+     * Puts copies of all entries of the map to its empty copy.
+     */
+    void copyEntries(Map<Object, Object> map, Map<Object, Object> newMap) throws IllegalAccessException {
+        depth++;
+        try {
+            for (Map.Entry<Object, Object> o : map.entrySet()) {
+                if (isSkipped(o.getKey()) || isSkipped(o.getValue())) {
+                    continue;
+                }
+                newMap.put(deepCopy(o.getKey()), deepCopy(o.getValue()));
+            }
+        }
+        finally {
+            depth--;
+        }
+    }
+
+    private void setFieldsForClone(Object object, Object clone, ClassPlan plan) throws IllegalAccessException {
+        for (ClassPlan.FieldPlan fieldPlan : options == null ? plan.getFields() : options.fieldsOf(plan)) {
+            FieldAccessor accessor = fieldPlan.getAccessor();
+            if (fieldPlan.getKind() == ClassPlan.FieldKind.PRIMITIVE) {
+                accessor.copy(object, clone);
+                continue;
+            }
+            Object value = accessor.get(object);
+            if (isLazy && value != null && fieldPlan.isLazyCopyable()) {
+                accessor.set(clone, copyLazily(value));
+                Object sourceWrapper = sourceWrappers == null ? null : sourceWrappers.get(value);
+                if (sourceWrapper != null) {
+                    accessor.set(object, sourceWrapper);
+                }
+                continue;
+            }
+            accessor.set(clone, value == null ? null : copyFieldValue(fieldPlan.getKind(), value));
+        }
+    }
+
+    private void setFieldsForClone(Object object, Object clone, GeneratedCloner cloner) throws IllegalAccessException {
+        cloner.copyFlatFields(object, clone);
+        ClassPlan.FieldPlan[] referenceFields = cloner.getReferenceFields();
+        for (int i = 0; i < referenceFields.length; i++) {
+            Object value = cloner.getReference(i, object);
+            if (isLazy && value != null && referenceFields[i].isLazyCopyable()) {
+                cloner.setReference(i, clone, copyLazily(value));
+                Object sourceWrapper = sourceWrappers == null ? null : sourceWrappers.get(value);
+                if (sourceWrapper != null) {
+                    cloner.setReference(i, object, sourceWrapper);
+                }
+                continue;
+            }
+            cloner.setReference(i, clone, value == null ? null : copyFieldValue(referenceFields[i].getKind(), value));
+        }
+    }
+
+    /**
+     * Gives the collection or the map a lazy copy reading it, the lazy copy is registered as its copy,
+     * so other references to it get the same lazy copy. With tracking the source wrapper of the value
+     * is kept for all fields referencing it.
+     */
+    private Object copyLazily(Object value) {
+        Object copied = lookup(value);
+        if (copied != null) {
+            return copied;
+        }
+        LazyCopy lazyCopy = LazyCopy.of(value);
+        if (sourceWrappers != null && !LazyCopy.isTracked(value)) {
+            sourceWrappers.put(value, lazyCopy.newSource());
+        }
+        hasLazyCopies = true;
+        return claim(value, lazyCopy.newCopy(this));
+    }
+
+    /**
+     * @return true if the copier gave lazy copies to some fields, so its copies are kept for their materialization
+     */
+    boolean hasLazyCopies() {
+        return hasLazyCopies;
+    }
+
+    /**
+     * Deeply copies the collection or the map of a lazy copy made by this copier once the clone is done.
+     * <p>The value is mapped to its lazy copy, so the value itself is copied again, but all objects copied
+     * by the clone before are taken from it, and objects copied now are registered for the following materializations.
+     * The copy is iterative, it can be started by any read deep in the code using the clone.</p>
+     */
+    Object copyLazyValue(Object value) throws IllegalAccessException {
+        Copier copier = new Copier(isReplaceNonCopiedWithNull, oldToNewObjects, isUseGeneratedCloners, true) {
+
+            private Object valueCopy;
+
+            @Override
+            Object lookup(Object original) {
+                return original == value ? valueCopy : super.lookup(original);
+            }
+
+            @Override
+            Object claim(Object original, Object clone) {
+                if (original != value) {
+                    return super.claim(original, clone);
+                }
+                if (valueCopy == null) {
+                    valueCopy = clone;
+                }
+                return valueCopy;
+            }
+        };
+        return copier.copy(value);
+    }
+
+    private Object copyFieldValue(ClassPlan.FieldKind kind, Object value) throws IllegalAccessException {
+        if (depth >= RECURSION_LIMIT && kind != ClassPlan.FieldKind.PRIMITIVE && kind != ClassPlan.FieldKind.IMMUTABLE) {
+            return copyIteratively(value, true);
+        }
+        switch (kind) {
+            case PRIMITIVE:
+            case IMMUTABLE:
+                return value;
+            case COLLECTION:
+                return getCopiedCollection((Collection<Object>) value);
+            case MAP:
+                return getCopiedMap((Map<Object, Object>) value);
+            case ARRAY:
+                return deepCopy(value);
+            default:
+                if (value instanceof Collection) {
+                    return getCopiedCollection((Collection<Object>) value);
+                }
+                if (value instanceof Map) {
+                    return getCopiedMap((Map<Object, Object>) value);
+                }
+                return deepCopy(value);
+        }
+    }
+
+    private Collection<Object> getCopiedCollection(Collection<Object> collectionChildObj) throws ObjectCannotBeClonedException, IllegalAccessException {
+        Object copied = lookup(collectionChildObj);
+        if (copied != null) {
+            return (Collection<Object>) copied;
+        }
+        ClassPlan plan = ClassPlan.of(collectionChildObj.getClass());
+        if (plan.isImmutable()) {
+            return collectionChildObj;
+        }
+        if (options != null) {
+            Object bounded = bound(collectionChildObj);
+            if (bounded != null) {
+                return bounded == SKIPPED ? null : (Collection<Object>) bounded;
+            }
+        }
+        if (trace == null) {
+            return copyCollection(collectionChildObj, plan);
+        }
+        long start = trace.enter();
+        Collection<Object> copy = null;
+        try {
+            copy = copyCollection(collectionChildObj, plan);
+            return copy;
+        }
+        finally {
+            trace.exit(copy == null || copy == collectionChildObj ? null : collectionChildObj, start);
+        }
+    }
+
+    private Collection<Object> copyCollection(Collection<Object> collectionChildObj, ClassPlan plan) throws ObjectCannotBeClonedException, IllegalAccessException {
+        CollectionCopier collectionCopier = plan.getCollectionCopier();
+        Collection<Object> newCollection;
+        // elements are read at once before they are copied with consistent reads
+        Object[] elements = isConsistent && collectionCopier != null ? readElements(collectionChildObj) : null;
+        if (collectionCopier != null) {
+            if (elements == null && CollectionCopier.hasOnlyImmutableElements(collectionChildObj)) {
+                return (Collection<Object>) claim(collectionChildObj, collectionCopier.copyFlat(collectionChildObj));
+            }
+            if (collectionCopier instanceof CollectionCopier.BuiltCopier) {
+                Object[] copies = copyBuiltElements(elements != null ? elements : CollectionCopier.elements(collectionChildObj), false);
+                return (Collection<Object>) claim(collectionChildObj, ((CollectionCopier.BuiltCopier) collectionCopier).build(collectionChildObj, copies));
+            }
+            newCollection = (Collection<Object>) ((CollectionCopier.FilledCopier) collectionCopier).newInstance(collectionChildObj);
+        }
+        else {
+            newCollection = (Collection<Object>) createClone(collectionChildObj, plan, null);
+            if (newCollection == null) {
+                return null;
+            }
+        }
+        Object claimed = claim(collectionChildObj, newCollection);
+        if (claimed != newCollection) {
+            return (Collection<Object>) claimed;
+        }
+        copyElements(elements != null ? Arrays.asList(elements) : collectionChildObj, newCollection);
+        return newCollection;
+
+    }
+
+    private Map<Object, Object> getCopiedMap(Map<Object, Object> mapChildObj) throws ObjectCannotBeClonedException, IllegalAccessException {
+        Object copied = lookup(mapChildObj);
+        if (copied != null) {
+            return (Map<Object, Object>) copied;
+        }
+        ClassPlan plan = ClassPlan.of(mapChildObj.getClass());
+        if (plan.isImmutable()) {
+            return mapChildObj;
+        }
+        if (options != null) {
+            Object bounded = bound(mapChildObj);
+            if (bounded != null) {
+                return bounded == SKIPPED ? null : (Map<Object, Object>) bounded;
+            }
+        }
+        if (trace == null) {
+            return copyMap(mapChildObj, plan);
+        }
+        long start = trace.enter();
+        Map<Object, Object> copy = null;
+        try {
+            copy = copyMap(mapChildObj, plan);
+            return copy;
+        }
+        finally {
+            trace.exit(copy == null || copy == mapChildObj ? null : mapChildObj, start);
+        }
+    }
+
+    private Map<Object, Object> copyMap(Map<Object, Object> mapChildObj, ClassPlan plan) throws ObjectCannotBeClonedException, IllegalAccessException {
+        CollectionCopier collectionCopier = plan.getCollectionCopier();
+        Map<Object, Object> newMap;
+        // elements are read at once before they are copied with consistent reads
+        Object[] elements = isConsistent && collectionCopier != null ? readElements(mapChildObj) : null;
+        if (collectionCopier != null) {
+            if (elements == null && CollectionCopier.hasOnlyImmutableElements(mapChildObj)) {
+                return (Map<Object, Object>) claim(mapChildObj, collectionCopier.copyFlat(mapChildObj));
+            }
+            if (collectionCopier instanceof CollectionCopier.BuiltCopier) {
+                Object[] copies = copyBuiltElements(elements != null ? elements : CollectionCopier.elements(mapChildObj), true);
+                return (Map<Object, Object>) claim(mapChildObj, ((CollectionCopier.BuiltCopier) collectionCopier).build(mapChildObj, copies));
+            }
+            newMap = (Map<Object, Object>) ((CollectionCopier.FilledCopier) collectionCopier).newInstance(mapChildObj);
+        }
+        else {
+            newMap = (Map<Object, Object>) createClone(mapChildObj, plan, null);
+            if (newMap == null) {
+                return null;
+            }
+        }
+        Object claimed = claim(mapChildObj, newMap);
+        if (claimed != newMap) {
+            return (Map<Object, Object>) claimed;
+        }
+        if (elements != null) {
+            copyReadEntries(elements, newMap);
+        }
+        else {
+            copyEntries(mapChildObj, newMap);
+        }
+        return newMap;
+
+    }
+
+    /**
+     * Puts copies of entries read at once to the empty copy of a map.
+     * @param entries keys followed by their values
+     */
+    private void copyReadEntries(Object[] entries, Map<Object, Object> newMap) throws IllegalAccessException {
+        depth++;
+        try {
+            for (int i = 0; i < entries.length; i += 2) {
+                if (isSkipped(entries[i]) || isSkipped(entries[i + 1])) {
+                    continue;
+                }
+                newMap.put(deepCopy(entries[i]), deepCopy(entries[i + 1]));
+            }
+        }
+        finally {
+            depth--;
+        }
+    }
+
+    /**
+     * Copies elements of a collection which is built from them, it is registered only when it's built,
+     * so an element referencing the collection gets its own copy of it, the first built copy is used everywhere.
+     * @param isEntries true if keys and values of map entries are interleaved in the elements
+     */
+    private Object[] copyBuiltElements(Object[] elements, boolean isEntries) throws IllegalAccessException {
+        depth++;
+        try {
+            Object[] copies = new Object[elements.length];
+            boolean hasSkipped = false;
+            for (int i = 0; i < elements.length; i++) {
+                if (isSkipped(elements[i])) {
+                    copies[i] = SKIPPED;
+                    hasSkipped = true;
+                    continue;
+                }
+                copies[i] = deepCopy(elements[i]);
+            }
+            return hasSkipped ? withoutSkipped(copies, isEntries) : copies;
+        }
+        finally {
+            depth--;
+        }
+    }
+
+    /**
+     * @return copies without left out elements or without entries which key or value is left out
+     */
+    private static Object[] withoutSkipped(Object[] copies, boolean isEntries) {
+        int step = isEntries ? 2 : 1;
+        int count = 0;
+        for (int i = 0; i < copies.length; i += step) {
+            if (copies[i] != SKIPPED && (!isEntries || copies[i + 1] != SKIPPED)) {
+                System.arraycopy(copies, i, copies, count, step);
+                count += step;
+            }
+        }
+        return Arrays.copyOf(copies, count);
+    }
+
+    private Object getCopiedArray(Object array, ClassPlan plan) throws IllegalAccessException {
+        Object contents = isConsistent ? takeReadContents(array) : null;
+        if (plan.isFlatArray()) {
+            return claim(array, contents != null ? contents : plan.copyFlatArray(array));
+        }
+        Object[] elements = (Object[]) (contents != null ? contents : array);
+        Object[] newArray = (Object[]) plan.newArray(elements.length);
+        Object claimed = claim(array, newArray);
+        if (claimed != newArray) {
+            return claimed;
+        }
+        copyArrayElements(elements, newArray);
+        return newArray;
+    }
+
+    /**
+     * Creates a new instance for the copy of the object, the instance isn't registered yet.
+     * @return the instance or null if it can't be created and non-copied objects are replaced with null
+     */
+    private Object createClone(Object object, ClassPlan plan, GeneratedCloner cloner) throws ObjectCannotBeClonedException {
+        return createClone(object, plan, cloner, null, 0);
+    }
+
+    /**
+     * Creates a new instance for the copy of the object with values of constructor parameters already read.
+     * @param values values read by a {@link ConsistentRead}, parameters are from the offset
+     */
+    private Object createClone(Object object, ClassPlan plan, Object[] values, int offset) throws ObjectCannotBeClonedException {
+        return createClone(object, plan, null, values, offset);
+    }
+
+    private Object createClone(Object object, ClassPlan plan, GeneratedCloner cloner, Object[] values, int offset) throws ObjectCannotBeClonedException {
+        try {
+            Object clone;
+            if (cloner != null) {
+                clone = cloner.newInstance(object);
+            }
+            else if (values != null) {
+                clone = plan.newInstance(object, values, offset, parameterBuffer(plan.getParameterCount()));
+            }
+            else {
+                clone = plan.newInstance(object, parameterBuffer(plan.getParameterCount()));
+            }
+            plan.initializeStamp(clone);
+            return clone;
+        }
+        catch(InstantiationException ex) {
+            throw new RuntimeException("Internal method error", ex);
+        }
+        catch (Exception ex) {
+            return notCreated(object, ex);
+        }
+    }
+
+    /**
+     * Handles the failure to create the copy of the object.
+     * @return null if non-copied objects are replaced with null
+     * @throws ObjectCannotBeClonedException otherwise
+     */
+    private Object notCreated(Object object, Exception ex) {
+        if (trace != null) {
+            trace.failed(object.getClass(), ex, isReplaceNonCopiedWithNull);
+        }
+        if (isReplaceNonCopiedWithNull) {
+            return null;
+        }
+        throw new ObjectCannotBeClonedException(ex);
+    }
+
+    /**
+     * @return array for constructor parameters reused by all instances created by the copier, null if there are none
+     */
+    private Object[] parameterBuffer(int count) {
+        if (count == 0) {
+            return null;
+        }
+        if (parameterBuffers == null || parameterBuffers.length <= count) {
+            parameterBuffers = parameterBuffers == null ? new Object[count + 1][] : Arrays.copyOf(parameterBuffers, count + 1);
+        }
+        Object[] buffer = parameterBuffers[count];
+        if (buffer == null) {
+            buffer = new Object[count];
+            parameterBuffers[count] = buffer;
+        }
+        return buffer;
+    }
+
+    /**
+     * Copies the value via frames, frames of an enclosing copy (e.g. started by a registered cloner)
+     * stay untouched below the frames of this copy.
+     * @param isFieldValue true if the value is copied like a field value (collections and maps are copied element-wise),
+     *                     false if it is copied like an element of a collection
+     */
+    private Object copyIteratively(Object value, boolean isFieldValue) throws IllegalAccessException {
+        int baseSize = frames.size();
+        int recursionDepth = depth;
+        try {
+            Object copy = startCopy(value, isFieldValue);
+            if (copy != PENDING) {
+                return copy == SKIPPED ? null : copy;
+            }
+            while (true) {
+                Frame frame = frames.peek();
+                Object next = frame.next();
+                if (next == Frame.DONE) {
+                    frames.pop();
+                    Object result = frame.result();
+                    if (frame.traced != null) {
+                        trace.exit(frame.traced, frame.traceStart);
+                    }
+                    if (frames.size() == baseSize) {
+                        return result;
+                    }
+                    frames.peek().accept(result);
+                }
+                else {
+                    // each frame is a level, so values copied by registered cloners while frames are driven
+                    // are copied via frames as well
+                    depth = recursionDepth + frames.size() - baseSize;
+                    Object nextCopy = startCopy(next, frame.isFieldFrame());
+                    if (nextCopy == SKIPPED) {
+                        frame.skip();
+                    }
+                    else if (nextCopy != PENDING) {
+                        frame.accept(nextCopy);
+                    }
+                }
+            }
+        }
+        finally {
+            depth = recursionDepth;
+        }
+    }
+
+    /**
+     * Does the steps of {@link #copyFieldValue} and {@link #deepCopy} taken before nested values are copied.
+     * @return the copy, {@link #PENDING} if a frame copying nested values was pushed
+     *         or {@link #SKIPPED} if the value is left out by the options
+     */
+    private Object startCopy(Object value, boolean isFieldValue) throws IllegalAccessException {
+        if (value == null) {
+            return null;
+        }
+        Object copied = lookup(value);
+        if (copied != null) {
+            return copied;
+        }
+        ClassPlan plan = ClassPlan.of(value.getClass());
+        if (value instanceof Enum || plan.isImmutable()) {
+            return value;
+        }
+        if (options != null) {
+            Object bounded = bound(value);
+            if (bounded != null) {
+                return bounded;
+            }
+        }
+        if (trace == null) {
+            return startNewCopy(value, plan, isFieldValue);
+        }
+        long start = trace.enter();
+        int frameCount = frames.size();
+        Object copy = startNewCopy(value, plan, isFieldValue);
+        if (frames.size() > frameCount) {
+            // the copy ends when the pushed frame is done
+            Frame frame = frames.peek();
+            frame.traced = value;
+            frame.traceStart = start;
+        }
+        else {
+            trace.exit(copy == null || copy == value ? null : value, start);
+        }
+        return copy;
+    }
+
+    private Object startNewCopy(Object value, ClassPlan plan, boolean isFieldValue) throws IllegalAccessException {
+        CollectionCopier collectionCopier = plan.getCollectionCopier();
+        if ((isFieldValue || collectionCopier != null) && (value instanceof Collection || value instanceof Map)) {
+            Object newContainer;
+            Object[] elements = isConsistent && collectionCopier != null ? readElements(value) : null;
+            if (collectionCopier != null) {
+                if (elements == null && CollectionCopier.hasOnlyImmutableElements(value)) {
+                    return claim(value, collectionCopier.copyFlat(value));
+                }
+                if (collectionCopier instanceof CollectionCopier.BuiltCopier) {
+                    frames.push(new BuildFrame(value, elements != null ? elements : CollectionCopier.elements(value),
+                            (CollectionCopier.BuiltCopier) collectionCopier));
+                    return PENDING;
+                }
+                newContainer = ((CollectionCopier.FilledCopier) collectionCopier).newInstance(value);
+            }
+            else {
+                newContainer = createClone(value, plan, null);
+                if (newContainer == null) {
+                    return null;
+                }
+            }
+            Object claimed = claim(value, newContainer);
+            if (claimed != newContainer) {
+                return claimed;
+            }
+            if (value instanceof Collection) {
+                frames.push(new CollectionFrame(elements != null ? Arrays.asList(elements) : (Collection<Object>) value,
+                        (Collection<Object>) newContainer));
+            }
+            else {
+                frames.push(new MapFrame(elements != null ? MapFrame.entries(elements) : ((Map<Object, Object>) value).entrySet().iterator(),
+                        (Map<Object, Object>) newContainer));
+            }
+            return PENDING;
+        }
+
+        Object contents = isConsistent && plan.isArray() ? takeReadContents(value) : null;
+        if (plan.isFlatArray()) {
+            return claim(value, contents != null ? contents : plan.copyFlatArray(value));
+        }
+        if (plan.isArray()) {
+            Object[] elements = (Object[]) (contents != null ? contents : value);
+            Object[] newArray = (Object[]) plan.newArray(elements.length);
+            Object claimed = claim(value, newArray);
+            if (claimed != newArray) {
+                return claimed;
+            }
+            frames.push(new ArrayFrame(elements, newArray));
+            return PENDING;
+        }
+        Cloner<Object> registeredCloner = ClonerRegistry.find(value.getClass());
+        if (registeredCloner != null) {
+            depth++;
+            try {
+                return registeredCloner.clone(value, this);
+            }
+            finally {
+                depth--;
+            }
+        }
+        RecordPlan recordPlan = plan.getRecordPlan();
+        if (recordPlan != null) {
+            frames.push(new RecordFrame(value, recordPlan, recordPlan.components(value), copiedRecordFields(plan)));
+            return PENDING;
+        }
+        if (isConsistent) {
+            ConsistentRead read = plan.getConsistentRead(options.fieldsOf(plan));
+            Object[] values = read.read(value, read.isStamped() ? readContents() : null);
+            Object clone = createClone(value, plan, values, read.getFields().length);
+            if (isReplaceNonCopiedWithNull && clone == null) {
+                return null;
+            }
+            Object claimed = claim(value, clone);
+            if (claimed != clone) {
+                return claimed;
+            }
+            frames.push(new PlanObjectFrame(value, clone, read.getFields(), values));
+            return PENDING;
+        }
+        GeneratedCloner cloner = isUseGeneratedCloners ? plan.getGeneratedCloner() : null;
+
+        Object clone = createClone(value, plan, cloner);
+        if (isReplaceNonCopiedWithNull && clone == null) {
+            return null;
+        }
+        Object claimed = claim(value, clone);
+        if (claimed != clone) {
+            return claimed;
+        }
+        if (cloner != null) {
+            cloner.copyFlatFields(value, clone);
+            frames.push(new GeneratedObjectFrame(value, clone, cloner));
+        }
+        else {
+            frames.push(new PlanObjectFrame(value, clone, options == null ? plan.getFields() : options.fieldsOf(plan), null));
+        }
+        return PENDING;
+    }
+
+    /**
+     * Copy of one object, collection or map in progress.
+     */
+    private abstract static class Frame {
+
+        static final Object DONE = new Object();
+
+        /**
+         * Original of the copy started in the trace of the copier, null if the copier has no trace.
+         */
+        Object traced;
+        long traceStart;
+
+        /**
+         * Copies everything which doesn't need a nested copy up to the next value which does.
+         * @return the next value to be copied or {@link #DONE} if the frame is done
+         */
+        abstract Object next() throws IllegalAccessException;
+
+        /**
+         * Takes the copy of the value returned by the last {@link #next()}.
+         */
+        abstract void accept(Object copy) throws IllegalAccessException;
+
+        abstract Object result();
+
+        /**
+         * Leaves out the value returned by the last {@link #next()}, fields and array elements are set to null.
+         */
+        void skip() throws IllegalAccessException {
+            accept(null);
+        }
+
+        /**
+         * @return true if values returned by {@link #next()} are field values, false if they are elements
+         */
+        boolean isFieldFrame() {
+            return false;
+        }
+    }
+
+    private static final class PlanObjectFrame extends Frame {
+
+        private final Object original;
+        private final Object clone;
+        private final ClassPlan.FieldPlan[] fields;
+        /**
+         * Values of the fields read at once by a {@link ConsistentRead}, null if the fields are read from the original.
+         */
+        private final Object[] values;
+        private int index;
+
+        private PlanObjectFrame(Object original, Object clone, ClassPlan.FieldPlan[] fields, Object[] values) {
+            this.original = original;
+            this.clone = clone;
+            this.fields = fields;
+            this.values = values;
+        }
+
+        @Override
+        Object next() throws IllegalAccessException {
+            for (; index < fields.length; index++) {
+                ClassPlan.FieldPlan fieldPlan = fields[index];
+                FieldAccessor accessor = fieldPlan.getAccessor();
+                if (fieldPlan.getKind() == ClassPlan.FieldKind.PRIMITIVE && values == null) {
+                    accessor.copy(original, clone);
+                    continue;
+                }
+                Object value = values != null ? values[index] : accessor.get(original);
+                if (value == null || fieldPlan.getKind() == ClassPlan.FieldKind.IMMUTABLE || fieldPlan.getKind() == ClassPlan.FieldKind.PRIMITIVE) {
+                    accessor.set(clone, value);
+                    continue;
+                }
+                return value;
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object copy) throws IllegalAccessException {
+            fields[index++].getAccessor().set(clone, copy);
+        }
+
+        @Override
+        Object result() {
+            return clone;
+        }
+
+        @Override
+        boolean isFieldFrame() {
+            return true;
+        }
+    }
+
+    private static final class GeneratedObjectFrame extends Frame {
+
+        private final Object original;
+        private final Object clone;
+        private final GeneratedCloner cloner;
+        private final int fieldCount;
+        private int index;
+
+        private GeneratedObjectFrame(Object original, Object clone, GeneratedCloner cloner) {
+            this.original = original;
+            this.clone = clone;
+            this.cloner = cloner;
+            this.fieldCount = cloner.getReferenceFields().length;
+        }
+
+        @Override
+        Object next() {
+            for (; index < fieldCount; index++) {
+                Object value = cloner.getReference(index, original);
+                if (value != null) {
+                    return value;
+                }
+                cloner.setReference(index, clone, null);
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object copy) {
+            cloner.setReference(index++, clone, copy);
+        }
+
+        @Override
+        Object result() {
+            return clone;
+        }
+
+        @Override
+        boolean isFieldFrame() {
+            return true;
+        }
+    }
+
+    private static final class ArrayFrame extends Frame {
+
+        private final Object[] array;
+        private final Object[] newArray;
+        private int index;
+
+        private ArrayFrame(Object[] array, Object[] newArray) {
+            this.array = array;
+            this.newArray = newArray;
+        }
+
+        @Override
+        Object next() {
+            for (; index < array.length; index++) {
+                if (array[index] != null) {
+                    return array[index];
+                }
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object copy) {
+            newArray[index++] = copy;
+        }
+
+        @Override
+        Object result() {
+            return newArray;
+        }
+
+        @Override
+        boolean isFieldFrame() {
+            return true;
+        }
+    }
+
+    /**
+     * Copy of a collection or a map built from copies of its elements, it is registered when it's built.
+     */
+    private final class BuildFrame extends Frame {
+
+        private final Object original;
+        private final Object[] elements;
+        private final Object[] copies;
+        private final CollectionCopier.BuiltCopier collectionCopier;
+        private int index;
+        private boolean hasSkipped;
+
+        private BuildFrame(Object original, Object[] elements, CollectionCopier.BuiltCopier collectionCopier) {
+            this.original = original;
+            this.elements = elements;
+            this.copies = new Object[elements.length];
+            this.collectionCopier = collectionCopier;
+        }
+
+        @Override
+        Object next() {
+            for (; index < elements.length; index++) {
+                if (elements[index] != null) {
+                    return elements[index];
+                }
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object copy) {
+            copies[index++] = copy;
+        }
+
+        @Override
+        void skip() {
+            copies[index++] = SKIPPED;
+            hasSkipped = true;
+        }
+
+        @Override
+        Object result() {
+            return claim(original, collectionCopier.build(original, hasSkipped ? withoutSkipped(copies, original instanceof Map) : copies));
+        }
+    }
+
+    /**
+     * Copy of a record created from copies of its components, it is registered when it's created.
+     */
+    private final class RecordFrame extends Frame {
+
+        private final Object original;
+        private final RecordPlan recordPlan;
+        private final Object[] components;
+        private final ClassPlan.FieldPlan[] copiedFields;
+        private int index;
+
+        private RecordFrame(Object original, RecordPlan recordPlan, Object[] components, ClassPlan.FieldPlan[] copiedFields) {
+            this.original = original;
+            this.recordPlan = recordPlan;
+            this.components = components;
+            this.copiedFields = copiedFields;
+        }
+
+        @Override
+        Object next() {
+            for (; index < components.length; index++) {
+                ClassPlan.FieldKind kind = recordPlan.getKind(index);
+                if (components[index] != null && kind != ClassPlan.FieldKind.PRIMITIVE && kind != ClassPlan.FieldKind.IMMUTABLE
+                        && (copiedFields == null || recordPlan.isCopied(index, copiedFields))) {
+                    return components[index];
+                }
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object copy) {
+            components[index++] = copy;
+        }
+
+        @Override
+        Object result() {
+            Object clone = createRecord(original, recordPlan, components);
+            return clone == null ? null : claim(original, clone);
+        }
+
+        @Override
+        boolean isFieldFrame() {
+            return true;
+        }
+    }
+
+    private static final class CollectionFrame extends Frame {
+
+        private final Iterator<Object> elements;
+        private final Collection<Object> newCollection;
+
+        private CollectionFrame(Collection<Object> collection, Collection<Object> newCollection) {
+            this.elements = collection.iterator();
+            this.newCollection = newCollection;
+        }
+
+        @Override
+        Object next() {
+            while (elements.hasNext()) {
+                Object element = elements.next();
+                if (element != null) {
+                    return element;
+                }
+                newCollection.add(null);
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object copy) {
+            newCollection.add(copy);
+        }
+
+        @Override
+        void skip() {
+        }
+
+        @Override
+        Object result() {
+            return newCollection;
+        }
+    }
+
+    private static final class MapFrame extends Frame {
+
+        private final Iterator<Map.Entry<Object, Object>> entries;
+        private final Map<Object, Object> newMap;
+        private Map.Entry<Object, Object> entry;
+        private boolean isKeyCopied;
+        private Object keyCopy;
+
+        private MapFrame(Iterator<Map.Entry<Object, Object>> entries, Map<Object, Object> newMap) {
+            this.entries = entries;
+            this.newMap = newMap;
+        }
+
+        /**
+         * @return entries of keys followed by their values read at once
+         */
+        static Iterator<Map.Entry<Object, Object>> entries(Object[] keysAndValues) {
+            List<Map.Entry<Object, Object>> entries = new ArrayList<>(keysAndValues.length / 2);
+            for (int i = 0; i < keysAndValues.length; i += 2) {
+                entries.add(new AbstractMap.SimpleImmutableEntry<>(keysAndValues[i], keysAndValues[i + 1]));
+            }
+            return entries.iterator();
+        }
+
+        @Override
+        Object next() {
+            while (true) {
+                if (entry == null) {
+                    if (!entries.hasNext()) {
+                        return DONE;
+                    }
+                    entry = entries.next();
+                    isKeyCopied = false;
+                }
+                if (!isKeyCopied) {
+                    if (entry.getKey() != null) {
+                        return entry.getKey();
+                    }
+                    keyCopy = null;
+                    isKeyCopied = true;
+                }
+                if (entry.getValue() != null) {
+                    return entry.getValue();
+                }
+                newMap.put(keyCopy, null);
+                entry = null;
+            }
+        }
+
+        @Override
+        void accept(Object copy) {
+            if (!isKeyCopied) {
+                keyCopy = copy;
+                isKeyCopied = true;
+            }
+            else {
+                newMap.put(keyCopy, copy);
+                entry = null;
+            }
+        }
+
+        @Override
+        void skip() {
+            // the key or the value is left out, so the whole entry is
+            entry = null;
+        }
+
+        @Override
+        Object result() {
+            return newMap;
+        }
+    }
+
+}
@@ -0,0 +1,24 @@
+package utils;
+
+/**
+ * How values of a type are treated by a clone with {@link CloneOptions}.
+ */
+public enum CopyPolicy {
+
+    /**
+     * Values are copied deeply, the default for all types.
+     */
+    DEEP,
+
+    /**
+     * Values are shared by the original and the copy as they are, objects referenced by them aren't visited.
+     */
+    SHALLOW,
+
+    /**
+     * Values are left out of the copy: fields and array elements referencing them are null in the copy,
+     * collection elements and map entries (with such a key or value) are omitted.
+     */
+    SKIP
+
+}
@@ -4,18 +4,23 @@ import annotation.CopyConstructor;
 import annotation.CopyFieldName;
 import exception.ObjectCannotBeClonedException;
 
-import java.lang.annotation.Annotation;
-import java.lang.reflect.Constructor;
-import java.lang.reflect.Field;
-import java.lang.reflect.InvocationTargetException;
-import java.lang.reflect.Modifier;
-import java.util.*;
-import java.util.concurrent.atomic.AtomicInteger;
-import java.util.concurrent.atomic.AtomicLong;
-import java.util.stream.Collectors;
+import java.nio.ByteBuffer;
+import java.util.Collection;
+import java.util.List;
+import java.util.Objects;
+import java.util.concurrent.CompletableFuture;
+import java.util.concurrent.Executor;
+import java.util.concurrent.ForkJoinPool;
+import java.util.stream.Stream;
 
 public class CopyUtils {
 
+    private static final int DEFAULT_EXPECTED_OBJECT_COUNT = 32;
+    private static final int DEFAULT_PARALLEL_THRESHOLD = 1024;
+    private static final CloneOptions DEFAULT_OPTIONS = CloneOptions.builder().build();
+
+    private static volatile boolean generatedClonersEnabled;
+
     /**
      * Deeply copy an object creating new instances of all nested references recursively.
      * <p>All referenced objects MUST have one of the following constructors to be created:
@@ -28,12 +33,32 @@ public class CopyUtils {
      * <ul>
      *  <li>parameter should be annotated with {@link CopyFieldName} with field name as annotation parameter</li>
      *  <li>only one object field should have the same type as constructor parameter has</li>
-     * </ul></p>
-     * <p>This method doesn't copy object with Number superclass (except AtomicInteger and AtomicLong)
-     * but set a value from original object.</p>
+     * </ul>
+     * Fields are looked up in the class first and then in its superclasses: a named field hides the fields with
+     * the same name of superclasses, fields of a parameter type are taken from the nearest class declaring any.</p>
+     * <p>All fields of the class and its superclasses are copied except constants ({@code static final} fields),
+     * a static field which isn't final is set to a copy of its value.
+     * Transient fields of JDK superclasses which can't be accessed (e.g. {@code modCount}) are left to the constructor,
+     * see {@link #setInaccessibleTransientFieldsSkipped(boolean)}.
+     * Fields annotated with {@link annotation.CopyIgnore} or {@link annotation.CopyShallow} are exceptions
+     * declared by their class: they are left out or shared by this method too, so such a copy isn't a full deep copy.</p>
+     * <p>This method doesn't copy immutable objects but set a value from original object: objects with Number superclass
+     * (except AtomicInteger and AtomicLong), JDK value classes ({@code String}, {@code Character}, {@code UUID},
+     * {@code BigDecimal}, {@code java.time} values etc.), types registered via {@link #registerImmutableType(Class)}
+     * and classes which instance fields are all final and immutable (e.g. records of immutable components).
+     * Optionals are copied with their values.</p>
+     * <p>Arrays of primitives, immutable objects and enums are copied as a whole by a bulk copy,
+     * elements of other arrays (including nested arrays of multi-dimensional ones) are copied one by one.</p>
+     * <p>Common JDK collections and maps ({@code ArrayList}, {@code HashMap}, {@code TreeMap}, {@code EnumMap},
+     * immutable collections like {@code List.of}, unmodifiable views, {@code Arrays.asList} etc.) are created
+     * without the constructor rules: sized for the original, keeping comparators and key types,
+     * copied as a whole when all their elements are immutable.</p>
      * <p>The method works via reflections so the warning will be thrown if any of referenced object is instance
      * of a class that shouldn't be accessed via reflection.</p>
-     * The method uses recursion so its depth is indirectly limited.
+     * <p>Objects of classes with a {@link Cloner} registered via {@link java.util.ServiceLoader}
+     * (e.g. generated for classes annotated with {@link annotation.GenerateCloner}) are copied by the cloner
+     * without reflection.</p>
+     * The method uses recursion so its depth is indirectly limited, use {@link #deepCloneIterative(Object)} for deep graphs.
      * @param object object to be copied
      * @return copy of object with copies of all nested referenced objects
      * @throws ObjectCannotBeClonedException if any object can't be copied
@@ -41,7 +66,7 @@ public class CopyUtils {
      *                                   control and the underlying constructor is inaccessible
     */
     public static <T> T deepClone(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
-        return new Copier(false).deepCopy(object);
+        return deepClone(object, false, DEFAULT_EXPECTED_OBJECT_COUNT);
     }
 
     /**
@@ -56,12 +81,32 @@ public class CopyUtils {
      * <ul>
      *  <li>parameter should be annotated with {@link CopyFieldName} with field name as annotation parameter</li>
      *  <li>only one object field should have the same type as constructor parameter has</li>
-     * </ul></p>
-     * <p>This method doesn't copy object with Number superclass (except AtomicInteger and AtomicLong)
-     * but set a value from original object.</p>
+     * </ul>
+     * Fields are looked up in the class first and then in its superclasses: a named field hides the fields with
+     * the same name of superclasses, fields of a parameter type are taken from the nearest class declaring any.</p>
+     * <p>All fields of the class and its superclasses are copied except constants ({@code static final} fields),
+     * a static field which isn't final is set to a copy of its value.
+     * Transient fields of JDK superclasses which can't be accessed (e.g. {@code modCount}) are left to the constructor,
+     * see {@link #setInaccessibleTransientFieldsSkipped(boolean)}.
+     * Fields annotated with {@link annotation.CopyIgnore} or {@link annotation.CopyShallow} are exceptions
+     * declared by their class: they are left out or shared by this method too, so such a copy isn't a full deep copy.</p>
+     * <p>This method doesn't copy immutable objects but set a value from original object: objects with Number superclass
+     * (except AtomicInteger and AtomicLong), JDK value classes ({@code String}, {@code Character}, {@code UUID},
+     * {@code BigDecimal}, {@code java.time} values etc.), types registered via {@link #registerImmutableType(Class)}
+     * and classes which instance fields are all final and immutable (e.g. records of immutable components).
+     * Optionals are copied with their values.</p>
+     * <p>Arrays of primitives, immutable objects and enums are copied as a whole by a bulk copy,
+     * elements of other arrays (including nested arrays of multi-dimensional ones) are copied one by one.</p>
+     * <p>Common JDK collections and maps ({@code ArrayList}, {@code HashMap}, {@code TreeMap}, {@code EnumMap},
+     * immutable collections like {@code List.of}, unmodifiable views, {@code Arrays.asList} etc.) are created
+     * without the constructor rules: sized for the original, keeping comparators and key types,
+     * copied as a whole when all their elements are immutable.</p>
      * <p>The method works via reflections so the warning will be thrown if any of referenced object is instance
      * of a class that shouldn't be accessed via reflection.</p>
-     * The method uses recursion so its depth is indirectly limited.
+     * <p>Objects of classes with a {@link Cloner} registered via {@link java.util.ServiceLoader}
+     * (e.g. generated for classes annotated with {@link annotation.GenerateCloner}) are copied by the cloner
+     * without reflection.</p>
+     * The method uses recursion so its depth is indirectly limited, use {@link #deepCloneIterative(Object)} for deep graphs.
      * @param object object to be copied
      * @param isReplaceNonCopiedWithNull defines action on error during object copy creation:
      *                                   if true - set it as null if false - throw an error
@@ -71,203 +116,513 @@ public class CopyUtils {
      *                                   control and the underlying constructor is inaccessible
      */
     public static <T> T deepClone(T object, boolean isReplaceNonCopiedWithNull) throws ObjectCannotBeClonedException, IllegalAccessException {
-        return new Copier(isReplaceNonCopiedWithNull).deepCopy(object);
+        return deepClone(object, isReplaceNonCopiedWithNull, DEFAULT_EXPECTED_OBJECT_COUNT);
     }
 
-    private static class Copier {
+    /**
+     * Deeply copy an object creating new instances of all nested references recursively
+     * as {@link #deepClone(Object, boolean)} does.
+     * <p>Copied objects are tracked by identity in a table sized for the expected number of objects,
+     * so large graphs are copied without growing it. Tables and other state of clones are pooled per thread,
+     * use a {@link CloneContext} to keep them for a series of clones explicitly.</p>
+     * @param object object to be copied
+     * @param isReplaceNonCopiedWithNull defines action on error during object copy creation:
+     *                                   if true - set it as null if false - throw an error
+     * @param expectedObjectCount expected number of copied objects in the graph
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T deepClone(T object, boolean isReplaceNonCopiedWithNull, int expectedObjectCount)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        try (CloneContext context = CloneContext.acquire(expectedObjectCount)) {
+            return context.deepClone(object, isReplaceNonCopiedWithNull);
+        }
+    }
 
-        private final Map<Object, Object> oldToNewObjects = new HashMap<>();
-        private final boolean isReplaceNonCopiedWithNull;
+    /**
+     * Copy the top of an object graph with the rules of {@link #deepClone(Object)} within the bounds and filters
+     * of the options: objects beyond the maximal depth or object count and objects of shallow types are shared
+     * with the original, fields left out by field filters keep the values set when the copy was created and
+     * skipped values become null or are omitted from copied collections and maps.
+     * <p>Use it for large graphs of which only the top is modified, e.g. a request referencing shared caches.
+     * Registered cloners copy values as they do in deep clones, the copies they ask for are bounded.</p>
+     * <p>Objects which other threads keep changing are copied without torn state with
+     * {@link CloneOptions.Builder#consistentReads(boolean)}, e.g. {@code CloneOptions.builder().consistentReads(true).build()}.</p>
+     * <p>Clones of graphs of unknown size are abandoned with {@link exception.CloneBudgetExceededException} once their
+     * copies exceed {@link CloneOptions.Builder#memoryBudget(long)} or {@link CloneOptions.Builder#objectBudget(long)}.</p>
+     * @param object object to be copied
+     * @param options bounds and filters of the copy
+     * @return copy of object with copies of nested referenced objects within the bounds
+     * @throws ObjectCannotBeClonedException if any copied object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T deepClone(T object, CloneOptions options) throws ObjectCannotBeClonedException, IllegalAccessException {
+        try (CloneContext context = CloneContext.acquire(DEFAULT_EXPECTED_OBJECT_COUNT)) {
+            return context.deepClone(object, options);
+        }
+    }
 
-        private Copier(boolean isReplaceNonCopiedWithNull) {
-            this.isReplaceNonCopiedWithNull = isReplaceNonCopiedWithNull;
+    /**
+     * Deeply copy each element of the collection with the rules of {@link #deepClone(Object)}, each element is copied
+     * as by a separate clone.
+     * <p>Use it instead of clones in a loop for large batches of roots (e.g. records loaded together): the copier
+     * and its table are prepared once for the whole batch and the list of copies is sized for the collection.</p>
+     * @param objects objects to be copied
+     * @return list of copies in the iteration order of the collection
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> List<T> deepCloneAll(Collection<? extends T> objects) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return deepCloneAll(objects, DEFAULT_OPTIONS);
+    }
+
+    /**
+     * Copy each element of the collection with the rules of {@link #deepClone(Object, CloneOptions)}
+     * as {@link #deepCloneAll(Collection)} does.
+     * <p>With {@link CloneOptions.Builder#shareBetweenElements(boolean)} the elements are copied as one graph:
+     * an object referenced by several elements is copied once and the copies of the elements share its copy.</p>
+     * @param objects objects to be copied
+     * @param options bounds and filters of the copies
+     * @return list of copies in the iteration order of the collection
+     * @throws ObjectCannotBeClonedException if any copied object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> List<T> deepCloneAll(Collection<? extends T> objects, CloneOptions options)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        try (CloneContext context = CloneContext.acquire(DEFAULT_EXPECTED_OBJECT_COUNT)) {
+            return context.deepCloneAll(objects, options);
         }
+    }
 
+    /**
+     * Copy each element of the collection as {@link #deepCloneAll(Collection, CloneOptions)} does using threads
+     * of the pool: ranges of at least 256 elements are copied by different threads, each element as by a separate clone.
+     * @param objects objects to be copied
+     * @param options bounds and filters of the copies, they must not share objects between elements
+     * @param pool pool which threads copy the elements
+     * @return list of copies in the iteration order of the collection
+     * @throws IllegalArgumentException if the options share objects between elements
+     * @throws ObjectCannotBeClonedException if any copied object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> List<T> deepCloneAll(Collection<? extends T> objects, CloneOptions options, ForkJoinPool pool)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        return BatchCloner.cloneAll(objects, Objects.requireNonNull(options), Objects.requireNonNull(pool));
+    }
 
-        private <T> T deepCopy(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
-            if (object == null) {
-                return null;
-            }
-            if (oldToNewObjects.get(object) != null) {
-                return (T) oldToNewObjects.get(object);
-            }
-            if (object instanceof Enum || isReturnTheSameObject(object.getClass())) {
-                return object;
-            }
+    /**
+     * Copy each element of the stream as {@link #deepCloneAll(Collection, CloneOptions)} does when the element
+     * is consumed, e.g. to copy rows of a query without collecting them first. A parallel stream copies its parts
+     * in parallel unless the options share objects between elements, then the copies are made sequentially.
+     * <p>Copies are made by the stream operations, so an {@link IllegalAccessException} is thrown
+     * as the cause of an {@link ObjectCannotBeClonedException}. Closing the stream of copies closes the source.</p>
+     * @param objects stream of objects to be copied
+     * @param options bounds and filters of the copies
+     * @return stream of copies in the order of the source
+     */
+    public static <T> Stream<T> deepCloneAll(Stream<? extends T> objects, CloneOptions options) {
+        return BatchCloner.cloneStream(Objects.requireNonNull(objects), Objects.requireNonNull(options));
+    }
 
-            Object clone = getObjectFromCacheOrCreateNew(object);
-            if (isReplaceNonCopiedWithNull && clone == null) {
-                return null;
-            }
+    /**
+     * Deeply copy an object as {@link #deepClone(Object)} does by a task of the executor, e.g. to offload
+     * the clone of a large graph from a request handler to a virtual thread or a pool.
+     * <p>At most {@link #setMaxConcurrentAsyncClones(int) a limited number} of async clones run at once,
+     * a clone started while all of them run is queued and starts when a running clone ends, the caller isn't blocked.
+     * A long clone yields its thread every
+     * 256 copies and a cancelled future stops its clone before the next copy.</p>
+     * <pre>{@code
+     * CompletableFuture<Order> copy = CopyUtils.deepCloneAsync(order, executor);
+     * copy.orTimeout(2, TimeUnit.SECONDS).thenAccept(this::archive);
+     * }</pre>
+     * @param object object to be copied
+     * @param executor executor running the clone
+     * @return future of the copy, failed with the exception of the clone, e.g. {@link ObjectCannotBeClonedException}
+     */
+    public static <T> CompletableFuture<T> deepCloneAsync(T object, Executor executor) {
+        return deepCloneAsync(object, DEFAULT_OPTIONS, executor);
+    }
 
-            setFieldsForClone(object, clone);
+    /**
+     * Copy the top of an object graph as {@link #deepClone(Object, CloneOptions)} does by a task of the executor
+     * with the limits of {@link #deepCloneAsync(Object, Executor)}, e.g. with a
+     * {@link CloneOptions.Builder#memoryBudget(long) memory budget} failing the future of a graph too large to copy.
+     * @param object object to be copied
+     * @param options bounds and filters of the copy
+     * @param executor executor running the clone
+     * @return future of the copy, failed with the exception of the clone, e.g. {@link ObjectCannotBeClonedException}
+     */
+    public static <T> CompletableFuture<T> deepCloneAsync(T object, CloneOptions options, Executor executor) {
+        return AsyncCloner.cloneAsync(object, Objects.requireNonNull(options), Objects.requireNonNull(executor));
+    }
 
-            return (T) clone;
-        }
+    /**
+     * Deeply copy an object creating new instances of all nested references
+     * with the same rules and result as {@link #deepClone(Object)}.
+     * <p>The graph is traversed with an explicit stack instead of recursion, so the depth of the graph
+     * (e.g. the length of a linked chain of objects) is limited only by heap and not by the thread stack size.</p>
+     * @param object object to be copied
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T deepCloneIterative(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return deepCloneIterative(object, false);
+    }
 
-        private void setFieldsForClone(Object object, Object clone) throws IllegalAccessException {
-            for (Field field : object.getClass().getDeclaredFields()) {
-
-                if (Modifier.isFinal(field.getModifiers()) && Modifier.isStatic(field.getModifiers())) {
-                    continue;
-                }
-                field.setAccessible(true);
-
-                if(field.get(object) == null) {
-                    field.set(clone, null);
-                    continue;
-                }
-
-                if(field.getType().isPrimitive() || isReturnTheSameObject(field.getType())) {
-                    field.set(clone, field.get(object));
-                }
-                else {
-                    Object childObj = field.get(object);
-                    if (childObj instanceof Collection) {
-                        field.set(clone, getCopiedCollection((Collection<Object>) childObj));
-                    }
-                    else if (childObj instanceof Map) {
-                        field.set(clone, getCopiedMap((Map<Object, Object>) childObj));
-                    }
-                    else {
-                        field.set(clone, deepCopy(childObj));
-                    }
-                }
-            }
+    /**
+     * Deeply copy an object creating new instances of all nested references
+     * with the same rules and result as {@link #deepClone(Object, boolean)}.
+     * <p>The graph is traversed with an explicit stack instead of recursion, so the depth of the graph
+     * (e.g. the length of a linked chain of objects) is limited only by heap and not by the thread stack size.</p>
+     * @param object object to be copied
+     * @param isReplaceNonCopiedWithNull defines action on error during object copy creation:
+     *                                   if true - set it as null if false - throw an error
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T deepCloneIterative(T object, boolean isReplaceNonCopiedWithNull) throws ObjectCannotBeClonedException, IllegalAccessException {
+        try (CloneContext context = CloneContext.acquire(DEFAULT_EXPECTED_OBJECT_COUNT)) {
+            return context.deepCloneIterative(object, isReplaceNonCopiedWithNull);
         }
+    }
 
-        private Collection<Object> getCopiedCollection(Collection<Object> collectionChildObj) throws ObjectCannotBeClonedException, IllegalAccessException {
-            Collection<Object> newCollection = (Collection<Object>) getObjectFromCacheOrCreateNew(collectionChildObj);
-            if (newCollection == null) {
-                return null;
-            }
-            for (Object o : collectionChildObj) {
-                newCollection.add(deepCopy(o));
-            }
-            return newCollection;
+    /**
+     * Deeply copy an object creating new instances of all nested references
+     * with the same rules as {@link #deepClone(Object)} using threads of the pool.
+     * <p>Collections and maps with at least 1024 elements are copied in parallel,
+     * see {@link #deepCloneParallel(Object, boolean, ForkJoinPool, int)}.</p>
+     * @param object object to be copied
+     * @param pool pool which threads copy the graph
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T deepCloneParallel(T object, ForkJoinPool pool) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return deepCloneParallel(object, false, pool, DEFAULT_PARALLEL_THRESHOLD);
+    }
 
+    /**
+     * Deeply copy an object creating new instances of all nested references
+     * with the same rules as {@link #deepClone(Object, boolean)} using threads of the pool.
+     * <p>Elements of collections and maps with at least {@code parallelThreshold} elements are copied
+     * in ranges by different threads while the thread which reached the collection continues with the other fields
+     * of its owner, the copy of the owner is returned once its collections are filled. Graphs without such
+     * collections are copied by one thread of the pool as by {@link #deepCloneIterative(Object, boolean)}.</p>
+     * <p>Shared references and cycles are preserved: an object reached by several threads is copied once.
+     * Copies are added to copied collections and maps in the original order, but a copy added to a hash-based
+     * collection may be still filled by another thread if its original is also reachable from another large
+     * collection, so such elements should keep the identity {@code hashCode}.</p>
+     * @param object object to be copied
+     * @param isReplaceNonCopiedWithNull defines action on error during object copy creation:
+     *                                   if true - set it as null if false - throw an error
+     * @param pool pool which threads copy the graph
+     * @param parallelThreshold minimal number of elements of a collection or a map to be copied in parallel
+     * @return copy of object with copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T deepCloneParallel(T object, boolean isReplaceNonCopiedWithNull, ForkJoinPool pool, int parallelThreshold)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        if (parallelThreshold < 1) {
+            throw new IllegalArgumentException("Parallel threshold must be positive: " + parallelThreshold);
         }
+        return ParallelCopier.clone(object, pool, isReplaceNonCopiedWithNull, generatedClonersEnabled, parallelThreshold);
+    }
 
-        private Map<Object, Object> getCopiedMap(Map<Object, Object> mapChildObj) throws ObjectCannotBeClonedException, IllegalAccessException {
-            Map<Object, Object> newMap = (Map<Object, Object>) getObjectFromCacheOrCreateNew(mapChildObj);
-            if (newMap == null) {
-                return null;
-            }
-            for (Map.Entry<Object, Object> o : mapChildObj.entrySet()) {
-                newMap.put(deepCopy(o.getKey()), deepCopy(o.getValue()));
-            }
-            return newMap;
+    /**
+     * Deeply copy an object with the same rules as {@link #deepClone(Object)}, but share collections and maps of fields
+     * declared as {@code Collection}, {@code List}, {@code Set} or {@code Map} with the original until they are written.
+     * <p>See {@link #deepCloneLazy(Object, boolean, boolean)} for the consistency guarantee, the source isn't tracked,
+     * so originals must not be changed while copies read them.</p>
+     * @param object object to be copied
+     * @return copy of object with copies or lazy copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T deepCloneLazy(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return deepCloneLazy(object, false, false);
+    }
 
+    /**
+     * Deeply copy an object with the same rules as {@link #deepClone(Object, boolean)}, but share collections and maps
+     * of fields declared as {@code Collection}, {@code List}, {@code Set} or {@code Map} with the original until they are written.
+     * <p>Such a field of the copy gets a copy-on-write wrapper reading the original collection. The wrapper makes
+     * a deep copy of the collection (with the rules of this method, but without lazy fields) on the first write,
+     * on the first read of an element when the collection contains mutable elements and on the first access to
+     * a view which can write: sub-lists, list iterators, key sets, values and entry sets of maps. Reading the size,
+     * checking elements and iterating a collection of immutable elements (strings, numbers, enums etc.) don't copy
+     * anything, so read-mostly copies allocate only the wrappers. Fields of other types are copied as by
+     * {@link #deepClone(Object, boolean)}.</p>
+     * <p>Consistency guarantee: a lazy collection returns the same results as an eager copy made at the time of this
+     * call as long as the original collection isn't changed before the copy is materialized. Without source tracking,
+     * changes made to the original collection in the meantime are visible in the copy and are copied with it.
+     * With source tracking, collection fields of the originals are replaced with source wrappers of the same collections:
+     * the first write via a source wrapper materializes all copies still reading the collection before
+     * it is written, so changes made via the fields of the originals are never visible in copies. Changes made
+     * via other references to the original collections (kept before this call) and changes of mutable elements
+     * are not tracked.</p>
+     * <p>A collection is materialized with the copies made by this clone and by previously materialized collections,
+     * so shared references and cycles between collections and the rest of the graph are kept as by an eager clone.
+     * So the clone keeps the originals reachable while some of its lazy collections are not materialized.
+     * Wrappers are not thread-safe: originals and copies sharing a collection have to be used by one thread
+     * or synchronized externally.</p>
+     * The method uses recursion so its depth is indirectly limited.
+     * @param object object to be copied
+     * @param isReplaceNonCopiedWithNull defines action on error during object copy creation:
+     *                                   if true - set it as null if false - throw an error,
+     *                                   errors of lazy copies are thrown when they are materialized
+     * @param isTrackSource true if collection fields of originals are replaced with source wrappers,
+     *                      so changes via them are not visible in copies
+     * @return copy of object with copies or lazy copies of all nested referenced objects
+     * @throws ObjectCannotBeClonedException if any object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T deepCloneLazy(T object, boolean isReplaceNonCopiedWithNull, boolean isTrackSource)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        try (CloneContext context = CloneContext.acquire(DEFAULT_EXPECTED_OBJECT_COUNT)) {
+            return context.deepCloneLazy(object, isReplaceNonCopiedWithNull, isTrackSource);
         }
+    }
 
-        private Object getObjectFromCacheOrCreateNew(Object object) throws ObjectCannotBeClonedException {
-            if (oldToNewObjects.get(object) != null) {
-                return oldToNewObjects.get(object);
-            }
-            try {
-                Constructor<?> constructor = findConstructor(object);
-                Object clone = createObjectWithConstructor(object, constructor);
-                oldToNewObjects.put(object, clone);
-                return clone;
-            }
-            catch(InstantiationException ex) {
-                throw new RuntimeException("Internal method error", ex);
-            }
-            catch (Exception ex) {
-                if (isReplaceNonCopiedWithNull) {
-                    return null;
-                }
-                throw new ObjectCannotBeClonedException(ex);
-            }
-        }
+    /**
+     * Deeply copy an object reusing the unchanged parts of its previous copy: only changed objects
+     * and objects referencing them (directly or via other objects) are copied, all other objects of the new copy
+     * are the objects of the previous copy. So snapshots kept together take memory for their changes only.
+     * <p>Originals are matched with their copies by walking the original and the previous copy along the same fields,
+     * elements and map entries (values of maps with immutable keys are matched by key). A matched original is unchanged
+     * if its primitive and immutable values are equal to the values of its copy, its references are matched with the
+     * references of the copy and the sharing of objects is the same. With {@link ChangeHint#dirty(Collection)}
+     * only the reported originals and the originals reached only via them are compared, other matched originals
+     * are trusted to be unchanged. With {@link ChangeHint#compare()} every matched original is compared.</p>
+     * <p>The previous copy and the new one share objects, so copies must be treated as read-only snapshots: a change
+     * of the previous copy would be visible in the new one. Changed objects are copied with the rules of
+     * {@link #deepCloneIterative(Object)}, the walk is iterative too. Objects copied by registered cloners are always copied
+     * again, other unmatched objects are copied unless they are reused via another path.</p>
+     * <p>Without changes the previous copy itself is returned. The walk still reads the reachable part of both graphs
+     * and keeps a table of matches as large as the table of a deep clone, so a reclone pays off when copies are
+     * retained or expensive to create (large arrays, copy constructors), not as a faster transient copy.</p>
+     * @param original object to be copied, changed since the previous copy
+     * @param previousClone copy of the object made by a deep clone or a reclone and not changed since
+     * @param changeHint originals changed since the previous copy or {@link ChangeHint#compare()}
+     * @return copy of object sharing unchanged objects with the previous copy
+     * @throws ObjectCannotBeClonedException if any changed object can't be copied
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access
+     *                                   control and the underlying constructor is inaccessible
+     */
+    public static <T> T reclone(T original, T previousClone, ChangeHint changeHint)
+            throws ObjectCannotBeClonedException, IllegalAccessException {
+        return Recloner.reclone(original, previousClone, Objects.requireNonNull(changeHint));
+    }
 
-        private Constructor<?> findConstructor(Object object) {
-            Constructor<?>[] constructors = object.getClass().getDeclaredConstructors();
-            Constructor<?> constructor;
-            List<Constructor<?>> constructorList = Arrays.stream(constructors)
-                    .filter(c -> Modifier.isPublic(c.getModifiers()))
-                    .collect(Collectors.toList());
-            if (constructorList.size() == 1) {
-                constructor = constructorList.get(0);
-            }
-            else {
-                List<Constructor<?>> copyConstructor = constructorList.stream()
-                        .filter(c -> c.getAnnotation(CopyConstructor.class) != null)
-                        .collect(Collectors.toList());
-                if (copyConstructor.size() == 1) {
-                    constructor = copyConstructor.get(0);
-                }
-                else if (copyConstructor.size() > 1) {
-                    throw new ObjectCannotBeClonedException(
-                            "Ambiguous constructor: there are more then 1 constructor with CopyConstructor annotation");
-                }
-                else {
-                    constructor = constructorList.stream()
-                            .filter(c -> c.getParameterCount() == 0)
-                            .findFirst()
-                            .orElse(null);
-                    if (constructor == null) {
-                        throw new ObjectCannotBeClonedException(
-                                "Ambiguous constructor: for class " + object.getClass().getName() + " there are more than 1 constructor and there is neither empty constructor nor constructor annotated CopyConstructor");
-                    }
-                }
-            }
-            return constructor;
-        }
+    /**
+     * Estimate the number and the memory of the copies {@link #deepClone(Object)} would make without copying anything,
+     * e.g. to decide whether a graph should be cloned or to choose a {@link CloneOptions.Builder#memoryBudget(long) budget}.
+     * The graph is visited once, the estimate reports the copies of each class too.
+     * @param object object which copy is estimated
+     * @return number of copies and their estimated bytes in total and by class
+     * @throws ObjectCannotBeClonedException if fields of any object can't be accessed
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access control
+     */
+    public static CloneSizeEstimate estimateCloneSize(Object object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return CloneSizeEstimate.of(object);
+    }
 
-        private Object createObjectWithConstructor(Object object, Constructor<?> constructor) throws InvocationTargetException, InstantiationException, IllegalAccessException {
-
-            if (constructor.getParameterCount() == 0) {
-                return constructor.newInstance();
-            }
-            Field[] declaredFields = object.getClass().getDeclaredFields();
-
-            Class<?>[] parameterTypes = constructor.getParameterTypes();
-            Annotation[][] parameterAnnotations = constructor.getParameterAnnotations();
-            Object[] parameters = new Object[parameterTypes.length];
-
-            for (int i = 0; i < parameterTypes.length; i++) {
-                final int finalI = i;
-                Annotation[] parameterAnnotation = parameterAnnotations[i];
-                CopyFieldName copyAnnotation = (CopyFieldName) Arrays.stream(parameterAnnotation)
-                        .filter(a -> CopyFieldName.class.equals(a.annotationType()))
-                        .findFirst()
-                        .orElse(null);
-                if (copyAnnotation != null) {
-                    Optional<Field> field = Arrays.stream(declaredFields)
-                            .filter(f -> f.getName().equals(copyAnnotation.value()))
-                            .findFirst();
-                    if (field.isPresent()) {
-                        field.get().setAccessible(true);
-                        parameters[finalI] = field.get().get(object);
-                    }
-                    else {
-                        throw new ObjectCannotBeClonedException(
-                                "Field with name " + copyAnnotation.value() + " can not be found for class " + object.getClass().getName());
-                    }
-                }
-                else {
-                    List<Field> objectFieldsWithTheSameType = Arrays.stream(declaredFields)
-                            .filter(f -> f.getType().equals(parameterTypes[finalI]))
-                            .collect(Collectors.toList());
-                    if (objectFieldsWithTheSameType.size() != 1) {
-                        throw new ObjectCannotBeClonedException(
-                                "Ambiguous constructor field: " + i + "(" + parameterTypes[finalI].getName() + ") for class " + object.getClass().getName());
-                    }
-                    objectFieldsWithTheSameType.get(0).setAccessible(true);
-                    parameters[finalI] = objectFieldsWithTheSameType.get(0).get(object);
-                }
-            }
-            return constructor.newInstance(parameters);
-        }
+    /**
+     * Write a deep copy of an object graph off the heap to a new direct buffer sized for it.
+     * <p>Use it for large read-only graphs (e.g. reference data) which copies are needed rarely or in parts:
+     * the snapshot costs the heap and the garbage collector nothing and {@link Snapshot#materialize(Object...)}
+     * creates copies of the whole graph or of the subgraph at a path. Objects are written with the rules
+     * of {@link #deepClone(Object)}, immutable values are written too and registered cloners aren't used.</p>
+     * @param object object to be written
+     * @return snapshot of the graph
+     * @throws ObjectCannotBeClonedException if any object can't be written
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access control
+     */
+    public static Snapshot snapshot(Object object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return SnapshotWriter.write(object);
+    }
 
-        private boolean isReturnTheSameObject(Class clazz) {
-            return clazz.equals(String.class)
-                    || (clazz.getSuperclass() != null && clazz.getSuperclass().equals(Number.class)
-                        && !clazz.equals(AtomicInteger.class) && !clazz.equals(AtomicLong.class))
-                    || clazz.equals(Boolean.class);
-        }
+    /**
+     * Write a deep copy of an object graph as {@link #snapshot(Object)} does to the buffer from its position,
+     * e.g. to a region of a memory-mapped file, the position is moved past the snapshot.
+     * @param object object to be written
+     * @param buffer buffer which remaining bytes take the snapshot
+     * @return snapshot of the graph backed by the buffer
+     * @throws java.nio.BufferOverflowException if the snapshot doesn't fit the remaining bytes of the buffer
+     * @throws ObjectCannotBeClonedException if any object can't be written
+     * @throws IllegalAccessException if any Field of any object is enforcing Java language access control
+     */
+    public static Snapshot snapshot(Object object, ByteBuffer buffer) throws ObjectCannotBeClonedException, IllegalAccessException {
+        return SnapshotWriter.write(object, Objects.requireNonNull(buffer));
+    }
+
+    /**
+     * Register a type which instances are never changed, so they are shared by the original and the copy
+     * instead of being copied by all subsequent clones. Subclasses and implementations of the type are immutable too.
+     * <p>Classes which instance fields are all final and declared with immutable final types are detected
+     * without registration, registration is needed for classes with non-final fields which are never written
+     * after construction, non-final classes and interfaces of value classes.</p>
+     * <p>Cached clone plans of all classes are dropped because the immutability of classes is part of them.</p>
+     * @param type immutable type
+     */
+    public static void registerImmutableType(Class<?> type) {
+        ImmutableTypes.register(Objects.requireNonNull(type));
+        ClassPlan.invalidateAll();
+    }
+
+    /**
+     * @param type checked class
+     * @return true if instances of the class are shared by the original and the copy instead of being copied
+     */
+    public static boolean isImmutableType(Class<?> type) {
+        return type.isPrimitive() || type.isEnum() || ClassPlan.of(type).isImmutable();
+    }
+
+    /**
+     * Drop the cached clone plan (selected constructor, constructor parameter bindings and copied fields) of a class.
+     * <p>Plans are built on the first clone of a class and reused by all later calls,
+     * the plan of the class is rebuilt on its next clone.</p>
+     * @param clazz class which plan should be dropped
+     */
+    public static void invalidateClonePlan(Class<?> clazz) {
+        ClassPlan.invalidate(clazz);
+    }
+
+    /**
+     * Drop cached clone plans of all classes, each plan is rebuilt on the next clone of its class.
+     */
+    public static void invalidateClonePlans() {
+        ClassPlan.invalidateAll();
+    }
 
+    /**
+     * Select the strategy creating copies of classes without a strategy registered by
+     * {@link #registerInstantiator(Class, Instantiator)}, {@link Instantiator#constructorRules()} is used by default.
+     * <p>Other strategies create copies without calling the constructor selected by the rules, e.g.
+     * {@link Instantiator#serialization()} skips constructors, so expensive validations aren't repeated for copies
+     * and classes without a suitable constructor can be copied. All fields of the copy are written afterwards.</p>
+     * <p>Cached clone plans of all classes are dropped because the factories of instances are part of them.</p>
+     * @param instantiator strategy used by all subsequent clones
+     */
+    public static void setInstantiator(Instantiator instantiator) {
+        Instantiators.setDefault(instantiator);
+        ClassPlan.invalidateAll();
+    }
+
+    /**
+     * @return strategy creating copies of classes without a registered strategy
+     */
+    public static Instantiator getInstantiator() {
+        return Instantiators.getDefault();
+    }
+
+    /**
+     * Select the strategy creating copies of the exact class instead of the strategy set by
+     * {@link #setInstantiator(Instantiator)}, the strategy applies to subsequent clones.
+     * @param clazz class which copies are created by the strategy
+     * @param instantiator strategy of the class or null to use the default strategy again
+     */
+    public static void registerInstantiator(Class<?> clazz, Instantiator instantiator) {
+        Instantiators.register(Objects.requireNonNull(clazz), instantiator);
+        ClassPlan.invalidate(clazz);
+    }
+
+    /**
+     * Select the mechanism used to read and write fields of copied objects, {@link FieldAccessEngine#REFLECTION}
+     * is used by default.
+     * <p>Cached clone plans of all classes are dropped because field accessors are part of them.</p>
+     * @param engine field access engine to be used by all subsequent clones
+     */
+    public static void setFieldAccessEngine(FieldAccessEngine engine) {
+        ClassPlan.setEngine(engine);
+    }
+
+    /**
+     * @return field access engine currently used by clones
+     */
+    public static FieldAccessEngine getFieldAccessEngine() {
+        return ClassPlan.getEngine();
+    }
+
+    /**
+     * Select whether transient fields which can't be accessed (e.g. {@code modCount} of {@code java.util.AbstractList}
+     * inherited by a subclass while {@code java.util} isn't open) are left to the constructor of the copy
+     * as serialization does, they are by default.
+     * <p>Each skipped field is logged once per class by the system logger {@code utils.ClassPlan} at level INFO.
+     * Without skipping, clones of such classes fail with {@link ObjectCannotBeClonedException} naming the field.
+     * Cached clone plans of all classes are dropped because their fields depend on it.</p>
+     * @param skipped true to skip inaccessible transient fields in all subsequent clones
+     */
+    public static void setInaccessibleTransientFieldsSkipped(boolean skipped) {
+        ClassPlan.setInaccessibleTransientSkipped(skipped);
+    }
+
+    /**
+     * @return true if inaccessible transient fields are left to the constructor of the copy
+     */
+    public static boolean isInaccessibleTransientFieldsSkipped() {
+        return ClassPlan.isInaccessibleTransientSkipped();
+    }
+
+    /**
+     * Enable or disable cloners generated per class, they are disabled by default.
+     * <p>A generated cloner calls the constructor selected by the rules of {@link #deepClone(Object)} and copies
+     * primitive and immutable fields directly, only reference fields are copied recursively.
+     * Classes which can't be accessed privately (e.g. classes of not opened modules) and classes
+     * which constructor can't be resolved are copied via reflection as usual, so the result is the same in both modes.</p>
+     * @param enabled true to use generated cloners for all subsequent clones
+     */
+    public static void setGeneratedClonersEnabled(boolean enabled) {
+        generatedClonersEnabled = enabled;
+    }
+
+    /**
+     * @return true if generated cloners are used by clones
+     */
+    public static boolean isGeneratedClonersEnabled() {
+        return generatedClonersEnabled;
+    }
+
+    /**
+     * Set how many clones started by {@link #deepCloneAsync(Object, Executor)} run at once, the number of
+     * available processors by default. Clones are bound by processors and memory, so more clones running
+     * at once make each of them slower and keep more copies in progress.
+     * @param count maximal number of running async clones for all subsequent async clones
+     */
+    public static void setMaxConcurrentAsyncClones(int count) {
+        AsyncCloner.setMaxConcurrentClones(count);
+    }
+
+    /**
+     * Install the instrumentation receiving events of all subsequent clones (e.g. {@link CloneMetrics}),
+     * no instrumentation is installed by default.
+     * <p>Without an instrumentation clones measure nothing unless the flight recorder event {@code utils.DeepClone}
+     * is enabled by a recording, then each clone is recorded with its graph size, depth and duration.</p>
+     * @param instrumentation instrumentation to be used or null to remove the installed one
+     */
+    public static void setInstrumentation(CloneInstrumentation instrumentation) {
+        CloneTrace.install(instrumentation);
+    }
+
+    /**
+     * @return instrumentation receiving events of clones or null if none is installed
+     */
+    public static CloneInstrumentation getInstrumentation() {
+        return CloneTrace.getInstalled();
     }
 
 }
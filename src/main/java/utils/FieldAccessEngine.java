@@ -0,0 +1,25 @@
+package utils;
+
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.VarHandle;
+
+/**
+ * Mechanism used to read and write fields of copied objects.
+ */
+public enum FieldAccessEngine {
+
+    /**
+     * Fields are accessed via {@link java.lang.reflect.Field},
+     * primitive fields are copied with typed getters and setters like {@code getInt/setInt}.
+     */
+    REFLECTION,
+
+    /**
+     * Fields are accessed via {@link VarHandle} obtained with {@link MethodHandles#privateLookupIn},
+     * primitive fields are copied without boxing.
+     * <p>Final fields and fields of classes which can't be accessed privately (e.g. classes of not opened modules)
+     * are still accessed via {@link java.lang.reflect.Field} because their var handles are read-only or can't be created.</p>
+     */
+    VAR_HANDLE
+
+}
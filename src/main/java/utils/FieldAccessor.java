@@ -0,0 +1,193 @@
+package utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.invoke.VarHandle;
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+
+/**
+ * Reads and writes one field of objects of the planned class.
+ * <p>{@link #copy(Object, Object)} moves the field value between two objects without boxing primitive values.</p>
+ */
+abstract class FieldAccessor {
+
+    /**
+     * Creates an accessor of an accessible field for the given engine.
+     */
+    static FieldAccessor of(Field field, FieldAccessEngine engine) {
+        int modifiers = field.getModifiers();
+        // a VarHandle of a static field has no instance coordinate, static fields keep reflection
+        if (engine == FieldAccessEngine.VAR_HANDLE && !Modifier.isFinal(modifiers) && !Modifier.isStatic(modifiers)) {
+            try {
+                VarHandle handle = MethodHandles.privateLookupIn(field.getDeclaringClass(), MethodHandles.lookup())
+                        .unreflectVarHandle(field);
+                return new VarHandleAccessor(handle, field.getType());
+            }
+            catch (IllegalAccessException | RuntimeException ex) {
+                // the declaring class module is not open for deep reflection, keep reflection
+            }
+        }
+        return new ReflectionAccessor(field);
+    }
+
+    abstract Object get(Object object) throws IllegalAccessException;
+
+    abstract void set(Object object, Object value) throws IllegalAccessException;
+
+    /**
+     * Copies the field value from one object to another one as is.
+     */
+    abstract void copy(Object from, Object to) throws IllegalAccessException;
+
+    private static final class ReflectionAccessor extends FieldAccessor {
+
+        private final Field field;
+        private final Class<?> type;
+
+        private ReflectionAccessor(Field field) {
+            this.field = field;
+            this.type = field.getType();
+        }
+
+        @Override
+        Object get(Object object) throws IllegalAccessException {
+            return field.get(object);
+        }
+
+        @Override
+        void set(Object object, Object value) throws IllegalAccessException {
+            field.set(object, value);
+        }
+
+        @Override
+        void copy(Object from, Object to) throws IllegalAccessException {
+            if (type == int.class) {
+                field.setInt(to, field.getInt(from));
+            }
+            else if (type == long.class) {
+                field.setLong(to, field.getLong(from));
+            }
+            else if (type == double.class) {
+                field.setDouble(to, field.getDouble(from));
+            }
+            else if (type == boolean.class) {
+                field.setBoolean(to, field.getBoolean(from));
+            }
+            else if (type == float.class) {
+                field.setFloat(to, field.getFloat(from));
+            }
+            else if (type == byte.class) {
+                field.setByte(to, field.getByte(from));
+            }
+            else if (type == short.class) {
+                field.setShort(to, field.getShort(from));
+            }
+            else if (type == char.class) {
+                field.setChar(to, field.getChar(from));
+            }
+            else {
+                field.set(to, field.get(from));
+            }
+        }
+    }
+
+    /**
+     * Accessor invoking var handle access modes through method handles adapted to {@code (Object)T}
+     * and {@code (Object,T)void} with T erased to Object for reference fields, so calls are exact and never box.
+     */
+    private static final class VarHandleAccessor extends FieldAccessor {
+
+        private final MethodHandle getter;
+        private final MethodHandle setter;
+        private final Class<?> type;
+
+        private VarHandleAccessor(VarHandle handle, Class<?> type) {
+            Class<?> erasedType = type.isPrimitive() ? type : Object.class;
+            this.getter = handle.toMethodHandle(VarHandle.AccessMode.GET)
+                    .asType(MethodType.methodType(erasedType, Object.class));
+            this.setter = handle.toMethodHandle(VarHandle.AccessMode.SET)
+                    .asType(MethodType.methodType(void.class, Object.class, erasedType));
+            this.type = type;
+        }
+
+        @Override
+        Object get(Object object) {
+            try {
+                if (type.isPrimitive()) {
+                    return getter.invoke(object);
+                }
+                return (Object) getter.invokeExact(object);
+            }
+            catch (Throwable ex) {
+                throw rethrow(ex);
+            }
+        }
+
+        @Override
+        void set(Object object, Object value) {
+            try {
+                if (type.isPrimitive()) {
+                    setter.invoke(object, value);
+                }
+                else {
+                    setter.invokeExact(object, value);
+                }
+            }
+            catch (Throwable ex) {
+                throw rethrow(ex);
+            }
+        }
+
+        @Override
+        void copy(Object from, Object to) {
+            try {
+                if (type == int.class) {
+                    setter.invokeExact(to, (int) getter.invokeExact(from));
+                }
+                else if (type == long.class) {
+                    setter.invokeExact(to, (long) getter.invokeExact(from));
+                }
+                else if (type == double.class) {
+                    setter.invokeExact(to, (double) getter.invokeExact(from));
+                }
+                else if (type == boolean.class) {
+                    setter.invokeExact(to, (boolean) getter.invokeExact(from));
+                }
+                else if (type == float.class) {
+                    setter.invokeExact(to, (float) getter.invokeExact(from));
+                }
+                else if (type == byte.class) {
+                    setter.invokeExact(to, (byte) getter.invokeExact(from));
+                }
+                else if (type == short.class) {
+                    setter.invokeExact(to, (short) getter.invokeExact(from));
+                }
+                else if (type == char.class) {
+                    setter.invokeExact(to, (char) getter.invokeExact(from));
+                }
+                else {
+                    setter.invokeExact(to, (Object) getter.invokeExact(from));
+                }
+            }
+            catch (Throwable ex) {
+                throw rethrow(ex);
+            }
+        }
+    }
+
+    /**
+     * Rethrows unchecked exceptions and errors thrown by a method handle, checked ones are wrapped.
+     */
+    static RuntimeException rethrow(Throwable ex) {
+        if (ex instanceof RuntimeException) {
+            return (RuntimeException) ex;
+        }
+        if (ex instanceof Error) {
+            throw (Error) ex;
+        }
+        return new IllegalStateException(ex);
+    }
+
+}
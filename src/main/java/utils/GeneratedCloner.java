@@ -0,0 +1,214 @@
+package utils;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.Field;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Modifier;
+import java.util.ArrayList;
+import java.util.HashMap;
+import java.util.List;
+import java.util.Map;
+
+/**
+ * Cloner dedicated to one class, generated on its first clone from the class plan.
+ * <p>The selected constructor (or the factory of another {@link Instantiator}), the getters of its bound fields and the stores of all primitive and immutable fields
+ * are linked into two method handle trees, which the JVM spins into its own classes and the JIT inlines,
+ * so only reference fields are left for the copier to recurse into. Inherited fields are linked via lookups
+ * in their declaring classes, static fields via handles which ignore the object.</p>
+ * <p>A class which can't be accessed privately is cloned via reflection, a failure to link the handles is logged
+ * as a warning before the class falls back to reflection too.</p>
+ * <p>The project targets Java 11, so hidden classes (Java 15) are not available and classes defined with
+ * {@link MethodHandles.Lookup#defineClass} can't access private fields, that's why the cloner is composed of
+ * method handles instead of emitted bytecode.</p>
+ */
+final class GeneratedCloner {
+
+    private static final System.Logger LOGGER = System.getLogger(GeneratedCloner.class.getName());
+
+    private static final MethodType INSTANTIATE_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType COPY_TYPE = MethodType.methodType(void.class, Object.class, Object.class);
+    private static final MethodHandle NO_COPY = MethodHandles.empty(COPY_TYPE);
+    private static final MethodHandle FACTORY_NEW_INSTANCE;
+
+    static {
+        try {
+            FACTORY_NEW_INSTANCE = MethodHandles.lookup().findVirtual(Instantiator.Factory.class, "newInstance", INSTANTIATE_TYPE);
+        }
+        catch (ReflectiveOperationException ex) {
+            throw new ExceptionInInitializerError(ex);
+        }
+    }
+
+    private final MethodHandle instantiate;
+    private final MethodHandle copyFlatFields;
+    private final ClassPlan.FieldPlan[] referenceFields;
+    private final MethodHandle[] referenceGetters;
+    private final MethodHandle[] referenceSetters;
+
+    private GeneratedCloner(MethodHandle instantiate, MethodHandle copyFlatFields, ClassPlan.FieldPlan[] referenceFields,
+                            MethodHandle[] referenceGetters, MethodHandle[] referenceSetters) {
+        this.instantiate = instantiate;
+        this.copyFlatFields = copyFlatFields;
+        this.referenceFields = referenceFields;
+        this.referenceGetters = referenceGetters;
+        this.referenceSetters = referenceSetters;
+    }
+
+    /**
+     * Generates a cloner for the planned class.
+     * @return the cloner or null if the class can't be accessed privately or the plan can't be used to clone it
+     */
+    static GeneratedCloner generate(ClassPlan plan) {
+        try {
+            Map<Class<?>, MethodHandles.Lookup> lookups = new HashMap<>();
+            MethodHandles.Lookup lookup = lookupIn(lookups, plan.getType());
+
+            Instantiator.Factory factory = plan.getFactory();
+            MethodHandle instantiate = factory instanceof ConstructorFactory
+                    ? instantiateHandle(lookups, lookup, (ConstructorFactory) factory)
+                    : FACTORY_NEW_INSTANCE.bindTo(factory);
+
+            MethodHandle copyFlatFields = NO_COPY;
+            List<ClassPlan.FieldPlan> referenceFields = new ArrayList<>();
+            List<MethodHandle> referenceGetters = new ArrayList<>();
+            List<MethodHandle> referenceSetters = new ArrayList<>();
+            for (ClassPlan.FieldPlan fieldPlan : plan.getFields()) {
+                Field field = fieldPlan.getField();
+                lookup = lookupIn(lookups, field.getDeclaringClass());
+                MethodHandle getter = getterOf(lookup, field);
+                MethodHandle setter = setterOf(lookup, field);
+                if (fieldPlan.getKind() == ClassPlan.FieldKind.PRIMITIVE || fieldPlan.getKind() == ClassPlan.FieldKind.IMMUTABLE) {
+                    // (clone, original) -> setter(clone, getter(original))
+                    MethodHandle copyField = MethodHandles.filterArguments(setter, 1, getter);
+                    copyFlatFields = MethodHandles.foldArguments(copyFlatFields, copyField.asType(COPY_TYPE));
+                }
+                else {
+                    referenceFields.add(fieldPlan);
+                    referenceGetters.add(getter.asType(INSTANTIATE_TYPE));
+                    referenceSetters.add(setter.asType(COPY_TYPE));
+                }
+            }
+            return new GeneratedCloner(instantiate, copyFlatFields,
+                    referenceFields.toArray(new ClassPlan.FieldPlan[0]),
+                    referenceGetters.toArray(new MethodHandle[0]),
+                    referenceSetters.toArray(new MethodHandle[0]));
+        }
+        catch (IllegalAccessException ex) {
+            // e.g. a class of a module which isn't open, reflection is used as for any class without a cloner
+            LOGGER.log(System.Logger.Level.DEBUG, "No cloner is generated for class {0}: {1}",
+                    plan.getType().getName(), ex.getMessage());
+            return null;
+        }
+        catch (RuntimeException ex) {
+            LOGGER.log(System.Logger.Level.WARNING, "Cloner of class " + plan.getType().getName()
+                    + " can't be generated, the class is cloned via reflection", ex);
+            return null;
+        }
+    }
+
+    /**
+     * @return getter taking the object, which a getter of a static field ignores
+     */
+    private static MethodHandle getterOf(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        MethodHandle getter = lookup.unreflectGetter(field);
+        return Modifier.isStatic(field.getModifiers())
+                ? MethodHandles.dropArguments(getter, 0, field.getDeclaringClass())
+                : getter;
+    }
+
+    /**
+     * @return setter taking the object and the value, which a setter of a static field ignores the object of
+     */
+    private static MethodHandle setterOf(MethodHandles.Lookup lookup, Field field) throws IllegalAccessException {
+        MethodHandle setter = lookup.unreflectSetter(field);
+        return Modifier.isStatic(field.getModifiers())
+                ? MethodHandles.dropArguments(setter, 0, field.getDeclaringClass())
+                : setter;
+    }
+
+    private static MethodHandles.Lookup lookupIn(Map<Class<?>, MethodHandles.Lookup> lookups, Class<?> type)
+            throws IllegalAccessException {
+        MethodHandles.Lookup lookup = lookups.get(type);
+        if (lookup == null) {
+            lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            lookups.put(type, lookup);
+        }
+        return lookup;
+    }
+
+    private static MethodHandle instantiateHandle(Map<Class<?>, MethodHandles.Lookup> lookups, MethodHandles.Lookup lookup,
+                                                  ConstructorFactory factory)
+            throws IllegalAccessException {
+        Constructor<?> constructor = factory.getConstructor();
+        Field[] parameterFields = factory.getParameterFields();
+        MethodHandle handle = lookup.unreflectConstructor(constructor);
+        if (parameterFields.length == 0) {
+            return MethodHandles.dropArguments(handle, 0, Object.class).asType(INSTANTIATE_TYPE);
+        }
+        // (p0, p1, ...) -> (original, original, ...) -> (original)
+        for (int i = 0; i < parameterFields.length; i++) {
+            MethodHandle getter = lookupIn(lookups, parameterFields[i].getDeclaringClass()).unreflectGetter(parameterFields[i]);
+            handle = MethodHandles.filterArguments(handle, i,
+                    getter.asType(getter.type().changeParameterType(0, Object.class)));
+        }
+        return MethodHandles.permuteArguments(handle.asType(handle.type().changeReturnType(Object.class)),
+                INSTANTIATE_TYPE, new int[parameterFields.length]);
+    }
+
+    /**
+     * Creates a new instance with the selected constructor.
+     * @throws InvocationTargetException if the constructor throws an exception
+     */
+    Object newInstance(Object original) throws InvocationTargetException {
+        try {
+            return (Object) instantiate.invokeExact(original);
+        }
+        catch (Error ex) {
+            throw ex;
+        }
+        catch (Throwable ex) {
+            throw new InvocationTargetException(ex);
+        }
+    }
+
+    /**
+     * Copies all primitive and immutable fields of the original object to the clone.
+     */
+    void copyFlatFields(Object original, Object clone) {
+        try {
+            copyFlatFields.invokeExact(clone, original);
+        }
+        catch (Throwable ex) {
+            throw FieldAccessor.rethrow(ex);
+        }
+    }
+
+    /**
+     * @return fields which values have to be copied deeply
+     */
+    ClassPlan.FieldPlan[] getReferenceFields() {
+        return referenceFields;
+    }
+
+    Object getReference(int index, Object object) {
+        try {
+            return (Object) referenceGetters[index].invokeExact(object);
+        }
+        catch (Throwable ex) {
+            throw FieldAccessor.rethrow(ex);
+        }
+    }
+
+    void setReference(int index, Object object, Object value) {
+        try {
+            referenceSetters[index].invokeExact(object, value);
+        }
+        catch (Throwable ex) {
+            throw FieldAccessor.rethrow(ex);
+        }
+    }
+
+}
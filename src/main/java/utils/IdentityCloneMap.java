@@ -0,0 +1,151 @@
+package utils;
+
+import java.util.Arrays;
+
+/**
+ * Map of original objects to their copies compared by identity.
+ * <p>Open addressing with linear probing on {@link System#identityHashCode(Object)} over parallel key and value arrays,
+ * so user-defined {@code hashCode/equals} are never called and distinct but equal objects are never merged.
+ * Null keys and values are not supported.</p>
+ * <p>{@link #clear()} keeps the arrays, so one map can be reused by consecutive clones.</p>
+ */
+final class IdentityCloneMap {
+
+    private static final int MIN_CAPACITY = 16;
+    private static final int MAX_CAPACITY = 1 << 30;
+    private static final int MAX_REUSED_CAPACITY = 1 << 12;
+
+    private Object[] keys;
+    private Object[] values;
+    private int size;
+    private int threshold;
+
+    /**
+     * @param expectedSize expected number of mappings, the map is sized to hold them without resizing
+     */
+    IdentityCloneMap(int expectedSize) {
+        allocate(capacityFor(expectedSize));
+    }
+
+    /**
+     * Grows the empty map to hold the expected number of mappings without resizing.
+     */
+    void ensureCapacity(int expectedSize) {
+        int capacity = capacityFor(expectedSize);
+        if (keys.length < capacity) {
+            allocate(capacity);
+        }
+    }
+
+    /**
+     * @return true if the map grew larger than maps kept for reuse, clearing it costs more than a new small map
+     */
+    boolean isOversized() {
+        return keys.length > MAX_REUSED_CAPACITY;
+    }
+
+    /**
+     * @return copy of the object or null if there is no mapping for it
+     */
+    Object get(Object key) {
+        Object[] k = keys;
+        int mask = k.length - 1;
+        int index = hash(key, mask);
+        while (true) {
+            Object candidate = k[index];
+            if (candidate == key) {
+                return values[index];
+            }
+            if (candidate == null) {
+                return null;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    /**
+     * Maps the object to its copy unless the object is already mapped.
+     * @return the copy mapped before or null if the given copy was mapped
+     */
+    Object putIfAbsent(Object key, Object value) {
+        Object[] k = keys;
+        int mask = k.length - 1;
+        int index = hash(key, mask);
+        while (true) {
+            Object candidate = k[index];
+            if (candidate == key) {
+                return values[index];
+            }
+            if (candidate == null) {
+                k[index] = key;
+                values[index] = value;
+                if (++size > threshold) {
+                    resize();
+                }
+                return null;
+            }
+            index = (index + 1) & mask;
+        }
+    }
+
+    int size() {
+        return size;
+    }
+
+    /**
+     * Removes all mappings keeping the allocated arrays.
+     */
+    void clear() {
+        if (size > 0) {
+            Arrays.fill(keys, null);
+            Arrays.fill(values, null);
+            size = 0;
+        }
+    }
+
+    private void resize() {
+        Object[] oldKeys = keys;
+        Object[] oldValues = values;
+        if (oldKeys.length == MAX_CAPACITY) {
+            throw new IllegalStateException("Too many objects in the cloned graph");
+        }
+        allocate(oldKeys.length << 1);
+        Object[] k = keys;
+        int mask = k.length - 1;
+        for (int i = 0; i < oldKeys.length; i++) {
+            Object key = oldKeys[i];
+            if (key != null) {
+                int index = hash(key, mask);
+                while (k[index] != null) {
+                    index = (index + 1) & mask;
+                }
+                k[index] = key;
+                values[index] = oldValues[i];
+            }
+        }
+    }
+
+    private void allocate(int capacity) {
+        keys = new Object[capacity];
+        values = new Object[capacity];
+        threshold = capacity >>> 1;
+    }
+
+    private static int capacityFor(int expectedSize) {
+        if (expectedSize >= MAX_CAPACITY >>> 1) {
+            return MAX_CAPACITY;
+        }
+        int capacity = MIN_CAPACITY;
+        while (capacity >>> 1 < expectedSize) {
+            capacity <<= 1;
+        }
+        return capacity;
+    }
+
+    private static int hash(Object key, int mask) {
+        // spread the identity hash so that close hashes don't end up in one probe run
+        int h = System.identityHashCode(key) * 0x9E3779B9;
+        return (h ^ (h >>> 16)) & mask;
+    }
+
+}
@@ -0,0 +1,207 @@
+package utils;
+
+import java.lang.reflect.Field;
+import java.lang.reflect.Modifier;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.charset.Charset;
+import java.time.DayOfWeek;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.ArrayList;
+import java.util.Currency;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.Set;
+import java.util.UUID;
+import java.util.concurrent.CopyOnWriteArrayList;
+import java.util.concurrent.atomic.AtomicInteger;
+import java.util.concurrent.atomic.AtomicLong;
+import java.util.regex.Pattern;
+
+/**
+ * Classes which instances are shared by the original and the copy instead of being copied.
+ * <p>A class is immutable if it is one of the JDK value classes ({@code String}, boxed primitives, {@code BigDecimal},
+ * {@code UUID}, {@code java.time} values etc.), a direct subclass of {@link Number} except atomics,
+ * a subclass of a registered type or a class detected as immutable: all its instance fields (including inherited ones)
+ * are final and declared with immutable final types, primitives or enums, and there is at least one such field.
+ * Records which components are all immutable are detected so. A sealed class or interface which permitted
+ * subclasses are all immutable is an immutable field type, e.g. a sealed interface implemented by immutable records.
+ * Detection follows field types through cycles, so a final-field linked structure of immutable values is immutable too.
+ * Classes with a registered {@link Cloner} are never detected, their cloner is used as before.</p>
+ * <p>Results are cached by class plans, so plans are invalidated when a type is registered.
+ * Optionals are not immutable by class, they are copied with their value by a built-in cloner.</p>
+ */
+final class ImmutableTypes {
+
+    private static final Set<Class<?>> JDK_TYPES = Set.of(
+            String.class, Boolean.class, Character.class, Byte.class, Short.class, Integer.class, Long.class,
+            Float.class, Double.class, BigInteger.class, BigDecimal.class, UUID.class, Class.class,
+            Instant.class, LocalDate.class, LocalTime.class, LocalDateTime.class, OffsetTime.class, OffsetDateTime.class,
+            ZonedDateTime.class, Duration.class, Period.class, Year.class, YearMonth.class, MonthDay.class, DayOfWeek.class,
+            Locale.class, Currency.class, URI.class, Pattern.class, OptionalInt.class, OptionalLong.class, OptionalDouble.class);
+
+    /**
+     * Abstract JDK types which implementations are immutable.
+     */
+    private static final List<Class<?>> JDK_HIERARCHIES = List.of(ZoneId.class, Charset.class);
+
+    private static final List<Class<?>> registered = new CopyOnWriteArrayList<>();
+
+    private ImmutableTypes() {
+    }
+
+    /**
+     * Registers the type as immutable, subclasses and implementations of it are immutable too.
+     */
+    static void register(Class<?> type) {
+        if (!registered.contains(type)) {
+            registered.add(type);
+        }
+    }
+
+    /**
+     * @return true if instances of the exact class are shared instead of being copied
+     */
+    static boolean isImmutable(Class<?> type) {
+        if (isKnown(type)) {
+            return true;
+        }
+        if (type.isPrimitive() || type.isArray() || type.isInterface() || type.isEnum()
+                || Modifier.isAbstract(type.getModifiers()) || ClonerRegistry.find(type) != null) {
+            return false;
+        }
+        return detect(type);
+    }
+
+    /**
+     * @return true if any value of a field declared with the type is shared instead of being copied
+     */
+    static boolean isImmutableFieldType(Class<?> type) {
+        if (isKnown(type)) {
+            return true;
+        }
+        // a subclass of a non-final class may add mutable state, plans aren't used as the type may be planned right now
+        if (Modifier.isFinal(type.getModifiers())) {
+            return isImmutable(type);
+        }
+        return !type.isArray() && hasImmutableSubclasses(type, new IdentityHashMap<>());
+    }
+
+    private static boolean isKnown(Class<?> type) {
+        if (JDK_TYPES.contains(type)) {
+            return true;
+        }
+        if (type.getSuperclass() == Number.class && type != AtomicInteger.class && type != AtomicLong.class) {
+            return true;
+        }
+        for (Class<?> hierarchy : JDK_HIERARCHIES) {
+            if (hierarchy.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        for (Class<?> registeredType : registered) {
+            if (registeredType.isAssignableFrom(type)) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * Checks fields of the class and classes of its fields. A class which check is in progress is assumed
+     * to be immutable, so results of classes checked on the way depend on the classes checked before them
+     * and are not cached: only the result of the class which started the check is final. If a class on a cycle
+     * turns out to be mutable, all classes of the chain leading to it are mutable too, the first one included.
+     */
+    private static boolean detect(Class<?> type) {
+        return isDetectedImmutable(type, new IdentityHashMap<>());
+    }
+
+    private static boolean isDetectedImmutable(Class<?> type, Map<Class<?>, Boolean> checked) {
+        Boolean result = checked.get(type);
+        if (result != null) {
+            return result;
+        }
+        checked.put(type, Boolean.TRUE);
+        result = hasOnlyImmutableFields(type, checked);
+        checked.put(type, result);
+        return result;
+    }
+
+    private static boolean hasOnlyImmutableFields(Class<?> type, Map<Class<?>, Boolean> checked) {
+        List<Field> fields = new ArrayList<>();
+        for (Class<?> c = type; c != null && c != Object.class; c = c.getSuperclass()) {
+            for (Field field : c.getDeclaredFields()) {
+                if (Modifier.isStatic(field.getModifiers())) {
+                    continue;
+                }
+                if (!Modifier.isFinal(field.getModifiers())) {
+                    return false;
+                }
+                fields.add(field);
+            }
+        }
+        if (fields.isEmpty()) {
+            // stateless objects may be used for their identity, e.g. as locks
+            return false;
+        }
+        for (Field field : fields) {
+            Class<?> fieldType = field.getType();
+            if (fieldType.isPrimitive() || fieldType.isEnum() || isKnown(fieldType)) {
+                continue;
+            }
+            if (fieldType.isArray() || ClonerRegistry.find(fieldType) != null) {
+                return false;
+            }
+            // a subclass of a non-final class may add mutable state unless the class is sealed
+            if (Modifier.isFinal(fieldType.getModifiers()) ? !isDetectedImmutable(fieldType, checked) : !hasImmutableSubclasses(fieldType, checked)) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * @return true if the class or interface is sealed and all its permitted subclasses are immutable,
+     *         sealed subclasses are checked by their permitted subclasses
+     */
+    private static boolean hasImmutableSubclasses(Class<?> type, Map<Class<?>, Boolean> checked) {
+        Class<?>[] permittedSubclasses = Records.permittedSubclasses(type);
+        if (permittedSubclasses == null || permittedSubclasses.length == 0) {
+            return false;
+        }
+        for (Class<?> subclass : permittedSubclasses) {
+            if (subclass.isEnum() || isKnown(subclass)) {
+                continue;
+            }
+            if (ClonerRegistry.find(subclass) != null) {
+                return false;
+            }
+            boolean isImmutableSubclass = Modifier.isFinal(subclass.getModifiers())
+                    ? isDetectedImmutable(subclass, checked) : hasImmutableSubclasses(subclass, checked);
+            if (!isImmutableSubclass) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+}
@@ -0,0 +1,80 @@
+package utils;
+
+import annotation.CopyConstructor;
+import exception.ObjectCannotBeClonedException;
+
+/**
+ * Strategy creating the instances which become copies of objects that aren't arrays, collections, immutable values
+ * or objects copied by a {@link Cloner}. The copier writes all fields of the created instance afterwards,
+ * so the strategy only decides which code runs when a copy is created.
+ * <p>A strategy is asked once per class when the clone plan of the class is built, the factory it returns
+ * is cached in the plan and creates all copies of the class until the plan is invalidated.
+ * Strategies are selected by {@link CopyUtils#setInstantiator(Instantiator)} and
+ * {@link CopyUtils#registerInstantiator(Class, Instantiator)}.</p>
+ */
+public interface Instantiator {
+
+    /**
+     * Prepares creation of instances of a class.
+     * @param type concrete class of copied objects
+     * @return factory of instances of the class or null if the strategy doesn't create instances of the class
+     * @throws ObjectCannotBeClonedException if the strategy applies to the class but can't create its instances,
+     *                                       e.g. its constructors are ambiguous
+     */
+    Factory factoryFor(Class<?> type);
+
+    /**
+     * Creates instances of one class, the factory is shared by all clones and called concurrently.
+     */
+    interface Factory {
+
+        /**
+         * @param original object which copy is created, null when the copy is materialized from a {@link Snapshot}
+         * @return new instance of the class of the original
+         * @throws ReflectiveOperationException if the instance can't be created, e.g. its constructor throws
+         */
+        Object newInstance(Object original) throws ReflectiveOperationException;
+    }
+
+    /**
+     * The default strategy: the constructor is selected by the {@link CopyConstructor} rules of
+     * {@link CopyUtils#deepClone(Object)} and called with the values of the bound fields of the original.
+     * @return strategy calling the selected public constructor
+     */
+    static Instantiator constructorRules() {
+        return Instantiators.CONSTRUCTOR_RULES;
+    }
+
+    /**
+     * Calls the constructor without parameters of any visibility via a method handle linked once per class,
+     * so classes with a private constructor for frameworks can be copied and constructors with parameters
+     * (e.g. validating ones) aren't called. Classes without such constructor aren't created by the strategy.
+     * @return strategy calling constructors without parameters
+     */
+    static Instantiator noArgConstructor() {
+        return Instantiators.NO_ARG_CONSTRUCTOR;
+    }
+
+    /**
+     * Allocates instances without running any constructor of the class or its superclasses, like Java serialization
+     * does for the serializable part of a class, all fields start with default values until the copier writes them.
+     * <p>Uses {@code sun.reflect.ReflectionFactory} of the {@code jdk.unsupported} module, the strategy fails on
+     * runtimes without that module.</p>
+     * @return strategy skipping constructors
+     */
+    static Instantiator serialization() {
+        return Instantiators.SERIALIZATION;
+    }
+
+    /**
+     * Combines strategies: each class is created by the first strategy which applies to it and can create its
+     * instances, e.g. {@code firstOf(constructorRules(), serialization())} uses constructors where the rules
+     * select one and skips constructors of other classes.
+     * @param instantiators strategies in the order of preference
+     * @return combined strategy, it fails with the error of the first failed strategy if none can create instances
+     */
+    static Instantiator firstOf(Instantiator... instantiators) {
+        return Instantiators.firstOf(instantiators.clone());
+    }
+
+}
@@ -0,0 +1,234 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Constructor;
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+import java.util.Arrays;
+import java.util.Map;
+import java.util.Objects;
+import java.util.concurrent.ConcurrentHashMap;
+
+/**
+ * Built-in {@link Instantiator} strategies and the selection of the strategy of each class: the strategy registered
+ * for the exact class or the default one.
+ * <p>Selected strategies are cached by class plans, so plans are invalidated when the selection changes.</p>
+ */
+final class Instantiators {
+
+    static final Instantiator CONSTRUCTOR_RULES = new Instantiator() {
+        @Override
+        public Factory factoryFor(Class<?> type) {
+            return ConstructorFactory.resolve(type);
+        }
+
+        @Override
+        public String toString() {
+            return "constructorRules";
+        }
+    };
+
+    static final Instantiator NO_ARG_CONSTRUCTOR = new Instantiator() {
+        @Override
+        public Factory factoryFor(Class<?> type) {
+            return NoArgFactory.of(type);
+        }
+
+        @Override
+        public String toString() {
+            return "noArgConstructor";
+        }
+    };
+
+    static final Instantiator SERIALIZATION = new Instantiator() {
+        @Override
+        public Factory factoryFor(Class<?> type) {
+            return SerializationFactory.of(type);
+        }
+
+        @Override
+        public String toString() {
+            return "serialization";
+        }
+    };
+
+    private static final Map<Class<?>, Instantiator> registered = new ConcurrentHashMap<>();
+
+    private static volatile Instantiator defaultInstantiator = CONSTRUCTOR_RULES;
+
+    private Instantiators() {
+    }
+
+    /**
+     * @return strategy creating instances of the exact class
+     */
+    static Instantiator of(Class<?> type) {
+        Instantiator instantiator = registered.get(type);
+        return instantiator != null ? instantiator : defaultInstantiator;
+    }
+
+    static void setDefault(Instantiator instantiator) {
+        defaultInstantiator = Objects.requireNonNull(instantiator);
+    }
+
+    static Instantiator getDefault() {
+        return defaultInstantiator;
+    }
+
+    /**
+     * Selects the strategy of the exact class, null selects the default strategy again.
+     */
+    static void register(Class<?> type, Instantiator instantiator) {
+        if (instantiator == null) {
+            registered.remove(type);
+        }
+        else {
+            registered.put(type, instantiator);
+        }
+    }
+
+    static Instantiator firstOf(Instantiator[] instantiators) {
+        for (Instantiator instantiator : instantiators) {
+            Objects.requireNonNull(instantiator);
+        }
+        return new Instantiator() {
+            @Override
+            public Factory factoryFor(Class<?> type) {
+                ObjectCannotBeClonedException firstError = null;
+                for (Instantiator instantiator : instantiators) {
+                    try {
+                        Factory factory = instantiator.factoryFor(type);
+                        if (factory != null) {
+                            return factory;
+                        }
+                    }
+                    catch (ObjectCannotBeClonedException ex) {
+                        if (firstError == null) {
+                            firstError = ex;
+                        }
+                    }
+                }
+                if (firstError != null) {
+                    throw firstError;
+                }
+                return null;
+            }
+
+            @Override
+            public String toString() {
+                return "firstOf" + Arrays.toString(instantiators);
+            }
+        };
+    }
+
+    /**
+     * Calls the constructor without parameters via a method handle which the JIT inlines like a direct call.
+     */
+    private static final class NoArgFactory implements Instantiator.Factory {
+
+        private static final MethodType INSTANTIATE_TYPE = MethodType.methodType(Object.class);
+
+        private final MethodHandle constructor;
+
+        private NoArgFactory(MethodHandle constructor) {
+            this.constructor = constructor;
+        }
+
+        static NoArgFactory of(Class<?> type) {
+            Constructor<?> constructor;
+            try {
+                constructor = type.getDeclaredConstructor();
+            }
+            catch (NoSuchMethodException ex) {
+                return null;
+            }
+            try {
+                MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+                return new NoArgFactory(lookup.unreflectConstructor(constructor).asType(INSTANTIATE_TYPE));
+            }
+            catch (IllegalAccessException | RuntimeException ex) {
+                // e.g. the class is in a module which isn't open
+                throw new ObjectCannotBeClonedException("Constructor without parameters of class " + type.getName() + " can not be accessed", ex);
+            }
+        }
+
+        @Override
+        public Object newInstance(Object original) throws InvocationTargetException {
+            try {
+                return (Object) constructor.invokeExact();
+            }
+            catch (Error ex) {
+                throw ex;
+            }
+            catch (Throwable ex) {
+                throw new InvocationTargetException(ex);
+            }
+        }
+    }
+
+    /**
+     * Allocates instances with the constructor made by {@code ReflectionFactory.newConstructorForSerialization}:
+     * the instance of the class is initialized by the constructor of {@link Object} only.
+     */
+    private static final class SerializationFactory implements Instantiator.Factory {
+
+        private static final Object[] NO_ARGUMENTS = new Object[0];
+
+        private final Constructor<?> constructor;
+
+        private SerializationFactory(Constructor<?> constructor) {
+            this.constructor = constructor;
+        }
+
+        static SerializationFactory of(Class<?> type) {
+            if (Holder.NEW_CONSTRUCTOR_FOR_SERIALIZATION == null) {
+                throw new ObjectCannotBeClonedException("Instances of class " + type.getName()
+                        + " can not be created without constructors: sun.reflect.ReflectionFactory of module jdk.unsupported is not available");
+            }
+            try {
+                Constructor<?> constructor = (Constructor<?>) Holder.NEW_CONSTRUCTOR_FOR_SERIALIZATION.invoke(
+                        Holder.REFLECTION_FACTORY, type, Object.class.getDeclaredConstructor());
+                constructor.setAccessible(true);
+                return new SerializationFactory(constructor);
+            }
+            catch (ReflectiveOperationException | RuntimeException ex) {
+                throw new ObjectCannotBeClonedException("Instances of class " + type.getName() + " can not be created without constructors", ex);
+            }
+        }
+
+        @Override
+        public Object newInstance(Object original) throws ReflectiveOperationException {
+            return constructor.newInstance(NO_ARGUMENTS);
+        }
+
+        /**
+         * The reflection factory is looked up reflectively, so the library doesn't require {@code jdk.unsupported}
+         * unless the strategy is used.
+         */
+        private static final class Holder {
+
+            private static final Object REFLECTION_FACTORY;
+            private static final Method NEW_CONSTRUCTOR_FOR_SERIALIZATION;
+
+            static {
+                Object reflectionFactory = null;
+                Method newConstructorForSerialization = null;
+                try {
+                    Class<?> factoryClass = Class.forName("sun.reflect.ReflectionFactory");
+                    reflectionFactory = factoryClass.getMethod("getReflectionFactory").invoke(null);
+                    newConstructorForSerialization = factoryClass.getMethod("newConstructorForSerialization", Class.class, Constructor.class);
+                }
+                catch (ReflectiveOperationException | LinkageError | RuntimeException ex) {
+                    newConstructorForSerialization = null;
+                }
+                REFLECTION_FACTORY = reflectionFactory;
+                NEW_CONSTRUCTOR_FOR_SERIALIZATION = newConstructorForSerialization;
+            }
+        }
+    }
+
+}
@@ -0,0 +1,634 @@
+package utils;
+
+import java.lang.ref.WeakReference;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.Iterator;
+import java.util.List;
+import java.util.ListIterator;
+import java.util.Map;
+import java.util.Set;
+import java.util.function.BiConsumer;
+import java.util.function.BiFunction;
+import java.util.function.Function;
+import java.util.function.Predicate;
+import java.util.function.UnaryOperator;
+
+/**
+ * Original collection or map shared by its lazy copies until they are written.
+ * <p>A lazy copy is a copy-on-write wrapper which reads the original until it is materialized: on the first write,
+ * on the first read of an element if some elements are mutable and on access to a view (sub-list, list iterator,
+ * key set, values and entries of a map) which can write. Materialization deeply copies the current state of the original
+ * by the copier of the clone which made the lazy copy, so elements copied by the clone before are shared with it
+ * as by an eager clone. Elements of an original containing only immutable elements are read as they are.</p>
+ * <p>When the source is tracked, the field of the original object is replaced with a source wrapper of the same
+ * collection, it writes the collection itself but materializes all lazy copies which are still reading it first.</p>
+ * <p>An eager clone of a wrapper is a plain {@link ArrayList}, {@link java.util.LinkedHashSet} or
+ * {@link java.util.LinkedHashMap} keeping the iteration order of the wrapper.</p>
+ * <p>Wrappers are not thread-safe, all of them have to be used by one thread or synchronized externally.</p>
+ */
+final class LazyCopy {
+
+    private static final int MIN_PURGE_SIZE = 8;
+
+    private final Object data;
+    private final List<WeakReference<Wrapper>> readers = new ArrayList<>(1);
+    private int purgeSize = MIN_PURGE_SIZE;
+    private Boolean isImmutableData;
+
+    private LazyCopy(Object data) {
+        this.data = data;
+    }
+
+    /**
+     * @return shared data of a source wrapper, a new shared data of any other value
+     */
+    static LazyCopy of(Object value) {
+        if (isTracked(value)) {
+            return ((Wrapper) value).source();
+        }
+        return new LazyCopy(value);
+    }
+
+    /**
+     * @return true if the value is a source wrapper, so writes to it are tracked already
+     */
+    static boolean isTracked(Object value) {
+        return value instanceof Wrapper && ((Wrapper) value).isSource();
+    }
+
+    /**
+     * @param copier copier of the clone which gets the lazy copy, it materializes the copy with the objects
+     *               copied by the clone
+     * @return new lazy copy reading the data until it is materialized
+     */
+    Object newCopy(Copier copier) {
+        return wrap(copier);
+    }
+
+    /**
+     * @return new wrapper writing the data itself, all lazy copies are materialized before it writes
+     */
+    Object newSource() {
+        return wrap(null);
+    }
+
+    private Object wrap(Copier copier) {
+        Wrapper wrapper;
+        if (data instanceof List) {
+            wrapper = new LazyList<>(this, copier);
+        }
+        else if (data instanceof Set) {
+            wrapper = new LazySet<>(this, copier);
+        }
+        else if (data instanceof Map) {
+            wrapper = new LazyMap<>(this, copier);
+        }
+        else {
+            wrapper = new LazyCollection<>(this, copier);
+        }
+        if (copier != null) {
+            if (readers.size() >= purgeSize) {
+                // a tracked original is copied again and again, its copies are materialized or dropped meanwhile
+                readers.removeIf(reader -> reader.get() == null || !reader.get().isReading());
+                purgeSize = Math.max(MIN_PURGE_SIZE, readers.size() * 2);
+            }
+            readers.add(new WeakReference<>(wrapper));
+        }
+        return wrapper;
+    }
+
+    private boolean hasReaders() {
+        return !readers.isEmpty();
+    }
+
+    private boolean hasOnlyImmutableElements() {
+        if (isImmutableData == null) {
+            isImmutableData = CollectionCopier.hasOnlyImmutableElements(data);
+        }
+        return isImmutableData;
+    }
+
+    /**
+     * Materializes all lazy copies still reading the data, so the data can be written.
+     */
+    private void detachReaders() {
+        for (WeakReference<Wrapper> reader : readers) {
+            Wrapper wrapper = reader.get();
+            if (wrapper != null) {
+                wrapper.materialize();
+            }
+        }
+        readers.clear();
+        isImmutableData = null;
+    }
+
+    private Object copyData(Copier copier) {
+        try {
+            return copier.copyLazyValue(data);
+        }
+        catch (IllegalAccessException ex) {
+            throw new IllegalStateException("Lazy copy can't be materialized", ex);
+        }
+    }
+
+    private interface Wrapper {
+
+        LazyCopy source();
+
+        boolean isSource();
+
+        /**
+         * @return true if the wrapper reads the shared data
+         */
+        boolean isReading();
+
+        void materialize();
+    }
+
+    static class LazyCollection<E> implements Collection<E>, Wrapper {
+
+        final LazyCopy source;
+        final Copier copier;
+        final boolean isSource;
+        Collection<E> copy;
+
+        LazyCollection(LazyCopy source, Copier copier) {
+            this.source = source;
+            this.copier = copier;
+            this.isSource = copier == null;
+        }
+
+        @Override
+        public LazyCopy source() {
+            return source;
+        }
+
+        @Override
+        public boolean isSource() {
+            return isSource;
+        }
+
+        @Override
+        public boolean isReading() {
+            return copy == null;
+        }
+
+        @Override
+        public void materialize() {
+            if (copy == null) {
+                copy = (Collection<E>) source.copyData(copier);
+            }
+        }
+
+        /**
+         * @return collection to read the size and compare elements with
+         */
+        Collection<E> read() {
+            return copy != null ? copy : (Collection<E>) source.data;
+        }
+
+        /**
+         * @return collection to take elements from
+         */
+        Collection<E> readElements() {
+            if (copy == null && !isSource && !source.hasOnlyImmutableElements()) {
+                materialize();
+            }
+            return read();
+        }
+
+        Collection<E> write() {
+            if (isSource) {
+                source.detachReaders();
+            }
+            else {
+                materialize();
+            }
+            return read();
+        }
+
+        /**
+         * Removes the element returned by an iterator of the shared data from the materialized copy.
+         */
+        void removeCopied(int index, Object element) {
+            copy.remove(element);
+        }
+
+        @Override
+        public int size() {
+            return read().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return read().isEmpty();
+        }
+
+        @Override
+        public boolean contains(Object o) {
+            return read().contains(o);
+        }
+
+        @Override
+        public boolean containsAll(Collection<?> c) {
+            return read().containsAll(c);
+        }
+
+        @Override
+        public Iterator<E> iterator() {
+            Collection<E> elements = readElements();
+            if (isSource ? source.hasReaders() : copy == null) {
+                return new LazyIterator(elements.iterator());
+            }
+            return elements.iterator();
+        }
+
+        @Override
+        public Object[] toArray() {
+            return readElements().toArray();
+        }
+
+        @Override
+        public <T> T[] toArray(T[] a) {
+            return readElements().toArray(a);
+        }
+
+        @Override
+        public boolean add(E e) {
+            return write().add(e);
+        }
+
+        @Override
+        public boolean remove(Object o) {
+            return write().remove(o);
+        }
+
+        @Override
+        public boolean addAll(Collection<? extends E> c) {
+            return write().addAll(c);
+        }
+
+        @Override
+        public boolean removeAll(Collection<?> c) {
+            return write().removeAll(c);
+        }
+
+        @Override
+        public boolean retainAll(Collection<?> c) {
+            return write().retainAll(c);
+        }
+
+        @Override
+        public boolean removeIf(Predicate<? super E> filter) {
+            return write().removeIf(filter);
+        }
+
+        @Override
+        public void clear() {
+            write().clear();
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || read().equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return read().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return read().toString();
+        }
+
+        /**
+         * Iterator of the shared data which removes elements from the copy materialized by the first removal,
+         * or from the data itself for a source wrapper once lazy copies are materialized.
+         */
+        private final class LazyIterator implements Iterator<E> {
+
+            private final Iterator<E> iterator;
+            private E last;
+            private int index = -1;
+            private boolean isRemovable;
+
+            private LazyIterator(Iterator<E> iterator) {
+                this.iterator = iterator;
+            }
+
+            @Override
+            public boolean hasNext() {
+                return iterator.hasNext();
+            }
+
+            @Override
+            public E next() {
+                last = iterator.next();
+                index++;
+                isRemovable = true;
+                return last;
+            }
+
+            @Override
+            public void remove() {
+                if (!isRemovable) {
+                    throw new IllegalStateException();
+                }
+                isRemovable = false;
+                if (isSource) {
+                    source.detachReaders();
+                    iterator.remove();
+                    return;
+                }
+                materialize();
+                removeCopied(index--, last);
+            }
+        }
+    }
+
+    static final class LazySet<E> extends LazyCollection<E> implements Set<E> {
+
+        LazySet(LazyCopy source, Copier copier) {
+            super(source, copier);
+        }
+    }
+
+    static final class LazyList<E> extends LazyCollection<E> implements List<E> {
+
+        LazyList(LazyCopy source, Copier copier) {
+            super(source, copier);
+        }
+
+        @Override
+        List<E> read() {
+            return (List<E>) super.read();
+        }
+
+        @Override
+        List<E> readElements() {
+            return (List<E>) super.readElements();
+        }
+
+        @Override
+        List<E> write() {
+            return (List<E>) super.write();
+        }
+
+        @Override
+        void removeCopied(int index, Object element) {
+            ((List<E>) copy).remove(index);
+        }
+
+        @Override
+        public E get(int index) {
+            return readElements().get(index);
+        }
+
+        @Override
+        public int indexOf(Object o) {
+            return read().indexOf(o);
+        }
+
+        @Override
+        public int lastIndexOf(Object o) {
+            return read().lastIndexOf(o);
+        }
+
+        @Override
+        public E set(int index, E element) {
+            return write().set(index, element);
+        }
+
+        @Override
+        public void add(int index, E element) {
+            write().add(index, element);
+        }
+
+        @Override
+        public E remove(int index) {
+            return write().remove(index);
+        }
+
+        @Override
+        public boolean addAll(int index, Collection<? extends E> c) {
+            return write().addAll(index, c);
+        }
+
+        @Override
+        public void replaceAll(UnaryOperator<E> operator) {
+            write().replaceAll(operator);
+        }
+
+        @Override
+        public void sort(Comparator<? super E> c) {
+            write().sort(c);
+        }
+
+        @Override
+        public ListIterator<E> listIterator() {
+            return write().listIterator();
+        }
+
+        @Override
+        public ListIterator<E> listIterator(int index) {
+            return write().listIterator(index);
+        }
+
+        @Override
+        public List<E> subList(int fromIndex, int toIndex) {
+            return write().subList(fromIndex, toIndex);
+        }
+    }
+
+    static final class LazyMap<K, V> implements Map<K, V>, Wrapper {
+
+        private final LazyCopy source;
+        private final Copier copier;
+        private final boolean isSource;
+        private Map<K, V> copy;
+
+        LazyMap(LazyCopy source, Copier copier) {
+            this.source = source;
+            this.copier = copier;
+            this.isSource = copier == null;
+        }
+
+        @Override
+        public LazyCopy source() {
+            return source;
+        }
+
+        @Override
+        public boolean isSource() {
+            return isSource;
+        }
+
+        @Override
+        public boolean isReading() {
+            return copy == null;
+        }
+
+        @Override
+        public void materialize() {
+            if (copy == null) {
+                copy = (Map<K, V>) source.copyData(copier);
+            }
+        }
+
+        private Map<K, V> read() {
+            return copy != null ? copy : (Map<K, V>) source.data;
+        }
+
+        private Map<K, V> readElements() {
+            if (copy == null && !isSource && !source.hasOnlyImmutableElements()) {
+                materialize();
+            }
+            return read();
+        }
+
+        private Map<K, V> write() {
+            if (isSource) {
+                source.detachReaders();
+            }
+            else {
+                materialize();
+            }
+            return read();
+        }
+
+        @Override
+        public int size() {
+            return read().size();
+        }
+
+        @Override
+        public boolean isEmpty() {
+            return read().isEmpty();
+        }
+
+        @Override
+        public boolean containsKey(Object key) {
+            return read().containsKey(key);
+        }
+
+        @Override
+        public boolean containsValue(Object value) {
+            return read().containsValue(value);
+        }
+
+        @Override
+        public V get(Object key) {
+            return readElements().get(key);
+        }
+
+        @Override
+        public V getOrDefault(Object key, V defaultValue) {
+            return readElements().getOrDefault(key, defaultValue);
+        }
+
+        @Override
+        public void forEach(BiConsumer<? super K, ? super V> action) {
+            readElements().forEach(action);
+        }
+
+        @Override
+        public V put(K key, V value) {
+            return write().put(key, value);
+        }
+
+        @Override
+        public V remove(Object key) {
+            return write().remove(key);
+        }
+
+        @Override
+        public void putAll(Map<? extends K, ? extends V> m) {
+            write().putAll(m);
+        }
+
+        @Override
+        public void clear() {
+            write().clear();
+        }
+
+        @Override
+        public Set<K> keySet() {
+            return write().keySet();
+        }
+
+        @Override
+        public Collection<V> values() {
+            return write().values();
+        }
+
+        @Override
+        public Set<Entry<K, V>> entrySet() {
+            return write().entrySet();
+        }
+
+        @Override
+        public void replaceAll(BiFunction<? super K, ? super V, ? extends V> function) {
+            write().replaceAll(function);
+        }
+
+        @Override
+        public V putIfAbsent(K key, V value) {
+            return write().putIfAbsent(key, value);
+        }
+
+        @Override
+        public boolean remove(Object key, Object value) {
+            return write().remove(key, value);
+        }
+
+        @Override
+        public boolean replace(K key, V oldValue, V newValue) {
+            return write().replace(key, oldValue, newValue);
+        }
+
+        @Override
+        public V replace(K key, V value) {
+            return write().replace(key, value);
+        }
+
+        @Override
+        public V computeIfAbsent(K key, Function<? super K, ? extends V> mappingFunction) {
+            return write().computeIfAbsent(key, mappingFunction);
+        }
+
+        @Override
+        public V computeIfPresent(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+            return write().computeIfPresent(key, remappingFunction);
+        }
+
+        @Override
+        public V compute(K key, BiFunction<? super K, ? super V, ? extends V> remappingFunction) {
+            return write().compute(key, remappingFunction);
+        }
+
+        @Override
+        public V merge(K key, V value, BiFunction<? super V, ? super V, ? extends V> remappingFunction) {
+            return write().merge(key, value, remappingFunction);
+        }
+
+        @Override
+        public boolean equals(Object o) {
+            return o == this || read().equals(o);
+        }
+
+        @Override
+        public int hashCode() {
+            return read().hashCode();
+        }
+
+        @Override
+        public String toString() {
+            return read().toString();
+        }
+    }
+
+}
@@ -0,0 +1,362 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.util.ArrayList;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Queue;
+import java.util.Set;
+import java.util.concurrent.ConcurrentLinkedQueue;
+import java.util.concurrent.ForkJoinPool;
+import java.util.concurrent.ForkJoinTask;
+import java.util.concurrent.RecursiveAction;
+import java.util.concurrent.RecursiveTask;
+
+/**
+ * Copier of one fork/join task, copiers of all tasks of one clone share the copies of visited objects.
+ * <p>Collections, maps and arrays with at least {@code parallelThreshold} elements are filled by a forked task, so the copy
+ * continues with the sibling fields of the object owning the collection meanwhile. The task copies the elements
+ * in ranges split between workers and adds the copies in the original order once all ranges are done.
+ * All tasks forked while an object is copied are joined before the copy of the object is returned,
+ * so smaller collections and graphs without large collections are copied sequentially by one task.</p>
+ * <p>An object reached by several tasks is copied by the task which registers its copy first, other tasks take
+ * the registered copy which may still be filled by that task, the same way as an object on a cycle is taken
+ * while it is filled by the sequential copier. A set or a map filled with such a copy may put it by a hash code
+ * or an order of fields which aren't copied yet, so sets and maps filled while a task took a registered copy
+ * are rehashed in the order they were filled once the root task is done and all copies are complete.
+ * Sets and maps built at once (e.g. {@code Set.of}) can't be refilled, they keep the copies as they were built from.
+ * The clone is complete when the root task is done.</p>
+ * <p>Each task measures its copies in its own trace, the trace of a range is merged into the trace
+ * of the task which forked it once the range is done, so the clone is reported with all of them.</p>
+ */
+final class ParallelCopier extends Copier {
+
+    private final ConcurrentIdentityCloneMap oldToNewObjects;
+    /**
+     * Sets and maps of all tasks of the clone to rehash once the root task is done.
+     */
+    private final Queue<Object> rehashed;
+    private final boolean isReplaceNonCopiedWithNull;
+    private final boolean isUseGeneratedCloners;
+    private final int parallelThreshold;
+    private final int rangeSize;
+    private final ForkJoinPool pool;
+    private List<ForkJoinTask<?>> forked;
+    /**
+     * Number of registered copies the task took instead of copying the objects itself.
+     */
+    private int takenCount;
+
+    private ParallelCopier(boolean isReplaceNonCopiedWithNull, ConcurrentIdentityCloneMap oldToNewObjects, Queue<Object> rehashed,
+                           boolean isUseGeneratedCloners, int parallelThreshold, ForkJoinPool pool, int depth) {
+        super(isReplaceNonCopiedWithNull, null, isUseGeneratedCloners, depth);
+        this.pool = pool;
+        this.oldToNewObjects = oldToNewObjects;
+        this.rehashed = rehashed;
+        this.isReplaceNonCopiedWithNull = isReplaceNonCopiedWithNull;
+        this.isUseGeneratedCloners = isUseGeneratedCloners;
+        this.parallelThreshold = parallelThreshold;
+        this.rangeSize = Math.max(parallelThreshold / 8, 1);
+    }
+
+    /**
+     * Copier of a new task of the same clone continuing at the given depth, tasks are joined on the stack
+     * of the joining task, so the depth is kept over tasks to keep the recursion limit.
+     * The copier is traced only if the forking copier is.
+     */
+    private ParallelCopier(ParallelCopier copier, int depth, int nestingDepth) {
+        this(copier.isReplaceNonCopiedWithNull, copier.oldToNewObjects, copier.rehashed, copier.isUseGeneratedCloners,
+                copier.parallelThreshold, copier.pool, depth);
+        if (copier.getTrace() == null) {
+            setTrace(null);
+        }
+        else if (getTrace() != null) {
+            getTrace().setOuterDepth(nestingDepth);
+        }
+    }
+
+    /**
+     * Deeply copies the object in the pool.
+     * @param parallelThreshold minimal number of elements of a collection or a map which is copied in parallel
+     */
+    static <T> T clone(T object, ForkJoinPool pool, boolean isReplaceNonCopiedWithNull, boolean isUseGeneratedCloners,
+                       int parallelThreshold) throws ObjectCannotBeClonedException, IllegalAccessException {
+        ParallelCopier copier = new ParallelCopier(isReplaceNonCopiedWithNull,
+                new ConcurrentIdentityCloneMap(pool.getParallelism()), new ConcurrentLinkedQueue<>(), isUseGeneratedCloners,
+                parallelThreshold, pool, 0);
+        return copier.clone(object);
+    }
+
+    @Override
+    <T> T copyRoot(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        T copy;
+        try {
+            copy = pool.invoke(new RootTask<>(this, object));
+        }
+        catch (UncheckedIllegalAccessException ex) {
+            throw ex.getCause();
+        }
+        for (Object container : rehashed) {
+            rehash(container);
+        }
+        return copy;
+    }
+
+    @Override
+    <T> T deepCopy(T object) throws ObjectCannotBeClonedException, IllegalAccessException {
+        int forkedCount = forked == null ? 0 : forked.size();
+        T copy = super.deepCopy(object);
+        if (forked != null && forked.size() > forkedCount) {
+            joinForked(forkedCount);
+        }
+        return copy;
+    }
+
+    @Override
+    Object lookup(Object original) {
+        Object copy = oldToNewObjects.get(original);
+        if (copy != null) {
+            takenCount++;
+        }
+        return copy;
+    }
+
+    @Override
+    Object claim(Object original, Object clone) {
+        Object claimed = oldToNewObjects.putIfAbsent(original, clone);
+        if (claimed == null) {
+            return clone;
+        }
+        takenCount++;
+        return claimed;
+    }
+
+    @Override
+    void copyElements(Collection<Object> collection, Collection<Object> newCollection) throws IllegalAccessException {
+        if (collection.size() < parallelThreshold) {
+            int taken = takenCount;
+            super.copyElements(collection, newCollection);
+            if (takenCount != taken) {
+                rehashLater(newCollection);
+            }
+            return;
+        }
+        Object[] elements = collection.toArray();
+        fork(new FillTask(this, elements, new Object[elements.length], newCollection) {
+            @Override
+            void fill(Object[] copies) {
+                for (Object copy : copies) {
+                    newCollection.add(copy);
+                }
+            }
+        });
+    }
+
+    @Override
+    void copyEntries(Map<Object, Object> map, Map<Object, Object> newMap) throws IllegalAccessException {
+        if (map.size() < parallelThreshold) {
+            int taken = takenCount;
+            super.copyEntries(map, newMap);
+            if (takenCount != taken) {
+                rehashLater(newMap);
+            }
+            return;
+        }
+        // keys and values are interleaved, so a key and its value are copied by the same task unless a range ends between them
+        Object[] entries = new Object[map.size() * 2];
+        int i = 0;
+        for (Map.Entry<Object, Object> entry : map.entrySet()) {
+            entries[i++] = entry.getKey();
+            entries[i++] = entry.getValue();
+        }
+        fork(new FillTask(this, entries, new Object[entries.length], newMap) {
+            @Override
+            void fill(Object[] copies) {
+                for (int j = 0; j < copies.length; j += 2) {
+                    newMap.put(copies[j], copies[j + 1]);
+                }
+            }
+        });
+    }
+
+    @Override
+    void copyArrayElements(Object[] array, Object[] newArray) throws IllegalAccessException {
+        if (array.length < parallelThreshold) {
+            super.copyArrayElements(array, newArray);
+            return;
+        }
+        // ranges store copies right into the new array
+        fork(new FillTask(this, array, newArray, null) {
+            @Override
+            void fill(Object[] copies) {
+            }
+        });
+    }
+
+    /**
+     * Rehashes the set or the map once the root task is done, lists and maps by identity keep their copies where they are.
+     */
+    private void rehashLater(Object container) {
+        if (container instanceof Set || container instanceof Map && !(container instanceof IdentityHashMap)) {
+            rehashed.add(container);
+        }
+    }
+
+    private static void rehash(Object container) {
+        if (container instanceof Map) {
+            Map<Object, Object> map = (Map<Object, Object>) container;
+            Object[] entries = CollectionCopier.elements(map);
+            map.clear();
+            for (int i = 0; i < entries.length; i += 2) {
+                map.put(entries[i], entries[i + 1]);
+            }
+        }
+        else {
+            Collection<Object> collection = (Collection<Object>) container;
+            Object[] elements = collection.toArray();
+            collection.clear();
+            collection.addAll(Arrays.asList(elements));
+        }
+    }
+
+    private void fork(ForkJoinTask<?> task) {
+        if (forked == null) {
+            forked = new ArrayList<>();
+        }
+        forked.add(task.fork());
+    }
+
+    private void joinForked(int fromIndex) {
+        List<ForkJoinTask<?>> tasks = forked.subList(fromIndex, forked.size());
+        for (ForkJoinTask<?> task : tasks) {
+            task.join();
+        }
+        tasks.clear();
+    }
+
+    /**
+     * Checked exceptions can't be thrown by tasks, so they are wrapped on the way to the root task.
+     */
+    private static final class UncheckedIllegalAccessException extends RuntimeException {
+
+        private UncheckedIllegalAccessException(IllegalAccessException cause) {
+            super(cause);
+        }
+
+        @Override
+        public synchronized IllegalAccessException getCause() {
+            return (IllegalAccessException) super.getCause();
+        }
+    }
+
+    private static final class RootTask<T> extends RecursiveTask<T> {
+
+        private final ParallelCopier copier;
+        private final T object;
+
+        private RootTask(ParallelCopier copier, T object) {
+            this.copier = copier;
+            this.object = object;
+        }
+
+        @Override
+        protected T compute() {
+            try {
+                return copier.deepCopy(object);
+            }
+            catch (IllegalAccessException ex) {
+                throw new UncheckedIllegalAccessException(ex);
+            }
+        }
+    }
+
+    /**
+     * Copies elements of a collection, a map or an array in parallel and fills its copy with them.
+     */
+    private abstract static class FillTask extends RecursiveAction {
+
+        private final ParallelCopier copier;
+        private final Object[] originals;
+        private final Object[] copies;
+        private final Object container;
+        private final boolean isFieldValue;
+        private final int depth;
+        private final int nestingDepth;
+        /**
+         * True if any range took a registered copy.
+         */
+        private volatile boolean hasTaken;
+
+        /**
+         * @param container copy of the collection or the map to fill, null for an array which elements are copied
+         *                  like field values
+         */
+        private FillTask(ParallelCopier copier, Object[] originals, Object[] copies, Object container) {
+            this.copier = copier;
+            this.originals = originals;
+            this.copies = copies;
+            this.container = container;
+            this.isFieldValue = container == null;
+            this.depth = copier.getDepth() + 1;
+            this.nestingDepth = copier.getTrace() == null ? 0 : copier.getTrace().getNestingDepth();
+        }
+
+        /**
+         * Adds copies of the elements to the copy of the collection or the map.
+         */
+        abstract void fill(Object[] copies);
+
+        @Override
+        protected void compute() {
+            new RangeTask(this, 0, originals.length).invoke();
+            fill(copies);
+            if (hasTaken) {
+                copier.rehashLater(container);
+            }
+        }
+    }
+
+    private static final class RangeTask extends RecursiveAction {
+
+        private final FillTask fill;
+        private final int from;
+        private final int to;
+
+        private RangeTask(FillTask fill, int from, int to) {
+            this.fill = fill;
+            this.from = from;
+            this.to = to;
+        }
+
+        @Override
+        protected void compute() {
+            if (to - from > fill.copier.rangeSize) {
+                int middle = (from + to) >>> 1;
+                invokeAll(new RangeTask(fill, from, middle), new RangeTask(fill, middle, to));
+                return;
+            }
+            ParallelCopier rangeCopier = new ParallelCopier(fill.copier, fill.depth, fill.nestingDepth);
+            Object[] originals = fill.originals;
+            Object[] copies = fill.copies;
+            try {
+                for (int i = from; i < to; i++) {
+                    copies[i] = fill.isFieldValue ? rangeCopier.copy(originals[i]) : rangeCopier.deepCopy(originals[i]);
+                }
+            }
+            catch (IllegalAccessException ex) {
+                throw new UncheckedIllegalAccessException(ex);
+            }
+            if (rangeCopier.takenCount != 0) {
+                fill.hasTaken = true;
+            }
+            if (rangeCopier.getTrace() != null) {
+                fill.copier.getTrace().merge(rangeCopier.getTrace());
+            }
+        }
+    }
+
+}
@@ -0,0 +1,382 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Deque;
+import java.util.HashMap;
+import java.util.Iterator;
+import java.util.LinkedHashMap;
+import java.util.LinkedHashSet;
+import java.util.List;
+import java.util.Map;
+import java.util.Objects;
+import java.util.SortedMap;
+import java.util.SortedSet;
+
+/**
+ * Incremental clone of a graph which previous clone is still at hand: unchanged subgraphs are taken
+ * from the previous clone and only the objects which changed and the objects on the paths to them are copied.
+ * <p>The originals are matched with their copies of the previous clone by walking both graphs along the same fields,
+ * elements and entries. An original is unchanged if it's matched with a copy of the same class which has the same
+ * primitive and immutable values and which references are matched with the references of the original.
+ * Each original is matched with at most one copy and each copy with at most one original, so a changed sharing
+ * of objects is a change too. An original is reused (i.e. replaced by its matched copy) if it's unchanged and all
+ * originals it references are reused too, all other originals are copied by an iterative {@link Copier}
+ * which visited objects are the reused originals mapped to their matched copies.</p>
+ * <p>Copies matched via a position which isn't trusted (e.g. below a changed original or in a hash set of mutable
+ * elements) are always compared. Copies matched via a field or an ordered position of a trusted original are trusted
+ * too when the hint reports changed originals, so they aren't compared unless they are reported.</p>
+ */
+final class Recloner {
+
+    private static final int SCANNED_COLLECTION_SIZE = 8;
+
+    private final ChangeHint hint;
+    private final IdentityCloneMap matches = new IdentityCloneMap(256);
+    private final IdentityCloneMap matchedPrevious = new IdentityCloneMap(256);
+    private final IdentityCloneMap changed = new IdentityCloneMap(16);
+    private final List<Object> originals = new ArrayList<>();
+    private final ArrayDeque<Object> pending = new ArrayDeque<>();
+    private final ArrayDeque<Boolean> pendingTrusted = new ArrayDeque<>();
+
+    private Recloner(ChangeHint hint) {
+        this.hint = hint;
+    }
+
+    static <T> T reclone(T original, T previousClone, ChangeHint hint) throws ObjectCannotBeClonedException, IllegalAccessException {
+        if (original == previousClone) {
+            return previousClone;
+        }
+        Recloner recloner = new Recloner(hint);
+        if (recloner.match(original, previousClone, true)) {
+            recloner.matchAll();
+            recloner.propagateChanges();
+        }
+        return recloner.newCopier().clone(original);
+    }
+
+    private void matchAll() throws IllegalAccessException {
+        while (!pending.isEmpty()) {
+            Object original = pending.pop();
+            boolean isDirty = hint.isTrusting() && hint.isDirty(original);
+            boolean isTrusted = pendingTrusted.pop() && !isDirty;
+            if (!isSame(original, matches.get(original), isTrusted) || isDirty) {
+                changed.putIfAbsent(original, Boolean.TRUE);
+            }
+        }
+    }
+
+    /**
+     * Matches an original referenced by a matched original with the copy referenced at the same place by its copy.
+     * @param isTrusted true if the copy is known to be made from the original, so it isn't compared
+     * @return false if they don't match, so the referencing original is changed
+     */
+    private boolean match(Object original, Object previous, boolean isTrusted) {
+        if (original == previous) {
+            // immutable objects and flat collections are shared by clones
+            return true;
+        }
+        if (original == null || previous == null || original.getClass() != previous.getClass() || original instanceof Enum) {
+            return false;
+        }
+        if (ClassPlan.of(original.getClass()).isImmutable()) {
+            return original.equals(previous);
+        }
+        Object matched = matches.get(original);
+        if (matched != null) {
+            return matched == previous;
+        }
+        if (matchedPrevious.get(previous) != null) {
+            return false;
+        }
+        matches.putIfAbsent(original, previous);
+        matchedPrevious.putIfAbsent(previous, original);
+        originals.add(original);
+        pending.push(original);
+        pendingTrusted.push(isTrusted && hint.isTrusting());
+        return true;
+    }
+
+    /**
+     * Compares the original with its matched copy and matches the objects they reference.
+     * @param isTrusted true if values aren't compared, only references are matched
+     */
+    private boolean isSame(Object original, Object previous, boolean isTrusted) throws IllegalAccessException {
+        if (ClonerRegistry.find(original.getClass()) != null) {
+            // registered cloners copy objects their own way, so their copies can't be matched
+            return false;
+        }
+        ClassPlan plan = ClassPlan.of(original.getClass());
+        if (plan.isFlatArray()) {
+            return isTrusted || Objects.deepEquals(original, previous);
+        }
+        if (plan.isArray()) {
+            Object[] elements = (Object[]) original;
+            Object[] previousElements = (Object[]) previous;
+            boolean isSame = elements.length == previousElements.length;
+            for (int i = 0; i < Math.min(elements.length, previousElements.length); i++) {
+                isSame &= match(elements[i], previousElements[i], isTrusted);
+            }
+            return isSame;
+        }
+        if (original instanceof Map) {
+            return isSameMap((Map<Object, Object>) original, (Map<Object, Object>) previous, isTrusted);
+        }
+        if (original instanceof Collection) {
+            return isSameCollection((Collection<Object>) original, (Collection<Object>) previous, isTrusted);
+        }
+        boolean isSame = true;
+        for (ClassPlan.FieldPlan fieldPlan : plan.getFields()) {
+            FieldAccessor accessor = fieldPlan.getAccessor();
+            ClassPlan.FieldKind kind = fieldPlan.getKind();
+            if (kind == ClassPlan.FieldKind.PRIMITIVE || kind == ClassPlan.FieldKind.IMMUTABLE) {
+                if (!isTrusted && !Objects.equals(accessor.get(original), accessor.get(previous))) {
+                    isSame = false;
+                }
+                continue;
+            }
+            isSame &= match(accessor.get(original), accessor.get(previous), isTrusted);
+        }
+        return isSame;
+    }
+
+    private boolean isSameCollection(Collection<Object> collection, Collection<Object> previous, boolean isTrusted)
+            throws IllegalAccessException {
+        if (CollectionCopier.hasOnlyImmutableElements(collection)) {
+            // a hash set of immutable elements may iterate in another order than its copy
+            return isTrusted || collection.equals(previous);
+        }
+        boolean isOrdered = collection instanceof List || collection instanceof Deque || collection instanceof SortedSet
+                || collection instanceof LinkedHashSet;
+        if (!isOrdered) {
+            return matchUnordered(collection, previous);
+        }
+        boolean isSame = collection.size() == previous.size();
+        Iterator<Object> elements = collection.iterator();
+        Iterator<Object> previousElements = previous.iterator();
+        while (elements.hasNext() && previousElements.hasNext()) {
+            isSame &= match(elements.next(), previousElements.next(), isTrusted);
+        }
+        return isSame;
+    }
+
+    private boolean isSameMap(Map<Object, Object> map, Map<Object, Object> previous, boolean isTrusted) throws IllegalAccessException {
+        boolean isSame = map.size() == previous.size();
+        if (hasOnlyImmutableKeys(map)) {
+            // keys are shared by clones, so values are matched by their keys
+            for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                Object key = entry.getKey();
+                if (!previous.containsKey(key)) {
+                    isSame = false;
+                    continue;
+                }
+                isSame &= match(entry.getValue(), previous.get(key), isTrusted);
+            }
+            return isSame;
+        }
+        boolean isOrdered = map instanceof SortedMap || map instanceof LinkedHashMap;
+        if (!isOrdered) {
+            isSame &= matchUnordered(map.keySet(), previous.keySet());
+            for (Map.Entry<Object, Object> entry : map.entrySet()) {
+                Object key = entry.getKey();
+                Object previousKey = key == null ? null : matches.get(key);
+                if (key != null && previousKey == null) {
+                    isSame = false;
+                    continue;
+                }
+                isSame &= match(entry.getValue(), previous.get(previousKey), false);
+            }
+            return isSame;
+        }
+        Iterator<Map.Entry<Object, Object>> entries = map.entrySet().iterator();
+        Iterator<Map.Entry<Object, Object>> previousEntries = previous.entrySet().iterator();
+        while (entries.hasNext() && previousEntries.hasNext()) {
+            Map.Entry<Object, Object> entry = entries.next();
+            Map.Entry<Object, Object> previousEntry = previousEntries.next();
+            isSame &= match(entry.getKey(), previousEntry.getKey(), isTrusted);
+            isSame &= match(entry.getValue(), previousEntry.getValue(), isTrusted);
+        }
+        return isSame;
+    }
+
+    /**
+     * Matches elements of hash-based collections which copies may iterate in another order: each element is matched
+     * with a copy with equal primitive and immutable values which isn't matched yet. Such matches are never trusted.
+     */
+    private boolean matchUnordered(Collection<Object> elements, Collection<Object> previousElements) throws IllegalAccessException {
+        boolean isSame = elements.size() == previousElements.size();
+        // small collections are scanned, larger ones are indexed by hashes of values
+        Map<Integer, List<Object>> candidates = null;
+        if (previousElements.size() > SCANNED_COLLECTION_SIZE) {
+            candidates = new HashMap<>();
+            for (Object previous : previousElements) {
+                if (previous != null && matchedPrevious.get(previous) == null) {
+                    candidates.computeIfAbsent(flatHash(previous), hash -> new ArrayList<>(1)).add(previous);
+                }
+            }
+        }
+        for (Object element : elements) {
+            Object matched = element == null ? null : matches.get(element);
+            if (matched != null || element == null || element instanceof Enum || ClassPlan.of(element.getClass()).isImmutable()) {
+                // matched elsewhere or a value which copy is an equal value
+                isSame &= previousElements.contains(matched != null ? matched : element);
+                continue;
+            }
+            Object candidate = null;
+            if (candidates == null) {
+                for (Object previous : previousElements) {
+                    if (previous != null && matchedPrevious.get(previous) == null && hasFlatValues(element, previous)) {
+                        candidate = previous;
+                        break;
+                    }
+                }
+                isSame &= candidate != null && match(element, candidate, false);
+                continue;
+            }
+            List<Object> sameHash = candidates.get(flatHash(element));
+            if (sameHash != null) {
+                for (Iterator<Object> iterator = sameHash.iterator(); iterator.hasNext(); ) {
+                    Object previous = iterator.next();
+                    if (matchedPrevious.get(previous) != null) {
+                        iterator.remove();
+                    }
+                    else if (hasFlatValues(element, previous)) {
+                        iterator.remove();
+                        candidate = previous;
+                        break;
+                    }
+                }
+            }
+            isSame &= candidate != null && match(element, candidate, false);
+        }
+        return isSame;
+    }
+
+    /**
+     * @return hash of the class and the primitive and immutable field values of a plain object
+     */
+    private static int flatHash(Object object) throws IllegalAccessException {
+        int hash = object.getClass().hashCode();
+        ClassPlan plan = ClassPlan.of(object.getClass());
+        if (plan.isArray() || plan.isImmutable() || object instanceof Collection || object instanceof Map) {
+            return hash;
+        }
+        for (ClassPlan.FieldPlan fieldPlan : plan.getFields()) {
+            ClassPlan.FieldKind kind = fieldPlan.getKind();
+            if (kind == ClassPlan.FieldKind.PRIMITIVE || kind == ClassPlan.FieldKind.IMMUTABLE) {
+                hash = hash * 31 + Objects.hashCode(fieldPlan.getAccessor().get(object));
+            }
+        }
+        return hash;
+    }
+
+    private static boolean hasFlatValues(Object object, Object previous) throws IllegalAccessException {
+        if (object.getClass() != previous.getClass()) {
+            return false;
+        }
+        ClassPlan plan = ClassPlan.of(object.getClass());
+        if (plan.isArray() || object instanceof Collection || object instanceof Map) {
+            return true;
+        }
+        for (ClassPlan.FieldPlan fieldPlan : plan.getFields()) {
+            ClassPlan.FieldKind kind = fieldPlan.getKind();
+            if ((kind == ClassPlan.FieldKind.PRIMITIVE || kind == ClassPlan.FieldKind.IMMUTABLE)
+                    && !Objects.equals(fieldPlan.getAccessor().get(object), fieldPlan.getAccessor().get(previous))) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    private static boolean hasOnlyImmutableKeys(Map<Object, Object> map) {
+        for (Object key : map.keySet()) {
+            if (key != null && !(key instanceof Enum) && !ClassPlan.of(key.getClass()).isImmutable()) {
+                return false;
+            }
+        }
+        return true;
+    }
+
+    /**
+     * Marks originals referencing changed originals as changed. Originals are visited against the matching order,
+     * so an original referenced only via the matching path is visited before the originals referencing it,
+     * the pass is repeated while references back along the path (e.g. cycles) mark more originals.
+     */
+    private void propagateChanges() throws IllegalAccessException {
+        boolean isMarked = true;
+        while (isMarked) {
+            isMarked = false;
+            for (int i = originals.size() - 1; i >= 0; i--) {
+                Object original = originals.get(i);
+                if (changed.get(original) == null && referencesChanged(original)) {
+                    changed.putIfAbsent(original, Boolean.TRUE);
+                    isMarked = true;
+                }
+            }
+        }
+    }
+
+    private boolean referencesChanged(Object original) throws IllegalAccessException {
+        ClassPlan plan = ClassPlan.of(original.getClass());
+        if (plan.isFlatArray()) {
+            return false;
+        }
+        if (plan.isArray()) {
+            for (Object element : (Object[]) original) {
+                if (isChanged(element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (original instanceof Map) {
+            for (Map.Entry<?, ?> entry : ((Map<?, ?>) original).entrySet()) {
+                if (isChanged(entry.getKey()) || isChanged(entry.getValue())) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        if (original instanceof Collection) {
+            for (Object element : (Collection<?>) original) {
+                if (isChanged(element)) {
+                    return true;
+                }
+            }
+            return false;
+        }
+        for (ClassPlan.FieldPlan fieldPlan : plan.getFields()) {
+            ClassPlan.FieldKind kind = fieldPlan.getKind();
+            if (kind != ClassPlan.FieldKind.PRIMITIVE && kind != ClassPlan.FieldKind.IMMUTABLE
+                    && isChanged(fieldPlan.getAccessor().get(original))) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    private boolean isChanged(Object original) {
+        return original != null && changed.get(original) != null;
+    }
+
+    /**
+     * @return copier taking unchanged originals as already copied to their matched copies
+     */
+    private Copier newCopier() {
+        return new Copier(false, new IdentityCloneMap(changed.size()), CopyUtils.isGeneratedClonersEnabled(), true) {
+
+            @Override
+            Object lookup(Object original) {
+                Object copied = super.lookup(original);
+                if (copied != null || changed.get(original) != null) {
+                    return copied;
+                }
+                return matches.get(original);
+            }
+        };
+    }
+
+}
@@ -0,0 +1,123 @@
+package utils;
+
+import annotation.CopyIgnore;
+import annotation.CopyShallow;
+import exception.ObjectCannotBeClonedException;
+
+import java.lang.invoke.MethodHandle;
+import java.lang.invoke.MethodHandles;
+import java.lang.invoke.MethodType;
+import java.lang.reflect.Field;
+import java.lang.reflect.Method;
+
+/**
+ * Copy of records of one class: the components are read by their accessors and the copy is created by the canonical
+ * constructor from the copies of the components, as fields of a record can't be set once it's created.
+ * A record is registered only when it's created, so a record reached again while its components are copied
+ * gets another copy, the first created copy is used everywhere.
+ * <p>Components annotated with {@link CopyIgnore} or {@link CopyShallow} and components which fields are left out
+ * by {@link CloneOptions} are passed to the constructor as they are.</p>
+ */
+final class RecordPlan {
+
+    private static final MethodType ACCESSOR_TYPE = MethodType.methodType(Object.class, Object.class);
+    private static final MethodType CONSTRUCTOR_TYPE = MethodType.methodType(Object.class, Object[].class);
+
+    private final Field[] fields;
+    private final ClassPlan.FieldKind[] kinds;
+    private final MethodHandle[] accessors;
+    private final MethodHandle constructor;
+
+    private RecordPlan(Field[] fields, ClassPlan.FieldKind[] kinds, MethodHandle[] accessors, MethodHandle constructor) {
+        this.fields = fields;
+        this.kinds = kinds;
+        this.accessors = accessors;
+        this.constructor = constructor;
+    }
+
+    /**
+     * Resolves the plan of a record class.
+     * @throws ObjectCannotBeClonedException if the accessors or the canonical constructor can't be accessed
+     */
+    static RecordPlan resolve(Class<?> type) {
+        Method[] accessorMethods = Records.accessors(type);
+        Field[] fields = new Field[accessorMethods.length];
+        ClassPlan.FieldKind[] kinds = new ClassPlan.FieldKind[accessorMethods.length];
+        MethodHandle[] accessors = new MethodHandle[accessorMethods.length];
+        Class<?>[] componentTypes = new Class<?>[accessorMethods.length];
+        try {
+            MethodHandles.Lookup lookup = MethodHandles.privateLookupIn(type, MethodHandles.lookup());
+            for (int i = 0; i < accessorMethods.length; i++) {
+                componentTypes[i] = accessorMethods[i].getReturnType();
+                fields[i] = type.getDeclaredField(accessorMethods[i].getName());
+                kinds[i] = fields[i].isAnnotationPresent(CopyIgnore.class) || fields[i].isAnnotationPresent(CopyShallow.class)
+                        ? ClassPlan.FieldKind.IMMUTABLE : ClassPlan.FieldKind.of(componentTypes[i]);
+                accessors[i] = lookup.unreflect(accessorMethods[i]).asType(ACCESSOR_TYPE);
+            }
+            MethodHandle constructor = lookup.findConstructor(type, MethodType.methodType(void.class, componentTypes))
+                    .asSpreader(Object[].class, componentTypes.length)
+                    .asType(CONSTRUCTOR_TYPE);
+            return new RecordPlan(fields, kinds, accessors, constructor);
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new ObjectCannotBeClonedException("Record " + type.getName() + " can not be accessed to clone it", ex);
+        }
+    }
+
+    int getComponentCount() {
+        return fields.length;
+    }
+
+    /**
+     * @return kind of the component deciding how it is copied
+     */
+    ClassPlan.FieldKind getKind(int index) {
+        return kinds[index];
+    }
+
+    /**
+     * @param copiedFields fields of the plan of the record kept by options
+     * @return true if the component is copied with the fields kept by the options
+     */
+    boolean isCopied(int index, ClassPlan.FieldPlan[] copiedFields) {
+        for (ClassPlan.FieldPlan fieldPlan : copiedFields) {
+            if (fieldPlan.getField().equals(fields[index])) {
+                return true;
+            }
+        }
+        return false;
+    }
+
+    /**
+     * @return values of the components of the record
+     */
+    Object[] components(Object record) {
+        Object[] values = new Object[accessors.length];
+        try {
+            for (int i = 0; i < accessors.length; i++) {
+                values[i] = (Object) accessors[i].invokeExact(record);
+            }
+        }
+        catch (Throwable ex) {
+            throw FieldAccessor.rethrow(ex);
+        }
+        return values;
+    }
+
+    /**
+     * Creates a record by the canonical constructor.
+     * @param components values of the components in the order of components
+     */
+    Object newInstance(Object[] components) throws ReflectiveOperationException {
+        try {
+            return (Object) constructor.invokeExact(components);
+        }
+        catch (RuntimeException | Error ex) {
+            throw ex;
+        }
+        catch (Throwable ex) {
+            throw new ReflectiveOperationException(ex);
+        }
+    }
+
+}
@@ -0,0 +1,70 @@
+package utils;
+
+import java.lang.reflect.InvocationTargetException;
+import java.lang.reflect.Method;
+
+/**
+ * Records and sealed classes of Java 16 and 17 for the Java 11 build of the library: their API is looked up
+ * reflectively, so they are recognized when the library runs on a newer Java. The multi-release jar replaces
+ * this class with one calling the API directly on Java 17 and later.
+ */
+final class Records {
+
+    private static final Method IS_RECORD = method(Class.class, "isRecord");
+    private static final Method GET_RECORD_COMPONENTS = method(Class.class, "getRecordComponents");
+    private static final Method GET_PERMITTED_SUBCLASSES = method(Class.class, "getPermittedSubclasses");
+    private static final Method GET_ACCESSOR = GET_RECORD_COMPONENTS == null ? null
+            : method(GET_RECORD_COMPONENTS.getReturnType().getComponentType(), "getAccessor");
+
+    private Records() {
+    }
+
+    /**
+     * @return true if the class is a record class
+     */
+    static boolean isRecord(Class<?> type) {
+        return IS_RECORD != null && (boolean) invoke(IS_RECORD, type);
+    }
+
+    /**
+     * @return accessors of the components of the record class in the order of components
+     */
+    static Method[] accessors(Class<?> type) {
+        Object[] components = (Object[]) invoke(GET_RECORD_COMPONENTS, type);
+        Method[] accessors = new Method[components.length];
+        for (int i = 0; i < components.length; i++) {
+            accessors[i] = (Method) invoke(GET_ACCESSOR, components[i]);
+        }
+        return accessors;
+    }
+
+    /**
+     * @return subclasses permitted by the sealed class or interface, null if it isn't sealed
+     */
+    static Class<?>[] permittedSubclasses(Class<?> type) {
+        return GET_PERMITTED_SUBCLASSES == null ? null : (Class<?>[]) invoke(GET_PERMITTED_SUBCLASSES, type);
+    }
+
+    private static Method method(Class<?> type, String name) {
+        try {
+            return type.getMethod(name);
+        }
+        catch (NoSuchMethodException ex) {
+            // an older Java
+            return null;
+        }
+    }
+
+    private static Object invoke(Method method, Object target) {
+        try {
+            return method.invoke(target);
+        }
+        catch (IllegalAccessException ex) {
+            throw new IllegalStateException(ex);
+        }
+        catch (InvocationTargetException ex) {
+            throw FieldAccessor.rethrow(ex.getCause());
+        }
+    }
+
+}
@@ -0,0 +1,170 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.io.IOException;
+import java.nio.ByteBuffer;
+import java.nio.MappedByteBuffer;
+import java.nio.channels.FileChannel;
+import java.nio.file.Path;
+import java.nio.file.StandardOpenOption;
+
+/**
+ * Deep copy of an object graph kept off the heap in a {@link ByteBuffer}: objects are encoded as records
+ * of a compact binary layout described by the classes of the snapshot, references between them are offsets.
+ * <pre>{@code
+ * Snapshot snapshot = CopyUtils.snapshot(referenceData);
+ * ...
+ * ReferenceData copy = snapshot.materialize();
+ * Catalog catalog = snapshot.materialize("catalogs", 3);
+ * }</pre>
+ * <p>A snapshot keeps no objects of the graph, so a large read-only snapshot costs the heap nothing and is invisible
+ * to the garbage collector until parts of it are materialized. Each materialization creates a new deep copy
+ * of the graph or of the subgraph at a path, shared references and cycles within the materialized part are kept.
+ * Snapshots are immutable and can be materialized by concurrent threads.</p>
+ * <p>The graph is written with the rules of {@link CopyUtils#deepClone(Object)}: the fields of class plans
+ * (without fields annotated with {@link annotation.CopyIgnore}), the constructors selected by the class instantiators
+ * and elements of JDK collections. Immutable values are written too, as a snapshot shares nothing with the heap:
+ * strings, boxes, enums, classes and JDK value classes by their text form, other immutable classes by their fields.
+ * Registered {@link Cloner cloners} aren't used and fields annotated with {@link annotation.CopyShallow}
+ * are written deeply. Objects which fields can't be accessed (e.g. of JDK classes which modules aren't open)
+ * can't be written. Comparators of sorted collections are written too: the natural, reverse and case-insensitive
+ * orders of the JDK as themselves, comparators of application classes by their fields, other JDK comparators
+ * and lambdas fail the snapshot before their collection is written.</p>
+ * <p>A snapshot can be saved to a file and loaded back by mapping the file, e.g. to rebuild reference data
+ * after a restart without building it from its sources:</p>
+ * <pre>{@code
+ * CopyUtils.snapshot(referenceData).save(file);
+ * ...
+ * ReferenceData copy = Snapshot.load(file).materialize();
+ * }</pre>
+ * <p>The file keeps the format version and the layout of each written class: its fields with their types and
+ * the fields passed to its constructor. A loaded snapshot materializes objects of a class only if the class
+ * would be written with the same layout now, so a changed class fails instead of being materialized wrongly.</p>
+ */
+public final class Snapshot {
+
+    private final ByteBuffer bytes;
+    private final Class<?>[] classes;
+    private final int[] classOffsets;
+    private final SnapshotReader.Layout[] layouts;
+    private final int root;
+    private final int recordCount;
+
+    /**
+     * @param bytes bytes of the snapshot in its byte order
+     * @param classes classes of the class table which don't have to be loaded by name, null to load all of them
+     */
+    Snapshot(ByteBuffer bytes, Class<?>[] classes) {
+        this.bytes = bytes;
+        this.root = bytes.getInt(SnapshotFormat.ROOT_OFFSET);
+        this.recordCount = bytes.getInt(SnapshotFormat.RECORD_COUNT_OFFSET);
+        int classTable = bytes.getInt(SnapshotFormat.CLASS_TABLE_OFFSET);
+        int classCount = bytes.getInt(classTable);
+        this.classOffsets = new int[classCount];
+        int offset = classTable + 4;
+        for (int i = 0; i < classCount; i++) {
+            classOffsets[i] = offset;
+            offset = SnapshotReader.skipClassEntry(bytes, offset);
+        }
+        this.classes = classes != null ? classes : new Class<?>[classCount];
+        this.layouts = new SnapshotReader.Layout[classCount];
+    }
+
+    /**
+     * Creates a heap deep copy of the whole graph.
+     * @return copy of the root object
+     * @throws ObjectCannotBeClonedException if an object of the graph can't be created
+     * @throws IllegalAccessException if a field of any object is enforcing Java language access control
+     */
+    public <T> T materialize() throws IllegalAccessException {
+        return (T) new SnapshotReader(this, true).materialize(root);
+    }
+
+    /**
+     * Creates a heap deep copy of the subgraph reached from the root by the path, other parts of the snapshot
+     * aren't read. Each step of the path is a field name (the field declared by the nearest class
+     * of the hierarchy) or an index: of an array element, of a collection element in the iteration order or
+     * of a map entry, which value is taken.
+     * @param path field names and indexes
+     * @return copy of the object at the path, null if the path ends at null
+     * @throws IllegalArgumentException if a step of the path doesn't exist
+     * @throws ObjectCannotBeClonedException if an object of the subgraph can't be created
+     * @throws IllegalAccessException if a field of any object is enforcing Java language access control
+     */
+    public <T> T materialize(Object... path) throws IllegalAccessException {
+        int reference = SnapshotReader.follow(this, root, path);
+        return (T) new SnapshotReader(this, false).materialize(reference);
+    }
+
+    /**
+     * Maps the snapshot file, its objects are read from the mapping only when they are materialized.
+     * The mapping stays valid until the snapshot is garbage collected, the file must not be changed meanwhile.
+     * @param file file written by {@link #save(Path)}
+     * @return snapshot backed by the file
+     * @throws IOException if the file can't be read, isn't a snapshot or has an unsupported format version
+     */
+    public static Snapshot load(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.READ)) {
+            long size = channel.size();
+            if (size > Integer.MAX_VALUE) {
+                throw new IOException(file + " is not a snapshot");
+            }
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_ONLY, 0, size);
+            return new Snapshot(SnapshotFormat.checkHeader(mapped, file), null);
+        }
+    }
+
+    /**
+     * Writes the bytes of the snapshot via a mapping of the file, the file is created or replaced.
+     * @param file file to be written
+     * @throws IOException if the file can't be written
+     */
+    public void save(Path file) throws IOException {
+        try (FileChannel channel = FileChannel.open(file, StandardOpenOption.CREATE, StandardOpenOption.TRUNCATE_EXISTING,
+                StandardOpenOption.READ, StandardOpenOption.WRITE)) {
+            MappedByteBuffer mapped = channel.map(FileChannel.MapMode.READ_WRITE, 0, getSize());
+            mapped.put(getBuffer());
+            mapped.force();
+        }
+    }
+
+    /**
+     * @return read-only view of the bytes of the snapshot from its first byte
+     */
+    public ByteBuffer getBuffer() {
+        return bytes.asReadOnlyBuffer().order(bytes.order());
+    }
+
+    /**
+     * @return number of bytes of the snapshot
+     */
+    public int getSize() {
+        return bytes.limit();
+    }
+
+    /**
+     * @return number of objects written to the snapshot
+     */
+    public int getObjectCount() {
+        return recordCount;
+    }
+
+    ByteBuffer bytes() {
+        return bytes;
+    }
+
+    /**
+     * @return layout of the class with the index in the class table, it's resolved on first use
+     */
+    SnapshotReader.Layout layout(int classIndex) {
+        SnapshotReader.Layout layout = layouts[classIndex];
+        if (layout == null) {
+            // layouts are immutable, concurrent materializations may resolve one at once
+            layout = new SnapshotReader.Layout(bytes, classOffsets[classIndex], classes[classIndex]);
+            layouts[classIndex] = layout;
+        }
+        return layout;
+    }
+
+}
@@ -0,0 +1,371 @@
+package utils;
+
+import java.io.IOException;
+import java.lang.reflect.Field;
+import java.math.BigDecimal;
+import java.math.BigInteger;
+import java.net.URI;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.Charset;
+import java.time.Duration;
+import java.time.Instant;
+import java.time.LocalDate;
+import java.time.LocalDateTime;
+import java.time.LocalTime;
+import java.time.MonthDay;
+import java.time.OffsetDateTime;
+import java.time.OffsetTime;
+import java.time.Period;
+import java.time.Year;
+import java.time.YearMonth;
+import java.time.ZoneId;
+import java.time.ZonedDateTime;
+import java.util.Comparator;
+import java.util.Currency;
+import java.util.HashMap;
+import java.util.Locale;
+import java.util.Map;
+import java.util.OptionalDouble;
+import java.util.OptionalInt;
+import java.util.OptionalLong;
+import java.util.UUID;
+import java.util.function.Function;
+import java.util.regex.Pattern;
+
+/**
+ * Binary layout of a {@link Snapshot}: a header, records of objects and a table of classes.
+ * <p>The header holds the magic number, the format version, the byte order of the rest, the reference of the root,
+ * the offset of the class table, the number of records and the size of the snapshot. A reference is the offset of
+ * a record from the start of the snapshot, 0 is null. Each record starts with its tag and its ordinal,
+ * the number of the record which indexes materialized objects:</p>
+ * <ul>
+ *     <li>{@link #STRING}: length and UTF-8 bytes;</li>
+ *     <li>{@link #BOX}: type code and the primitive value;</li>
+ *     <li>{@link #ENUM}: class index and reference of the constant name;</li>
+ *     <li>{@link #CLASS}: class index of the class itself;</li>
+ *     <li>{@link #VALUE}: class index, length and UTF-8 bytes of the text form of a JDK value,
+ *     empty for JDK singletons like {@code Comparator.reverseOrder()};</li>
+ *     <li>{@link #OPTIONAL}: reference of the value;</li>
+ *     <li>{@link #ARRAY}: class index, length and elements, primitive elements as they are;</li>
+ *     <li>{@link #OBJECT}: class index and values of the fields of the class layout;</li>
+ *     <li>{@link #COLLECTION}: class index, values of the class layout (constructor parameters of collections
+ *     without a {@link CollectionCopier}), reference of the argument (comparator or key type), number of elements
+ *     and offset of the block of element references, keys and values interleaved for maps.</li>
+ * </ul>
+ * <p>The class table holds the name of each class followed by its layout: fields (declaring class, name,
+ * type code and whether the field is only passed to the constructor) and layout indexes of constructor parameters.
+ * Values of a layout follow each other without padding, references take 4 bytes.</p>
+ */
+final class SnapshotFormat {
+
+    static final int MAGIC = 0x434C4E53;
+    static final short VERSION = 1;
+
+    static final int MAGIC_OFFSET = 0;
+    static final int VERSION_OFFSET = 4;
+    static final int ORDER_OFFSET = 6;
+    static final int ROOT_OFFSET = 8;
+    static final int CLASS_TABLE_OFFSET = 12;
+    static final int RECORD_COUNT_OFFSET = 16;
+    static final int SIZE_OFFSET = 20;
+    static final int HEADER_SIZE = 24;
+
+    static final byte BIG_ENDIAN = 0;
+    static final byte LITTLE_ENDIAN = 1;
+
+    static final byte STRING = 1;
+    static final byte BOX = 2;
+    static final byte ENUM = 3;
+    static final byte CLASS = 4;
+    static final byte VALUE = 5;
+    static final byte OPTIONAL = 6;
+    static final byte ARRAY = 7;
+    static final byte OBJECT = 8;
+    static final byte COLLECTION = 9;
+
+    /**
+     * Size of the tag and the ordinal starting each record.
+     */
+    static final int RECORD_HEADER_SIZE = 5;
+    static final int REFERENCE_SIZE = 4;
+    static final char REFERENCE = 'L';
+
+    private static final Map<Class<?>, Character> BOX_CODES = Map.of(
+            Boolean.class, 'Z', Byte.class, 'B', Character.class, 'C', Short.class, 'S',
+            Integer.class, 'I', Long.class, 'J', Float.class, 'F', Double.class, 'D');
+
+    private static final Map<Class<?>, ValueCodec> VALUE_CODECS = new HashMap<>();
+
+    static {
+        codec(BigInteger.class, Object::toString, BigInteger::new);
+        codec(BigDecimal.class, Object::toString, BigDecimal::new);
+        codec(UUID.class, Object::toString, UUID::fromString);
+        codec(Instant.class, Object::toString, Instant::parse);
+        codec(LocalDate.class, Object::toString, LocalDate::parse);
+        codec(LocalTime.class, Object::toString, LocalTime::parse);
+        codec(LocalDateTime.class, Object::toString, LocalDateTime::parse);
+        codec(OffsetTime.class, Object::toString, OffsetTime::parse);
+        codec(OffsetDateTime.class, Object::toString, OffsetDateTime::parse);
+        codec(ZonedDateTime.class, Object::toString, ZonedDateTime::parse);
+        codec(Duration.class, Object::toString, Duration::parse);
+        codec(Period.class, Object::toString, Period::parse);
+        codec(Year.class, Object::toString, Year::parse);
+        codec(YearMonth.class, Object::toString, YearMonth::parse);
+        codec(MonthDay.class, Object::toString, MonthDay::parse);
+        codec(Locale.class, locale -> ((Locale) locale).toLanguageTag(), Locale::forLanguageTag);
+        codec(Currency.class, currency -> ((Currency) currency).getCurrencyCode(), Currency::getInstance);
+        codec(URI.class, Object::toString, URI::create);
+        // flags are kept before the first colon
+        codec(Pattern.class, pattern -> ((Pattern) pattern).flags() + ":" + ((Pattern) pattern).pattern(),
+                text -> Pattern.compile(text.substring(text.indexOf(':') + 1), Integer.parseInt(text.substring(0, text.indexOf(':')))));
+        codec(OptionalInt.class, optional -> ((OptionalInt) optional).isPresent() ? Integer.toString(((OptionalInt) optional).getAsInt()) : "",
+                text -> text.isEmpty() ? OptionalInt.empty() : OptionalInt.of(Integer.parseInt(text)));
+        codec(OptionalLong.class, optional -> ((OptionalLong) optional).isPresent() ? Long.toString(((OptionalLong) optional).getAsLong()) : "",
+                text -> text.isEmpty() ? OptionalLong.empty() : OptionalLong.of(Long.parseLong(text)));
+        codec(OptionalDouble.class, optional -> ((OptionalDouble) optional).isPresent() ? Double.toString(((OptionalDouble) optional).getAsDouble()) : "",
+                text -> text.isEmpty() ? OptionalDouble.empty() : OptionalDouble.of(Double.parseDouble(text)));
+        // comparators of sorted collections which are JDK singletons, shared by deep clones as they are
+        constant(Comparator.naturalOrder());
+        constant(Comparator.reverseOrder());
+        constant(String.CASE_INSENSITIVE_ORDER);
+    }
+
+    private static final ValueCodec ZONE_CODEC = new ValueCodec(zone -> ((ZoneId) zone).getId(), ZoneId::of);
+    private static final ValueCodec CHARSET_CODEC = new ValueCodec(charset -> ((Charset) charset).name(), Charset::forName);
+
+    private SnapshotFormat() {
+    }
+
+    /**
+     * @return type code of a field or array component type, {@link #REFERENCE} for reference types
+     */
+    static char typeCode(Class<?> type) {
+        if (!type.isPrimitive()) {
+            return REFERENCE;
+        }
+        if (type == boolean.class) {
+            return 'Z';
+        }
+        if (type == long.class) {
+            return 'J';
+        }
+        return Character.toUpperCase(type.getName().charAt(0));
+    }
+
+    /**
+     * @return type code of the primitive boxed by the class or 0 if the class isn't a box
+     */
+    static char boxCode(Class<?> type) {
+        Character code = BOX_CODES.get(type);
+        return code == null ? 0 : code;
+    }
+
+    static int sizeOf(char code) {
+        switch (code) {
+            case 'Z':
+            case 'B':
+                return 1;
+            case 'C':
+            case 'S':
+                return 2;
+            case 'J':
+            case 'D':
+                return 8;
+            default:
+                return 4;
+        }
+    }
+
+    /**
+     * @return codec of a JDK value class written as text or null if the class isn't one
+     */
+    static ValueCodec codecOf(Class<?> type) {
+        ValueCodec codec = VALUE_CODECS.get(type);
+        if (codec != null) {
+            return codec;
+        }
+        if (ZoneId.class.isAssignableFrom(type)) {
+            return ZONE_CODEC;
+        }
+        if (Charset.class.isAssignableFrom(type)) {
+            return CHARSET_CODEC;
+        }
+        return null;
+    }
+
+    /**
+     * Writes the primitive value of the field of the object at the index.
+     */
+    static void putField(ByteBuffer buffer, int index, char code, Field field, Object object) throws IllegalAccessException {
+        switch (code) {
+            case 'Z':
+                buffer.put(index, field.getBoolean(object) ? (byte) 1 : 0);
+                break;
+            case 'B':
+                buffer.put(index, field.getByte(object));
+                break;
+            case 'C':
+                buffer.putChar(index, field.getChar(object));
+                break;
+            case 'S':
+                buffer.putShort(index, field.getShort(object));
+                break;
+            case 'I':
+                buffer.putInt(index, field.getInt(object));
+                break;
+            case 'J':
+                buffer.putLong(index, field.getLong(object));
+                break;
+            case 'F':
+                buffer.putFloat(index, field.getFloat(object));
+                break;
+            default:
+                buffer.putDouble(index, field.getDouble(object));
+        }
+    }
+
+    /**
+     * Sets the field of the object to the primitive value at the index.
+     */
+    static void setField(ByteBuffer buffer, int index, char code, Field field, Object object) throws IllegalAccessException {
+        switch (code) {
+            case 'Z':
+                field.setBoolean(object, buffer.get(index) != 0);
+                break;
+            case 'B':
+                field.setByte(object, buffer.get(index));
+                break;
+            case 'C':
+                field.setChar(object, buffer.getChar(index));
+                break;
+            case 'S':
+                field.setShort(object, buffer.getShort(index));
+                break;
+            case 'I':
+                field.setInt(object, buffer.getInt(index));
+                break;
+            case 'J':
+                field.setLong(object, buffer.getLong(index));
+                break;
+            case 'F':
+                field.setFloat(object, buffer.getFloat(index));
+                break;
+            default:
+                field.setDouble(object, buffer.getDouble(index));
+        }
+    }
+
+    static void putBox(ByteBuffer buffer, int index, char code, Object box) {
+        switch (code) {
+            case 'Z':
+                buffer.put(index, (Boolean) box ? (byte) 1 : 0);
+                break;
+            case 'B':
+                buffer.put(index, (Byte) box);
+                break;
+            case 'C':
+                buffer.putChar(index, (Character) box);
+                break;
+            case 'S':
+                buffer.putShort(index, (Short) box);
+                break;
+            case 'I':
+                buffer.putInt(index, (Integer) box);
+                break;
+            case 'J':
+                buffer.putLong(index, (Long) box);
+                break;
+            case 'F':
+                buffer.putFloat(index, (Float) box);
+                break;
+            default:
+                buffer.putDouble(index, (Double) box);
+        }
+    }
+
+    static Object getBox(ByteBuffer buffer, int index, char code) {
+        switch (code) {
+            case 'Z':
+                return buffer.get(index) != 0;
+            case 'B':
+                return buffer.get(index);
+            case 'C':
+                return buffer.getChar(index);
+            case 'S':
+                return buffer.getShort(index);
+            case 'I':
+                return buffer.getInt(index);
+            case 'J':
+                return buffer.getLong(index);
+            case 'F':
+                return buffer.getFloat(index);
+            default:
+                return buffer.getDouble(index);
+        }
+    }
+
+    /**
+     * Checks the header of bytes read from a file and sets their byte order and limit to the ones of the snapshot.
+     * @param source name of the bytes for error messages
+     * @return the bytes
+     * @throws IOException if the bytes aren't a complete snapshot of the supported version
+     */
+    static ByteBuffer checkHeader(ByteBuffer bytes, Object source) throws IOException {
+        if (bytes.limit() < HEADER_SIZE) {
+            throw new IOException(source + " is not a snapshot");
+        }
+        byte order = bytes.get(ORDER_OFFSET);
+        if (order != BIG_ENDIAN && order != LITTLE_ENDIAN) {
+            throw new IOException(source + " is not a snapshot");
+        }
+        bytes.order(order == BIG_ENDIAN ? ByteOrder.BIG_ENDIAN : ByteOrder.LITTLE_ENDIAN);
+        if (bytes.getInt(MAGIC_OFFSET) != MAGIC) {
+            throw new IOException(source + " is not a snapshot");
+        }
+        short version = bytes.getShort(VERSION_OFFSET);
+        if (version != VERSION) {
+            throw new IOException("Snapshot version " + version + " of " + source + " is not supported, the supported version is " + VERSION);
+        }
+        int size = bytes.getInt(SIZE_OFFSET);
+        if (size < HEADER_SIZE || size > bytes.limit()) {
+            throw new IOException("Snapshot " + source + " is truncated");
+        }
+        bytes.limit(size);
+        return bytes;
+    }
+
+    private static void codec(Class<?> type, Function<Object, String> toText, Function<String, Object> fromText) {
+        VALUE_CODECS.put(type, new ValueCodec(toText, fromText));
+    }
+
+    /**
+     * Registers the only instance of a JDK class, it's written by its class and materialized as itself.
+     */
+    private static void constant(Object value) {
+        codec(value.getClass(), constant -> "", text -> value);
+    }
+
+    /**
+     * Text form of a JDK value class which fields can't be read.
+     */
+    static final class ValueCodec {
+
+        private final Function<Object, String> toText;
+        private final Function<String, Object> fromText;
+
+        private ValueCodec(Function<Object, String> toText, Function<String, Object> fromText) {
+            this.toText = toText;
+            this.fromText = fromText;
+        }
+
+        String toText(Object value) {
+            return toText.apply(value);
+        }
+
+        Object fromText(String text) {
+            return fromText.apply(text);
+        }
+    }
+
+}
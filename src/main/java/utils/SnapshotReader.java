@@ -0,0 +1,785 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.nio.ByteBuffer;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.Arrays;
+import java.util.Collection;
+import java.util.HashMap;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Materializes records of a {@link Snapshot} as heap objects.
+ * <p>The graph is traversed via frames like {@link Copier#copyIteratively} does, so graphs of any depth are
+ * materialized. An object is registered by the ordinal of its record as soon as it's created and before its fields
+ * are set, so shared references and cycles are kept. Objects created from values (constructor parameters,
+ * elements of built collections) are registered when the values are materialized: a reference to such an object
+ * from its own values is materialized as null, as there is no object to reference yet.</p>
+ */
+final class SnapshotReader {
+
+    private static final Object PENDING = new Object();
+    /**
+     * Registered for an object which values are being materialized before the object is created.
+     */
+    private static final Object GATHERING = new Object();
+    private static final Object[] NO_VALUES = new Object[0];
+
+    private final Snapshot snapshot;
+    private final ByteBuffer bytes;
+    /**
+     * View of the bytes positioned for bulk reads, texts are decoded via a reused array.
+     */
+    private final ByteBuffer view;
+    private byte[] text = new byte[64];
+    private final Object[] objects;
+    private final Map<Integer, Object> partialObjects;
+    private final ArrayDeque<Frame> frames = new ArrayDeque<>();
+
+    /**
+     * @param isWhole true if the whole snapshot is materialized, so objects are indexed by an array of all ordinals
+     */
+    SnapshotReader(Snapshot snapshot, boolean isWhole) {
+        this.snapshot = snapshot;
+        this.bytes = snapshot.bytes();
+        this.view = bytes.duplicate().order(bytes.order());
+        this.objects = isWhole ? new Object[snapshot.getObjectCount()] : null;
+        this.partialObjects = isWhole ? null : new HashMap<>();
+    }
+
+    Object materialize(int reference) throws IllegalAccessException {
+        if (reference == 0) {
+            return null;
+        }
+        Object value = start(reference);
+        if (value != PENDING) {
+            return value;
+        }
+        while (true) {
+            Frame frame = frames.peek();
+            int next = frame.next();
+            if (next == Frame.DONE) {
+                frames.pop();
+                Object result = frame.result();
+                if (result == PENDING) {
+                    // the values of the object are gathered, a frame setting its fields was pushed
+                    continue;
+                }
+                if (frames.isEmpty()) {
+                    return result;
+                }
+                frames.peek().accept(result);
+            }
+            else {
+                Object nextValue = start(next);
+                if (nextValue != PENDING) {
+                    frame.accept(nextValue);
+                }
+            }
+        }
+    }
+
+    /**
+     * Materializes the record if it doesn't reference other records.
+     * @return the object, {@link #PENDING} if a frame materializing referenced records was pushed
+     */
+    private Object start(int reference) throws IllegalAccessException {
+        int ordinal = bytes.getInt(reference + 1);
+        Object known = lookup(ordinal);
+        if (known != null) {
+            return known == GATHERING ? null : known;
+        }
+        int payload = reference + SnapshotFormat.RECORD_HEADER_SIZE;
+        switch (bytes.get(reference)) {
+            case SnapshotFormat.STRING:
+                return register(ordinal, readText(payload));
+            case SnapshotFormat.BOX:
+                return register(ordinal, SnapshotFormat.getBox(bytes, payload + 1, (char) bytes.get(payload)));
+            case SnapshotFormat.ENUM:
+                return register(ordinal, readEnum(payload));
+            case SnapshotFormat.CLASS:
+                return register(ordinal, snapshot.layout(bytes.getInt(payload)).type);
+            case SnapshotFormat.VALUE:
+                return register(ordinal, readValue(payload));
+            case SnapshotFormat.OPTIONAL:
+                return startGathering(ordinal, new int[] {payload}, null, 0, 0,
+                        values -> registerIfAbsent(ordinal, Optional.ofNullable(values[0])));
+            case SnapshotFormat.ARRAY:
+                return startArray(ordinal, payload);
+            case SnapshotFormat.OBJECT:
+                return startObject(ordinal, payload);
+            case SnapshotFormat.COLLECTION:
+                return startCollection(ordinal, payload);
+            default:
+                throw new ObjectCannotBeClonedException("Snapshot record at " + reference + " is corrupted");
+        }
+    }
+
+    private Object startArray(int ordinal, int payload) {
+        Class<?> componentType = snapshot.layout(bytes.getInt(payload)).type.getComponentType();
+        int length = bytes.getInt(payload + 4);
+        if (componentType.isPrimitive()) {
+            return register(ordinal, readPrimitiveArray(componentType, payload + 8, length));
+        }
+        Object[] array = (Object[]) Array.newInstance(componentType, length);
+        register(ordinal, array);
+        if (length == 0) {
+            return array;
+        }
+        frames.push(new ArrayFrame(array, payload + 8));
+        return PENDING;
+    }
+
+    private Object startObject(int ordinal, int payload) throws IllegalAccessException {
+        Layout layout = snapshot.layout(bytes.getInt(payload));
+        int values = payload + 4;
+        if (layout.hasParameters()) {
+            return startGathering(ordinal, layout.parameterPositions(values), layout.parameterCodes(), 0, 0, parameters -> {
+                Object instance = create(layout, parameters);
+                Object registered = registerIfAbsent(ordinal, instance);
+                if (registered != instance) {
+                    return registered;
+                }
+                frames.push(new ObjectFrame(instance, layout, values));
+                return PENDING;
+            });
+        }
+        Object instance = create(layout, NO_VALUES);
+        register(ordinal, instance);
+        frames.push(new ObjectFrame(instance, layout, values));
+        return PENDING;
+    }
+
+    private Object startCollection(int ordinal, int payload) throws IllegalAccessException {
+        Layout layout = snapshot.layout(bytes.getInt(payload));
+        int argument = payload + 4 + layout.valuesSize;
+        int count = bytes.getInt(argument + 4);
+        int block = bytes.getInt(argument + 8);
+        boolean isMap = Map.class.isAssignableFrom(layout.type);
+        int referenceCount = isMap ? count * 2 : count;
+        CollectionCopier collectionCopier = layout.collectionCopier;
+        if (collectionCopier == null) {
+            // a custom collection created by its constructor and filled
+            if (layout.hasParameters()) {
+                return startGathering(ordinal, layout.parameterPositions(payload + 4), layout.parameterCodes(), 0, 0,
+                        parameters -> fillCreated(ordinal, create(layout, parameters), block, referenceCount, isMap));
+            }
+            return fillCreated(ordinal, create(layout, NO_VALUES), block, referenceCount, isMap);
+        }
+        if (collectionCopier instanceof CollectionCopier.BuiltCopier) {
+            CollectionCopier.BuiltCopier builtCopier = (CollectionCopier.BuiltCopier) collectionCopier;
+            return startGathering(ordinal, new int[] {argument}, null, block, referenceCount, values -> {
+                Object[] copies = new Object[referenceCount];
+                System.arraycopy(values, 1, copies, 0, referenceCount);
+                return registerIfAbsent(ordinal, builtCopier.restore(values[0], copies));
+            });
+        }
+        CollectionCopier.FilledCopier filledCopier = (CollectionCopier.FilledCopier) collectionCopier;
+        if (bytes.getInt(argument) == 0) {
+            return fillCreated(ordinal, filledCopier.newEmpty(null, count), block, referenceCount, isMap);
+        }
+        return startGathering(ordinal, new int[] {argument}, null, 0, 0,
+                values -> fillCreated(ordinal, filledCopier.newEmpty(values[0], count), block, referenceCount, isMap));
+    }
+
+    private Object fillCreated(int ordinal, Object container, int block, int referenceCount, boolean isMap) {
+        Object registered = registerIfAbsent(ordinal, container);
+        if (registered != container) {
+            return registered;
+        }
+        if (referenceCount == 0) {
+            return container;
+        }
+        frames.push(new FillFrame(container, block, referenceCount, isMap));
+        return PENDING;
+    }
+
+    /**
+     * Pushes a frame materializing the values at the slots and in the block of references, the object is created
+     * from them by the completion.
+     */
+    private Object startGathering(int ordinal, int[] slots, char[] codes, int block, int blockCount, Completion completion)
+            throws IllegalAccessException {
+        register(ordinal, GATHERING);
+        GatherFrame frame = new GatherFrame(slots, codes, block, blockCount, completion);
+        if (frame.next() == Frame.DONE) {
+            // values are primitives or nulls only
+            return frame.result();
+        }
+        frames.push(frame);
+        return PENDING;
+    }
+
+    private Object create(Layout layout, Object[] parameters) {
+        try {
+            Instantiator.Factory factory = layout.factory();
+            Object instance = factory instanceof ConstructorFactory
+                    ? ((ConstructorFactory) factory).newInstanceWith(parameters) : factory.newInstance(null);
+            ClassPlan.of(layout.type).initializeStamp(instance);
+            return instance;
+        }
+        catch (ObjectCannotBeClonedException ex) {
+            throw ex;
+        }
+        catch (ReflectiveOperationException | RuntimeException ex) {
+            throw new ObjectCannotBeClonedException("Instance of class " + layout.type.getName() + " can not be materialized", ex);
+        }
+    }
+
+    private Object lookup(int ordinal) {
+        return objects != null ? objects[ordinal] : partialObjects.get(ordinal);
+    }
+
+    private Object register(int ordinal, Object value) {
+        if (objects != null) {
+            objects[ordinal] = value;
+        }
+        else {
+            partialObjects.put(ordinal, value);
+        }
+        return value;
+    }
+
+    /**
+     * @return the registered object, the given one if there is none
+     */
+    private Object registerIfAbsent(int ordinal, Object value) {
+        Object known = lookup(ordinal);
+        if (known != null && known != GATHERING) {
+            return known;
+        }
+        return register(ordinal, value);
+    }
+
+    private String readText(int index) {
+        int length = bytes.getInt(index);
+        if (length > text.length) {
+            text = new byte[Math.max(length, text.length * 2)];
+        }
+        view.position(index + 4);
+        view.get(text, 0, length);
+        return new String(text, 0, length, StandardCharsets.UTF_8);
+    }
+
+    private Object readEnum(int payload) {
+        Class type = snapshot.layout(bytes.getInt(payload)).type;
+        int name = bytes.getInt(payload + 4);
+        try {
+            return Enum.valueOf(type, readText(name + SnapshotFormat.RECORD_HEADER_SIZE));
+        }
+        catch (IllegalArgumentException ex) {
+            throw new ObjectCannotBeClonedException("Constant of enum " + type.getName() + " written to the snapshot doesn't exist", ex);
+        }
+    }
+
+    private Object readValue(int payload) {
+        Class<?> type = snapshot.layout(bytes.getInt(payload)).type;
+        SnapshotFormat.ValueCodec codec = SnapshotFormat.codecOf(type);
+        if (codec == null) {
+            throw new ObjectCannotBeClonedException("Value of class " + type.getName() + " can not be materialized");
+        }
+        return codec.fromText(readText(payload + 4));
+    }
+
+    /**
+     * Copies primitive elements in bulk from a view of the buffer.
+     */
+    private Object readPrimitiveArray(Class<?> componentType, int index, int length) {
+        view.position(index);
+        if (componentType == boolean.class) {
+            boolean[] booleans = new boolean[length];
+            for (int i = 0; i < length; i++) {
+                booleans[i] = view.get() != 0;
+            }
+            return booleans;
+        }
+        if (componentType == byte.class) {
+            byte[] array = new byte[length];
+            view.get(array);
+            return array;
+        }
+        if (componentType == char.class) {
+            char[] array = new char[length];
+            view.asCharBuffer().get(array);
+            return array;
+        }
+        if (componentType == short.class) {
+            short[] array = new short[length];
+            view.asShortBuffer().get(array);
+            return array;
+        }
+        if (componentType == int.class) {
+            int[] array = new int[length];
+            view.asIntBuffer().get(array);
+            return array;
+        }
+        if (componentType == long.class) {
+            long[] array = new long[length];
+            view.asLongBuffer().get(array);
+            return array;
+        }
+        if (componentType == float.class) {
+            float[] array = new float[length];
+            view.asFloatBuffer().get(array);
+            return array;
+        }
+        double[] array = new double[length];
+        view.asDoubleBuffer().get(array);
+        return array;
+    }
+
+    /**
+     * Follows the path from the record without materializing anything.
+     * @return reference of the record at the end of the path, 0 if it's null
+     * @throws IllegalArgumentException if a step of the path doesn't exist
+     */
+    static int follow(Snapshot snapshot, int reference, Object[] path) {
+        ByteBuffer bytes = snapshot.bytes();
+        for (Object step : path) {
+            if (reference == 0) {
+                throw new IllegalArgumentException("Path step " + step + " follows null");
+            }
+            int payload = reference + SnapshotFormat.RECORD_HEADER_SIZE;
+            byte tag = bytes.get(reference);
+            if (step instanceof String && tag == SnapshotFormat.OBJECT) {
+                Layout layout = snapshot.layout(bytes.getInt(payload));
+                int field = layout.indexOf((String) step);
+                if (field < 0 || layout.codes[field] != SnapshotFormat.REFERENCE) {
+                    throw new IllegalArgumentException("Class " + layout.type.getName() + " has no reference field " + step + " in the snapshot");
+                }
+                reference = bytes.getInt(payload + 4 + layout.positions[field]);
+            }
+            else if (step instanceof Integer && tag == SnapshotFormat.ARRAY
+                    && !snapshot.layout(bytes.getInt(payload)).type.getComponentType().isPrimitive()) {
+                int index = checkIndex((Integer) step, bytes.getInt(payload + 4));
+                reference = bytes.getInt(payload + 8 + index * SnapshotFormat.REFERENCE_SIZE);
+            }
+            else if (step instanceof Integer && tag == SnapshotFormat.COLLECTION) {
+                Layout layout = snapshot.layout(bytes.getInt(payload));
+                int argument = payload + 4 + layout.valuesSize;
+                int index = checkIndex((Integer) step, bytes.getInt(argument + 4));
+                // values of map entries follow their keys
+                int position = Map.class.isAssignableFrom(layout.type) ? index * 2 + 1 : index;
+                reference = bytes.getInt(bytes.getInt(argument + 8) + position * SnapshotFormat.REFERENCE_SIZE);
+            }
+            else {
+                throw new IllegalArgumentException("Path step " + step + " can not be followed in the snapshot");
+            }
+        }
+        return reference;
+    }
+
+    private static int checkIndex(int index, int size) {
+        if (index < 0 || index >= size) {
+            throw new IllegalArgumentException("Index " + index + " is out of bounds of size " + size);
+        }
+        return index;
+    }
+
+    /**
+     * @return offset of the class table entry following the entry at the offset
+     */
+    static int skipClassEntry(ByteBuffer bytes, int offset) {
+        offset += 4 + bytes.getInt(offset);
+        int fieldCount = bytes.getInt(offset);
+        offset += 4;
+        for (int i = 0; i < fieldCount; i++) {
+            offset += 4 + bytes.getInt(offset);
+            offset += 4 + bytes.getInt(offset);
+            offset += 2;
+        }
+        return offset + 4 + bytes.getInt(offset) * 4;
+    }
+
+    /**
+     * Creates an object from materialized values.
+     */
+    @FunctionalInterface
+    private interface Completion {
+
+        /**
+         * @return the object, {@link #PENDING} if a frame setting its fields was pushed
+         */
+        Object complete(Object[] values) throws IllegalAccessException;
+    }
+
+    /**
+     * Materialization of one object, array or collection in progress.
+     */
+    private abstract static class Frame {
+
+        static final int DONE = -1;
+
+        /**
+         * Sets everything which doesn't reference other records up to the next reference.
+         * @return the next reference to be materialized or {@link #DONE} if the frame is done
+         */
+        abstract int next() throws IllegalAccessException;
+
+        /**
+         * Takes the object materialized for the reference returned by the last {@link #next()}.
+         */
+        abstract void accept(Object value) throws IllegalAccessException;
+
+        /**
+         * @return the materialized object, {@link #PENDING} if a frame continuing it was pushed
+         */
+        abstract Object result() throws IllegalAccessException;
+    }
+
+    private final class ObjectFrame extends Frame {
+
+        private final Object instance;
+        private final Layout layout;
+        private final int values;
+        private int index;
+
+        private ObjectFrame(Object instance, Layout layout, int values) {
+            this.instance = instance;
+            this.layout = layout;
+            this.values = values;
+        }
+
+        @Override
+        int next() throws IllegalAccessException {
+            for (; index < layout.fields.length; index++) {
+                if (layout.isParameterOnly[index]) {
+                    continue;
+                }
+                int position = values + layout.positions[index];
+                char code = layout.codes[index];
+                if (code != SnapshotFormat.REFERENCE) {
+                    SnapshotFormat.setField(bytes, position, code, layout.fields[index], instance);
+                    continue;
+                }
+                int reference = bytes.getInt(position);
+                if (reference != 0) {
+                    return reference;
+                }
+                layout.fields[index].set(instance, null);
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object value) throws IllegalAccessException {
+            layout.fields[index++].set(instance, value);
+        }
+
+        @Override
+        Object result() {
+            return instance;
+        }
+    }
+
+    private final class ArrayFrame extends Frame {
+
+        private final Object[] array;
+        private final int block;
+        private int index;
+
+        private ArrayFrame(Object[] array, int block) {
+            this.array = array;
+            this.block = block;
+        }
+
+        @Override
+        int next() {
+            for (; index < array.length; index++) {
+                int reference = bytes.getInt(block + index * SnapshotFormat.REFERENCE_SIZE);
+                if (reference != 0) {
+                    return reference;
+                }
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object value) {
+            array[index++] = value;
+        }
+
+        @Override
+        Object result() {
+            return array;
+        }
+    }
+
+    /**
+     * Adds elements to a created collection or puts entries, keys followed by values, to a created map.
+     */
+    private final class FillFrame extends Frame {
+
+        private final Object container;
+        private final int block;
+        private final int referenceCount;
+        private final boolean isMap;
+        private int index;
+        private Object key;
+
+        private FillFrame(Object container, int block, int referenceCount, boolean isMap) {
+            this.container = container;
+            this.block = block;
+            this.referenceCount = referenceCount;
+            this.isMap = isMap;
+        }
+
+        @Override
+        int next() {
+            for (; index < referenceCount; index++) {
+                int reference = bytes.getInt(block + index * SnapshotFormat.REFERENCE_SIZE);
+                if (reference != 0) {
+                    return reference;
+                }
+                add(null);
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object value) {
+            add(value);
+            index++;
+        }
+
+        private void add(Object value) {
+            if (!isMap) {
+                ((Collection<Object>) container).add(value);
+            }
+            else if (index % 2 == 0) {
+                key = value;
+            }
+            else {
+                ((Map<Object, Object>) container).put(key, value);
+            }
+        }
+
+        @Override
+        Object result() {
+            return container;
+        }
+    }
+
+    /**
+     * Materializes values which an object is created from: values at slots, primitive ones if they have type codes,
+     * followed by a block of references.
+     */
+    private final class GatherFrame extends Frame {
+
+        private final int[] slots;
+        private final char[] codes;
+        private final int block;
+        private final Object[] values;
+        private final Completion completion;
+        private int index;
+
+        private GatherFrame(int[] slots, char[] codes, int block, int blockCount, Completion completion) {
+            this.slots = slots;
+            this.codes = codes;
+            this.block = block;
+            this.values = new Object[slots.length + blockCount];
+            this.completion = completion;
+        }
+
+        @Override
+        int next() {
+            for (; index < values.length; index++) {
+                int position = index < slots.length ? slots[index] : block + (index - slots.length) * SnapshotFormat.REFERENCE_SIZE;
+                char code = codes != null && index < slots.length ? codes[index] : SnapshotFormat.REFERENCE;
+                if (code != SnapshotFormat.REFERENCE) {
+                    values[index] = SnapshotFormat.getBox(bytes, position, code);
+                    continue;
+                }
+                int reference = bytes.getInt(position);
+                if (reference != 0) {
+                    return reference;
+                }
+            }
+            return DONE;
+        }
+
+        @Override
+        void accept(Object value) {
+            values[index++] = value;
+        }
+
+        @Override
+        Object result() throws IllegalAccessException {
+            return completion.complete(values);
+        }
+    }
+
+    /**
+     * Layout of the objects of one class read from the class table and bound to the fields of the loaded class.
+     */
+    static final class Layout {
+
+        private static final Map<String, Class<?>> PRIMITIVES = Map.of(
+                "boolean", boolean.class, "byte", byte.class, "char", char.class, "short", short.class,
+                "int", int.class, "long", long.class, "float", float.class, "double", double.class, "void", void.class);
+
+        final Class<?> type;
+        final Field[] fields;
+        final char[] codes;
+        final int[] positions;
+        final boolean[] isParameterOnly;
+        final int[] parameterIndexes;
+        final int valuesSize;
+        final CollectionCopier collectionCopier;
+        /**
+         * True if the class is loaded by name, so it may differ from the class the snapshot was written with.
+         */
+        private final boolean isLoaded;
+        private Instantiator.Factory factory;
+
+        /**
+         * @param type the class of the entry if it's known, null to load it by name
+         */
+        Layout(ByteBuffer bytes, int offset, Class<?> type) {
+            String name = readString(bytes, offset);
+            offset += 4 + bytes.getInt(offset);
+            this.type = type != null ? type : loadClass(name);
+            this.isLoaded = type == null;
+            int fieldCount = bytes.getInt(offset);
+            offset += 4;
+            this.fields = new Field[fieldCount];
+            this.codes = new char[fieldCount];
+            this.positions = new int[fieldCount];
+            this.isParameterOnly = new boolean[fieldCount];
+            int position = 0;
+            for (int i = 0; i < fieldCount; i++) {
+                String declaringClass = readString(bytes, offset);
+                offset += 4 + bytes.getInt(offset);
+                String fieldName = readString(bytes, offset);
+                offset += 4 + bytes.getInt(offset);
+                codes[i] = (char) bytes.get(offset);
+                isParameterOnly[i] = bytes.get(offset + 1) != 0;
+                offset += 2;
+                fields[i] = resolveField(this.type, declaringClass, fieldName, codes[i]);
+                positions[i] = position;
+                position += codes[i] == SnapshotFormat.REFERENCE ? SnapshotFormat.REFERENCE_SIZE : SnapshotFormat.sizeOf(codes[i]);
+            }
+            this.valuesSize = position;
+            this.parameterIndexes = new int[bytes.getInt(offset)];
+            for (int i = 0; i < parameterIndexes.length; i++) {
+                parameterIndexes[i] = bytes.getInt(offset + 4 + i * 4);
+            }
+            this.collectionCopier = CollectionCopier.of(this.type);
+        }
+
+        boolean hasParameters() {
+            return parameterIndexes.length > 0 && factory() instanceof ConstructorFactory;
+        }
+
+        int[] parameterPositions(int values) {
+            int[] result = new int[parameterIndexes.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = values + positions[parameterIndexes[i]];
+            }
+            return result;
+        }
+
+        char[] parameterCodes() {
+            char[] result = new char[parameterIndexes.length];
+            for (int i = 0; i < result.length; i++) {
+                result[i] = codes[parameterIndexes[i]];
+            }
+            return result;
+        }
+
+        /**
+         * @return index of the field declared by the nearest class of the hierarchy, -1 if there is none
+         */
+        int indexOf(String fieldName) {
+            int result = -1;
+            int resultDepth = Integer.MAX_VALUE;
+            for (int i = 0; i < fields.length; i++) {
+                if (fields[i].getName().equals(fieldName)) {
+                    int depth = ClassPlan.hierarchyOf(type).indexOf(fields[i].getDeclaringClass());
+                    if (depth < resultDepth) {
+                        result = i;
+                        resultDepth = depth;
+                    }
+                }
+            }
+            return result;
+        }
+
+        /**
+         * Resolves the factory on first use, as enums, arrays and values are materialized without one.
+         * Objects of a loaded class are created only if the class would be written with the same layout now.
+         * @throws ObjectCannotBeClonedException if the fields of the class differ from the written ones
+         *                                       or its constructor doesn't take the written parameters
+         */
+        Instantiator.Factory factory() {
+            Instantiator.Factory result = factory;
+            if (result != null) {
+                return result;
+            }
+            if (isLoaded) {
+                SnapshotWriter.Layout current = new SnapshotWriter.Layout(-1, type);
+                if (!Arrays.equals(current.fields, fields) || !Arrays.equals(current.isParameterOnly, isParameterOnly)) {
+                    throw new ObjectCannotBeClonedException("Fields of class " + type.getName() + " differ from the fields written to the snapshot");
+                }
+            }
+            ClassPlan plan = ClassPlan.of(type);
+            result = plan.isImmutable() || collectionCopier != null ? ClassPlan.resolveFactory(type) : plan.getFactory();
+            if (result instanceof ConstructorFactory) {
+                Field[] parameterFields = ((ConstructorFactory) result).getParameterFields();
+                boolean isMatching = parameterFields.length == parameterIndexes.length;
+                for (int i = 0; i < parameterFields.length && isMatching; i++) {
+                    isMatching = parameterFields[i].equals(fields[parameterIndexes[i]]);
+                }
+                if (!isMatching) {
+                    throw new ObjectCannotBeClonedException("Constructor parameters of class " + type.getName() + " don't match the snapshot");
+                }
+            }
+            factory = result;
+            return result;
+        }
+
+        private static Field resolveField(Class<?> type, String declaringClass, String name, char code) {
+            Class<?> declaring = loadClass(declaringClass);
+            Field field;
+            try {
+                field = declaring.getDeclaredField(name);
+            }
+            catch (NoSuchFieldException ex) {
+                throw new ObjectCannotBeClonedException("Field " + name + " of class " + declaringClass + " written to the snapshot doesn't exist", ex);
+            }
+            if (SnapshotFormat.typeCode(field.getType()) != code) {
+                throw new ObjectCannotBeClonedException("Field " + name + " of class " + declaringClass + " has another type than in the snapshot");
+            }
+            ClassPlan.makeAccessible(type, field);
+            return field;
+        }
+
+        private static Class<?> loadClass(String name) {
+            Class<?> primitive = PRIMITIVES.get(name);
+            if (primitive != null) {
+                return primitive;
+            }
+            ClassLoader loader = Thread.currentThread().getContextClassLoader();
+            try {
+                return Class.forName(name, false, loader != null ? loader : SnapshotReader.class.getClassLoader());
+            }
+            catch (ClassNotFoundException ex) {
+                throw new ObjectCannotBeClonedException("Class " + name + " written to the snapshot can not be loaded", ex);
+            }
+        }
+
+        private static String readString(ByteBuffer bytes, int offset) {
+            byte[] text = new byte[bytes.getInt(offset)];
+            ByteBuffer view = bytes.duplicate();
+            view.position(offset + 4);
+            view.get(text);
+            return new String(text, StandardCharsets.UTF_8);
+        }
+    }
+
+}
@@ -0,0 +1,444 @@
+package utils;
+
+import exception.ObjectCannotBeClonedException;
+
+import java.lang.reflect.Array;
+import java.lang.reflect.Field;
+import java.nio.BufferOverflowException;
+import java.nio.ByteBuffer;
+import java.nio.ByteOrder;
+import java.nio.charset.StandardCharsets;
+import java.util.ArrayDeque;
+import java.util.ArrayList;
+import java.util.Collection;
+import java.util.Comparator;
+import java.util.EnumMap;
+import java.util.HashMap;
+import java.util.IdentityHashMap;
+import java.util.List;
+import java.util.Map;
+import java.util.Optional;
+
+/**
+ * Writes the graph of an object to a {@link Snapshot} in the {@link SnapshotFormat}.
+ * <p>Objects are visited with the rules of deep clones: each object is written once, so shared references and cycles
+ * are kept, fields are taken from class plans and collections with a {@link CollectionCopier} are written
+ * as their elements. A record is reserved when the object is reached and filled when its turn in the queue comes,
+ * so the traversal doesn't recurse and graphs of any depth are written. Values which don't reference other
+ * objects (strings, boxes, primitive arrays, JDK values) are written when they are reached.</p>
+ * <p>Comparators of sorted collections are shared by deep clones, a snapshot writes the natural, reverse
+ * and case-insensitive orders of the JDK as constants and other comparators as objects of their classes.</p>
+ */
+final class SnapshotWriter {
+
+    private static final int INITIAL_CAPACITY = 8 * 1024;
+
+    private ByteBuffer buffer;
+    private final boolean isGrowable;
+    private final int start;
+    private int end = SnapshotFormat.HEADER_SIZE;
+    private int recordCount;
+
+    private final IdentityHashMap<Object, Integer> references = new IdentityHashMap<>();
+    private final ArrayDeque<Object> pending = new ArrayDeque<>();
+    private final Map<Class<?>, Integer> classIndexes = new HashMap<>();
+    private final List<Class<?>> classes = new ArrayList<>();
+    private final Map<Class<?>, Layout> layouts = new HashMap<>();
+
+    private SnapshotWriter(ByteBuffer buffer, boolean isGrowable) {
+        this.buffer = buffer;
+        this.isGrowable = isGrowable;
+        this.start = buffer.position();
+    }
+
+    /**
+     * Writes the graph to a new direct buffer sized for it.
+     */
+    static Snapshot write(Object root) throws IllegalAccessException {
+        ByteBuffer buffer = ByteBuffer.allocateDirect(INITIAL_CAPACITY).order(ByteOrder.nativeOrder());
+        SnapshotWriter writer = new SnapshotWriter(buffer, true);
+        writer.writeGraph(root);
+        ByteBuffer bytes = writer.buffer;
+        if (bytes.capacity() > writer.end + writer.end / 4) {
+            ByteBuffer trimmed = ByteBuffer.allocateDirect(writer.end).order(bytes.order());
+            bytes.limit(writer.end);
+            trimmed.put(bytes).flip();
+            bytes = trimmed;
+        }
+        bytes.position(0).limit(writer.end);
+        return new Snapshot(bytes.slice().order(bytes.order()), writer.classes.toArray(new Class<?>[0]));
+    }
+
+    /**
+     * Writes the graph to the buffer from its position and moves the position past the snapshot.
+     * @throws BufferOverflowException if the snapshot doesn't fit the remaining bytes of the buffer
+     */
+    static Snapshot write(Object root, ByteBuffer target) throws IllegalAccessException {
+        ByteBuffer buffer = target.duplicate().order(ByteOrder.nativeOrder());
+        SnapshotWriter writer = new SnapshotWriter(buffer, false);
+        writer.writeGraph(root);
+        ByteBuffer bytes = target.duplicate();
+        bytes.limit(writer.start + writer.end);
+        target.position(writer.start + writer.end);
+        return new Snapshot(bytes.slice().order(ByteOrder.nativeOrder()), writer.classes.toArray(new Class<?>[0]));
+    }
+
+    private void writeGraph(Object root) throws IllegalAccessException {
+        ensureCapacity(end);
+        int rootReference = reference(root);
+        while (!pending.isEmpty()) {
+            Object value = pending.poll();
+            fill(value, references.get(value));
+        }
+        int classTable = writeClassTable();
+        buffer.putInt(start + SnapshotFormat.MAGIC_OFFSET, SnapshotFormat.MAGIC);
+        buffer.putShort(start + SnapshotFormat.VERSION_OFFSET, SnapshotFormat.VERSION);
+        buffer.put(start + SnapshotFormat.ORDER_OFFSET,
+                buffer.order() == ByteOrder.BIG_ENDIAN ? SnapshotFormat.BIG_ENDIAN : SnapshotFormat.LITTLE_ENDIAN);
+        buffer.putInt(start + SnapshotFormat.ROOT_OFFSET, rootReference);
+        buffer.putInt(start + SnapshotFormat.CLASS_TABLE_OFFSET, classTable);
+        buffer.putInt(start + SnapshotFormat.RECORD_COUNT_OFFSET, recordCount);
+        buffer.putInt(start + SnapshotFormat.SIZE_OFFSET, end);
+    }
+
+    /**
+     * @return reference of the record of the value, the record is reserved if the value isn't written yet
+     */
+    private int reference(Object value) throws IllegalAccessException {
+        if (value == null) {
+            return 0;
+        }
+        Integer reference = references.get(value);
+        return reference != null ? reference : reserve(value);
+    }
+
+    private int reserve(Object value) throws IllegalAccessException {
+        Class<?> type = value.getClass();
+        if (type == String.class) {
+            byte[] bytes = ((String) value).getBytes(StandardCharsets.UTF_8);
+            int record = startRecord(value, SnapshotFormat.STRING, 4 + bytes.length);
+            putText(record + SnapshotFormat.RECORD_HEADER_SIZE, bytes);
+            return record;
+        }
+        char boxCode = SnapshotFormat.boxCode(type);
+        if (boxCode != 0) {
+            int record = startRecord(value, SnapshotFormat.BOX, 1 + SnapshotFormat.sizeOf(boxCode));
+            buffer.put(start + record + SnapshotFormat.RECORD_HEADER_SIZE, (byte) boxCode);
+            SnapshotFormat.putBox(buffer, start + record + SnapshotFormat.RECORD_HEADER_SIZE + 1, boxCode, value);
+            return record;
+        }
+        if (value instanceof Enum) {
+            int record = startRecord(value, SnapshotFormat.ENUM, 8);
+            buffer.putInt(start + record + SnapshotFormat.RECORD_HEADER_SIZE, classIndex(((Enum<?>) value).getDeclaringClass()));
+            int name = reference(((Enum<?>) value).name());
+            buffer.putInt(start + record + SnapshotFormat.RECORD_HEADER_SIZE + 4, name);
+            return record;
+        }
+        if (type == Class.class) {
+            int record = startRecord(value, SnapshotFormat.CLASS, 4);
+            buffer.putInt(start + record + SnapshotFormat.RECORD_HEADER_SIZE, classIndex((Class<?>) value));
+            return record;
+        }
+        if (type == Optional.class) {
+            int record = startRecord(value, SnapshotFormat.OPTIONAL, 4);
+            int content = reference(((Optional<?>) value).orElse(null));
+            buffer.putInt(start + record + SnapshotFormat.RECORD_HEADER_SIZE, content);
+            return record;
+        }
+        SnapshotFormat.ValueCodec codec = SnapshotFormat.codecOf(type);
+        if (codec != null) {
+            byte[] bytes = codec.toText(value).getBytes(StandardCharsets.UTF_8);
+            int record = startRecord(value, SnapshotFormat.VALUE, 4 + 4 + bytes.length);
+            buffer.putInt(start + record + SnapshotFormat.RECORD_HEADER_SIZE, classIndex(type));
+            putText(record + SnapshotFormat.RECORD_HEADER_SIZE + 4, bytes);
+            return record;
+        }
+        if (type.isArray()) {
+            return reserveArray(value, type);
+        }
+        Layout layout = layoutOf(type);
+        if (value instanceof Collection || value instanceof Map) {
+            if (value instanceof EnumMap && ((EnumMap<?, ?>) value).isEmpty()) {
+                throw new ObjectCannotBeClonedException("Empty EnumMap can not be written to a snapshot: its key type is unknown");
+            }
+            checkComparator(value);
+            int record = startRecord(value, SnapshotFormat.COLLECTION, 4 + layout.valuesSize + 12);
+            buffer.putInt(start + record + SnapshotFormat.RECORD_HEADER_SIZE, layout.classIndex);
+            pending.add(value);
+            return record;
+        }
+        int record = startRecord(value, SnapshotFormat.OBJECT, 4 + layout.valuesSize);
+        buffer.putInt(start + record + SnapshotFormat.RECORD_HEADER_SIZE, layout.classIndex);
+        pending.add(value);
+        return record;
+    }
+
+    /**
+     * Checks the comparator of a sorted collection or map before the collection is written: JDK singletons are written
+     * by their class, comparators of other classes by their fields, so JDK comparators holding state
+     * (e.g. {@code Collections.reverseOrder(comparator)}) and lambdas can't be written.
+     * @throws ObjectCannotBeClonedException if the comparator can't be written
+     */
+    private static void checkComparator(Object collection) {
+        Object argument = CollectionCopier.argumentOf(collection);
+        if (!(argument instanceof Comparator)) {
+            return;
+        }
+        Class<?> type = argument.getClass();
+        if (SnapshotFormat.codecOf(type) != null) {
+            return;
+        }
+        if (type.getClassLoader() == null || type.isSynthetic()) {
+            throw new ObjectCannotBeClonedException("Comparator of class " + type.getName() + " of " + collection.getClass().getName()
+                    + " can not be written to a snapshot: only natural, reverse and case-insensitive orders of the JDK"
+                    + " and comparators of non-synthetic application classes are written");
+        }
+    }
+
+    private int reserveArray(Object array, Class<?> type) {
+        char code = SnapshotFormat.typeCode(type.getComponentType());
+        int length = Array.getLength(array);
+        int elementSize = code == SnapshotFormat.REFERENCE ? SnapshotFormat.REFERENCE_SIZE : SnapshotFormat.sizeOf(code);
+        int record = startRecord(array, SnapshotFormat.ARRAY, 8 + length * elementSize);
+        int index = start + record + SnapshotFormat.RECORD_HEADER_SIZE;
+        buffer.putInt(index, classIndex(type));
+        buffer.putInt(index + 4, length);
+        if (code == SnapshotFormat.REFERENCE) {
+            pending.add(array);
+            return record;
+        }
+        // primitive elements are copied in bulk by a view of the buffer
+        ByteBuffer view = buffer.duplicate().order(buffer.order());
+        view.position(index + 8);
+        switch (code) {
+            case 'Z':
+                boolean[] booleans = (boolean[]) array;
+                for (int i = 0; i < length; i++) {
+                    view.put(booleans[i] ? (byte) 1 : 0);
+                }
+                break;
+            case 'B':
+                view.put((byte[]) array);
+                break;
+            case 'C':
+                view.asCharBuffer().put((char[]) array);
+                break;
+            case 'S':
+                view.asShortBuffer().put((short[]) array);
+                break;
+            case 'I':
+                view.asIntBuffer().put((int[]) array);
+                break;
+            case 'J':
+                view.asLongBuffer().put((long[]) array);
+                break;
+            case 'F':
+                view.asFloatBuffer().put((float[]) array);
+                break;
+            default:
+                view.asDoubleBuffer().put((double[]) array);
+        }
+        return record;
+    }
+
+    /**
+     * Writes references and values of an object, a reference array or a collection which record is reserved.
+     */
+    private void fill(Object value, int record) throws IllegalAccessException {
+        int index = record + SnapshotFormat.RECORD_HEADER_SIZE + 4;
+        if (value instanceof Object[]) {
+            Object[] array = (Object[]) value;
+            index += 4;
+            for (Object element : array) {
+                int reference = reference(element);
+                buffer.putInt(start + index, reference);
+                index += SnapshotFormat.REFERENCE_SIZE;
+            }
+            return;
+        }
+        Layout layout = layoutOf(value.getClass());
+        for (int i = 0; i < layout.fields.length; i++) {
+            if (layout.codes[i] == SnapshotFormat.REFERENCE) {
+                int reference = reference(layout.fields[i].get(value));
+                buffer.putInt(start + index, reference);
+            }
+            else {
+                SnapshotFormat.putField(buffer, start + index, layout.codes[i], layout.fields[i], value);
+            }
+            index += layout.sizes[i];
+        }
+        if (value instanceof Collection || value instanceof Map) {
+            int argument = reference(CollectionCopier.argumentOf(value));
+            Object[] elements = CollectionCopier.elements(value);
+            int block = allocate(elements.length * SnapshotFormat.REFERENCE_SIZE);
+            buffer.putInt(start + index, argument);
+            buffer.putInt(start + index + 4, value instanceof Map ? elements.length / 2 : elements.length);
+            buffer.putInt(start + index + 8, block);
+            for (Object element : elements) {
+                int reference = reference(element);
+                buffer.putInt(start + block, reference);
+                block += SnapshotFormat.REFERENCE_SIZE;
+            }
+        }
+    }
+
+    private int writeClassTable() {
+        int table = end;
+        putInt(classes.size());
+        for (Class<?> type : classes) {
+            putString(type.getName());
+            Layout layout = layouts.get(type);
+            if (layout == null) {
+                putInt(0);
+                putInt(0);
+                continue;
+            }
+            putInt(layout.fields.length);
+            for (int i = 0; i < layout.fields.length; i++) {
+                putString(layout.fields[i].getDeclaringClass().getName());
+                putString(layout.fields[i].getName());
+                int index = allocate(2);
+                buffer.put(start + index, (byte) layout.codes[i]);
+                buffer.put(start + index + 1, layout.isParameterOnly[i] ? (byte) 1 : 0);
+            }
+            putInt(layout.parameterIndexes.length);
+            for (int parameterIndex : layout.parameterIndexes) {
+                putInt(parameterIndex);
+            }
+        }
+        return table;
+    }
+
+    private int startRecord(Object value, byte tag, int payloadSize) {
+        int record = allocate(SnapshotFormat.RECORD_HEADER_SIZE + payloadSize);
+        buffer.put(start + record, tag);
+        buffer.putInt(start + record + 1, recordCount++);
+        references.put(value, record);
+        return record;
+    }
+
+    private int classIndex(Class<?> type) {
+        Integer index = classIndexes.get(type);
+        if (index == null) {
+            index = classes.size();
+            classes.add(type);
+            classIndexes.put(type, index);
+        }
+        return index;
+    }
+
+    private Layout layoutOf(Class<?> type) {
+        Layout layout = layouts.get(type);
+        if (layout == null) {
+            layout = new Layout(classIndex(type), type);
+            layouts.put(type, layout);
+        }
+        return layout;
+    }
+
+    /**
+     * @return offset of the new area of the given size at the end of the snapshot
+     */
+    private int allocate(int size) {
+        int offset = end;
+        ensureCapacity(end + size);
+        end += size;
+        return offset;
+    }
+
+    private void ensureCapacity(int size) {
+        if (start + size <= buffer.limit()) {
+            return;
+        }
+        if (!isGrowable || size < 0) {
+            throw new BufferOverflowException();
+        }
+        ByteBuffer grown = ByteBuffer.allocateDirect(Math.max(size, buffer.capacity() * 2)).order(buffer.order());
+        buffer.position(0).limit(end);
+        grown.put(buffer).clear();
+        buffer = grown;
+    }
+
+    private void putInt(int value) {
+        buffer.putInt(start + allocate(4), value);
+    }
+
+    private void putString(String value) {
+        byte[] bytes = value.getBytes(StandardCharsets.UTF_8);
+        putText(allocate(4 + bytes.length), bytes);
+    }
+
+    /**
+     * Writes the length of the bytes followed by the bytes at the allocated offset.
+     */
+    private void putText(int offset, byte[] bytes) {
+        buffer.putInt(start + offset, bytes.length);
+        ByteBuffer view = buffer.duplicate();
+        view.position(start + offset + 4);
+        view.put(bytes);
+    }
+
+    /**
+     * Fields written for objects of one class: fields copied by clones followed by fields only passed to the constructor,
+     * collections without a {@link CollectionCopier} keep only the fields passed to the constructor.
+     */
+    static final class Layout {
+
+        private final int classIndex;
+        final Field[] fields;
+        private final char[] codes;
+        private final int[] sizes;
+        final boolean[] isParameterOnly;
+        private final int[] parameterIndexes;
+        private final int valuesSize;
+
+        /**
+         * @param classIndex index of the class in the class table
+         */
+        Layout(int classIndex, Class<?> type) {
+            this.classIndex = classIndex;
+            List<Field> fieldList = new ArrayList<>();
+            ClassPlan plan = ClassPlan.of(type);
+            boolean isCollection = Collection.class.isAssignableFrom(type) || Map.class.isAssignableFrom(type);
+            // fields of records are passed to their canonical constructors only
+            if (!isCollection && !Records.isRecord(type)) {
+                ClassPlan.FieldPlan[] fieldPlans = plan.isImmutable() ? ClassPlan.resolveFields(type) : plan.getFields();
+                for (ClassPlan.FieldPlan fieldPlan : fieldPlans) {
+                    fieldList.add(fieldPlan.getField());
+                }
+            }
+            int copiedCount = fieldList.size();
+            Field[] parameterFields = new Field[0];
+            if (!isCollection || plan.getCollectionCopier() == null) {
+                Instantiator.Factory factory = plan.isImmutable() ? ClassPlan.resolveFactory(type) : plan.getFactory();
+                if (factory instanceof ConstructorFactory) {
+                    parameterFields = ((ConstructorFactory) factory).getParameterFields();
+                }
+            }
+            this.parameterIndexes = new int[parameterFields.length];
+            for (int i = 0; i < parameterFields.length; i++) {
+                int index = fieldList.indexOf(parameterFields[i]);
+                if (index < 0) {
+                    // e.g. a field ignored by copies
+                    ClassPlan.makeAccessible(type, parameterFields[i]);
+                    index = fieldList.size();
+                    fieldList.add(parameterFields[i]);
+                }
+                parameterIndexes[i] = index;
+            }
+            this.fields = fieldList.toArray(new Field[0]);
+            this.codes = new char[fields.length];
+            this.sizes = new int[fields.length];
+            this.isParameterOnly = new boolean[fields.length];
+            int size = 0;
+            for (int i = 0; i < fields.length; i++) {
+                codes[i] = SnapshotFormat.typeCode(fields[i].getType());
+                sizes[i] = codes[i] == SnapshotFormat.REFERENCE ? SnapshotFormat.REFERENCE_SIZE : SnapshotFormat.sizeOf(codes[i]);
+                isParameterOnly[i] = i >= copiedCount;
+                size += sizes[i];
+            }
+            this.valuesSize = size;
+        }
+    }
+
+}
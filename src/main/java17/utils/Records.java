@@ -0,0 +1,41 @@
+package utils;
+
+import java.lang.reflect.Method;
+import java.lang.reflect.RecordComponent;
+
+/**
+ * Records and sealed classes via their API on Java 17 and later, replaces the reflective Java 11 version
+ * of this class in the multi-release jar.
+ */
+final class Records {
+
+    private Records() {
+    }
+
+    /**
+     * @return true if the class is a record class
+     */
+    static boolean isRecord(Class<?> type) {
+        return type.isRecord();
+    }
+
+    /**
+     * @return accessors of the components of the record class in the order of components
+     */
+    static Method[] accessors(Class<?> type) {
+        RecordComponent[] components = type.getRecordComponents();
+        Method[] accessors = new Method[components.length];
+        for (int i = 0; i < components.length; i++) {
+            accessors[i] = components[i].getAccessor();
+        }
+        return accessors;
+    }
+
+    /**
+     * @return subclasses permitted by the sealed class or interface, null if it isn't sealed
+     */
+    static Class<?>[] permittedSubclasses(Class<?> type) {
+        return type.isSealed() ? type.getPermittedSubclasses() : null;
+    }
+
+}